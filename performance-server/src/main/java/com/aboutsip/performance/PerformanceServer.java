@@ -1,11 +1,16 @@
 package com.aboutsip.performance;
 
 import com.aboutsip.performance.config.PerformanceConfiguration;
+import com.aboutsip.performance.config.SIPpConfiguration;
 import com.aboutsip.performance.core.sipp.SIPpManager;
 import io.dropwizard.Application;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 /**
  *
  */
@@ -15,13 +20,29 @@ public class PerformanceServer extends Application<PerformanceConfiguration> {
 
     @Override
     public void initialize(final Bootstrap<PerformanceConfiguration> bootstrap) {
-        this.sippManager = new SIPpManager();
     }
 
     @Override
     public void run(final PerformanceConfiguration configuration, final Environment environment) throws Exception {
+        final SIPpConfiguration sippConfig = configuration.getSippConfiguration();
+        final ScheduledExecutorService executorService =
+                Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        this.sippManager = new SIPpManager(executorService, sippConfig.getHistoryCapacity(), sippConfig.isOffHeapHistory(),
+                sippConfig.isPinToCpu());
+
         final SIPpResource sippResource = new SIPpResource(sippManager);
         environment.jersey().register(sippResource);
+        environment.lifecycle().manage(new Managed() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+                sippManager.shutdown();
+                executorService.shutdownNow();
+            }
+        });
     }
 
     public static void main(final String[] args) throws Exception {
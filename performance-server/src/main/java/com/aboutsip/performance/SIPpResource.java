@@ -2,8 +2,22 @@ package com.aboutsip.performance;
 
 import com.aboutsip.performance.api.sipp.Rate;
 import com.aboutsip.performance.api.sipp.SIPpTO;
+import com.aboutsip.performance.core.archive.ArchiveContent;
+import com.aboutsip.performance.core.archive.ArchiveFormat;
+import com.aboutsip.performance.core.archive.Archiver;
+import com.aboutsip.performance.core.capacity.CapacitySearch;
+import com.aboutsip.performance.core.fleet.FleetAggregator;
+import com.aboutsip.performance.core.fleet.FleetStats;
+import com.aboutsip.performance.core.monitor.CallCost;
+import com.aboutsip.performance.core.monitor.MonitorType;
+import com.aboutsip.performance.core.monitor.MonitoredProcess;
+import com.aboutsip.performance.core.report.RangeStats;
+import com.aboutsip.performance.core.report.ReportFormat;
+import com.aboutsip.performance.core.report.ReportGenerator;
 import com.aboutsip.performance.core.sipp.SIPp;
 import com.aboutsip.performance.core.sipp.SIPpManager;
+import com.aboutsip.performance.core.sipp.StatsBroadcaster;
+import com.aboutsip.performance.core.sipp.StatsObject;
 
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
@@ -11,11 +25,21 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -26,6 +50,10 @@ import java.util.stream.Collectors;
 @Produces(MediaType.APPLICATION_JSON)
 public class SIPpResource {
 
+    private static final String SERVER_SENT_EVENTS = "text/event-stream";
+    private static final long KEEP_ALIVE_INTERVAL_SECONDS = 15;
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
     private final SIPpManager sippManager;
 
     public SIPpResource(final SIPpManager manager) {
@@ -56,8 +84,10 @@ public class SIPpResource {
     @Path("instances")
     public Response createNewInstance(@FormParam("FriendlyName") @DefaultValue("Default") final String friendlyName,
                                       @FormParam("Scenario") @DefaultValue("uac") final String scenario,
-                                      @FormParam("Port") @DefaultValue("-1") final int port) {
+                                      @FormParam("Port") @DefaultValue("-1") final int port,
+                                      @FormParam("Tag") final List<String> tags) {
         final SIPp.Builder builder = sippManager.newInstance();
+        tags.stream().filter(tag -> !tag.isEmpty()).forEach(builder::withTag);
         final SIPp sipp = builder.withFriendlyName(friendlyName).build();
         return Response.status(Response.Status.CREATED).entity(sipp).build();
     }
@@ -74,6 +104,198 @@ public class SIPpResource {
         return sippManager.getInstance(instance).orElseThrow(NotFoundException::new);
     }
 
+    // ************************************************************************
+    // **************** Working with all SIPp instances ***********************
+    // ************************************************************************
+
+    /**
+     * The names of all the groups of instances, e.g. "all", "tag:uac" and "name:Default".
+     *
+     * @return
+     */
+    @GET
+    @Path("fleet")
+    public Set<String> listFleetGroups() {
+        return sippManager.getFleet().getGroups();
+    }
+
+    /**
+     * The totals across a group of instances, e.g. the total call rate and the merged
+     * response time repartition of all instances tagged "uac". If neither a tag nor a name
+     * is given, all instances are included.
+     *
+     * @param tag
+     * @param name the friendly name of the instances.
+     * @return
+     */
+    @GET
+    @Path("fleet/stats")
+    public FleetStats getFleetStats(@QueryParam("tag") final String tag, @QueryParam("name") final String name) {
+        if (tag != null && name != null) {
+            throw new BadRequestException("Query by either tag or name, not both");
+        }
+
+        final String group = tag != null ? FleetAggregator.tagGroup(tag)
+                : name != null ? FleetAggregator.nameGroup(name) : FleetAggregator.ALL;
+        return sippManager.getFleet().getStats(group).orElseThrow(NotFoundException::new);
+    }
+
+    // ************************************************************************
+    // **************** Working with the cost per call ************************
+    // ************************************************************************
+
+    /**
+     * The CPU cost per call of every process whose cost we are tracking, both over the latest
+     * sample and over all the samples we still have.
+     *
+     * @return
+     */
+    @GET
+    @Path("costs")
+    public List<CallCost> listCosts() {
+        return sippManager.getProcessMonitor().getCosts();
+    }
+
+    /**
+     * The CPU cost per call of a process over a range of time.
+     *
+     * @param name the name of the monitored process, e.g. "pid-4711".
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @return
+     */
+    @GET
+    @Path("costs/{name}")
+    public CallCost.Summary getCost(@PathParam("name") final String name,
+                                    @QueryParam("from") @DefaultValue("0") final long from,
+                                    @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) final long to) {
+        if (from >= to) {
+            throw new BadRequestException("The range must end after it starts");
+        }
+        final CallCost cost = sippManager.getProcessMonitor().getCost(name).orElseThrow(NotFoundException::new);
+        return cost.summarize(from, to);
+    }
+
+    /**
+     * Start tracking the CPU cost per call of a process, typically the system under test,
+     * with the calls being the successful calls of the given instances.
+     *
+     * @param pid the pid of the process.
+     * @param instances the instances making the calls.
+     * @return
+     */
+    @POST
+    @Path("costs")
+    public Response trackCost(@FormParam("pid") final Integer pid,
+                              @FormParam("instance") final List<UUID> instances) {
+        if (pid == null || pid <= 0) {
+            throw new BadRequestException("You must specify the pid of the process (form parameter 'pid')");
+        }
+        if (instances == null || instances.isEmpty()) {
+            throw new BadRequestException("You must specify at least one instance making the calls (form parameter 'instance')");
+        }
+
+        final List<SIPp> callers = instances.stream()
+                .map(instance -> sippManager.getInstance(instance).orElseThrow(NotFoundException::new))
+                .collect(Collectors.toList());
+        final MonitoredProcess process = sippManager.getProcessMonitor()
+                .monitor(pid, Collections.singleton(MonitorType.CPU));
+        final CallCost cost = sippManager.getProcessMonitor().trackCost(process,
+                () -> callers.stream().map(SIPp::getHistory).collect(Collectors.toList()));
+        return Response.status(Response.Status.CREATED).entity(cost).build();
+    }
+
+    /**
+     * A report of everything we have stored over a range of time: the stats of every instance,
+     * the samples of every monitored process and the cost per call of those processes. The report
+     * is streamed as it is generated, see {@link ReportGenerator}.
+     *
+     * @param format "html", "csv" or "json"
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @param include what to include of the monitored processes, e.g. "cpu", "iostat" and "gc".
+     *                All of it if not specified.
+     * @return
+     */
+    @GET
+    @Path("report")
+    @Produces({MediaType.TEXT_HTML, "text/csv", MediaType.APPLICATION_JSON})
+    public Response getReport(@QueryParam("format") @DefaultValue("html") final String format,
+                              @QueryParam("from") @DefaultValue("0") final long from,
+                              @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) final long to,
+                              @QueryParam("include") final List<String> include) {
+        final ReportFormat reportFormat;
+        final ReportGenerator generator;
+        try {
+            reportFormat = ReportFormat.of(format);
+            final Set<MonitorType> types = EnumSet.allOf(MonitorType.class);
+            if (include != null && !include.isEmpty()) {
+                types.clear();
+                include.forEach(type -> types.add(MonitorType.of(type)));
+            }
+
+            // the friendly names need not be unique
+            final Map<String, SIPp> instances = new LinkedHashMap<>();
+            sippManager.getAllInstances()
+                    .forEach(sipp -> instances.put(sipp.getFriendlyName() + " " + sipp.getUUID(), sipp));
+            generator = ReportGenerator.withTitle("Report")
+                    .withRange(from, to)
+                    .withInstances(instances)
+                    .withProcesses(sippManager.getProcessMonitor().getAll())
+                    .withTypes(types)
+                    .withCosts(sippManager.getProcessMonitor().getCosts())
+                    .build();
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        final StreamingOutput output = out -> generator.write(reportFormat,
+                new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final String type = reportFormat == ReportFormat.HTML ? MediaType.TEXT_HTML
+                : reportFormat == ReportFormat.CSV ? "text/csv" : MediaType.APPLICATION_JSON;
+        return Response.ok(output, type).build();
+    }
+
+    /**
+     * An archive of everything we have stored: the stats and response times of every instance,
+     * the samples of every monitored process and the cost per call of those processes. The archive
+     * is streamed as it is written, see {@link Archiver}.
+     *
+     * @param type "tar.gz", "tgz" or "zip"
+     * @param include what to archive, e.g. "stats" and "monitor". Everything if not specified.
+     * @return
+     */
+    @GET
+    @Path("archive")
+    @Produces({"application/gzip", "application/zip"})
+    public Response getArchive(@QueryParam("type") @DefaultValue("tar.gz") final String type,
+                               @QueryParam("include") final List<String> include) {
+        final ArchiveFormat format;
+        final Archiver archiver;
+        try {
+            format = ArchiveFormat.of(type);
+
+            // the friendly names need not be unique
+            final Map<String, SIPp> instances = new LinkedHashMap<>();
+            sippManager.getAllInstances()
+                    .forEach(sipp -> instances.put(sipp.getFriendlyName() + "-" + sipp.getUUID(), sipp));
+            archiver = Archiver.withName("sipp")
+                    .withContents(ArchiveContent.of(include))
+                    .withInstances(instances)
+                    .withProcesses(sippManager.getProcessMonitor().getAll())
+                    .withCosts(sippManager.getProcessMonitor().getCosts())
+                    .withExecutor(sippManager.getExecutorService(), Runtime.getRuntime().availableProcessors())
+                    .build();
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        final StreamingOutput output = out -> archiver.write(format, out);
+        return Response.ok(output, format.getMediaType())
+                .header("Content-Disposition", "attachment; filename=\"sipp" + format.getExtension() + "\"")
+                .build();
+    }
+
     /**
      * Return information about the rate, which includes the target rate as well
      * as how much it actually is able to push right now. E.g., your target rate
@@ -87,7 +309,77 @@ public class SIPpResource {
     @Path("instances/{instance}/rate")
     public Rate getSIPpRate(@PathParam("instance") final UUID instance) {
         final SIPp sipp = sippManager.getInstance(instance).orElseThrow(NotFoundException::new);
-        return null;
+        final StatsObject stats = sipp.getStats();
+        if (stats == null) {
+            return new Rate(0, 0);
+        }
+        return new Rate(stats.getTargetRate(), (int) Math.round(stats.getCallRate()));
+    }
+
+    /**
+     * What the instance did over a range of time, e.g. its mean and max call rate, the number of
+     * failed calls and its response times, calculated off of the stats we have stored.
+     *
+     * @param instance
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @return
+     */
+    @GET
+    @Path("instances/{instance}/range")
+    public RangeStats getRangeStats(@PathParam("instance") final UUID instance,
+                                    @QueryParam("from") @DefaultValue("0") final long from,
+                                    @QueryParam("to") @DefaultValue("" + Long.MAX_VALUE) final long to) {
+        if (from >= to) {
+            throw new BadRequestException("The range must end after it starts");
+        }
+        final SIPp sipp = sippManager.getInstance(instance).orElseThrow(NotFoundException::new);
+        return RangeStats.of(sipp.getFriendlyName(), sipp, from, to);
+    }
+
+    /**
+     * Stream the stats of the instance as Server-Sent Events, one event per stats sample
+     * reported by SIPp (i.e. once a second), rather than polling the instance.
+     *
+     * @param instance
+     * @param fields a comma separated list of the fields to include, e.g. "TargetRate,CallRate(P)".
+     *               If not specified, all fields are included.
+     * @param every only push every n:th sample, the periodic counters of the samples in between
+     *              are added to the one pushed.
+     * @return
+     */
+    @GET
+    @Path("instances/{instance}/stats/stream")
+    @Produces(SERVER_SENT_EVENTS)
+    public StreamingOutput streamStats(@PathParam("instance") final UUID instance,
+                                       @QueryParam("fields") final String fields,
+                                       @QueryParam("every") @DefaultValue("1") final int every) {
+        final StatsBroadcaster broadcaster = sippManager.getBroadcaster(instance).orElseThrow(NotFoundException::new);
+        final List<String> selection = fields == null || fields.trim().isEmpty()
+                ? Collections.emptyList() : Arrays.asList(fields.split(","));
+
+        final StatsBroadcaster.Subscription subscription;
+        try {
+            subscription = broadcaster.subscribe(selection, every);
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        return output -> {
+            try {
+                while (!subscription.isClosed()) {
+                    final byte[] event = subscription.poll(KEEP_ALIVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                    // a comment if there is nothing else to send, keeps proxies happy and
+                    // lets us find out if the client has gone away.
+                    output.write(event != null ? event : KEEP_ALIVE);
+                    output.flush();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscription.close();
+            }
+        };
     }
 
     /**
@@ -146,4 +438,60 @@ public class SIPpResource {
         return null;
     }
 
+    /**
+     * Search for the max sustainable rate of the instance, i.e., the highest rate at which
+     * there are no failed calls, few retransmissions and reasonable response times (see
+     * {@link CapacitySearch#defaultSlos()}). The instance must be running.
+     *
+     * This may take quite some time since every rate tried has to settle and then be measured
+     * and the response isn't sent until the search is done.
+     *
+     * @param instance
+     * @param mode either "step" or "binary"
+     * @param low the lowest rate to try
+     * @param high the highest rate to try
+     * @param step the step for a step search or the resolution of a binary search
+     * @param asyncResponse
+     */
+    @POST
+    @Path("instances/{instance}/capacity")
+    public void searchCapacity(@PathParam("instance") final UUID instance,
+                               @FormParam("mode") @DefaultValue("binary") final String mode,
+                               @FormParam("low") @DefaultValue("10") final int low,
+                               @FormParam("high") @DefaultValue("1000") final int high,
+                               @FormParam("step") @DefaultValue("10") final int step,
+                               @FormParam("settle") @DefaultValue("5") final int settle,
+                               @FormParam("measure") @DefaultValue("10") final int measure,
+                               @Suspended final AsyncResponse asyncResponse) {
+        final SIPp sipp = sippManager.getInstance(instance).orElseThrow(NotFoundException::new);
+
+        final CapacitySearch.Builder builder;
+        if ("step".equalsIgnoreCase(mode)) {
+            builder = CapacitySearch.withSteps(low, step, high);
+        } else if ("binary".equalsIgnoreCase(mode)) {
+            builder = CapacitySearch.withBinarySearch(low, high, step);
+        } else {
+            throw new BadRequestException("Unknown mode '" + mode + "', expected 'step' or 'binary'");
+        }
+
+        final CapacitySearch search;
+        try {
+            search = builder.withSettleSamples(settle).withMeasureSamples(measure).build();
+        } catch (final IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        if (sipp.getStats() == null) {
+            throw new BadRequestException("The instance must be running");
+        }
+
+        search.run(sipp).whenComplete((result, t) -> {
+            if (t != null) {
+                asyncResponse.resume(t);
+            } else {
+                asyncResponse.resume(result);
+            }
+        });
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.aboutsip.performance.config;
 
+import com.aboutsip.performance.core.sipp.StatsHistory;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -11,4 +12,36 @@ public class SIPpConfiguration {
     @JsonProperty
     private String executable;
 
+    /**
+     * The number of stats samples to keep in memory per SIPp instance. SIPp
+     * reports once a second so the default is 4 hours worth of samples.
+     */
+    @JsonProperty
+    private int historyCapacity = StatsHistory.DEFAULT_CAPACITY;
+
+    /**
+     * Whether to keep the stats history outside of the java heap.
+     */
+    @JsonProperty
+    private boolean offHeapHistory = false;
+
+    /**
+     * Whether to pin every SIPp process to a CPU (using numactl or taskset, if available)
+     * so that many SIPp processes on the same machine do not step on each other's toes.
+     */
+    @JsonProperty
+    private boolean pinToCpu = true;
+
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    public boolean isOffHeapHistory() {
+        return offHeapHistory;
+    }
+
+    public boolean isPinToCpu() {
+        return pinToCpu;
+    }
+
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -25,6 +26,12 @@ public class ScenarioConfig {
     @JsonProperty
     private List<String> actions;
 
+    /**
+     * Where the reports, archives etc. of a run end up. The current working directory if not specified.
+     */
+    @JsonProperty
+    private File outputFolder;
+
     public String getDescription() {
         return description;
     }
@@ -53,4 +60,12 @@ public class ScenarioConfig {
     public List<String> getActions() {
         return actions;
     }
+
+    public File getOutputFolder() {
+        return outputFolder;
+    }
+
+    public void setOutputFolder(final File outputFolder) {
+        this.outputFolder = outputFolder;
+    }
 }
@@ -0,0 +1,77 @@
+package com.aboutsip.performance.core.archive;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * What goes into an archive. Every series is stored in the {@link ColumnarFormat}.
+ */
+public enum ArchiveContent {
+
+    /**
+     * The stats of every SIPp instance, i.e., every column SIPp reports.
+     */
+    STATS,
+
+    /**
+     * The response time histogram of every SIPp instance, one interval per sample.
+     */
+    HISTOGRAMS,
+
+    /**
+     * The samples of every monitored process.
+     */
+    MONITOR,
+
+    /**
+     * The CPU cost per call of every monitored process we track it for.
+     */
+    COSTS,
+
+    /**
+     * The files in the output folder of the run, such as the reports.
+     */
+    FILES;
+
+    /**
+     * The name that includes all of them.
+     */
+    public static final String EVERYTHING = "everything";
+
+    /**
+     * @return the name used in the scenario actions, e.g. "stats".
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @param name e.g. "stats" or "monitor".
+     * @return
+     * @throws IllegalArgumentException in case there is no such content.
+     */
+    public static ArchiveContent of(final String name) throws IllegalArgumentException {
+        for (final ArchiveContent content : values()) {
+            if (content.getName().equalsIgnoreCase(name)) {
+                return content;
+            }
+        }
+        throw new IllegalArgumentException("Unknown archive content \"" + name + "\"");
+    }
+
+    /**
+     * @param names e.g. "stats" and "monitor", or {@link #EVERYTHING}. Nothing at all is also everything.
+     * @return
+     * @throws IllegalArgumentException in case there is no such content.
+     */
+    public static Set<ArchiveContent> of(final Collection<String> names) throws IllegalArgumentException {
+        if (names == null || names.isEmpty() || names.stream().anyMatch(EVERYTHING::equalsIgnoreCase)) {
+            return EnumSet.allOf(ArchiveContent.class);
+        }
+
+        final Set<ArchiveContent> contents = EnumSet.noneOf(ArchiveContent.class);
+        names.forEach(name -> contents.add(of(name)));
+        return contents;
+    }
+}
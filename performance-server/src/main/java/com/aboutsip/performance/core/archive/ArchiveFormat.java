@@ -0,0 +1,96 @@
+package com.aboutsip.performance.core.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * The kinds of archives we can write, which is decided by the name of the file.
+ */
+public enum ArchiveFormat {
+
+    /**
+     * A tar archive compressed by a {@link ParallelGzipOutputStream}, so the compression, which
+     * is where all the time goes, is spread over every core. The one to use for large runs.
+     */
+    TAR_GZ("application/gzip", ".tar.gz", ".tgz") {
+        @Override
+        ArchiveWriter newWriter(final OutputStream out, final Executor executor, final int parallelism)
+                throws IOException {
+            return new TarArchiveWriter(new ParallelGzipOutputStream(out, executor, parallelism));
+        }
+    },
+
+    /**
+     * A zip archive, where every entry is deflated on its own. Only the encoding of the entries is
+     * done in parallel.
+     */
+    ZIP("application/zip", ".zip") {
+        @Override
+        ArchiveWriter newWriter(final OutputStream out, final Executor executor, final int parallelism) {
+            return new ZipArchiveWriter(out);
+        }
+    };
+
+    private final String mediaType;
+    private final List<String> extensions;
+
+    ArchiveFormat(final String mediaType, final String... extensions) {
+        this.mediaType = mediaType;
+        this.extensions = Arrays.asList(extensions);
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * The extension of the file, e.g. ".tar.gz".
+     */
+    public String getExtension() {
+        return extensions.get(0);
+    }
+
+    /**
+     * @param name the name of an archive of this format, e.g. "run.tar.gz".
+     * @return the name without the extension, e.g. "run".
+     */
+    public String getBaseName(final String name) {
+        final String lower = name.toLowerCase(Locale.ROOT);
+        for (final String extension : extensions) {
+            if (lower.endsWith(extension)) {
+                return name.substring(0, name.length() - extension.length());
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @param out where the archive is written.
+     * @param executor runs whatever can be done in parallel.
+     * @param parallelism the max number of things to do in parallel.
+     * @return
+     */
+    abstract ArchiveWriter newWriter(OutputStream out, Executor executor, int parallelism) throws IOException;
+
+    /**
+     * @param name the name of the archive, e.g. "run.tar.gz", or just the type of it, e.g. "tar.gz" or "zip".
+     * @return
+     * @throws IllegalArgumentException in case it is neither a tar.gz, a tgz or a zip.
+     */
+    public static ArchiveFormat of(final String name) throws IllegalArgumentException {
+        final String lower = name == null ? "" : name.toLowerCase(Locale.ROOT);
+        for (final ArchiveFormat format : values()) {
+            for (final String extension : format.extensions) {
+                if (lower.endsWith(extension) || lower.equals(extension.substring(1))) {
+                    return format;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown type of archive \"" + name
+                + "\", the name must end with .tar.gz, .tgz or .zip");
+    }
+}
@@ -0,0 +1,21 @@
+package com.aboutsip.performance.core.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writes the entries of an archive, one after the other. Closing the writer finishes the archive
+ * and closes the underlying stream.
+ */
+interface ArchiveWriter extends Closeable {
+
+    /**
+     * @param name the path of the entry within the archive, using '/' as the separator.
+     * @param time the time the entry was last modified, in milliseconds since the epoch.
+     * @param size the exact number of bytes of the entry.
+     * @param in the content of the entry, which is read until the end.
+     * @throws IOException
+     */
+    void entry(String name, long time, long size, InputStream in) throws IOException;
+}
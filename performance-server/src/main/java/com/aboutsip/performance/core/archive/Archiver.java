@@ -0,0 +1,380 @@
+package com.aboutsip.performance.core.archive;
+
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.monitor.CallCost;
+import com.aboutsip.performance.core.monitor.MonitorType;
+import com.aboutsip.performance.core.monitor.MonitoredProcess;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Archives everything we have stored about a run: the stats and response times of the SIPp
+ * instances, the samples of the monitored processes, the cost per call of those processes and
+ * whatever files ended up in the output folder of the run, such as the reports. Within the
+ * archive it all goes into a folder named after the archive:
+ *
+ * <pre>
+ *     name/stats/[instance].spts
+ *     name/histograms/[instance].spts
+ *     name/monitor/[process]/[type].spts
+ *     name/costs/[process].spts
+ *     name/files/...
+ * </pre>
+ *
+ * Where the series are stored in the {@link ColumnarFormat}, which is a fraction of the size
+ * of the same samples as CSV before it is even compressed, and quicker to compress too.
+ *
+ * The series are encoded in parallel, a few at a time, and handed to the archive in order as they
+ * are done, which in the case of a {@link ArchiveFormat#TAR_GZ} compresses them in parallel as well.
+ * Hence, we never hold on to more than a few encoded series at any given time. The thread writing
+ * the archive takes its turn at encoding when the executor is busy, so it is fine to run this
+ * on the very executor it uses.
+ */
+public final class Archiver {
+
+    public static final String EXTENSION = ".spts";
+
+    private final String name;
+    private final long from;
+    private final long to;
+    private final Set<ArchiveContent> contents;
+    private final List<Instance> instances;
+    private final List<MonitoredProcess> processes;
+    private final List<CallCost> costs;
+    private final Path folder;
+    private final Executor executor;
+    private final int parallelism;
+
+    private Archiver(final Builder builder) {
+        this.name = builder.name;
+        this.from = builder.from;
+        this.to = builder.to;
+        this.contents = EnumSet.copyOf(builder.contents);
+        this.instances = new ArrayList<>(builder.instances);
+        this.processes = new ArrayList<>(builder.processes);
+        this.costs = new ArrayList<>(builder.costs);
+        this.folder = builder.folder;
+        this.executor = builder.executor;
+        this.parallelism = builder.parallelism;
+    }
+
+    /**
+     * @param name the name of the folder within the archive that everything goes into.
+     * @return
+     */
+    public static Builder withName(final String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Write the archive to a file, which is replaced if it already exists. The file itself is left out
+     * of the archive in case it happens to be in the folder we are archiving.
+     *
+     * @param format
+     * @param file
+     * @throws IOException
+     */
+    public void write(final ArchiveFormat format, final Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(format, out, file);
+        }
+    }
+
+    /**
+     * Write the archive, which finishes, and closes, the stream.
+     *
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    public void write(final ArchiveFormat format, final OutputStream out) throws IOException {
+        write(format, out, null);
+    }
+
+    private void write(final ArchiveFormat format, final OutputStream out, final Path exclude) throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<Entry> entries = entries(exclude);
+        try (ArchiveWriter writer = format.newWriter(new BufferedOutputStream(out, 64 * 1024), executor,
+                parallelism)) {
+            final Iterator<Entry> iterator = entries.iterator();
+            final ArrayDeque<Encoding> pending = new ArrayDeque<>();
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < parallelism) {
+                    final Entry entry = iterator.next();
+                    final Encoding encoding = new Encoding(entry);
+                    pending.add(encoding);
+                    if (entry.series != null) {
+                        executor.execute(encoding.task);
+                    }
+                }
+
+                final Encoding encoding = pending.poll();
+                if (encoding.entry.file != null) {
+                    final Path file = encoding.entry.file;
+                    try (InputStream in = Files.newInputStream(file)) {
+                        writer.entry(encoding.entry.name, Files.getLastModifiedTime(file).toMillis(),
+                                Files.size(file), in);
+                    }
+                } else {
+                    final byte[] bytes = encoding.get();
+                    writer.entry(encoding.entry.name, now, bytes.length, new ByteArrayInputStream(bytes));
+                }
+            }
+        }
+    }
+
+    private List<Entry> entries(final Path exclude) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        for (final Instance instance : instances) {
+            if (contents.contains(ArchiveContent.STATS)) {
+                entries.add(new Entry(path("stats", instance.name) + EXTENSION, instance.history.getTimeSeries()));
+            }
+            final TimeSeries responseTimes = instance.responseTimes != null
+                    ? instance.responseTimes.getTimeSeries() : null;
+            if (contents.contains(ArchiveContent.HISTOGRAMS) && responseTimes != null) {
+                entries.add(new Entry(path("histograms", instance.name) + EXTENSION, responseTimes));
+            }
+        }
+
+        if (contents.contains(ArchiveContent.MONITOR)) {
+            for (final MonitoredProcess process : processes) {
+                for (final MonitorType type : process.getTypes()) {
+                    entries.add(new Entry(path("monitor", process.getName(), type.getName()) + EXTENSION,
+                            process.getTimeSeries(type)));
+                }
+            }
+        }
+
+        if (contents.contains(ArchiveContent.COSTS)) {
+            costs.forEach(cost -> entries.add(new Entry(path("costs", cost.getName()) + EXTENSION,
+                    cost.getTimeSeries())));
+        }
+
+        if (contents.contains(ArchiveContent.FILES) && folder != null && Files.isDirectory(folder)) {
+            final Path excluded = exclude != null ? exclude.toAbsolutePath().normalize() : null;
+            try (Stream<Path> files = Files.walk(folder)) {
+                for (final Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    if (!file.toAbsolutePath().normalize().equals(excluded)) {
+                        final String relative = folder.relativize(file).toString().replace(file.getFileSystem()
+                                .getSeparator(), "/");
+                        entries.add(new Entry(name + "/files/" + relative, file));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The path of an entry, with anything that isn't safe to use in a file name replaced.
+     */
+    private String path(final String folder, final String... names) {
+        final StringBuilder sb = new StringBuilder(name).append('/').append(folder);
+        for (final String part : names) {
+            sb.append('/').append(part.replaceAll("[^A-Za-z0-9._-]", "_"));
+        }
+        return sb.toString();
+    }
+
+    private byte[] encode(final TimeSeries series) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try {
+            ColumnarFormat.write(series, from, to, out);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Either a series to encode or a file to copy as is.
+     */
+    private static final class Entry {
+        private final String name;
+        private final TimeSeries series;
+        private final Path file;
+
+        private Entry(final String name, final TimeSeries series) {
+            this.name = name;
+            this.series = series;
+            this.file = null;
+        }
+
+        private Entry(final String name, final Path file) {
+            this.name = name;
+            this.series = null;
+            this.file = file;
+        }
+    }
+
+    private final class Encoding {
+        private final Entry entry;
+        private final FutureTask<byte[]> task;
+
+        private Encoding(final Entry entry) {
+            this.entry = entry;
+            this.task = new FutureTask<>(() -> encode(entry.series));
+        }
+
+        /**
+         * @return the encoded series, encoding it right here if no one else has gotten around to it.
+         */
+        private byte[] get() throws IOException {
+            task.run();
+            try {
+                return task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding " + entry.name);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("Unable to encode " + entry.name, e.getCause());
+            }
+        }
+    }
+
+    private static final class Instance {
+        private final String name;
+        private final StatsHistory history;
+        private final HistogramHistory responseTimes;
+
+        private Instance(final String name, final StatsHistory history, final HistogramHistory responseTimes) {
+            this.name = name;
+            this.history = history;
+            this.responseTimes = responseTimes;
+        }
+    }
+
+    public static final class Builder {
+        private final String name;
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private final Set<ArchiveContent> contents = EnumSet.allOf(ArchiveContent.class);
+        private final List<Instance> instances = new ArrayList<>();
+        private final List<MonitoredProcess> processes = new ArrayList<>();
+        private final List<CallCost> costs = new ArrayList<>();
+        private Path folder;
+        private Executor executor = ForkJoinPool.commonPool();
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        private Builder(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Only archive the samples within a range of time. By default, all of them are.
+         *
+         * @param from in nanoseconds since the epoch (inclusive).
+         * @param to in nanoseconds since the epoch (exclusive).
+         * @return
+         */
+        public Builder withRange(final long from, final long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        /**
+         * What to archive. By default, everything is.
+         */
+        public Builder withContents(final Collection<ArchiveContent> contents) {
+            this.contents.clear();
+            this.contents.addAll(contents);
+            return this;
+        }
+
+        public Builder withInstance(final String name, final StatsHistory history,
+                                    final HistogramHistory responseTimes) {
+            instances.add(new Instance(name, history, responseTimes));
+            return this;
+        }
+
+        /**
+         * @param instances the instances by the name they go by in the archive.
+         * @return
+         */
+        public Builder withInstances(final Map<String, SIPp> instances) {
+            instances.forEach((name, sipp) -> withInstance(name, sipp.getHistory(), sipp.getResponseTimeHistory()));
+            return this;
+        }
+
+        public Builder withProcesses(final Collection<MonitoredProcess> processes) {
+            this.processes.addAll(processes);
+            return this;
+        }
+
+        public Builder withCosts(final Collection<CallCost> costs) {
+            this.costs.addAll(costs);
+            return this;
+        }
+
+        /**
+         * The folder with the files of the run, which are archived as they are.
+         */
+        public Builder withFolder(final Path folder) {
+            this.folder = folder;
+            return this;
+        }
+
+        /**
+         * @param executor runs the encoding, and compression, of the series. By default, the common pool.
+         * @param parallelism the max number of series to encode, or blocks to compress, in parallel.
+         *                    By default, the number of processors.
+         * @return
+         */
+        public Builder withExecutor(final Executor executor, final int parallelism) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @return
+         * @throws IllegalArgumentException in case the name is missing, the range is empty, there is no
+         * executor or the parallelism is less than one.
+         */
+        public Archiver build() throws IllegalArgumentException {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("The archive must have a name");
+            }
+            if (from >= to) {
+                throw new IllegalArgumentException("The range of the archive is empty");
+            }
+            if (executor == null) {
+                throw new IllegalArgumentException("You must specify an executor");
+            }
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("The parallelism must be at least one");
+            }
+            return new Archiver(this);
+        }
+    }
+}
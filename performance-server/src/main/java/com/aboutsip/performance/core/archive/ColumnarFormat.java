@@ -0,0 +1,281 @@
+package com.aboutsip.performance.core.archive;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact binary format for the samples of a {@link TimeSeries}, which is what ends up in an
+ * archive instead of the CSV files SIPp writes. A day of samples of a single SIPp instance is
+ * well over a hundred megabytes worth of CSV but most of it is counters that barely move from
+ * one second to the next, which we can take advantage of by storing the samples column by column.
+ *
+ * The samples are written in blocks of up to {@link #BLOCK_SIZE} rows so that neither the writer
+ * nor the reader need to know, or hold on to, all of the samples up front. Every block is:
+ *
+ * <ul>
+ *     <li>the number of rows, as a varint. A block of zero rows marks the end of the samples.</li>
+ *     <li>the timestamps, as zig-zag varints of the delta of the delta from the previous one. With
+ *     a sample every second that is a single byte per row.</li>
+ *     <li>then every column, where every value is XOR:ed with the previous value of the column and
+ *     only the bytes in between the leading and trailing zero bytes are stored, along with a tag
+ *     byte saying how many of each there were. A value that didn't change is a single byte and a
+ *     counter that went up by a little is usually two or three.</li>
+ * </ul>
+ *
+ * Before the blocks comes the magic "SPTS", the version and the names of the columns.
+ */
+public final class ColumnarFormat {
+
+    public static final int BLOCK_SIZE = 4096;
+
+    private static final byte[] MAGIC = "SPTS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private ColumnarFormat() {
+        // static methods only
+    }
+
+    /**
+     * Write the samples within a range of time. It is up to the caller to buffer the stream and to close it.
+     *
+     * @param series
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @param out
+     * @return the number of samples written.
+     * @throws IOException
+     */
+    public static long write(final TimeSeries series, final long from, final long to, final OutputStream out)
+            throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        final List<String> columns = series.getColumns();
+        writeVarint(out, columns.size());
+        for (final String column : columns) {
+            final byte[] name = column.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, name.length);
+            out.write(name);
+        }
+
+        final Encoder encoder = new Encoder(out, columns.size());
+        try {
+            series.forEach(from, to, encoder);
+            encoder.flush();
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writeVarint(out, 0);
+        return encoder.samples;
+    }
+
+    /**
+     * Write every sample currently available.
+     */
+    public static long write(final TimeSeries series, final OutputStream out) throws IOException {
+        return write(series, Long.MIN_VALUE, Long.MAX_VALUE, out);
+    }
+
+    /**
+     * Read back the samples into a new (on heap) time series, just large enough to hold all of them.
+     *
+     * @param in
+     * @return
+     * @throws IOException in case the stream isn't in this format or ends prematurely.
+     */
+    public static TimeSeries read(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a stream of samples");
+        }
+        final int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the sample format");
+        }
+
+        final int columnCount = (int) readVarint(data);
+        final List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; ++i) {
+            final byte[] name = new byte[(int) readVarint(data)];
+            data.readFully(name);
+            columns.add(new String(name, StandardCharsets.UTF_8));
+        }
+
+        // the series can't grow so we keep the blocks around until we know how many rows there are
+        final List<long[]> timestamps = new ArrayList<>();
+        final List<long[][]> values = new ArrayList<>();
+        final long[] previousBits = new long[columnCount];
+        long timestamp = 0;
+        long delta = 0;
+        int rows = 0;
+        for (int count = (int) readVarint(data); count > 0; count = (int) readVarint(data)) {
+            final long[] blockTimestamps = new long[count];
+            for (int i = 0; i < count; ++i) {
+                delta += unzigzag(readVarint(data));
+                timestamp += delta;
+                blockTimestamps[i] = timestamp;
+            }
+
+            final long[][] blockValues = new long[columnCount][count];
+            for (int column = 0; column < columnCount; ++column) {
+                long bits = previousBits[column];
+                for (int i = 0; i < count; ++i) {
+                    bits ^= readXor(data);
+                    blockValues[column][i] = bits;
+                }
+                previousBits[column] = bits;
+            }
+            timestamps.add(blockTimestamps);
+            values.add(blockValues);
+            rows += count;
+        }
+
+        final TimeSeries series = TimeSeries.create(columns, Math.max(1, rows), false);
+        for (int block = 0; block < timestamps.size(); ++block) {
+            final long[][] blockValues = values.get(block);
+            final long[] blockTimestamps = timestamps.get(block);
+            for (int i = 0; i < blockTimestamps.length; ++i) {
+                final int row = i;
+                series.append(blockTimestamps[i], column -> Double.longBitsToDouble(blockValues[column][row]));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Buffers a block worth of samples, which are then written column by column.
+     */
+    private static final class Encoder implements TimeSeries.SampleVisitor {
+
+        private final OutputStream out;
+        private final long[] timestamps = new long[BLOCK_SIZE];
+        private final long[][] values;
+        private final long[] previousBits;
+        private long previousTimestamp;
+        private long previousDelta;
+        private int rows;
+        private long samples;
+
+        private Encoder(final OutputStream out, final int columns) {
+            this.out = out;
+            this.values = new long[columns][BLOCK_SIZE];
+            this.previousBits = new long[columns];
+        }
+
+        @Override
+        public void visit(final TimeSeries series, final long sequence) {
+            timestamps[rows] = series.getTimestamp(sequence);
+            for (int column = 0; column < values.length; ++column) {
+                values[column][rows] = Double.doubleToRawLongBits(series.getValue(sequence, column));
+            }
+            ++samples;
+            if (++rows == BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws UncheckedIOException {
+            if (rows == 0) {
+                return;
+            }
+
+            try {
+                writeVarint(out, rows);
+                for (int i = 0; i < rows; ++i) {
+                    final long delta = timestamps[i] - previousTimestamp;
+                    writeVarint(out, zigzag(delta - previousDelta));
+                    previousDelta = delta;
+                    previousTimestamp = timestamps[i];
+                }
+
+                for (int column = 0; column < values.length; ++column) {
+                    long previous = previousBits[column];
+                    for (int i = 0; i < rows; ++i) {
+                        writeXor(out, values[column][i] ^ previous);
+                        previous = values[column][i];
+                    }
+                    previousBits[column] = previous;
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows = 0;
+        }
+    }
+
+    /**
+     * A zero is the single byte zero. Anything else is a tag byte, with the number of leading zero bytes
+     * in bits 3-5 and the number of trailing zero bytes in bits 0-2, followed by the bytes in between.
+     */
+    private static void writeXor(final OutputStream out, final long xor) throws IOException {
+        if (xor == 0) {
+            out.write(0);
+            return;
+        }
+
+        final int leading = Long.numberOfLeadingZeros(xor) / 8;
+        final int trailing = Long.numberOfTrailingZeros(xor) / 8;
+        out.write(0x40 | leading << 3 | trailing);
+        for (int i = 7 - leading; i >= trailing; --i) {
+            out.write((int) (xor >>> (i * 8)));
+        }
+    }
+
+    private static long readXor(final DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        if (tag == 0) {
+            return 0;
+        }
+
+        final int leading = tag >>> 3 & 0x7;
+        final int trailing = tag & 0x7;
+        long xor = 0;
+        for (int i = 7 - leading; i >= trailing; --i) {
+            xor |= (long) in.readUnsignedByte() << (i * 8);
+        }
+        return xor;
+    }
+
+    private static long zigzag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static void writeVarint(final OutputStream out, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) (remaining & 0x7F | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarint(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
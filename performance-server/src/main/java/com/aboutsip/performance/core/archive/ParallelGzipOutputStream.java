@@ -0,0 +1,242 @@
+package com.aboutsip.performance.core.archive;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip stream that compresses blocks of its input in parallel, the way pigz does it. Every block
+ * is deflated on its own, primed with the last 32 KB of the block before it so that we don't lose
+ * much compression, and ends with a sync flush so that the blocks can simply be written one after
+ * the other. The result is a single, ordinary, gzip member that any gunzip can read.
+ *
+ * At most two blocks per thread are in flight at any given time, so the memory used is bounded
+ * no matter how much is written. If the executor is busy with other things the thread writing to
+ * the stream compresses the blocks itself, so it is fine to share an executor that may be saturated,
+ * it'll just be slower.
+ *
+ * Not thread safe, just like any other stream.
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, // magic
+            Deflater.DEFLATED, // method
+            0, // flags
+            0, 0, 0, 0, // mtime
+            0, // extra flags
+            (byte) 0xff // unknown OS
+    };
+
+    private final OutputStream out;
+    private final Executor executor;
+    private final int maxPending;
+    private final int level;
+    private final ArrayDeque<FutureTask<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block;
+    private int position;
+    private byte[] previous;
+    private long size;
+    private boolean finished;
+
+    /**
+     * @param out where the gzip stream is written.
+     * @param executor runs the compression of the blocks.
+     * @param parallelism the number of blocks to compress in parallel.
+     */
+    public ParallelGzipOutputStream(final OutputStream out, final Executor executor, final int parallelism)
+            throws IOException {
+        this(out, executor, parallelism, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out where the gzip stream is written.
+     * @param executor runs the compression of the blocks.
+     * @param parallelism the number of blocks to compress in parallel.
+     * @param blockSize the number of bytes of every block.
+     * @param level the compression level, see {@link Deflater}.
+     * @throws IllegalArgumentException in case the parallelism or the size of the blocks is less than one.
+     */
+    public ParallelGzipOutputStream(final OutputStream out, final Executor executor, final int parallelism,
+                                    final int blockSize, final int level)
+            throws IOException, IllegalArgumentException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least one");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be at least one");
+        }
+
+        this.out = out;
+        this.executor = executor;
+        this.maxPending = parallelism * 2;
+        this.level = level;
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        block[position++] = (byte) b;
+        if (position == block.length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            final int count = Math.min(remaining, block.length - position);
+            System.arraycopy(b, offset, block, position, count);
+            position += count;
+            offset += count;
+            remaining -= count;
+            if (position == block.length) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Write whatever has been compressed so far. Note that this doesn't compress the current block,
+     * which isn't full yet, since that would hurt the compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            drain();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compress and write what is left, followed by the gzip trailer, without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        if (position > 0) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            drain();
+        }
+
+        // an empty final block ends the deflate stream
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.finish();
+            final byte[] buffer = new byte[16];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        final byte[] trailer = new byte[8];
+        writeInt(trailer, 0, (int) crc.getValue());
+        writeInt(trailer, 4, (int) size);
+        out.write(trailer);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] input = position == block.length ? block : Arrays.copyOf(block, position);
+        crc.update(input, 0, input.length);
+        size += input.length;
+
+        final byte[] dictionary = previous;
+        final FutureTask<byte[]> task = new FutureTask<>(() -> deflate(input, dictionary, level));
+        while (pending.size() >= maxPending) {
+            drain();
+        }
+        pending.add(task);
+        executor.execute(task);
+
+        previous = input;
+        block = new byte[block.length];
+        position = 0;
+    }
+
+    /**
+     * Write the oldest block, compressing it right here if no one else has gotten around to it.
+     */
+    private void drain() throws IOException {
+        final FutureTask<byte[]> task = pending.poll();
+        task.run();
+        try {
+            out.write(task.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (final ExecutionException e) {
+            throw new IOException("Unable to compress", e.getCause());
+        }
+    }
+
+    private static byte[] deflate(final byte[] input, final byte[] dictionary, final int level) {
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                final int length = Math.min(DICTIONARY_SIZE, dictionary.length);
+                deflater.setDictionary(dictionary, dictionary.length - length, length);
+            }
+            deflater.setInput(input);
+
+            byte[] output = new byte[input.length + input.length / 1000 + 64];
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                if (length < output.length) {
+                    return Arrays.copyOf(output, length);
+                }
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("The stream has been finished");
+        }
+    }
+
+    private static void writeInt(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,116 @@
+package com.aboutsip.performance.core.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * See {@link ArchiveFormat#TAR_GZ}. Writes plain (ustar) regular files, which is all we need, and
+ * leaves the compression to the stream it writes to.
+ */
+final class TarArchiveWriter implements ArchiveWriter {
+
+    private static final int RECORD = 512;
+
+    /**
+     * What fits in the eleven octal digits of the size field.
+     */
+    private static final long MAX_SIZE = 077777777777L;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    TarArchiveWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void entry(final String name, final long time, final long size, final InputStream in)
+            throws IOException {
+        if (size > MAX_SIZE) {
+            throw new IOException("The entry " + name + " is too large for a tar archive");
+        }
+        out.write(header(name, time, size));
+
+        long remaining = size;
+        while (remaining > 0) {
+            final int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count < 0) {
+                throw new IOException("The entry " + name + " ended " + remaining + " bytes short");
+            }
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+
+        final int padding = (int) ((RECORD - size % RECORD) % RECORD);
+        out.write(new byte[padding]);
+    }
+
+    /**
+     * Two empty records end the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write(new byte[RECORD * 2]);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] header(final String name, final long time, final long size) throws IOException {
+        final byte[] header = new byte[RECORD];
+        final byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        if (path.length <= 100) {
+            System.arraycopy(path, 0, header, 0, path.length);
+        } else {
+            // the part up until the last slash that keeps the rest within 100 bytes goes in the prefix
+            int split = -1;
+            for (int i = 0; i < path.length && i <= 155; ++i) {
+                if (path[i] == '/' && path.length - i - 1 <= 100) {
+                    split = i;
+                    break;
+                }
+            }
+            if (split < 0) {
+                throw new IOException("The name " + name + " is too long for a tar archive");
+            }
+            System.arraycopy(path, split + 1, header, 0, path.length - split - 1);
+            System.arraycopy(path, 0, header, 345, split);
+        }
+
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, time / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // the checksum is calculated with the checksum field itself being all spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (final byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Zero padded octal digits followed by a nul.
+     */
+    private static void octal(final byte[] header, final int offset, final int length, final long value) {
+        final String digits = Long.toOctalString(value);
+        final int padding = length - 1 - digits.length();
+        for (int i = 0; i < padding; ++i) {
+            header[offset + i] = '0';
+        }
+        for (int i = 0; i < digits.length(); ++i) {
+            header[offset + padding + i] = (byte) digits.charAt(i);
+        }
+        header[offset + length - 1] = 0;
+    }
+}
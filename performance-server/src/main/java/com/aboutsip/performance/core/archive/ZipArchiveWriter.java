@@ -0,0 +1,46 @@
+package com.aboutsip.performance.core.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * See {@link ArchiveFormat#ZIP}. Every entry is deflated on its own by {@link ZipOutputStream},
+ * on the thread writing the archive.
+ */
+final class ZipArchiveWriter implements ArchiveWriter {
+
+    private final ZipOutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    ZipArchiveWriter(final OutputStream out) {
+        this.out = new ZipOutputStream(out);
+    }
+
+    @Override
+    public void entry(final String name, final long time, final long size, final InputStream in)
+            throws IOException {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        entry.setSize(size);
+        out.putNextEntry(entry);
+
+        long remaining = size;
+        while (remaining > 0) {
+            final int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count < 0) {
+                throw new IOException("The entry " + name + " ended " + remaining + " bytes short");
+            }
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+        out.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,534 @@
+package com.aboutsip.performance.core.capacity;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsListener;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.StatsObject;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Find the max sustainable rate of a SIPp instance (and really of the SUT), i.e., the highest
+ * rate at which all the {@link Slo}s are still met - the knee of the curve.
+ *
+ * The search is driven by the stats SIPp reports. For every rate we try, we first wait for
+ * SIPp to pick up the new rate and for things to settle down, then we gather a number of
+ * samples and evaluate the {@link Slo}s against them. Depending on the outcome we then move
+ * on to the next rate, either by stepping up a fixed amount every time or by doing a binary
+ * search between a low and a high rate (which is a lot faster when you have no idea where
+ * the knee is).
+ *
+ * The instance must already be running when the search is started. The search leaves the
+ * instance running at the last rate tried, it is up to you to do something about that.
+ */
+public final class CapacitySearch {
+
+    private static final Logger logger = LoggerFactory.getLogger(CapacitySearch.class);
+
+    /**
+     * The metrics we keep track of for each rate we try.
+     */
+    private static final StatsMetric[] METRICS = {
+            StatsMetric.CALL_RATE_P,
+            StatsMetric.OUTGOING_CALL_P,
+            StatsMetric.SUCCESSFUL_CALL_P,
+            StatsMetric.FAILED_CALL_P,
+            StatsMetric.RETRANSMISSIONS_P,
+            StatsMetric.RESPONSE_TIME1_P
+    };
+
+    public enum Mode {
+        /**
+         * Start at the low rate and step up a fixed amount until an SLO is violated
+         * or we reach the high rate.
+         */
+        STEP,
+
+        /**
+         * Binary search between the low and the high rate until the knee has been
+         * found within the given resolution.
+         */
+        BINARY
+    }
+
+    private final Mode mode;
+    private final int low;
+    private final int high;
+    private final int step;
+    private final int settleSamples;
+    private final int measureSamples;
+    private final double rateTolerance;
+    private final List<Slo> slos;
+
+    private CapacitySearch(final Mode mode, final int low, final int high, final int step,
+                           final int settleSamples, final int measureSamples, final double rateTolerance,
+                           final List<Slo> slos) {
+        this.mode = mode;
+        this.low = low;
+        this.high = high;
+        this.step = step;
+        this.settleSamples = settleSamples;
+        this.measureSamples = measureSamples;
+        this.rateTolerance = rateTolerance;
+        this.slos = slos;
+    }
+
+    /**
+     * Step up from the low rate, one step at a time, until an SLO is violated.
+     *
+     * @param low the first rate to try.
+     * @param step how much to increase the rate with for every step.
+     * @param high the highest rate to try.
+     * @return
+     */
+    public static Builder withSteps(final int low, final int step, final int high) {
+        return new Builder(Mode.STEP, low, step, high);
+    }
+
+    /**
+     * Binary search for the knee between the low and the high rate.
+     *
+     * @param low the lowest rate, which is tried first and must meet the SLOs or else
+     *            there is no point searching.
+     * @param high the highest rate.
+     * @param resolution stop searching once the knee is known within this many CPS.
+     * @return
+     */
+    public static Builder withBinarySearch(final int low, final int high, final int resolution) {
+        return new Builder(Mode.BINARY, low, resolution, high);
+    }
+
+    /**
+     * The SLOs used unless you specify your own: no failed calls, at most 1% retransmissions,
+     * an average response time of at most 200 ms and SIPp actually managing to push at least
+     * 95% of the rate it is asked for.
+     */
+    public static List<Slo> defaultSlos() {
+        final List<Slo> slos = new ArrayList<>();
+        slos.add(Slo.atMost(StatsMetric.FAILED_CALL_P, 0));
+        slos.add(Slo.ratioAtMost(StatsMetric.RETRANSMISSIONS_P, StatsMetric.OUTGOING_CALL_P, 0.01));
+        slos.add(Slo.atMost(StatsMetric.RESPONSE_TIME1_P, 200));
+        slos.add(Slo.rateAchieved(0.95));
+        return slos;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public List<Slo> getSlos() {
+        return slos;
+    }
+
+    /**
+     * Run the search against the given SIPp instance.
+     *
+     * Cancelling the returned future will stop the search (but leave the instance running).
+     *
+     * @param sipp the instance, which must be running.
+     * @return a future that will complete with the result once the knee has been found.
+     */
+    public CompletableFuture<Result> run(final SIPp sipp) {
+        final Run run = new Run(sipp);
+        run.tryRate(low);
+        sipp.addStatsListener(run);
+        run.future.whenComplete((result, t) -> sipp.removeStatsListener(run));
+        return run.future;
+    }
+
+    /**
+     * The state of a running search. Only ever touched by the thread processing the stats,
+     * apart from the very first rate change, which happens before the listener is registered.
+     */
+    private class Run implements StatsListener {
+
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        private final SIPp sipp;
+        private final List<Step> steps = new ArrayList<>();
+
+        private int rate;
+
+        /**
+         * The number of samples seen at the current rate, after SIPp picked it up.
+         */
+        private int samples;
+
+        /**
+         * The number of samples seen since we changed the rate, whether SIPp has picked
+         * it up or not.
+         */
+        private int total;
+
+        private final double[] sums = new double[METRICS.length];
+        private final double[] maxs = new double[METRICS.length];
+
+        /**
+         * The response times of the samples measured so far at the current rate, which are
+         * built up from the running totals SIPp reports.
+         */
+        private Histogram responseTimes;
+        private Histogram lastResponseTimeTotals;
+
+        /**
+         * The highest rate known to meet the SLOs and the lowest rate known not to.
+         */
+        private int passed = -1;
+        private int failed = Integer.MAX_VALUE;
+
+        private Run(final SIPp sipp) {
+            this.sipp = sipp;
+        }
+
+        private void tryRate(final int rate) {
+            logger.info("Capacity search of {}: trying {} CPS", sipp.getFriendlyName(), rate);
+            this.rate = rate;
+            samples = 0;
+            total = 0;
+            for (int i = 0; i < METRICS.length; ++i) {
+                sums[i] = 0;
+                maxs[i] = 0;
+            }
+            responseTimes = null;
+
+            sipp.setRate(rate).whenComplete((s, t) -> {
+                if (t != null) {
+                    future.completeExceptionally(t);
+                }
+            });
+        }
+
+        @Override
+        public void onStats(final SIPp sipp, final StatsObject stats) {
+            if (future.isDone()) {
+                return;
+            }
+
+            final Histogram totals = stats.getResponseTimeHistogram1();
+            final Histogram interval = Histogram.interval(lastResponseTimeTotals, totals);
+            lastResponseTimeTotals = totals;
+
+            ++total;
+            if (stats.getTargetRate() != rate) {
+                if (total > (settleSamples + measureSamples) * 2) {
+                    future.completeExceptionally(new IllegalStateException("SIPp never picked up the rate "
+                            + rate + ", it is still at " + stats.getTargetRate()));
+                }
+                return;
+            }
+
+            // give it a chance to settle, which also means that the call rate has to have
+            // caught up with the target (or we give up on that after a while and let the
+            // SLOs decide)
+            if (samples < settleSamples) {
+                final boolean caughtUp = Math.abs(stats.getDouble(StatsMetric.CALL_RATE_P) - rate) <= rate * rateTolerance;
+                if (caughtUp || total > settleSamples * 3) {
+                    ++samples;
+                }
+                return;
+            }
+
+            for (int i = 0; i < METRICS.length; ++i) {
+                final double value = Math.max(0, stats.getDouble(METRICS[i]));
+                sums[i] += value;
+                maxs[i] = Math.max(maxs[i], value);
+            }
+
+            if (responseTimes == null) {
+                responseTimes = interval.emptyCopy();
+            }
+            responseTimes.add(interval);
+
+            if (++samples == settleSamples + measureSamples) {
+                evaluate();
+            }
+        }
+
+        private void evaluate() {
+            final Step step = new Step(rate, measureSamples, sums, maxs, responseTimes);
+            final List<String> violations = slos.stream()
+                    .filter(slo -> !slo.isMet(step))
+                    .map(Slo::toString)
+                    .collect(Collectors.toList());
+            step.violations = Collections.unmodifiableList(violations);
+            steps.add(step);
+
+            if (violations.isEmpty()) {
+                passed = Math.max(passed, rate);
+            } else {
+                failed = Math.min(failed, rate);
+                logger.info("Capacity search of {}: {} CPS violates {}", sipp.getFriendlyName(), rate, violations);
+            }
+
+            final int next = next();
+            if (next == -1) {
+                future.complete(new Result(mode, passed, failed == Integer.MAX_VALUE ? -1 : failed, steps));
+            } else {
+                tryRate(next);
+            }
+        }
+
+        /**
+         * @return the next rate to try or -1 if we are done.
+         */
+        private int next() {
+            if (passed == -1) {
+                // not even the lowest rate made it
+                return -1;
+            }
+
+            if (mode == Mode.STEP) {
+                return failed == Integer.MAX_VALUE && rate + step <= high ? rate + step : -1;
+            }
+
+            final int ceiling = failed == Integer.MAX_VALUE ? high + 1 : failed;
+            if (ceiling - passed <= step) {
+                return -1;
+            }
+
+            // the high rate is tried before anything in between, if it makes it we're done
+            return failed == Integer.MAX_VALUE && passed < high && rate == low ? high : (passed + ceiling) >>> 1;
+        }
+    }
+
+    /**
+     * The outcome of a single rate tried during the search.
+     */
+    public static final class Step implements Slo.Window {
+
+        private final int rate;
+        private final int samples;
+        private final double[] sums;
+        private final double[] maxs;
+        private final Histogram responseTimes;
+        private List<String> violations;
+
+        private Step(final int rate, final int samples, final double[] sums, final double[] maxs,
+                     final Histogram responseTimes) {
+            this.rate = rate;
+            this.samples = samples;
+            this.sums = sums.clone();
+            this.maxs = maxs.clone();
+            this.responseTimes = responseTimes;
+        }
+
+        private static int indexOf(final StatsMetric metric) {
+            for (int i = 0; i < METRICS.length; ++i) {
+                if (METRICS[i] == metric) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("The metric " + metric + " is not tracked by the capacity search");
+        }
+
+        @JsonProperty
+        @Override
+        public int getRate() {
+            return rate;
+        }
+
+        @JsonProperty
+        @Override
+        public int getSamples() {
+            return samples;
+        }
+
+        @Override
+        public double sum(final StatsMetric metric) {
+            return sums[indexOf(metric)];
+        }
+
+        @Override
+        public double average(final StatsMetric metric) {
+            return samples == 0 ? 0 : sum(metric) / samples;
+        }
+
+        @Override
+        public double max(final StatsMetric metric) {
+            return maxs[indexOf(metric)];
+        }
+
+        @JsonIgnore
+        @Override
+        public Histogram getResponseTimes() {
+            return responseTimes;
+        }
+
+        @JsonProperty
+        public Map<String, Double> getResponseTimePercentiles() {
+            return responseTimes.getPercentiles();
+        }
+
+        @JsonProperty
+        public double getCallRate() {
+            return average(StatsMetric.CALL_RATE_P);
+        }
+
+        @JsonProperty
+        public double getFailedCalls() {
+            return sum(StatsMetric.FAILED_CALL_P);
+        }
+
+        @JsonProperty
+        public double getRetransmissions() {
+            return sum(StatsMetric.RETRANSMISSIONS_P);
+        }
+
+        /**
+         * The average response time in milliseconds.
+         */
+        @JsonProperty
+        public double getResponseTime() {
+            return average(StatsMetric.RESPONSE_TIME1_P);
+        }
+
+        @JsonProperty
+        public boolean isPassed() {
+            return violations.isEmpty();
+        }
+
+        @JsonProperty
+        public List<String> getViolations() {
+            return violations;
+        }
+    }
+
+    public static final class Result {
+
+        private final Mode mode;
+        private final int maxSustainableRate;
+        private final int firstFailedRate;
+        private final List<Step> steps;
+
+        private Result(final Mode mode, final int maxSustainableRate, final int firstFailedRate, final List<Step> steps) {
+            this.mode = mode;
+            this.maxSustainableRate = maxSustainableRate;
+            this.firstFailedRate = firstFailedRate;
+            this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        }
+
+        @JsonProperty
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * The highest rate that met all the SLOs, i.e., the knee.
+         *
+         * @return the rate or -1 if not even the lowest rate met the SLOs.
+         */
+        @JsonProperty
+        public int getMaxSustainableRate() {
+            return maxSustainableRate;
+        }
+
+        /**
+         * The lowest rate that violated any of the SLOs.
+         *
+         * @return the rate or -1 if every rate tried met the SLOs, in which case the knee
+         * is somewhere above the high rate of the search.
+         */
+        @JsonProperty
+        public int getFirstFailedRate() {
+            return firstFailedRate;
+        }
+
+        /**
+         * Every rate tried, in the order they were tried.
+         */
+        @JsonProperty
+        public List<Step> getSteps() {
+            return steps;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Mode mode;
+        private final int low;
+        private final int step;
+        private final int high;
+        private int settleSamples = 5;
+        private int measureSamples = 10;
+        private double rateTolerance = 0.05;
+        private List<Slo> slos;
+
+        private Builder(final Mode mode, final int low, final int step, final int high) {
+            this.mode = mode;
+            this.low = low;
+            this.step = step;
+            this.high = high;
+        }
+
+        /**
+         * The number of samples to skip after the rate has changed, before we start
+         * measuring. Default is 5.
+         */
+        public Builder withSettleSamples(final int samples) {
+            this.settleSamples = samples;
+            return this;
+        }
+
+        /**
+         * The number of samples to evaluate the SLOs against for every rate. Default is 10.
+         */
+        public Builder withMeasureSamples(final int samples) {
+            this.measureSamples = samples;
+            return this;
+        }
+
+        /**
+         * How close the call rate has to be to the target rate (as a fraction of the target rate)
+         * for us to consider SIPp to have settled at the new rate. Default is 0.05.
+         */
+        public Builder withRateTolerance(final double tolerance) {
+            this.rateTolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Add an SLO. If you don't add any, the {@link #defaultSlos()} are used.
+         */
+        public Builder withSlo(final Slo slo) {
+            if (slo == null) {
+                throw new IllegalArgumentException("The SLO cannot be null");
+            }
+            if (slos == null) {
+                slos = new ArrayList<>();
+            }
+            slos.add(slo);
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException in case the rates or the number of samples don't make sense.
+         */
+        public CapacitySearch build() throws IllegalArgumentException {
+            if (low < 1 || high < low) {
+                throw new IllegalArgumentException("The low rate must be at least 1 and the high rate at least the low rate");
+            }
+            if (step < 1) {
+                throw new IllegalArgumentException(mode == Mode.STEP ? "The step must be at least 1" : "The resolution must be at least 1");
+            }
+            if (settleSamples < 0 || measureSamples < 1) {
+                throw new IllegalArgumentException("You must measure at least one sample and settle for zero or more");
+            }
+            if (rateTolerance < 0) {
+                throw new IllegalArgumentException("The rate tolerance cannot be negative");
+            }
+
+            final List<Slo> slos = this.slos != null ? new ArrayList<>(this.slos) : defaultSlos();
+            return new CapacitySearch(mode, low, high, step, settleSamples, measureSamples, rateTolerance,
+                    Collections.unmodifiableList(slos));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.aboutsip.performance.core.capacity;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+
+/**
+ * A service level objective, i.e., a predicate that must hold for a particular rate to be
+ * considered sustainable. It is evaluated against the stats gathered while running at that
+ * rate once things have settled down (see {@link CapacitySearch}).
+ */
+@FunctionalInterface
+public interface Slo {
+
+    /**
+     * @param window the stats gathered at a particular rate.
+     * @return true if the objective was met.
+     */
+    boolean isMet(Window window);
+
+    /**
+     * The average of the metric over the window must not exceed the threshold.
+     * E.g. the average {@link StatsMetric#RESPONSE_TIME1_P} must be at most 200 ms.
+     */
+    static Slo atMost(final StatsMetric metric, final double threshold) {
+        return new Slo() {
+            @Override
+            public boolean isMet(final Window window) {
+                return window.average(metric) <= threshold;
+            }
+
+            @Override
+            public String toString() {
+                return metric.getLabel() + " <= " + threshold;
+            }
+        };
+    }
+
+    /**
+     * The sum of one metric divided by the sum of another over the window must not exceed the
+     * threshold. E.g. {@link StatsMetric#RETRANSMISSIONS_P} over {@link StatsMetric#OUTGOING_CALL_P}
+     * must be at most 0.01.
+     */
+    static Slo ratioAtMost(final StatsMetric numerator, final StatsMetric denominator, final double threshold) {
+        return new Slo() {
+            @Override
+            public boolean isMet(final Window window) {
+                final double total = window.sum(denominator);
+                return total <= 0 ? window.sum(numerator) <= 0 : window.sum(numerator) / total <= threshold;
+            }
+
+            @Override
+            public String toString() {
+                return numerator.getLabel() + " / " + denominator.getLabel() + " <= " + threshold;
+            }
+        };
+    }
+
+    /**
+     * The given percentile of the response times over the window must not exceed the threshold.
+     * E.g. the 99th percentile must be at most 200 ms.
+     */
+    static Slo percentileAtMost(final double percentile, final double thresholdMillis) {
+        return new Slo() {
+            @Override
+            public boolean isMet(final Window window) {
+                return window.getResponseTimes().getValueAtPercentile(percentile) <= thresholdMillis;
+            }
+
+            @Override
+            public String toString() {
+                return "p" + percentile + " response time <= " + thresholdMillis + " ms";
+            }
+        };
+    }
+
+    /**
+     * SIPp must actually manage to push at least this fraction of the rate it was asked for. If it
+     * can't, either the SUT or SIPp itself is saturated.
+     */
+    static Slo rateAchieved(final double fraction) {
+        return new Slo() {
+            @Override
+            public boolean isMet(final Window window) {
+                return window.average(StatsMetric.CALL_RATE_P) >= window.getRate() * fraction;
+            }
+
+            @Override
+            public String toString() {
+                return StatsMetric.CALL_RATE_P.getLabel() + " >= " + fraction + " * rate";
+            }
+        };
+    }
+
+    /**
+     * The stats gathered while running at a particular rate.
+     */
+    interface Window {
+
+        /**
+         * The rate SIPp was asked to run at.
+         */
+        int getRate();
+
+        /**
+         * The number of samples in this window.
+         */
+        int getSamples();
+
+        double sum(StatsMetric metric);
+
+        double average(StatsMetric metric);
+
+        double max(StatsMetric metric);
+
+        /**
+         * The response times of the calls within the window.
+         */
+        Histogram getResponseTimes();
+    }
+}
@@ -0,0 +1,331 @@
+package com.aboutsip.performance.core.fleet;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsListener;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.StatsObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps running totals of the stats across all the SIPp instances we are managing, as well as
+ * across the instances sharing a tag or a friendly name.
+ *
+ * Every instance contributes its latest stats to every group it belongs to. When new stats
+ * arrive from an instance, only the difference from its previous stats is applied to the
+ * totals of its groups so the cost of a new row is the same whether there are 2 or 200
+ * instances in a group, and reading the totals never has to go through all the instances.
+ *
+ * The counters and rates are summed. The average response time and call length are averaged
+ * across the instances, weighted by the number of successful calls. Things that can't be
+ * merged, such as the standard deviations and the timestamps, are left out. The response times
+ * and call lengths of the instances are merged into one {@link Histogram} each.
+ */
+public final class FleetAggregator implements StatsListener {
+
+    /**
+     * The group every instance belongs to.
+     */
+    public static final String ALL = "all";
+
+    private static final String TAG_PREFIX = "tag:";
+    private static final String NAME_PREFIX = "name:";
+
+    private static final int METRICS = StatsMetric.values().length;
+
+    private final Map<UUID, Contribution> contributions = new ConcurrentHashMap<>();
+    private final Map<String, Group> groups = new ConcurrentHashMap<>();
+
+    public FleetAggregator() {
+        // always there, even before the first instance has been registered
+        group(ALL);
+    }
+
+    public static String tagGroup(final String tag) {
+        return TAG_PREFIX + tag;
+    }
+
+    public static String nameGroup(final String friendlyName) {
+        return NAME_PREFIX + friendlyName;
+    }
+
+    /**
+     * Start aggregating the stats of the given instance, until it is unregistered or
+     * terminates, whichever comes first.
+     *
+     * @param sipp
+     */
+    public void register(final SIPp sipp) {
+        final List<Group> memberOf = new ArrayList<>();
+        memberOf.add(group(ALL));
+        if (sipp.getFriendlyName() != null) {
+            memberOf.add(group(nameGroup(sipp.getFriendlyName())));
+        }
+        for (final String tag : sipp.getTags()) {
+            memberOf.add(group(tagGroup(tag)));
+        }
+
+        final Contribution contribution = new Contribution(memberOf.toArray(new Group[memberOf.size()]));
+        if (contributions.putIfAbsent(sipp.getUUID(), contribution) != null) {
+            return;
+        }
+
+        for (final Group group : contribution.groups) {
+            group.addInstance();
+        }
+        sipp.addStatsListener(this);
+        sipp.onTermination().thenAccept(this::unregister);
+    }
+
+    /**
+     * Stop aggregating the stats of the given instance and take everything it has contributed
+     * out of the totals of its groups.
+     *
+     * @param sipp
+     */
+    public void unregister(final SIPp sipp) {
+        final Contribution contribution = contributions.remove(sipp.getUUID());
+        if (contribution == null) {
+            return;
+        }
+
+        sipp.removeStatsListener(this);
+        contribution.remove();
+    }
+
+    private Group group(final String name) {
+        return groups.computeIfAbsent(name, Group::new);
+    }
+
+    /**
+     * @return the name of every group, e.g. "all", "tag:uac" and "name:Default".
+     */
+    public Set<String> getGroups() {
+        return new TreeSet<>(groups.keySet());
+    }
+
+    /**
+     * Get the current totals of a group.
+     *
+     * @param group the name of the group, see {@link #tagGroup(String)} and {@link #nameGroup(String)}.
+     * @return
+     */
+    public Optional<FleetStats> getStats(final String group) {
+        return Optional.ofNullable(groups.get(group)).map(Group::snapshot);
+    }
+
+    @Override
+    public void onStats(final SIPp sipp, final StatsObject stats) {
+        final Contribution contribution = contributions.get(sipp.getUUID());
+        if (contribution != null) {
+            contribution.update(stats);
+        }
+    }
+
+    /**
+     * How a metric is merged across instances.
+     */
+    private static boolean isSummed(final StatsMetric metric) {
+        return metric.getKind() == StatsMetric.Kind.INTEGER || metric.getKind() == StatsMetric.Kind.DOUBLE;
+    }
+
+    /**
+     * @return the metric the given metric is weighted by when averaged across instances,
+     * or null if it isn't averaged.
+     */
+    private static StatsMetric weightOf(final StatsMetric metric) {
+        switch (metric) {
+            case RESPONSE_TIME1_P:
+            case CALL_LENGTH_P:
+                return StatsMetric.SUCCESSFUL_CALL_P;
+            case RESPONSE_TIME1_C:
+            case CALL_LENGTH_C:
+                return StatsMetric.SUCCESSFUL_CALL_C;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The latest stats of a single instance, as already applied to the totals of its groups.
+     * Updated by the thread processing the stats of that instance, unless it is being removed.
+     */
+    private static final class Contribution {
+
+        private final Group[] groups;
+
+        private final double[] values = new double[METRICS];
+        private final double[] weights = new double[METRICS];
+
+        /**
+         * The running totals of the response time and call length repartitions of the latest row.
+         */
+        private Histogram responseTimeTotals;
+        private Histogram callLengthTotals;
+
+        /**
+         * Everything added to the response times and call lengths of the groups so far, which
+         * is more than the latest totals if the instance has been restarted.
+         */
+        private Histogram responseTimes;
+        private Histogram callLengths;
+
+        private boolean removed;
+
+        private Contribution(final Group[] groups) {
+            this.groups = groups;
+        }
+
+        private synchronized void update(final StatsObject stats) {
+            if (removed) {
+                return;
+            }
+
+            final double[] valueDeltas = new double[METRICS];
+            final double[] weightDeltas = new double[METRICS];
+            for (final StatsMetric metric : StatsMetric.values()) {
+                final int i = metric.ordinal();
+                final StatsMetric weightMetric = weightOf(metric);
+                if (isSummed(metric)) {
+                    final double value = Math.max(0, stats.getDouble(metric));
+                    valueDeltas[i] = value - values[i];
+                    values[i] = value;
+                } else if (weightMetric != null) {
+                    final double weight = Math.max(0, stats.getDouble(weightMetric));
+                    final double value = Math.max(0, stats.getDouble(metric)) * weight;
+                    valueDeltas[i] = value - values[i];
+                    weightDeltas[i] = weight - weights[i];
+                    values[i] = value;
+                    weights[i] = weight;
+                }
+            }
+
+            // the groups keep on counting even if this instance is restarted, so
+            // it is what happened since the previous row that is added to them.
+            final Histogram responseTimes = stats.getResponseTimeHistogram1();
+            final Histogram responseTimeInterval = Histogram.interval(responseTimeTotals, responseTimes);
+            responseTimeTotals = responseTimes;
+
+            final Histogram callLengths = stats.getCallLengthHistogram();
+            final Histogram callLengthInterval = Histogram.interval(callLengthTotals, callLengths);
+            callLengthTotals = callLengths;
+
+            if (this.responseTimes == null) {
+                this.responseTimes = responseTimeInterval.emptyCopy();
+            }
+            this.responseTimes.add(responseTimeInterval);
+
+            if (this.callLengths == null) {
+                this.callLengths = callLengthInterval.emptyCopy();
+            }
+            this.callLengths.add(callLengthInterval);
+
+            for (final Group group : groups) {
+                group.apply(valueDeltas, weightDeltas, responseTimeInterval, callLengthInterval);
+            }
+        }
+
+        private synchronized void remove() {
+            removed = true;
+            for (final Group group : groups) {
+                group.removeInstance(values, weights, responseTimes, callLengths);
+            }
+        }
+    }
+
+    /**
+     * The running totals of a group of instances.
+     */
+    private static final class Group {
+
+        private final String name;
+        private int instances;
+
+        private final double[] values = new double[METRICS];
+        private final double[] weights = new double[METRICS];
+
+        /**
+         * The response times and call lengths of all calls of all instances in the group,
+         * null until the first stats have been received.
+         */
+        private Histogram responseTimes;
+        private Histogram callLengths;
+
+        private Group(final String name) {
+            this.name = name;
+        }
+
+        private synchronized void addInstance() {
+            ++instances;
+        }
+
+        private synchronized void apply(final double[] valueDeltas, final double[] weightDeltas,
+                                        final Histogram responseTimes, final Histogram callLengths) {
+            for (int i = 0; i < METRICS; ++i) {
+                values[i] += valueDeltas[i];
+                weights[i] += weightDeltas[i];
+            }
+
+            if (this.responseTimes == null) {
+                this.responseTimes = responseTimes.emptyCopy();
+            }
+            this.responseTimes.add(responseTimes);
+
+            if (this.callLengths == null) {
+                this.callLengths = callLengths.emptyCopy();
+            }
+            this.callLengths.add(callLengths);
+        }
+
+        /**
+         * @param responseTimes the response times the instance has contributed, or null if it
+         *                      never reported any stats. Same thing for the call lengths.
+         */
+        private synchronized void removeInstance(final double[] values, final double[] weights,
+                                                 final Histogram responseTimes, final Histogram callLengths) {
+            --instances;
+            for (int i = 0; i < METRICS; ++i) {
+                this.values[i] -= values[i];
+                this.weights[i] -= weights[i];
+            }
+
+            if (responseTimes != null) {
+                this.responseTimes.subtract(responseTimes);
+            }
+            if (callLengths != null) {
+                this.callLengths.subtract(callLengths);
+            }
+        }
+
+        private synchronized FleetStats snapshot() {
+            final Map<String, Double> totals = new LinkedHashMap<>();
+            for (final StatsMetric metric : StatsMetric.values()) {
+                final int i = metric.ordinal();
+                if (isSummed(metric)) {
+                    totals.put(metric.getLabel(), values[i]);
+                } else if (weightOf(metric) != null) {
+                    totals.put(metric.getLabel(), weights[i] > 0 ? values[i] / weights[i] : 0);
+                }
+            }
+
+            return new FleetStats(name, instances, totals,
+                    responseTimes != null ? responseTimes.copy() : null,
+                    callLengths != null ? callLengths.copy() : null);
+        }
+
+        @Override
+        public String toString() {
+            return "Group " + name + " " + Arrays.toString(values);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.aboutsip.performance.core.fleet;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.ResponseTime;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the totals of a group of SIPp instances, see {@link FleetAggregator}.
+ */
+public final class FleetStats {
+
+    private final String group;
+    private final int instances;
+    private final Map<String, Double> totals;
+    private final Histogram responseTimes;
+    private final Histogram callLengths;
+
+    FleetStats(final String group, final int instances, final Map<String, Double> totals,
+               final Histogram responseTimes, final Histogram callLengths) {
+        this.group = group;
+        this.instances = instances;
+        this.totals = Collections.unmodifiableMap(totals);
+        this.responseTimes = responseTimes;
+        this.callLengths = callLengths;
+    }
+
+    @JsonProperty
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * The number of instances in the group.
+     */
+    @JsonProperty
+    public int getInstances() {
+        return instances;
+    }
+
+    /**
+     * The totals by the label of the metric, e.g. "CallRate(P)".
+     */
+    @JsonProperty
+    public Map<String, Double> getTotals() {
+        return totals;
+    }
+
+    /**
+     * @return the total or -1 if the metric can't be aggregated across instances.
+     */
+    public double get(final StatsMetric metric) {
+        final Double value = totals.get(metric.getLabel());
+        return value != null ? value : -1;
+    }
+
+    /**
+     * The response times of all calls of all the instances merged together.
+     *
+     * @return the histogram or null if none of the instances have reported any stats yet.
+     */
+    @JsonIgnore
+    public Histogram getResponseTimeHistogram() {
+        return responseTimes;
+    }
+
+    /**
+     * The merged response time repartition, with the buckets as SIPp reports them.
+     */
+    @JsonProperty
+    public List<ResponseTime> getResponseTimeRepartition() {
+        if (responseTimes == null) {
+            return Collections.emptyList();
+        }
+
+        final List<ResponseTime> repartition = new ArrayList<>(responseTimes.getBuckets());
+        for (int i = 0; i < responseTimes.getBuckets(); ++i) {
+            repartition.add(ResponseTime.create(responseTimes.getLowerLimit(i), responseTimes.getUpperLimit(i),
+                    (int) responseTimes.getCount(i)));
+        }
+        return repartition;
+    }
+
+    @JsonProperty
+    public Map<String, Double> getResponseTimePercentiles() {
+        return responseTimes != null ? responseTimes.getPercentiles() : Collections.emptyMap();
+    }
+
+    /**
+     * The call lengths of all calls of all the instances merged together.
+     *
+     * @return the histogram or null if none of the instances have reported any stats yet.
+     */
+    @JsonIgnore
+    public Histogram getCallLengthHistogram() {
+        return callLengths;
+    }
+
+    @JsonProperty
+    public Map<String, Double> getCallLengthPercentiles() {
+        return callLengths != null ? callLengths.getPercentiles() : Collections.emptyMap();
+    }
+}
@@ -0,0 +1,272 @@
+package com.aboutsip.performance.core.histogram;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A fixed size histogram with the same kind of buckets as SIPp uses for its repartitions,
+ * i.e., every bucket is defined by its upper limit (exclusive) and its lower limit is the
+ * upper limit of the previous bucket (or zero for the first one). The last bucket may have
+ * an upper limit of -1, which means infinity.
+ *
+ * Histograms can be merged, both over time (by adding the repartition of every new stats row)
+ * and across SIPp instances (by adding the histograms of several instances together), and no
+ * matter how much is added the memory used stays the same.
+ *
+ * A histogram is not thread safe, if it is shared you will have to synchronize on it.
+ */
+public final class Histogram {
+
+    /**
+     * The percentiles reported by {@link #getPercentiles()}.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * The upper limit of every bucket. Never modified so it is shared between all
+     * histograms with the same layout.
+     */
+    private final int[] limits;
+
+    private final long[] counts;
+
+    private long total;
+
+    private Histogram(final int[] limits) {
+        this.limits = limits;
+        this.counts = new long[limits.length];
+    }
+
+    /**
+     * Create a new, empty, histogram.
+     *
+     * @param upperLimits the upper limit (exclusive) of every bucket, in increasing order. Only the
+     *                    last bucket may have an upper limit of -1, which means infinity.
+     * @return
+     * @throws IllegalArgumentException in case there are no buckets or the limits aren't increasing.
+     */
+    public static Histogram create(final int... upperLimits) throws IllegalArgumentException {
+        if (upperLimits == null || upperLimits.length == 0) {
+            throw new IllegalArgumentException("The histogram must have at least one bucket");
+        }
+
+        int lower = 0;
+        for (int i = 0; i < upperLimits.length; ++i) {
+            final int upper = upperLimits[i];
+            if (upper == -1 && i != upperLimits.length - 1) {
+                throw new IllegalArgumentException("Only the last bucket can be unbounded");
+            }
+            if (upper != -1 && upper <= lower) {
+                throw new IllegalArgumentException("The upper limits must be increasing");
+            }
+            lower = upper;
+        }
+
+        return new Histogram(upperLimits.clone());
+    }
+
+    /**
+     * Create a new, empty, histogram with the same buckets as this one.
+     */
+    public Histogram emptyCopy() {
+        return new Histogram(limits);
+    }
+
+    public Histogram copy() {
+        final Histogram copy = new Histogram(limits);
+        copy.add(this);
+        return copy;
+    }
+
+    public int getBuckets() {
+        return limits.length;
+    }
+
+    /**
+     * @return the lower limit (inclusive) of the given bucket.
+     */
+    public int getLowerLimit(final int bucket) {
+        return bucket == 0 ? 0 : limits[bucket - 1];
+    }
+
+    /**
+     * @return the upper limit (exclusive) of the given bucket or -1 if it is unbounded.
+     */
+    public int getUpperLimit(final int bucket) {
+        return limits[bucket];
+    }
+
+    public long getCount(final int bucket) {
+        return counts[bucket];
+    }
+
+    public long getTotalCount() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    /**
+     * Add to the count of a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @param count
+     */
+    public void add(final int bucket, final long count) {
+        counts[bucket] += count;
+        total += count;
+    }
+
+    /**
+     * Add the value to the bucket it belongs to.
+     *
+     * @param value
+     */
+    public void record(final long value) {
+        add(bucketOf(value), 1);
+    }
+
+    /**
+     * Add all the counts of another histogram to this one. If the two do not have the same
+     * buckets, every bucket of the other histogram is added to the bucket of this histogram
+     * containing its lower limit.
+     *
+     * @param other
+     */
+    public void add(final Histogram other) {
+        add(other, 1);
+    }
+
+    /**
+     * Subtract all the counts of another histogram from this one, e.g. to turn two cumulative
+     * histograms into the histogram of what happened in between.
+     *
+     * @param other
+     */
+    public void subtract(final Histogram other) {
+        add(other, -1);
+    }
+
+    private void add(final Histogram other, final int sign) {
+        if (hasSameLayout(other)) {
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += sign * other.counts[i];
+            }
+        } else {
+            for (int i = 0; i < other.counts.length; ++i) {
+                counts[bucketOf(other.getLowerLimit(i))] += sign * other.counts[i];
+            }
+        }
+        total += sign * other.total;
+    }
+
+    public boolean hasSameLayout(final Histogram other) {
+        return limits == other.limits || Arrays.equals(limits, other.limits);
+    }
+
+    private int bucketOf(final long value) {
+        for (int i = 0; i < limits.length; ++i) {
+            if (limits[i] == -1 || value < limits[i]) {
+                return i;
+            }
+        }
+        // beyond the last bucket, which isn't unbounded. Best we can do.
+        return limits.length - 1;
+    }
+
+    /**
+     * SIPp reports its repartitions as running totals. Given two such histograms, get the
+     * histogram of what happened in between.
+     *
+     * @param previous the previous running totals, or null if there are none.
+     * @param current the current running totals.
+     * @return a new histogram with the counts of the interval. If any count went down the totals
+     * must have been reset (e.g. SIPp was restarted) and then all of the current counts are new.
+     */
+    public static Histogram interval(final Histogram previous, final Histogram current) {
+        final Histogram interval = current.copy();
+        if (previous == null || !previous.hasSameLayout(current)) {
+            return interval;
+        }
+
+        for (int i = 0; i < current.counts.length; ++i) {
+            if (current.counts[i] < previous.counts[i]) {
+                return interval;
+            }
+        }
+
+        interval.subtract(previous);
+        return interval;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    /**
+     * Get the value at the given percentile, e.g. 99.9, interpolated within the bucket it falls
+     * into. Since we only know how many values fell into a bucket and not where within it, the
+     * values are assumed to be evenly spread out. If the percentile falls into the unbounded bucket
+     * there is nothing to interpolate against and the lower limit of that bucket is returned.
+     *
+     * @param percentile a percentile greater than 0 and less than or equal to 100.
+     * @return the value or -1 if the histogram is empty.
+     * @throws IllegalArgumentException in case the percentile is out of range.
+     */
+    public double getValueAtPercentile(final double percentile) throws IllegalArgumentException {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be greater than 0 and at most 100");
+        }
+
+        if (total <= 0) {
+            return -1;
+        }
+
+        final double rank = percentile / 100 * total;
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            final long count = counts[i];
+            if (count > 0 && seen + count >= rank) {
+                final int lower = getLowerLimit(i);
+                final int upper = limits[i];
+                if (upper == -1) {
+                    return lower;
+                }
+                return lower + (rank - seen) / count * (upper - lower);
+            }
+            seen += count;
+        }
+
+        return getLowerLimit(counts.length - 1);
+    }
+
+    /**
+     * The 50th, 90th, 99th and 99.9th percentiles, keyed as "p50", "p90", "p99" and "p99.9".
+     *
+     * @return the percentiles, which are all -1 if the histogram is empty.
+     */
+    public Map<String, Double> getPercentiles() {
+        final Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (final double percentile : PERCENTILES) {
+            final String key = percentile == Math.rint(percentile)
+                    ? Long.toString((long) percentile) : Double.toString(percentile);
+            percentiles.put("p" + key, getValueAtPercentile(percentile));
+        }
+        return percentiles;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Histogram");
+        for (int i = 0; i < counts.length; ++i) {
+            sb.append("\n").append(getLowerLimit(i)).append(" <= n < ")
+                    .append(limits[i] == -1 ? "inf" : Integer.toString(limits[i]))
+                    .append(" : ").append(counts[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package com.aboutsip.performance.core.histogram;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The histogram of what happened between every two stats rows, e.g. the response times of the
+ * calls that completed in that second, kept in a {@link TimeSeries} with one column per bucket.
+ * Since each sample is an interval, the histogram of any range of time is simply the sum of the
+ * samples within it, which is what {@link #getRange(long, long)} gives you.
+ *
+ * The buckets are those of the first histogram recorded. Should a restarted SIPp process report
+ * other buckets, its histograms are mapped onto the original ones, see {@link Histogram#add(Histogram)}.
+ *
+ * Only ever appended to by the thread processing the stats but it is safe to read from any thread.
+ */
+public final class HistogramHistory {
+
+    private final int capacity;
+    private final boolean offHeap;
+
+    /**
+     * An empty histogram with the buckets of the series, both created when the first
+     * histogram is recorded.
+     */
+    private volatile Histogram layout;
+    private volatile TimeSeries series;
+
+    /**
+     * Scratch space for mapping histograms with other buckets onto ours.
+     */
+    private Histogram mapped;
+
+    public HistogramHistory(final int capacity, final boolean offHeap) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least one");
+        }
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Record the histogram of an interval.
+     *
+     * @param timestamp the end of the interval. If earlier than the previous one, the histogram
+     *                  is recorded at the time of the previous one.
+     * @param interval
+     */
+    public void append(final long timestamp, final Histogram interval) {
+        if (series == null) {
+            final Histogram empty = interval.emptyCopy();
+            final List<String> columns = new ArrayList<>(empty.getBuckets());
+            for (int i = 0; i < empty.getBuckets(); ++i) {
+                final int upper = empty.getUpperLimit(i);
+                columns.add(empty.getLowerLimit(i) + "-" + (upper == -1 ? "inf" : Integer.toString(upper)));
+            }
+            mapped = empty.emptyCopy();
+            layout = empty;
+            series = TimeSeries.create(columns, capacity, offHeap);
+        }
+
+        final Histogram values;
+        if (layout.hasSameLayout(interval)) {
+            values = interval;
+        } else {
+            mapped.reset();
+            mapped.add(interval);
+            values = mapped;
+        }
+
+        final long previous = series.isEmpty() ? Long.MIN_VALUE : series.getTimestamp(series.head() - 1);
+        series.append(Math.max(timestamp, previous), bucket -> values.getCount(bucket));
+    }
+
+    /**
+     * @return the underlying time series or null if nothing has been recorded yet.
+     */
+    public TimeSeries getTimeSeries() {
+        return series;
+    }
+
+    /**
+     * Add up all the intervals within the given range.
+     *
+     * @param from the start of the range (inclusive), in nanoseconds since the epoch.
+     * @param to the end of the range (exclusive).
+     * @return a new histogram or null if nothing has been recorded yet.
+     */
+    public Histogram getRange(final long from, final long to) {
+        final TimeSeries series = this.series;
+        if (series == null) {
+            return null;
+        }
+
+        final Histogram range = layout.emptyCopy();
+        series.forEach(from, to, (s, sequence) -> {
+            for (int bucket = 0; bucket < range.getBuckets(); ++bucket) {
+                final long count = (long) s.getValue(sequence, bucket);
+                if (count != 0) {
+                    range.add(bucket, count);
+                }
+            }
+        });
+        return range;
+    }
+}
@@ -0,0 +1,61 @@
+package com.aboutsip.performance.core.histogram;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Turns the running totals SIPp reports for a repartition into what happened between every
+ * two rows, see {@link Histogram#interval(Histogram, Histogram)}, and keeps on adding those
+ * intervals up. Since it is the intervals that are added up, the recorder keeps on counting
+ * across restarts of SIPp, when the running totals start over from zero.
+ *
+ * Only ever recorded into by the thread processing the stats but it is safe to read from
+ * any thread.
+ */
+public final class HistogramRecorder {
+
+    private Histogram lastTotals;
+    private Histogram latest;
+    private Histogram total;
+
+    /**
+     * Record the running totals of a new row.
+     *
+     * @param totals
+     */
+    public void record(final Histogram totals) {
+        final Histogram interval = Histogram.interval(lastTotals, totals);
+        lastTotals = totals;
+
+        synchronized (this) {
+            latest = interval;
+            if (total == null) {
+                total = interval.emptyCopy();
+            }
+            total.add(interval);
+        }
+    }
+
+    /**
+     * @return a copy of everything recorded so far or null if nothing has been recorded yet.
+     */
+    public synchronized Histogram getTotal() {
+        return total != null ? total.copy() : null;
+    }
+
+    /**
+     * @return a copy of what happened between the two latest rows or null if nothing has been
+     * recorded yet.
+     */
+    public synchronized Histogram getLatest() {
+        return latest != null ? latest.copy() : null;
+    }
+
+    /**
+     * @return the percentiles of everything recorded so far, see {@link Histogram#getPercentiles()},
+     * or an empty map if nothing has been recorded yet.
+     */
+    public synchronized Map<String, Double> getPercentiles() {
+        return total != null ? total.getPercentiles() : Collections.emptyMap();
+    }
+}
@@ -0,0 +1,296 @@
+package com.aboutsip.performance.core.monitor;
+
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * What a successful call costs a process in CPU time, e.g. how many CPU microseconds the
+ * system under test spends per call and, turned around, how many calls per second it would
+ * manage with one core all to itself. Unlike the raw throughput, these numbers can be compared
+ * across builds of the system under test even if they weren't pushed equally hard.
+ *
+ * The cost is derived by joining two time series on their timestamps: the CPU samples of the
+ * process (see {@link MonitorType#CPU}) and the stats histories of the SIPp instances making
+ * the calls. For every interval between two CPU samples we look up how many calls were
+ * completed, across all the SIPp instances, by interpolating their cumulative number of
+ * successful calls at the two points in time. The SIPp instances report on their own schedule
+ * so we only cost an interval once we have given their stats a chance to catch up with it.
+ *
+ * The derived samples go into a {@link TimeSeries} of their own, with the columns in
+ * {@link #COLUMNS}, one sample per CPU sample.
+ */
+public final class CallCost {
+
+    public static final List<String> COLUMNS = Arrays.asList("calls", "cpu.us", "cpu.us.per.call",
+            "calls.per.core");
+
+    private static final int CALLS = 0;
+    private static final int CPU_MICROS = 1;
+    private static final int COST = 2;
+    private static final int CALLS_PER_CORE = 3;
+
+    /**
+     * How far behind the stats of the SIPp instances may be compared to the CPU samples.
+     */
+    static final long STATS_DELAY_NANOS = 2_000_000_000L;
+
+    private final String name;
+    private final MonitoredProcess process;
+    private final Supplier<Collection<StatsHistory>> callers;
+    private final TimeSeries series;
+
+    /**
+     * The next CPU sample to cost. Only ever touched while holding the lock of the ProcessMonitor.
+     */
+    private long next;
+
+    private final double[] values = new double[COLUMNS.size()];
+
+    /**
+     * @param name
+     * @param process the process, which must be monitored for {@link MonitorType#CPU}.
+     * @param callers supplies the histories of the SIPp instances making the calls. Asked every
+     *                time so that the set of instances may change over time.
+     * @param capacity the number of samples to keep.
+     * @param offHeap
+     */
+    CallCost(final String name, final MonitoredProcess process, final Supplier<Collection<StatsHistory>> callers,
+             final int capacity, final boolean offHeap) {
+        this.name = name;
+        this.process = process;
+        this.callers = callers;
+        this.series = TimeSeries.create(COLUMNS, capacity, offHeap);
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name of the process whose CPU we are looking at.
+     */
+    @JsonProperty
+    public String getProcess() {
+        return process.getName();
+    }
+
+    public TimeSeries getTimeSeries() {
+        return series;
+    }
+
+    /**
+     * @return the cost over the latest CPU sample interval, or null if we don't have one yet.
+     */
+    @JsonProperty
+    public Summary getLatest() {
+        if (series.isEmpty()) {
+            return null;
+        }
+        final long last = series.head() - 1;
+        return summarize(series.getTimestamp(last), series.getTimestamp(last) + 1);
+    }
+
+    /**
+     * @return the cost over all the samples we still have.
+     */
+    @JsonProperty
+    public Summary getTotal() {
+        return summarize(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * The cost over a range of time, which is the total CPU time spent over the total number
+     * of calls (rather than the average of the cost of every sample, which would give a quiet
+     * second as much weight as a busy one).
+     *
+     * @param from the start of the range, in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range (exclusive).
+     * @return
+     */
+    public Summary summarize(final long from, final long to) {
+        final double[] totals = new double[2];
+        final long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+        final int samples = series.forEach(from, to, (s, sequence) -> {
+            totals[0] += s.getValue(sequence, CALLS);
+            totals[1] += s.getValue(sequence, CPU_MICROS);
+            range[0] = Math.min(range[0], s.getTimestamp(sequence));
+            range[1] = Math.max(range[1], s.getTimestamp(sequence));
+        });
+        return new Summary(samples, samples > 0 ? range[0] : -1, samples > 0 ? range[1] : -1, totals[0], totals[1]);
+    }
+
+    /**
+     * Cost every CPU sample whose interval the stats should have caught up with by now.
+     *
+     * @param now the current time in nanoseconds since the epoch.
+     */
+    void update(final long now) {
+        final TimeSeries cpu = process.getTimeSeries(MonitorType.CPU);
+        if (cpu == null) {
+            return;
+        }
+
+        final int column = cpu.columnIndex(MonitorType.CPU.getColumns().get(0));
+        next = Math.max(next, cpu.tail() + 1);
+        while (next < cpu.head() && cpu.getTimestamp(next) <= now - STATS_DELAY_NANOS) {
+            final long sequence = next++;
+            final long from = cpu.getTimestamp(sequence - 1);
+            final long to = cpu.getTimestamp(sequence);
+            final double cpuMicros = cpu.getValue(sequence, column) - cpu.getValue(sequence - 1, column);
+
+            // NaN if either sample is missing the CPU time and negative if the process was replaced
+            // in between, in either case we have no idea what the interval cost.
+            if (!(cpuMicros >= 0) || to <= from) {
+                continue;
+            }
+
+            final double calls = countCalls(from, to);
+            if (Double.isNaN(calls)) {
+                continue;
+            }
+
+            values[CALLS] = calls;
+            values[CPU_MICROS] = cpuMicros;
+            values[COST] = calls > 0 ? cpuMicros / calls : Double.NaN;
+            values[CALLS_PER_CORE] = cpuMicros > 0 ? calls / (cpuMicros / 1e6) : Double.NaN;
+            series.append(to, i -> values[i]);
+        }
+    }
+
+    /**
+     * @return the number of successful calls between the two points in time, across all the
+     * callers, or NaN if we don't know.
+     */
+    private double countCalls(final long from, final long to) {
+        double calls = 0;
+        for (final StatsHistory history : callers.get()) {
+            final double delta = cumulativeAt(history, to) - cumulativeAt(history, from);
+            if (Double.isNaN(delta)) {
+                return Double.NaN;
+            }
+            calls += Math.max(0, delta);
+        }
+        return calls;
+    }
+
+    /**
+     * The number of successful calls up until the given point in time, interpolated between the
+     * two stats samples around it.
+     *
+     * @return the number of calls or NaN if we no longer have the samples around that time.
+     */
+    static double cumulativeAt(final StatsHistory history, final long timestamp) {
+        final TimeSeries stats = history.getTimeSeries();
+        if (stats.isEmpty()) {
+            return 0;
+        }
+
+        final long sequence = stats.ceiling(timestamp);
+        if (sequence == stats.head()) {
+            // nothing has happened since the latest sample (or at least nothing we know of yet)
+            return history.getValue(sequence - 1, StatsMetric.SUCCESSFUL_CALL_C);
+        }
+
+        final long after = stats.getTimestamp(sequence);
+        final double value = history.getValue(sequence, StatsMetric.SUCCESSFUL_CALL_C);
+        if (sequence == stats.tail()) {
+            // before the very first sample there were no calls but if the oldest ones have been
+            // overwritten we simply don't know.
+            return after == timestamp ? value : sequence == 0 ? 0 : Double.NaN;
+        }
+
+        final long before = stats.getTimestamp(sequence - 1);
+        final double previous = history.getValue(sequence - 1, StatsMetric.SUCCESSFUL_CALL_C);
+        if (after == before) {
+            return value;
+        }
+        return previous + (value - previous) * (timestamp - before) / (double) (after - before);
+    }
+
+    /**
+     * The cost over a range of time.
+     */
+    public static final class Summary {
+        private final int samples;
+        private final long from;
+        private final long to;
+        private final double calls;
+        private final double cpuMicros;
+
+        Summary(final int samples, final long from, final long to, final double calls, final double cpuMicros) {
+            this.samples = samples;
+            this.from = from;
+            this.to = to;
+            this.calls = calls;
+            this.cpuMicros = cpuMicros;
+        }
+
+        @JsonProperty
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * The time of the first sample in the range, in nanoseconds since the epoch, or -1 if there are none.
+         */
+        @JsonProperty
+        public long getFrom() {
+            return from;
+        }
+
+        /**
+         * The time of the last sample in the range, in nanoseconds since the epoch, or -1 if there are none.
+         */
+        @JsonProperty
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * The number of successful calls.
+         */
+        @JsonProperty
+        public double getCalls() {
+            return calls;
+        }
+
+        /**
+         * The CPU time spent, in microseconds.
+         */
+        @JsonProperty
+        public double getCpuMicros() {
+            return cpuMicros;
+        }
+
+        /**
+         * @return the CPU time per successful call in microseconds or NaN if there were no calls.
+         */
+        @JsonProperty
+        public double getCpuMicrosPerCall() {
+            return calls > 0 ? cpuMicros / calls : Double.NaN;
+        }
+
+        /**
+         * @return the successful calls per second of CPU time, i.e., the rate one core would
+         * manage, or NaN if no CPU time was spent.
+         */
+        @JsonProperty
+        public double getCallsPerCore() {
+            return cpuMicros > 0 ? calls / (cpuMicros / 1e6) : Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f calls, %.0f CPU us, %.1f us/call, %.1f calls/core", calls, cpuMicros,
+                    getCpuMicrosPerCall(), getCallsPerCore());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.aboutsip.performance.core.monitor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What we can keep an eye on for a process and the columns every type of monitor
+ * records in its {@link com.aboutsip.performance.core.timeseries.TimeSeries}.
+ *
+ * The rates are per second over the latest sample interval and are NaN for the very
+ * first sample of a process since there is nothing to compare it with.
+ */
+public enum MonitorType {
+
+    /**
+     * From /proc/[pid]/stat: the total CPU time the process has used, user and system
+     * time included, the fraction of a core it used over the sample interval and the
+     * number of threads it is running.
+     */
+    CPU("cpu.time.us", "cpu.usage", "threads"),
+
+    /**
+     * From /proc/[pid]/io: the bytes the process has read from and written to storage
+     * and the rate at which it does so, as well as the rate of read and write system calls.
+     * Note that you can only read the io file of a process run by the same user as us.
+     */
+    IOSTAT("io.read.bytes", "io.write.bytes", "io.read.rate", "io.write.rate", "io.syscalls.rate"),
+
+    /**
+     * From /proc/[pid]/status: the memory of the process and the rate at which it is context
+     * switched. We can't look inside the process (nor fork off a jstat for every sample)
+     * so this is what we have to go on for the memory management of any process, JVM or not.
+     * Steadily growing memory and a lot of involuntary context switches is what a process
+     * spending its time collecting garbage looks like from the outside.
+     */
+    GC("mem.rss.bytes", "mem.swap.bytes", "ctxt.voluntary.rate", "ctxt.nonvoluntary.rate");
+
+    private final List<String> columns;
+
+    MonitorType(final String... columns) {
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the name used in the scenario actions, e.g. "cpu".
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * @param name e.g. "cpu", "iostat" or "gc".
+     * @return
+     * @throws IllegalArgumentException in case there is no such type.
+     */
+    public static MonitorType of(final String name) throws IllegalArgumentException {
+        for (final MonitorType type : values()) {
+            if (type.getName().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type of monitor \"" + name + "\"");
+    }
+}
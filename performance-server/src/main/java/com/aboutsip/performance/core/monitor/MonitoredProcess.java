@@ -0,0 +1,253 @@
+package com.aboutsip.performance.core.monitor;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * A process we are keeping an eye on, with one {@link TimeSeries} per {@link MonitorType}.
+ *
+ * The process is identified by a pid supplier rather than a pid so that we can follow a SIPp
+ * instance across restarts of its process. When the pid changes we simply start over with the
+ * new process (so the rates are NaN for its first sample) and keep on recording into the same
+ * series. If the process goes away we stop sampling it until the supplier comes up with
+ * another pid.
+ */
+public final class MonitoredProcess {
+
+    private final String name;
+    private final IntSupplier pid;
+    private final int capacity;
+    private final boolean offHeap;
+
+    /**
+     * Copied on write since it is read by the sampling thread and only ever
+     * modified when someone asks us to monitor more things.
+     */
+    private volatile Map<MonitorType, Series> series = new EnumMap<>(MonitorType.class);
+
+    // Everything below is only ever touched while holding the lock of the ProcessMonitor.
+
+    private int currentPid = -1;
+    private int deadPid = -1;
+    private ProcFile stat;
+    private ProcFile io;
+    private ProcFile status;
+
+    /**
+     * The cumulative counters of the previous sample of the current process, or -1.
+     */
+    private long previousSample = -1;
+    private long previousCpuTicks = -1;
+    private long previousReadBytes = -1;
+    private long previousWriteBytes = -1;
+    private long previousSyscalls = -1;
+    private long previousVoluntary = -1;
+    private long previousNonVoluntary = -1;
+
+    MonitoredProcess(final String name, final IntSupplier pid, final int capacity, final boolean offHeap) {
+        this.name = name;
+        this.pid = pid;
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the pid of the process or -1 if there currently is no process.
+     */
+    @JsonProperty
+    public int getPid() {
+        final int pid = this.pid.getAsInt();
+        return pid > 0 ? pid : -1;
+    }
+
+    @JsonProperty
+    public List<MonitorType> getTypes() {
+        return new ArrayList<>(series.keySet());
+    }
+
+    /**
+     * @param type
+     * @return the samples of the given type or null if we are not monitoring that.
+     */
+    public TimeSeries getTimeSeries(final MonitorType type) {
+        final Series s = series.get(type);
+        return s != null ? s.series : null;
+    }
+
+    /**
+     * Start monitoring more things. The ones we are already monitoring are left as they are.
+     */
+    synchronized void add(final Collection<MonitorType> types) {
+        final Map<MonitorType, Series> copy = new EnumMap<>(MonitorType.class);
+        copy.putAll(series);
+        types.forEach(type -> copy.computeIfAbsent(type, t -> new Series(t, capacity, offHeap)));
+        series = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Take a sample.
+     *
+     * @param timestamp the time of the sample in nanoseconds since the epoch.
+     * @param now the time of the sample according to {@link System#nanoTime()}, which is what
+     *            the rates are calculated with.
+     */
+    void sample(final long timestamp, final long now) {
+        final int pid = this.pid.getAsInt();
+        if (pid <= 0 || pid == deadPid) {
+            return;
+        }
+
+        if (pid != currentPid) {
+            close();
+            currentPid = pid;
+            stat = ProcFile.of(pid, "stat");
+        }
+
+        // the stat file can always be read, as long as the process is around
+        if (!stat.read()) {
+            close();
+            deadPid = pid;
+            return;
+        }
+
+        final double seconds = previousSample != -1 && now > previousSample ? (now - previousSample) / 1e9 : Double.NaN;
+        for (final Series s : series.values()) {
+            switch (s.type) {
+                case CPU:
+                    sampleCpu(s.values, seconds);
+                    break;
+                case IOSTAT:
+                    sampleIo(s.values, seconds);
+                    break;
+                case GC:
+                    sampleStatus(s.values, seconds);
+                    break;
+                default:
+                    break;
+            }
+            s.append(timestamp);
+        }
+        previousSample = now;
+    }
+
+    private void sampleCpu(final double[] values, final double seconds) {
+        final long ticks = stat.getCpuTicks();
+        values[0] = ticks == -1 ? Double.NaN : ticks * 1e6 / ProcFile.CLOCK_TICKS_PER_SECOND;
+        values[1] = rate(ticks, previousCpuTicks, seconds) / ProcFile.CLOCK_TICKS_PER_SECOND;
+        values[2] = orNaN(stat.getField(ProcFile.STAT_NUM_THREADS));
+        previousCpuTicks = ticks;
+    }
+
+    private void sampleIo(final double[] values, final double seconds) {
+        if (io == null) {
+            io = ProcFile.of(currentPid, "io");
+        }
+
+        final boolean read = io.read();
+        final long readBytes = read ? io.getValue("read_bytes") : -1;
+        final long writeBytes = read ? io.getValue("write_bytes") : -1;
+        final long syscalls = read ? sum(io.getValue("syscr"), io.getValue("syscw")) : -1;
+        values[0] = orNaN(readBytes);
+        values[1] = orNaN(writeBytes);
+        values[2] = rate(readBytes, previousReadBytes, seconds);
+        values[3] = rate(writeBytes, previousWriteBytes, seconds);
+        values[4] = rate(syscalls, previousSyscalls, seconds);
+        previousReadBytes = readBytes;
+        previousWriteBytes = writeBytes;
+        previousSyscalls = syscalls;
+    }
+
+    private void sampleStatus(final double[] values, final double seconds) {
+        if (status == null) {
+            status = ProcFile.of(currentPid, "status");
+        }
+
+        final boolean read = status.read();
+        final long rss = read ? status.getValue("VmRSS") : -1;
+        final long swap = read ? status.getValue("VmSwap") : -1;
+        final long voluntary = read ? status.getValue("voluntary_ctxt_switches") : -1;
+        final long nonVoluntary = read ? status.getValue("nonvoluntary_ctxt_switches") : -1;
+        values[0] = rss == -1 ? Double.NaN : rss * 1024d;
+        values[1] = swap == -1 ? Double.NaN : swap * 1024d;
+        values[2] = rate(voluntary, previousVoluntary, seconds);
+        values[3] = rate(nonVoluntary, previousNonVoluntary, seconds);
+        previousVoluntary = voluntary;
+        previousNonVoluntary = nonVoluntary;
+    }
+
+    private static double rate(final long current, final long previous, final double seconds) {
+        if (current == -1 || previous == -1 || Double.isNaN(seconds)) {
+            return Double.NaN;
+        }
+        return (current - previous) / seconds;
+    }
+
+    private static double orNaN(final long value) {
+        return value == -1 ? Double.NaN : value;
+    }
+
+    private static long sum(final long a, final long b) {
+        return a == -1 || b == -1 ? -1 : a + b;
+    }
+
+    /**
+     * Let go of the current process.
+     */
+    void close() {
+        for (final ProcFile file : new ProcFile[]{stat, io, status}) {
+            if (file != null) {
+                file.close();
+            }
+        }
+        stat = null;
+        io = null;
+        status = null;
+        currentPid = -1;
+        previousSample = -1;
+        previousCpuTicks = -1;
+        previousReadBytes = -1;
+        previousWriteBytes = -1;
+        previousSyscalls = -1;
+        previousVoluntary = -1;
+        previousNonVoluntary = -1;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + series.keySet();
+    }
+
+    private static final class Series {
+        private final MonitorType type;
+        private final TimeSeries series;
+        private final double[] values;
+
+        private Series(final MonitorType type, final int capacity, final boolean offHeap) {
+            this.type = type;
+            this.series = TimeSeries.create(type.getColumns(), capacity, offHeap);
+            this.values = new double[type.getColumns().size()];
+        }
+
+        /**
+         * The samples are kept in time order so if the clock has gone backwards the sample
+         * is recorded at the time of the previous one.
+         */
+        private void append(final long timestamp) {
+            final long previous = series.isEmpty() ? Long.MIN_VALUE : series.getTimestamp(series.head() - 1);
+            series.append(Math.max(timestamp, previous), column -> values[column]);
+        }
+    }
+}
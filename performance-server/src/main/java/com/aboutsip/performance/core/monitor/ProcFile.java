@@ -0,0 +1,206 @@
+package com.aboutsip.performance.core.monitor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One of the files the kernel keeps for a process under /proc, such as /proc/[pid]/stat, see proc(5).
+ *
+ * The file is kept open and every {@link #read()} reads it from the start again into the same
+ * buffer, which is what makes the kernel regenerate its content. Hence, sampling a process over
+ * and over again costs one read per file and doesn't create any garbage. The values are then
+ * picked straight out of the bytes.
+ *
+ * Not thread safe, every file is meant to be read by a single thread.
+ */
+public final class ProcFile implements Closeable {
+
+    /**
+     * The unit of the CPU times in /proc/[pid]/stat (USER_HZ), which is 100 on
+     * pretty much every Linux system out there.
+     */
+    public static final double CLOCK_TICKS_PER_SECOND = 100;
+
+    /**
+     * The fields of /proc/[pid]/stat we care about, numbered as in proc(5).
+     */
+    public static final int STAT_UTIME = 14;
+    public static final int STAT_STIME = 15;
+    public static final int STAT_NUM_THREADS = 20;
+
+    private final Path path;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private int length;
+
+    private ProcFile(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @param pid the process.
+     * @param name the name of the file, e.g. "stat", "io" or "status".
+     * @return
+     */
+    public static ProcFile of(final int pid, final String name) {
+        return of(Paths.get("/proc", Integer.toString(pid), name));
+    }
+
+    static ProcFile of(final Path path) {
+        return new ProcFile(path);
+    }
+
+    /**
+     * Read the current content of the file.
+     *
+     * @return false if the file couldn't be read, e.g. because the process is gone or because we
+     * are not allowed to read it (/proc/[pid]/io of another user's process). The file is closed
+     * but you may try again.
+     */
+    public boolean read() {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+
+            buffer.clear();
+            while (channel.read(buffer, buffer.position()) > 0) {
+                if (!buffer.hasRemaining()) {
+                    final ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+            length = buffer.position();
+            return length > 0;
+        } catch (final IOException e) {
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Get a field of a file like /proc/[pid]/stat, i.e., a single line of space separated fields.
+     *
+     * @param field the number of the field, starting at one, as numbered in proc(5).
+     * @return the value or -1 if there is no such (numeric) field.
+     */
+    public long getField(final int field) {
+        final byte[] bytes = buffer.array();
+
+        // the second field is the name of the command, which is within parentheses and may
+        // contain both spaces and parentheses, so count from the last closing one.
+        int index = length - 1;
+        while (index >= 0 && bytes[index] != ')') {
+            --index;
+        }
+        if (index < 0 || field < 3) {
+            return -1;
+        }
+
+        index += 2;
+        for (int current = 3; current < field && index < length; ++index) {
+            if (bytes[index] == ' ') {
+                ++current;
+            }
+        }
+        return parseLong(bytes, index);
+    }
+
+    /**
+     * Get a value of a file like /proc/[pid]/status or /proc/[pid]/io, i.e., one "key: value" per line.
+     * Any unit after the value, such as the "kB" of the memory sizes, is ignored.
+     *
+     * @param key
+     * @return the value or -1 if there is no such (numeric) key.
+     */
+    public long getValue(final String key) {
+        final byte[] bytes = buffer.array();
+        final int keyLength = key.length();
+        int line = 0;
+        while (line < length) {
+            if (line + keyLength < length && bytes[line + keyLength] == ':' && startsWith(bytes, line, key)) {
+                int index = line + keyLength + 1;
+                while (index < length && (bytes[index] == ' ' || bytes[index] == '\t')) {
+                    ++index;
+                }
+                return parseLong(bytes, index);
+            }
+
+            while (line < length && bytes[line] != '\n') {
+                ++line;
+            }
+            ++line;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer.array(), 0, length, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() {
+        length = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // nothing we can do about it
+            }
+            channel = null;
+        }
+    }
+
+    private boolean startsWith(final byte[] bytes, final int offset, final String key) {
+        for (int i = 0; i < key.length(); ++i) {
+            if (bytes[offset + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        int index = offset;
+        while (index < length && bytes[index] >= '0' && bytes[index] <= '9') {
+            value = value * 10 + (bytes[index++] - '0');
+        }
+        return index == offset ? -1 : value;
+    }
+
+    /**
+     * The user and system time of a process, see proc(5).
+     *
+     * @param pid
+     * @return the time in clock ticks or -1 if we couldn't read it.
+     */
+    public static long readCpuTicks(final int pid) {
+        try (final ProcFile stat = of(pid, "stat")) {
+            if (!stat.read()) {
+                return -1;
+            }
+            return stat.getCpuTicks();
+        }
+    }
+
+    /**
+     * The user and system time, in clock ticks, of the process if this is its stat file.
+     *
+     * @return the ticks or -1 if they couldn't be found.
+     */
+    public long getCpuTicks() {
+        final long utime = getField(STAT_UTIME);
+        final long stime = getField(STAT_STIME);
+        return utime == -1 || stime == -1 ? -1 : utime + stime;
+    }
+}
@@ -0,0 +1,208 @@
+package com.aboutsip.performance.core.monitor;
+
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps an eye on the CPU, IO and memory of processes, such as the SIPp instances and the
+ * system under test, by sampling what the kernel tells us about them under /proc.
+ *
+ * All processes are sampled by one and the same thread, which has nothing else to do, so
+ * the samples are taken on time no matter how busy the rest of the system is. A sample
+ * is a handful of reads of files that are kept open between samples (see {@link ProcFile})
+ * so there are no processes forked, such as "ps" or "iostat", and the cost of monitoring
+ * yet another process is a few microseconds per sample.
+ *
+ * The samples end up in a {@link com.aboutsip.performance.core.timeseries.TimeSeries} per
+ * process and {@link MonitorType}, time stamped in nanoseconds since the epoch just like the
+ * {@link com.aboutsip.performance.core.sipp.StatsHistory} of the SIPp instances, so that the
+ * two can be lined up, which is exactly what the {@link CallCost} of a process does.
+ */
+public final class ProcessMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessMonitor.class);
+
+    public static final long DEFAULT_INTERVAL_MS = 1000;
+
+    private final int capacity;
+    private final boolean offHeap;
+    private final long intervalMs;
+
+    private final Map<String, MonitoredProcess> processes = new ConcurrentHashMap<>();
+    private final Map<String, CallCost> costs = new ConcurrentHashMap<>();
+
+    /**
+     * Only started once there is something to monitor.
+     */
+    private ScheduledExecutorService sampler;
+
+    /**
+     * @param capacity the number of samples to keep per process and {@link MonitorType}.
+     * @param offHeap whether to keep the samples outside of the java heap.
+     */
+    public ProcessMonitor(final int capacity, final boolean offHeap) {
+        this(capacity, offHeap, DEFAULT_INTERVAL_MS);
+    }
+
+    public ProcessMonitor(final int capacity, final boolean offHeap, final long intervalMs) {
+        Preconditions.checkArgument(capacity > 0, "The capacity must be at least one");
+        Preconditions.checkArgument(intervalMs > 0, "The sample interval must be positive");
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Start monitoring a process. If we already are monitoring a process by that name, we'll
+     * monitor the given types as well (but keep on following the pid we were given the first time).
+     *
+     * @param name the name of the process, e.g. the name of the SIPp client in the scenario.
+     * @param pid supplies the current pid of the process, or -1 if there currently is no process.
+     * @param types what to monitor.
+     * @return
+     */
+    public MonitoredProcess monitor(final String name, final IntSupplier pid, final Collection<MonitorType> types) {
+        Preconditions.checkArgument(name != null && !name.isEmpty(), "The name cannot be empty");
+        Preconditions.checkArgument(types != null && !types.isEmpty(), "You must monitor at least one thing");
+
+        final MonitoredProcess process = processes.computeIfAbsent(name,
+                n -> new MonitoredProcess(n, pid, capacity, offHeap));
+        process.add(types);
+        ensureSampling();
+        logger.info("Monitoring {} of \"{}\"", types, name);
+        return process;
+    }
+
+    /**
+     * Start monitoring a process that we know nothing about but its pid.
+     *
+     * @param pid
+     * @param types
+     * @return
+     */
+    public MonitoredProcess monitor(final int pid, final Collection<MonitorType> types) {
+        Preconditions.checkArgument(pid > 0, "The pid must be positive");
+        return monitor("pid-" + pid, () -> pid, types);
+    }
+
+    public Optional<MonitoredProcess> get(final String name) {
+        return Optional.ofNullable(processes.get(name));
+    }
+
+    public List<MonitoredProcess> getAll() {
+        return new ArrayList<>(processes.values());
+    }
+
+    /**
+     * Start keeping track of what the calls made by the given SIPp instances cost the process
+     * in CPU time. The process will be monitored for {@link MonitorType#CPU} if it isn't already.
+     * If we already are tracking the cost of the process, the new callers replace the old ones.
+     *
+     * @param process a process we are monitoring.
+     * @param callers supplies the stats histories of the SIPp instances making the calls.
+     * @return
+     */
+    public synchronized CallCost trackCost(final MonitoredProcess process, final Supplier<Collection<StatsHistory>> callers) {
+        Preconditions.checkArgument(process != null && processes.get(process.getName()) == process,
+                "The process must be monitored");
+        Preconditions.checkArgument(callers != null, "You must specify who is making the calls");
+
+        process.add(Collections.singleton(MonitorType.CPU));
+        final CallCost cost = new CallCost(process.getName(), process, callers, capacity, offHeap);
+        costs.put(process.getName(), cost);
+        logger.info("Tracking the cost per call of \"{}\"", process.getName());
+        return cost;
+    }
+
+    public Optional<CallCost> getCost(final String name) {
+        return Optional.ofNullable(costs.get(name));
+    }
+
+    public List<CallCost> getCosts() {
+        return new ArrayList<>(costs.values());
+    }
+
+    /**
+     * Stop monitoring the process, its samples are thrown away.
+     *
+     * @param name
+     */
+    public synchronized void stop(final String name) {
+        costs.remove(name);
+        final MonitoredProcess process = processes.remove(name);
+        if (process != null) {
+            process.close();
+        }
+    }
+
+    /**
+     * Stop the sampling thread.
+     */
+    public synchronized void shutdown() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+        processes.values().forEach(MonitoredProcess::close);
+        processes.clear();
+        costs.clear();
+    }
+
+    /**
+     * Sample every process once, which the sampling thread does every interval, and then
+     * cost whatever we now can.
+     */
+    synchronized void sample() {
+        final long timestamp = System.currentTimeMillis() * 1_000_000L;
+        final long now = System.nanoTime();
+        for (final MonitoredProcess process : processes.values()) {
+            try {
+                process.sample(timestamp, now);
+            } catch (final RuntimeException e) {
+                logger.warn("Unable to sample \"{}\"", process.getName(), e);
+            }
+        }
+        updateCosts(timestamp);
+    }
+
+    /**
+     * @param timestamp the current time in nanoseconds since the epoch.
+     */
+    synchronized void updateCosts(final long timestamp) {
+        for (final CallCost cost : costs.values()) {
+            try {
+                cost.update(timestamp);
+            } catch (final RuntimeException e) {
+                logger.warn("Unable to calculate the cost per call of \"{}\"", cost.getName(), e);
+            }
+        }
+    }
+
+    private synchronized void ensureSampling() {
+        if (sampler != null) {
+            return;
+        }
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "process-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
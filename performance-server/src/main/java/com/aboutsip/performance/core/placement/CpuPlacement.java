@@ -0,0 +1,373 @@
+package com.aboutsip.performance.core.placement;
+
+import com.aboutsip.performance.core.monitor.ProcFile;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SIPp does pretty much all of its work on a single thread so if we run many of them on
+ * the same machine we are better off giving each one a core of its own (or at least a fair
+ * share of one) rather than having the kernel bounce them around, which costs us cache
+ * misses and, on a NUMA machine, remote memory accesses.
+ *
+ * Every new process is pinned to the CPU that currently has the least load on it, where the
+ * load is the CPU usage we have observed of the processes already pinned to it. The pinning
+ * is done by wrapping the command in "numactl" (which also binds the memory to the node of
+ * the CPU) or, if that isn't available, "taskset". If neither is available, or there is only
+ * one CPU to choose from, nothing is pinned.
+ */
+public final class CpuPlacement {
+
+    private static final Logger logger = LoggerFactory.getLogger(CpuPlacement.class);
+
+    /**
+     * How often we sample the CPU usage of the pinned processes.
+     */
+    private static final long SAMPLE_INTERVAL_MS = 5000;
+
+    /**
+     * Until we have observed a process, assume it'll keep its core busy.
+     */
+    private static final double UNKNOWN_LOAD = 1.0;
+
+    private static final Pattern NODE_DIRECTORY = Pattern.compile("node(\\d+)");
+
+    enum Tool {
+        NUMACTL, TASKSET, NONE
+    }
+
+    private final Tool tool;
+
+    /**
+     * The CPUs we are allowed to run on and the NUMA node of each (or -1).
+     */
+    private final int[] cpus;
+    private final int[] nodes;
+
+    private final List<Assignment> assignments = new CopyOnWriteArrayList<>();
+
+    CpuPlacement(final Tool tool, final int[] cpus, final int[] nodes) {
+        this.tool = cpus.length > 1 ? tool : Tool.NONE;
+        this.cpus = cpus;
+        this.nodes = nodes;
+    }
+
+    /**
+     * A placement that never pins anything.
+     */
+    public static CpuPlacement disabled() {
+        return new CpuPlacement(Tool.NONE, new int[0], new int[0]);
+    }
+
+    /**
+     * Figure out what CPUs we have, what NUMA nodes they belong to and whether we have
+     * the tools to pin processes to them.
+     *
+     * @param executorService used for sampling the CPU usage of the pinned processes.
+     * @return
+     */
+    public static CpuPlacement detect(final ScheduledExecutorService executorService) {
+        final int[] cpus = findAllowedCpus();
+        final int[] nodes = findNodes(cpus);
+        final boolean numa = Arrays.stream(nodes).distinct().count() > 1;
+
+        final Tool tool;
+        if (numa && isOnPath("numactl")) {
+            tool = Tool.NUMACTL;
+        } else if (isOnPath("taskset")) {
+            tool = Tool.TASKSET;
+        } else if (isOnPath("numactl")) {
+            tool = Tool.NUMACTL;
+        } else {
+            tool = Tool.NONE;
+        }
+
+        final CpuPlacement placement = new CpuPlacement(tool, cpus, nodes);
+        if (placement.isEnabled()) {
+            logger.info("Pinning SIPp processes to CPUs {} using {}", Arrays.toString(cpus), tool);
+            executorService.scheduleWithFixedDelay(placement::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            logger.info("Not pinning SIPp processes to CPUs, neither numactl nor taskset is available "
+                    + "or there is only one CPU to choose from");
+        }
+        return placement;
+    }
+
+    public boolean isEnabled() {
+        return tool != Tool.NONE;
+    }
+
+    /**
+     * Pick the CPU with the least load on it for a new process.
+     *
+     * @return the assignment or null if we are not pinning processes.
+     */
+    public synchronized Assignment assign() {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        final double[] loads = new double[cpus.length];
+        final int[] counts = new int[cpus.length];
+        for (final Assignment assignment : assignments) {
+            loads[assignment.index] += assignment.getLoad();
+            ++counts[assignment.index];
+        }
+
+        int best = 0;
+        for (int i = 1; i < cpus.length; ++i) {
+            if (loads[i] < loads[best] || (loads[i] == loads[best] && counts[i] < counts[best])) {
+                best = i;
+            }
+        }
+
+        final Assignment assignment = new Assignment(best, cpus[best], nodes[best]);
+        assignments.add(assignment);
+        return assignment;
+    }
+
+    /**
+     * The process is gone so it no longer puts any load on its CPU.
+     *
+     * @param assignment
+     */
+    public void release(final Assignment assignment) {
+        if (assignment != null) {
+            assignments.remove(assignment);
+        }
+    }
+
+    /**
+     * Wrap the command so that the process is pinned to the assigned CPU.
+     *
+     * @param assignment may be null, in which case the command is returned as is.
+     * @param command
+     * @return
+     */
+    public List<String> wrap(final Assignment assignment, final List<String> command) {
+        if (assignment == null) {
+            return command;
+        }
+
+        final List<String> wrapped = new ArrayList<>(command.size() + 3);
+        switch (tool) {
+            case NUMACTL:
+                wrapped.add("numactl");
+                wrapped.add("--physcpubind=" + assignment.cpu);
+                if (assignment.node != -1) {
+                    wrapped.add("--membind=" + assignment.node);
+                }
+                break;
+            case TASKSET:
+                wrapped.add("taskset");
+                wrapped.add("-c");
+                wrapped.add(Integer.toString(assignment.cpu));
+                break;
+            default:
+                return command;
+        }
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    private void sample() {
+        final long now = System.nanoTime();
+        for (final Assignment assignment : assignments) {
+            assignment.sample(now);
+        }
+    }
+
+    /**
+     * The CPUs this process is allowed to run on, which is what any process we spawn will be
+     * allowed to run on too.
+     */
+    private static int[] findAllowedCpus() {
+        try {
+            for (final String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    return parseCpuList(line.substring(line.indexOf(':') + 1));
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // not on linux
+        }
+
+        final int[] cpus = new int[Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < cpus.length; ++i) {
+            cpus[i] = i;
+        }
+        return cpus;
+    }
+
+    private static int[] findNodes(final int[] cpus) {
+        final int[] nodes = new int[cpus.length];
+        Arrays.fill(nodes, -1);
+
+        final File[] directories = new File("/sys/devices/system/node").listFiles();
+        if (directories == null) {
+            return nodes;
+        }
+
+        for (final File directory : directories) {
+            final Matcher matcher = NODE_DIRECTORY.matcher(directory.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            try {
+                final int node = Integer.parseInt(matcher.group(1));
+                final String list = new String(Files.readAllBytes(directory.toPath().resolve("cpulist")),
+                        StandardCharsets.US_ASCII);
+                for (final int cpu : parseCpuList(list)) {
+                    for (int i = 0; i < cpus.length; ++i) {
+                        if (cpus[i] == cpu) {
+                            nodes[i] = node;
+                        }
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                // then we just don't know
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Parse a Linux CPU list, e.g. "0-3,8,10-11".
+     */
+    static int[] parseCpuList(final String list) {
+        final List<Integer> cpus = new ArrayList<>();
+        for (final String part : list.trim().split(",")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            final int dash = part.indexOf('-');
+            final int from = Integer.parseInt((dash == -1 ? part : part.substring(0, dash)).trim());
+            final int to = dash == -1 ? from : Integer.parseInt(part.substring(dash + 1).trim());
+            for (int cpu = from; cpu <= to; ++cpu) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static boolean isOnPath(final String executable) {
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+
+        for (final String directory : path.split(File.pathSeparator)) {
+            if (!directory.isEmpty() && Files.isExecutable(Paths.get(directory, executable))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The CPU a process has been pinned to.
+     */
+    public static final class Assignment {
+
+        /**
+         * The index of the CPU in the CPUs of the {@link CpuPlacement}.
+         */
+        private final int index;
+        private final int cpu;
+        private final int node;
+
+        private volatile int pid = -1;
+
+        /**
+         * The fraction of a core the process used over the last sample interval or -1 if we
+         * haven't observed it just yet.
+         */
+        private volatile double cpuUsage = -1;
+
+        private long lastTicks = -1;
+        private long lastSample;
+
+        private Assignment(final int index, final int cpu, final int node) {
+            this.index = index;
+            this.cpu = cpu;
+            this.node = node;
+        }
+
+        @JsonProperty
+        public int getCpu() {
+            return cpu;
+        }
+
+        /**
+         * @return the NUMA node of the CPU or -1 if we don't know.
+         */
+        @JsonProperty
+        public int getNode() {
+            return node;
+        }
+
+        /**
+         * @return the fraction of the CPU the process is using or -1 if we don't know yet.
+         */
+        @JsonProperty
+        public double getCpuUsage() {
+            return cpuUsage;
+        }
+
+        /**
+         * Tell us the pid of the process that was started with this assignment so that
+         * we can keep an eye on how much CPU it is using.
+         *
+         * @param pid
+         */
+        public void attach(final int pid) {
+            this.pid = pid;
+        }
+
+        private double getLoad() {
+            final double usage = cpuUsage;
+            return usage >= 0 ? usage : UNKNOWN_LOAD;
+        }
+
+        /**
+         * Only ever called by the one sampling task.
+         */
+        private void sample(final long now) {
+            final int pid = this.pid;
+            if (pid == -1) {
+                return;
+            }
+
+            final long ticks = ProcFile.readCpuTicks(pid);
+            if (ticks != -1 && lastTicks != -1 && now > lastSample) {
+                final double seconds = (now - lastSample) / 1e9;
+                cpuUsage = (ticks - lastTicks) / ProcFile.CLOCK_TICKS_PER_SECOND / seconds;
+            }
+            lastTicks = ticks;
+            lastSample = now;
+        }
+
+        @Override
+        public String toString() {
+            return "CPU " + cpu + (node != -1 ? " (node " + node + ")" : "");
+        }
+    }
+}
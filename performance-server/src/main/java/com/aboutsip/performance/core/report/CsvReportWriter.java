@@ -0,0 +1,82 @@
+package com.aboutsip.performance.core.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * See {@link ReportFormat#CSV}.
+ */
+final class CsvReportWriter implements ReportWriter {
+
+    private final Writer out;
+
+    CsvReportWriter(final Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(final String title, final long from, final long to) throws IOException {
+        out.write("# " + title + "\n");
+        out.write("# " + ReportFormat.time(from) + " - " + ReportFormat.time(to) + "\n");
+    }
+
+    @Override
+    public void table(final String title, final List<String> columns, final List<List<Object>> rows)
+            throws IOException {
+        out.write("\n# " + title + "\n");
+        writeRow(columns);
+        for (final List<Object> row : rows) {
+            writeRow(row);
+        }
+    }
+
+    @Override
+    public void beginSeries(final String title, final List<String> columns) throws IOException {
+        out.write("\n# " + title + "\ntime");
+        for (final String column : columns) {
+            out.write(',');
+            out.write(escape(column));
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void point(final long timestamp, final double[] values) throws IOException {
+        out.write(ReportFormat.time(timestamp));
+        for (final double value : values) {
+            out.write(',');
+            out.write(ReportFormat.number(value));
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    private void writeRow(final List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); ++i) {
+            if (i > 0) {
+                out.write(',');
+            }
+            final Object value = values.get(i);
+            out.write(value instanceof Number ? ReportFormat.number(((Number) value).doubleValue())
+                    : escape(String.valueOf(value)));
+        }
+        out.write('\n');
+    }
+
+    private static String escape(final String value) {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,92 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Visits the samples of a {@link TimeSeries}, in time order, and hands every bucket of samples to
+ * a {@link ReportWriter} as a single point with the mean of every column, so that no matter how
+ * many samples there are, the writer never gets more points than there are buckets. All it keeps
+ * track of is the running sums of the current bucket.
+ *
+ * A point is stamped with the time of the last sample of its bucket. NaN values are left out of
+ * the mean and if every value of a column is NaN, so is its mean.
+ */
+final class Downsampler implements TimeSeries.SampleVisitor {
+
+    private final ReportWriter writer;
+    private final int[] columns;
+    private final long from;
+    private final long width;
+
+    private final double[] sums;
+    private final int[] counts;
+    private final double[] point;
+    private long bucket = -1;
+    private long last;
+    private int samples;
+
+    /**
+     * @param writer
+     * @param columns the index of every column to include.
+     * @param from the start of the first bucket.
+     * @param to the end of the last bucket.
+     * @param maxPoints the number of buckets.
+     */
+    Downsampler(final ReportWriter writer, final int[] columns, final long from, final long to, final int maxPoints) {
+        this.writer = writer;
+        this.columns = columns;
+        this.from = from;
+        this.width = Math.max(1, (to - from + maxPoints - 1) / maxPoints);
+        this.sums = new double[columns.length];
+        this.counts = new int[columns.length];
+        this.point = new double[columns.length];
+    }
+
+    @Override
+    public void visit(final TimeSeries series, final long sequence) {
+        final long timestamp = series.getTimestamp(sequence);
+        final long b = (timestamp - from) / width;
+        if (b != bucket) {
+            flush();
+            bucket = b;
+        }
+
+        for (int i = 0; i < columns.length; ++i) {
+            final double value = series.getValue(sequence, columns[i]);
+            if (!Double.isNaN(value)) {
+                sums[i] += value;
+                ++counts[i];
+            }
+        }
+        last = timestamp;
+        ++samples;
+    }
+
+    /**
+     * Hand the current bucket, if any, to the writer.
+     *
+     * @throws UncheckedIOException in case the writer fails.
+     */
+    void flush() throws UncheckedIOException {
+        if (samples == 0) {
+            return;
+        }
+
+        for (int i = 0; i < columns.length; ++i) {
+            point[i] = counts[i] > 0 ? sums[i] / counts[i] : Double.NaN;
+        }
+        try {
+            writer.point(last, point);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Arrays.fill(sums, 0);
+        Arrays.fill(counts, 0);
+        samples = 0;
+    }
+}
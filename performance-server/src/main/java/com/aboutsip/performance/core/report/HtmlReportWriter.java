@@ -0,0 +1,150 @@
+package com.aboutsip.performance.core.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * See {@link ReportFormat#HTML}. Every column of a series gets a chart of its own, drawn as an
+ * inline SVG so the page has no dependencies whatsoever. To scale a chart we need to know the
+ * min and max of the column, so this writer holds on to the points of the series it is currently
+ * writing, which the {@link ReportGenerator} has down-sampled to a few hundred at most.
+ */
+final class HtmlReportWriter implements ReportWriter {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 140;
+
+    private final Writer out;
+
+    // the current series
+    private String title;
+    private List<String> columns;
+    private long[] timestamps = new long[256];
+    private double[][] values;
+    private int points;
+
+    HtmlReportWriter(final Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(final String title, final long from, final long to) throws IOException {
+        out.write("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>" + escape(title) + "</title>\n"
+                + "<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin-bottom:1em}"
+                + "td,th{border:1px solid #ccc;padding:2px 8px;text-align:right}th{background:#eee}"
+                + "svg{border:1px solid #ccc;background:#fafafa}polyline{fill:none;stroke:#1f77b4;stroke-width:1.5}"
+                + ".chart{margin-bottom:1em}.legend{font-size:small;color:#555}</style></head><body>\n");
+        out.write("<h1>" + escape(title) + "</h1>\n<p>" + ReportFormat.time(from) + " &ndash; "
+                + ReportFormat.time(to) + "</p>\n");
+    }
+
+    @Override
+    public void table(final String title, final List<String> columns, final List<List<Object>> rows)
+            throws IOException {
+        out.write("<h2>" + escape(title) + "</h2>\n<table><tr>");
+        for (final String column : columns) {
+            out.write("<th>" + escape(column) + "</th>");
+        }
+        out.write("</tr>\n");
+        for (final List<Object> row : rows) {
+            out.write("<tr>");
+            for (final Object value : row) {
+                out.write("<td>" + (value instanceof Number ? ReportFormat.number(((Number) value).doubleValue())
+                        : escape(String.valueOf(value))) + "</td>");
+            }
+            out.write("</tr>\n");
+        }
+        out.write("</table>\n");
+        out.flush();
+    }
+
+    @Override
+    public void beginSeries(final String title, final List<String> columns) {
+        this.title = title;
+        this.columns = columns;
+        this.values = new double[columns.size()][timestamps.length];
+        this.points = 0;
+    }
+
+    @Override
+    public void point(final long timestamp, final double[] values) {
+        if (points == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, points * 2);
+            for (int i = 0; i < this.values.length; ++i) {
+                this.values[i] = Arrays.copyOf(this.values[i], points * 2);
+            }
+        }
+        timestamps[points] = timestamp;
+        for (int i = 0; i < values.length; ++i) {
+            this.values[i][points] = values[i];
+        }
+        ++points;
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        out.write("<h2>" + escape(title) + "</h2>\n");
+        if (points == 0) {
+            out.write("<p>No samples</p>\n");
+        }
+
+        for (int column = 0; column < columns.size() && points > 0; ++column) {
+            chart(columns.get(column), values[column]);
+        }
+        values = null;
+        out.flush();
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.write("</body></html>\n");
+        out.flush();
+    }
+
+    private void chart(final String name, final double[] column) throws IOException {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < points; ++i) {
+            final double value = column[i];
+            if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                ++count;
+            }
+        }
+
+        out.write("<div class=\"chart\"><div class=\"legend\">" + escape(name));
+        if (count == 0) {
+            out.write(": no values</div></div>\n");
+            return;
+        }
+        out.write(": min " + ReportFormat.number(min) + ", mean " + ReportFormat.number(sum / count) + ", max "
+                + ReportFormat.number(max) + "</div>\n");
+
+        final long first = timestamps[0];
+        final double span = Math.max(1, timestamps[points - 1] - first);
+        final double low = Math.min(0, min);
+        final double range = max > low ? max - low : 1;
+        out.write("<svg width=\"" + WIDTH + "\" height=\"" + HEIGHT + "\"><polyline points=\"");
+        for (int i = 0; i < points; ++i) {
+            final double value = column[i];
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            final double x = (timestamps[i] - first) / span * WIDTH;
+            final double y = HEIGHT - (value - low) / range * (HEIGHT - 4) - 2;
+            out.write(String.format(Locale.ROOT, "%.1f,%.1f ", x, y));
+        }
+        out.write("\"/></svg></div>\n");
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
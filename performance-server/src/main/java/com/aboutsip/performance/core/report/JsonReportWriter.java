@@ -0,0 +1,131 @@
+package com.aboutsip.performance.core.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * See {@link ReportFormat#JSON}. The report is one object with the title and range, and a list
+ * of sections that are either tables (with "columns" and "rows") or series (with "columns" and
+ * "points", where the first value of every point is the time in milliseconds since the epoch).
+ * Written by hand, token by token, since the whole point is to never have the entire report
+ * in memory. NaN, which isn't valid JSON, is written as null.
+ */
+final class JsonReportWriter implements ReportWriter {
+
+    private final Writer out;
+
+    private boolean firstSection = true;
+    private boolean firstPoint;
+
+    JsonReportWriter(final Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(final String title, final long from, final long to) throws IOException {
+        out.write("{\"title\":" + string(title) + ",\"from\":" + from / 1_000_000L + ",\"to\":" + to / 1_000_000L
+                + ",\"sections\":[");
+    }
+
+    @Override
+    public void table(final String title, final List<String> columns, final List<List<Object>> rows)
+            throws IOException {
+        beginSection("table", title, columns);
+        out.write(",\"rows\":[");
+        for (int i = 0; i < rows.size(); ++i) {
+            out.write(i == 0 ? "[" : ",[");
+            final List<Object> row = rows.get(i);
+            for (int j = 0; j < row.size(); ++j) {
+                if (j > 0) {
+                    out.write(',');
+                }
+                final Object value = row.get(j);
+                out.write(value instanceof Number ? number(((Number) value).doubleValue())
+                        : string(String.valueOf(value)));
+            }
+            out.write(']');
+        }
+        out.write("]}");
+    }
+
+    @Override
+    public void beginSeries(final String title, final List<String> columns) throws IOException {
+        beginSection("series", title, columns);
+        out.write(",\"points\":[");
+        firstPoint = true;
+    }
+
+    @Override
+    public void point(final long timestamp, final double[] values) throws IOException {
+        out.write(firstPoint ? "[" : ",[");
+        firstPoint = false;
+        out.write(Long.toString(timestamp / 1_000_000L));
+        for (final double value : values) {
+            out.write(',');
+            out.write(number(value));
+        }
+        out.write(']');
+    }
+
+    @Override
+    public void endSeries() throws IOException {
+        out.write("]}");
+        out.flush();
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.write("]}\n");
+        out.flush();
+    }
+
+    private void beginSection(final String type, final String title, final List<String> columns) throws IOException {
+        out.write(firstSection ? "{" : ",{");
+        firstSection = false;
+        out.write("\"type\":\"" + type + "\",\"title\":" + string(title) + ",\"columns\":[");
+        for (int i = 0; i < columns.size(); ++i) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(string(columns.get(i)));
+        }
+        out.write(']');
+    }
+
+    private static String number(final double value) {
+        final String number = ReportFormat.number(value);
+        return number.isEmpty() ? "null" : number;
+    }
+
+    private static String string(final String value) {
+        final StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.monitor.CallCost;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A report over a range of time, such as between two marks of a scenario, with the
+ * {@link RangeStats} of every SIPp instance, the totals across all of them and the CPU
+ * cost per call of every process whose cost we are tracking.
+ */
+public final class RangeReport {
+
+    /**
+     * The name of the {@link RangeStats} with the totals of all instances.
+     */
+    public static final String TOTALS = "totals";
+
+    private final String name;
+    private final long from;
+    private final long to;
+    private final List<RangeStats> instances;
+    private final RangeStats totals;
+    private final Map<String, CallCost.Summary> costs;
+
+    private RangeReport(final String name, final long from, final long to, final List<RangeStats> instances,
+                        final RangeStats totals, final Map<String, CallCost.Summary> costs) {
+        this.name = name;
+        this.from = from;
+        this.to = to;
+        this.instances = Collections.unmodifiableList(instances);
+        this.totals = totals;
+        this.costs = Collections.unmodifiableMap(costs);
+    }
+
+    /**
+     * @param name the name of the report.
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @param instances the instances to report on, by the name to report them under.
+     * @param costs the costs to report on.
+     * @return
+     * @throws IllegalArgumentException in case the range is empty.
+     */
+    public static RangeReport generate(final String name, final long from, final long to,
+                                       final Map<String, SIPp> instances, final Collection<CallCost> costs)
+            throws IllegalArgumentException {
+        if (from >= to) {
+            throw new IllegalArgumentException("The range must end after it starts");
+        }
+
+        final List<RangeStats> stats = new ArrayList<>(instances.size());
+        instances.forEach((instance, sipp) -> stats.add(RangeStats.of(instance, sipp, from, to)));
+
+        final Map<String, CallCost.Summary> summaries = new LinkedHashMap<>();
+        costs.forEach(cost -> summaries.put(cost.getName(), cost.summarize(from, to)));
+
+        return new RangeReport(name, from, to, stats, RangeStats.merge(TOTALS, from, to, stats), summaries);
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty
+    public long getFrom() {
+        return from;
+    }
+
+    @JsonProperty
+    public long getTo() {
+        return to;
+    }
+
+    @JsonProperty
+    public List<RangeStats> getInstances() {
+        return instances;
+    }
+
+    @JsonProperty
+    public RangeStats getTotals() {
+        return totals;
+    }
+
+    /**
+     * The CPU cost per call by the name of the process.
+     */
+    @JsonProperty
+    public Map<String, CallCost.Summary> getCosts() {
+        return costs;
+    }
+
+    @Override
+    public String toString() {
+        return "Report \"" + name + "\" " + totals;
+    }
+}
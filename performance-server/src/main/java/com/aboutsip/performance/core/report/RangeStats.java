@@ -0,0 +1,253 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.sipp.ResponseTime;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a SIPp instance, or a group of them, did over a range of time, e.g. between two marks of
+ * a scenario. Calculated straight off of the {@link StatsHistory} and the {@link HistogramHistory}
+ * of the instance, where the range is found by a binary search and then only the samples within
+ * it are visited, so it is just as cheap to look at the last minute of a day long run as it is
+ * to look at the first.
+ *
+ * The counts are the sums of the periodic (P) counters of the samples within the range, which
+ * unlike the cumulative ones don't start over when SIPp is restarted.
+ */
+public final class RangeStats {
+
+    private final String name;
+    private final long from;
+    private final long to;
+    private final int samples;
+    private final double meanCallRate;
+    private final double maxCallRate;
+    private final long successfulCalls;
+    private final long failedCalls;
+    private final long createdCalls;
+    private final long retransmissions;
+    private final Histogram responseTimes;
+
+    private RangeStats(final String name, final long from, final long to, final int samples,
+                       final double meanCallRate, final double maxCallRate, final long successfulCalls,
+                       final long failedCalls, final long createdCalls, final long retransmissions,
+                       final Histogram responseTimes) {
+        this.name = name;
+        this.from = from;
+        this.to = to;
+        this.samples = samples;
+        this.meanCallRate = meanCallRate;
+        this.maxCallRate = maxCallRate;
+        this.successfulCalls = successfulCalls;
+        this.failedCalls = failedCalls;
+        this.createdCalls = createdCalls;
+        this.retransmissions = retransmissions;
+        this.responseTimes = responseTimes;
+    }
+
+    public static RangeStats of(final String name, final SIPp sipp, final long from, final long to) {
+        return of(name, sipp.getHistory(), sipp.getResponseTimeHistory(), from, to);
+    }
+
+    /**
+     * @param name
+     * @param history
+     * @param responseTimes may be null, in which case there will be no response times.
+     * @param from the start of the range in nanoseconds since the epoch (inclusive).
+     * @param to the end of the range in nanoseconds since the epoch (exclusive).
+     * @return
+     */
+    public static RangeStats of(final String name, final StatsHistory history, final HistogramHistory responseTimes,
+                                final long from, final long to) {
+        final Totals totals = new Totals(history);
+        final int samples = history.getTimeSeries().forEach(from, to, totals);
+        return new RangeStats(name, from, to, samples,
+                samples > 0 ? totals.callRate / samples : 0,
+                samples > 0 ? totals.maxCallRate : 0,
+                totals.successful, totals.failed, totals.created, totals.retransmissions,
+                responseTimes != null ? responseTimes.getRange(from, to) : null);
+    }
+
+    /**
+     * Add up the stats of several instances over the same range of time.
+     *
+     * Since the instances don't report at the same time, we can't tell what the highest total
+     * call rate was, so the max call rate of the merged stats is the sum of the max of every
+     * instance, i.e., what the highest total call rate could at most have been.
+     *
+     * @param name
+     * @param from
+     * @param to
+     * @param stats
+     * @return
+     */
+    public static RangeStats merge(final String name, final long from, final long to,
+                                   final Collection<RangeStats> stats) {
+        int samples = 0;
+        double meanCallRate = 0;
+        double maxCallRate = 0;
+        long successful = 0;
+        long failed = 0;
+        long created = 0;
+        long retransmissions = 0;
+        Histogram responseTimes = null;
+        for (final RangeStats s : stats) {
+            samples += s.samples;
+            meanCallRate += s.meanCallRate;
+            maxCallRate += s.maxCallRate;
+            successful += s.successfulCalls;
+            failed += s.failedCalls;
+            created += s.createdCalls;
+            retransmissions += s.retransmissions;
+            if (s.responseTimes != null) {
+                if (responseTimes == null) {
+                    responseTimes = s.responseTimes.emptyCopy();
+                }
+                responseTimes.add(s.responseTimes);
+            }
+        }
+        return new RangeStats(name, from, to, samples, meanCallRate, maxCallRate, successful, failed, created,
+                retransmissions, responseTimes);
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The start of the range in nanoseconds since the epoch (inclusive).
+     */
+    @JsonProperty
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * The end of the range in nanoseconds since the epoch (exclusive).
+     */
+    @JsonProperty
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * The number of stats rows within the range.
+     */
+    @JsonProperty
+    public int getSamples() {
+        return samples;
+    }
+
+    @JsonProperty
+    public double getMeanCallRate() {
+        return meanCallRate;
+    }
+
+    @JsonProperty
+    public double getMaxCallRate() {
+        return maxCallRate;
+    }
+
+    @JsonProperty
+    public long getSuccessfulCalls() {
+        return successfulCalls;
+    }
+
+    @JsonProperty
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    /**
+     * The calls created, both incoming and outgoing.
+     */
+    @JsonProperty
+    public long getCreatedCalls() {
+        return createdCalls;
+    }
+
+    @JsonProperty
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * @return the retransmissions per call created, or 0 if no calls were created.
+     */
+    @JsonProperty
+    public double getRetransmissionRate() {
+        return createdCalls > 0 ? (double) retransmissions / createdCalls : 0;
+    }
+
+    /**
+     * @return the response times of the calls within the range or null if there are none.
+     */
+    @JsonIgnore
+    public Histogram getResponseTimeHistogram() {
+        return responseTimes;
+    }
+
+    @JsonProperty
+    public List<ResponseTime> getResponseTimeRepartition() {
+        if (responseTimes == null) {
+            return Collections.emptyList();
+        }
+
+        final List<ResponseTime> repartition = new ArrayList<>(responseTimes.getBuckets());
+        for (int i = 0; i < responseTimes.getBuckets(); ++i) {
+            repartition.add(ResponseTime.create(responseTimes.getLowerLimit(i), responseTimes.getUpperLimit(i),
+                    (int) responseTimes.getCount(i)));
+        }
+        return repartition;
+    }
+
+    @JsonProperty
+    public Map<String, Double> getResponseTimePercentiles() {
+        return responseTimes != null ? responseTimes.getPercentiles() : Collections.emptyMap();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d samples, %.1f cps (max %.1f), %d successful, %d failed, %.2f%% retransmissions",
+                name, samples, meanCallRate, maxCallRate, successfulCalls, failedCalls, getRetransmissionRate() * 100);
+    }
+
+    private static final class Totals implements TimeSeries.SampleVisitor {
+        private final StatsHistory history;
+        private double callRate;
+        private double maxCallRate;
+        private long successful;
+        private long failed;
+        private long created;
+        private long retransmissions;
+
+        private Totals(final StatsHistory history) {
+            this.history = history;
+        }
+
+        @Override
+        public void visit(final TimeSeries series, final long sequence) {
+            final double rate = history.getValue(sequence, StatsMetric.CALL_RATE_P);
+            callRate += rate;
+            maxCallRate = Math.max(maxCallRate, rate);
+            successful += (long) history.getValue(sequence, StatsMetric.SUCCESSFUL_CALL_P);
+            failed += (long) history.getValue(sequence, StatsMetric.FAILED_CALL_P);
+            created += (long) history.getValue(sequence, StatsMetric.OUTGOING_CALL_P)
+                    + (long) history.getValue(sequence, StatsMetric.INCOMING_CALL_P);
+            retransmissions += (long) history.getValue(sequence, StatsMetric.RETRANSMISSIONS_P);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.aboutsip.performance.core.report;
+
+import java.io.Writer;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * The formats a report can be written in.
+ */
+public enum ReportFormat {
+
+    /**
+     * A self contained page, with a chart per column of every series.
+     */
+    HTML("html") {
+        @Override
+        ReportWriter newWriter(final Writer out) {
+            return new HtmlReportWriter(out);
+        }
+    },
+
+    /**
+     * One block per table and series, separated by an empty line and headed by a comment
+     * with its title, which is easy enough to split up or to load into a spreadsheet as is.
+     */
+    CSV("csv") {
+        @Override
+        ReportWriter newWriter(final Writer out) {
+            return new CsvReportWriter(out);
+        }
+    },
+
+    JSON("json") {
+        @Override
+        ReportWriter newWriter(final Writer out) {
+            return new JsonReportWriter(out);
+        }
+    };
+
+    private final String extension;
+
+    ReportFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * The file extension, without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    abstract ReportWriter newWriter(Writer out);
+
+    /**
+     * @param name e.g. "html"
+     * @return
+     * @throws IllegalArgumentException in case there is no such format.
+     */
+    public static ReportFormat of(final String name) throws IllegalArgumentException {
+        for (final ReportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown report format \"" + name + "\"");
+    }
+
+    /**
+     * Format a number without any pointless decimals.
+     *
+     * @return the number or an empty string if it is NaN or infinite.
+     */
+    static String number(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * @param timestamp nanoseconds since the epoch.
+     * @return e.g. "2016-03-01T12:00:00.250Z"
+     */
+    static String time(final long timestamp) {
+        return Instant.ofEpochMilli(timestamp / 1_000_000L).toString();
+    }
+}
@@ -0,0 +1,342 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.monitor.CallCost;
+import com.aboutsip.performance.core.monitor.MonitorType;
+import com.aboutsip.performance.core.monitor.MonitoredProcess;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a report over a range of time of everything we have stored: the stats of the SIPp
+ * instances, the samples of the monitored processes and the cost per call of those processes.
+ *
+ * Since a soak run may well go on for a day, the report is written section by section as it is
+ * generated and nothing is kept of the samples once they have been visited. Only the samples
+ * within the range are visited, found by a binary search. The stats of every instance and the
+ * cost of every process are visited twice, once for the summary at the top and once more for
+ * their series, and the samples of the monitored processes only once. The samples of every
+ * series are down-sampled to at most {@link Builder#withMaxPoints(int)} points on the way (see
+ * {@link Downsampler}) so the memory needed is the same no matter how long the run is, and so
+ * is the size of the report.
+ *
+ * The report starts off with a summary of every instance and the cost per call of every process,
+ * followed by the same for every snapshot report made during the run, and then comes a series
+ * for every instance, for every {@link MonitorType} of every process and for every cost.
+ */
+public final class ReportGenerator {
+
+    public static final int DEFAULT_MAX_POINTS = 500;
+
+    /**
+     * The metrics in the series of every instance.
+     */
+    private static final StatsMetric[] METRICS = {
+            StatsMetric.TARGET_RATE,
+            StatsMetric.CALL_RATE_P,
+            StatsMetric.CURRENT_CALL,
+            StatsMetric.SUCCESSFUL_CALL_P,
+            StatsMetric.FAILED_CALL_P,
+            StatsMetric.RETRANSMISSIONS_P,
+            StatsMetric.RESPONSE_TIME1_P
+    };
+
+    private static final List<String> SUMMARY_COLUMNS = Arrays.asList("name", "samples", "mean cps", "max cps",
+            "successful", "failed", "retransmissions/call", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms");
+
+    private static final List<String> COST_COLUMNS = Arrays.asList("process", "samples", "calls", "cpu us",
+            "cpu us/call", "calls/core");
+
+    private final String title;
+    private final long from;
+    private final long to;
+    private final int maxPoints;
+    private final List<Instance> instances;
+    private final List<MonitoredProcess> processes;
+    private final Set<MonitorType> types;
+    private final List<CallCost> costs;
+    private final List<RangeReport> snapshots;
+
+    private ReportGenerator(final Builder builder) {
+        this.title = builder.title;
+        this.from = builder.from;
+        this.to = builder.to;
+        this.maxPoints = builder.maxPoints;
+        this.instances = new ArrayList<>(builder.instances);
+        this.processes = new ArrayList<>(builder.processes);
+        this.types = EnumSet.copyOf(builder.types);
+        this.costs = new ArrayList<>(builder.costs);
+        this.snapshots = new ArrayList<>(builder.snapshots);
+    }
+
+    public static Builder withTitle(final String title) {
+        return new Builder(title);
+    }
+
+    /**
+     * Write the report to a file, which is replaced if it already exists.
+     *
+     * @param format
+     * @param file
+     * @throws IOException
+     */
+    public void write(final ReportFormat format, final Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(format, out);
+        }
+    }
+
+    /**
+     * Write the report. It is up to the caller to buffer the writer and to close it.
+     *
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    public void write(final ReportFormat format, final Writer out) throws IOException {
+        final ReportWriter writer = format.newWriter(out instanceof BufferedWriter ? out : new BufferedWriter(out));
+        try {
+            generate(writer);
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void generate(final ReportWriter writer) throws IOException {
+        final long[] bounds = bounds();
+        writer.begin(title, bounds[0], bounds[1]);
+
+        final List<RangeStats> stats = instances.stream()
+                .map(instance -> RangeStats.of(instance.name, instance.history, instance.responseTimes, from, to))
+                .collect(Collectors.toList());
+        stats.add(RangeStats.merge(RangeReport.TOTALS, from, to, stats));
+        writer.table("Summary", SUMMARY_COLUMNS, stats.stream().map(ReportGenerator::summary)
+                .collect(Collectors.toList()));
+        if (!costs.isEmpty()) {
+            writer.table("CPU cost per call", COST_COLUMNS, costs.stream()
+                    .map(cost -> cost(cost.getName(), cost.summarize(from, to))).collect(Collectors.toList()));
+        }
+
+        for (final RangeReport snapshot : snapshots) {
+            final List<List<Object>> rows = snapshot.getInstances().stream().map(ReportGenerator::summary)
+                    .collect(Collectors.toList());
+            rows.add(summary(snapshot.getTotals()));
+            writer.table("Snapshot " + snapshot.getName() + " (" + ReportFormat.time(snapshot.getFrom()) + " - "
+                    + ReportFormat.time(snapshot.getTo()) + ")", SUMMARY_COLUMNS, rows);
+            if (!snapshot.getCosts().isEmpty()) {
+                writer.table("Snapshot " + snapshot.getName() + " CPU cost per call", COST_COLUMNS,
+                        snapshot.getCosts().entrySet().stream().map(cost -> cost(cost.getKey(), cost.getValue()))
+                                .collect(Collectors.toList()));
+            }
+        }
+
+        final List<String> metrics = Arrays.stream(METRICS).map(StatsMetric::getLabel).collect(Collectors.toList());
+        for (final Instance instance : instances) {
+            final TimeSeries series = instance.history.getTimeSeries();
+            final int[] columns = metrics.stream().mapToInt(series::columnIndex).toArray();
+            series(writer, "Stats of " + instance.name, series, metrics, columns);
+        }
+
+        for (final MonitoredProcess process : processes) {
+            for (final MonitorType type : process.getTypes()) {
+                if (types.contains(type)) {
+                    series(writer, type.getName() + " of " + process.getName(), process.getTimeSeries(type));
+                }
+            }
+        }
+
+        for (final CallCost cost : costs) {
+            series(writer, "CPU cost per call of " + cost.getName(), cost.getTimeSeries());
+        }
+
+        writer.end();
+    }
+
+    /**
+     * @return the range of the report narrowed down to the samples we actually have, or
+     * the range itself if there are none.
+     */
+    private long[] bounds() {
+        final List<TimeSeries> all = new ArrayList<>();
+        instances.forEach(instance -> all.add(instance.history.getTimeSeries()));
+        processes.forEach(process -> process.getTypes().forEach(type -> all.add(process.getTimeSeries(type))));
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (final TimeSeries series : all) {
+            final long sequence = series.ceiling(from);
+            if (sequence < series.head() && series.getTimestamp(sequence) < to) {
+                first = Math.min(first, series.getTimestamp(sequence));
+                final long end = series.ceiling(to) - 1;
+                last = Math.max(last, series.getTimestamp(end));
+            }
+        }
+        return first <= last ? new long[]{Math.max(from, first), Math.min(to, last + 1)} : new long[]{from, to};
+    }
+
+    private void series(final ReportWriter writer, final String title, final TimeSeries series) throws IOException {
+        final int[] columns = new int[series.getColumns().size()];
+        Arrays.setAll(columns, i -> i);
+        series(writer, title, series, series.getColumns(), columns);
+    }
+
+    private void series(final ReportWriter writer, final String title, final TimeSeries series,
+                        final List<String> names, final int[] columns) throws IOException {
+        writer.beginSeries(title, names);
+
+        // bucket what we actually have rather than the whole range, which may be open ended
+        final long first = series.ceiling(from);
+        if (first < series.head() && series.getTimestamp(first) < to) {
+            final long start = series.getTimestamp(first);
+            final long end = series.getTimestamp(series.ceiling(to) - 1) + 1;
+            final Downsampler downsampler = new Downsampler(writer, columns, start, end, maxPoints);
+            series.forEach(from, to, downsampler);
+            downsampler.flush();
+        }
+
+        writer.endSeries();
+    }
+
+    private static List<Object> summary(final RangeStats stats) {
+        final Map<String, Double> percentiles = stats.getResponseTimePercentiles();
+        return Arrays.asList(stats.getName(), stats.getSamples(), stats.getMeanCallRate(), stats.getMaxCallRate(),
+                stats.getSuccessfulCalls(), stats.getFailedCalls(), stats.getRetransmissionRate(),
+                percentile(percentiles, "p50"), percentile(percentiles, "p90"), percentile(percentiles, "p99"),
+                percentile(percentiles, "p99.9"));
+    }
+
+    private static double percentile(final Map<String, Double> percentiles, final String key) {
+        final Double value = percentiles.get(key);
+        return value != null && value >= 0 ? value : Double.NaN;
+    }
+
+    private static List<Object> cost(final String name, final CallCost.Summary summary) {
+        return Arrays.asList(name, summary.getSamples(), summary.getCalls(), summary.getCpuMicros(),
+                summary.getCpuMicrosPerCall(), summary.getCallsPerCore());
+    }
+
+    private static final class Instance {
+        private final String name;
+        private final StatsHistory history;
+        private final HistogramHistory responseTimes;
+
+        private Instance(final String name, final StatsHistory history, final HistogramHistory responseTimes) {
+            this.name = name;
+            this.history = history;
+            this.responseTimes = responseTimes;
+        }
+    }
+
+    public static final class Builder {
+        private final String title;
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private int maxPoints = DEFAULT_MAX_POINTS;
+        private final List<Instance> instances = new ArrayList<>();
+        private final List<MonitoredProcess> processes = new ArrayList<>();
+        private final Set<MonitorType> types = EnumSet.allOf(MonitorType.class);
+        private final List<CallCost> costs = new ArrayList<>();
+        private final List<RangeReport> snapshots = new ArrayList<>();
+
+        private Builder(final String title) {
+            this.title = title;
+        }
+
+        /**
+         * @param from the start of the report in nanoseconds since the epoch (inclusive).
+         * @param to the end of the report in nanoseconds since the epoch (exclusive).
+         * @return
+         */
+        public Builder withRange(final long from, final long to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        /**
+         * The max number of points of every series. The default is {@link #DEFAULT_MAX_POINTS}.
+         */
+        public Builder withMaxPoints(final int maxPoints) {
+            this.maxPoints = maxPoints;
+            return this;
+        }
+
+        public Builder withInstance(final String name, final StatsHistory history,
+                                    final HistogramHistory responseTimes) {
+            instances.add(new Instance(name, history, responseTimes));
+            return this;
+        }
+
+        /**
+         * @param instances the instances by the name they go by in the report.
+         * @return
+         */
+        public Builder withInstances(final Map<String, SIPp> instances) {
+            instances.forEach((name, sipp) -> withInstance(name, sipp.getHistory(), sipp.getResponseTimeHistory()));
+            return this;
+        }
+
+        public Builder withProcesses(final Collection<MonitoredProcess> processes) {
+            this.processes.addAll(processes);
+            return this;
+        }
+
+        /**
+         * Only include these types of the monitored processes. By default, all of them are included.
+         */
+        public Builder withTypes(final Collection<MonitorType> types) {
+            this.types.clear();
+            this.types.addAll(types);
+            return this;
+        }
+
+        public Builder withCosts(final Collection<CallCost> costs) {
+            this.costs.addAll(costs);
+            return this;
+        }
+
+        /**
+         * Snapshot reports made earlier, which are included as sections of their own.
+         */
+        public Builder withSnapshots(final Collection<RangeReport> snapshots) {
+            this.snapshots.addAll(snapshots);
+            return this;
+        }
+
+        /**
+         * @return
+         * @throws IllegalArgumentException in case the title is missing, the range is empty or
+         * the max number of points is less than one.
+         */
+        public ReportGenerator build() throws IllegalArgumentException {
+            if (title == null || title.isEmpty()) {
+                throw new IllegalArgumentException("The report must have a title");
+            }
+            if (from >= to) {
+                throw new IllegalArgumentException("The range must end after it starts");
+            }
+            if (maxPoints < 1) {
+                throw new IllegalArgumentException("The max number of points must be at least one");
+            }
+            return new ReportGenerator(this);
+        }
+    }
+}
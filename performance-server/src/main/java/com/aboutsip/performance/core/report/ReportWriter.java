@@ -0,0 +1,50 @@
+package com.aboutsip.performance.core.report;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a report in a particular {@link ReportFormat}, one section at a time, as the
+ * {@link ReportGenerator} produces them. A writer should hold on to as little as possible,
+ * at most the points of the series it is currently writing (which are down-sampled so there
+ * are never more than a few hundred of them), and write everything else straight through.
+ *
+ * The calls always come in this order: {@link #begin(String, long, long)}, any number of tables
+ * and series, and then {@link #end()}.
+ */
+interface ReportWriter {
+
+    /**
+     * @param title
+     * @param from the start of the report in nanoseconds since the epoch.
+     * @param to the end of the report in nanoseconds since the epoch.
+     */
+    void begin(String title, long from, long to) throws IOException;
+
+    /**
+     * A small table, such as the summary of every instance.
+     *
+     * @param title
+     * @param columns the name of every column.
+     * @param rows the rows, with one value per column. A value is either a string or a number.
+     */
+    void table(String title, List<String> columns, List<List<Object>> rows) throws IOException;
+
+    /**
+     * Start a new series of points, e.g. the call rate of an instance over time.
+     *
+     * @param title
+     * @param columns the name of every column, the timestamp excluded.
+     */
+    void beginSeries(String title, List<String> columns) throws IOException;
+
+    /**
+     * @param timestamp in nanoseconds since the epoch.
+     * @param values one value per column, which may be NaN. Only valid for the duration of the call.
+     */
+    void point(long timestamp, double[] values) throws IOException;
+
+    void endSeries() throws IOException;
+
+    void end() throws IOException;
+}
@@ -0,0 +1,588 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.aboutsip.performance.core.archive.ArchiveContent;
+import com.aboutsip.performance.core.archive.ArchiveFormat;
+import com.aboutsip.performance.core.archive.Archiver;
+import com.aboutsip.performance.core.monitor.CallCost;
+import com.aboutsip.performance.core.monitor.MonitorType;
+import com.aboutsip.performance.core.monitor.MonitoredProcess;
+import com.aboutsip.performance.core.monitor.ProcessMonitor;
+import com.aboutsip.performance.core.report.RangeReport;
+import com.aboutsip.performance.core.report.ReportFormat;
+import com.aboutsip.performance.core.report.ReportGenerator;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import io.parsenip.ArgParser;
+import io.parsenip.Argument;
+import io.parsenip.CommandLine;
+import io.parsenip.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The actions you can use in a scenario, each with its own {@link ArgParser}, which is built
+ * once and then used for parsing every occurrence of the action.
+ *
+ * Compiling an action both parses it and checks that it makes sense at that point in the
+ * scenario (e.g. that you don't set the rate of a client you haven't started yet) so that
+ * a scenario that would fail an hour into the run fails before anything is started instead.
+ */
+enum Action {
+
+    START(ArgParser.forProgramNamed("start")
+            .withDescription("Start one or more clients, in parallel")
+            .withArgument(Args.TARGETS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> targets = validator.targets(cmd, Args.TARGETS);
+            targets.forEach(validator::start);
+            return step(action, context -> {
+                final List<SIPp> instances = targets.stream().map(context::newInstance).collect(Collectors.toList());
+                return context.getManager().start(instances).thenApply(started -> null);
+            });
+        }
+    },
+
+    STOP(ArgParser.forProgramNamed("stop")
+            .withDescription("Stop (quit) one or more clients, in parallel")
+            .withArgument(Args.FORCE)
+            .withArgument(Args.TARGETS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> targets = validator.targets(cmd, Args.TARGETS);
+            targets.forEach(validator::stop);
+            final boolean force = cmd.getValue(Args.FORCE).orElse(false);
+            return step(action, context -> allOf(context.getInstances(targets), sipp -> sipp.stop(force)));
+        }
+    },
+
+    PAUSE(ArgParser.forProgramNamed("pause")
+            .withDescription("Pause one or more clients, in parallel")
+            .withArgument(Args.TARGETS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> targets = validator.targets(cmd, Args.TARGETS);
+            targets.forEach(validator::requireRunning);
+            return step(action, context -> allOf(context.getInstances(targets), SIPp::pause));
+        }
+    },
+
+    RATE(ArgParser.forProgramNamed("rate")
+            .withDescription("Set the rate of one or more clients, in parallel")
+            .withArgument(Args.SET)
+            .withArgument(Args.TARGETS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<Integer> rates = cmd.getValues(Args.SET);
+            if (rates.size() != 1) {
+                throw new ParseException("Expected exactly one rate (--set) but got " + rates, 0);
+            }
+
+            final int rate = rates.get(0);
+            if (rate < 0) {
+                throw new ParseException("The rate cannot be negative", 0);
+            }
+
+            final List<String> targets = validator.targets(cmd, Args.TARGETS);
+            targets.forEach(validator::requireRunning);
+            return step(action, context -> allOf(context.getInstances(targets), sipp -> sipp.setRate(rate)));
+        }
+    },
+
+    SLEEP(ArgParser.forProgramNamed("sleep")
+            .withDescription("Do nothing for a while, e.g. 500ms, 30s, 1m or 1hr")
+            .withArgument(Args.DURATION)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> durations = cmd.getValues(Args.DURATION);
+            if (durations.size() != 1) {
+                throw new ParseException("Expected exactly one duration but got " + durations, 0);
+            }
+
+            final long millis = parseDuration(durations.get(0));
+            return step(action, context -> {
+                final CompletableFuture<Void> future = new CompletableFuture<>();
+                context.getExecutorService().schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+                return future;
+            });
+        }
+    },
+
+    MONITOR(ArgParser.forProgramNamed("monitor")
+            .withDescription("Start sampling the CPU, IO and/or memory of one or more processes")
+            .withArgument(Args.TYPES)
+            .withArgument(Args.MONITOR_TARGETS)
+            .withArgument(Args.PIDS)
+            .withArgument(Args.CALLS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> targets = cmd.getValues(Args.MONITOR_TARGETS).stream().distinct()
+                    .collect(Collectors.toList());
+            final List<Integer> pids = cmd.getValues(Args.PIDS).stream().distinct().collect(Collectors.toList());
+            if (targets.isEmpty() && pids.isEmpty()) {
+                throw new ParseException("You must specify at least one --target or --pid", 0);
+            }
+            targets.forEach(validator::requireRunning);
+            final List<String> callers = cmd.getValues(Args.CALLS).stream().distinct().collect(Collectors.toList());
+            callers.forEach(validator::requireRunning);
+
+            final Set<MonitorType> types = cmd.getValues(Args.TYPES).stream().map(MonitorType::of)
+                    .collect(Collectors.toCollection(() -> EnumSet.noneOf(MonitorType.class)));
+            return step(action, context -> {
+                final ProcessMonitor monitor = context.getManager().getProcessMonitor();
+                final List<MonitoredProcess> processes = new ArrayList<>();
+                targets.forEach(target -> processes.add(monitor.monitor(target, () -> context.getPid(target), types)));
+                pids.forEach(pid -> processes.add(monitor.monitor(pid, types)));
+                if (!callers.isEmpty()) {
+                    final Supplier<Collection<StatsHistory>> histories = () -> context.getInstances(callers).stream()
+                            .map(SIPp::getHistory).collect(Collectors.toList());
+                    processes.forEach(process -> monitor.trackCost(process, histories));
+                }
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    },
+
+    MARK(ArgParser.forProgramNamed("mark")
+            .withDescription("Mark the current point in time so that you can refer to it later on")
+            .withArgument(Args.NAME)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> names = cmd.getValues(Args.NAME);
+            if (names.size() != 1) {
+                throw new ParseException("Expected exactly one name of the mark but got " + names, 0);
+            }
+
+            final String name = names.get(0);
+            validator.mark(name);
+            return step(action, context -> {
+                context.mark(name);
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    },
+
+    SNAPSHOT(ArgParser.forProgramNamed("snapshot")
+            .withDescription("Generate a report of what the clients did between two marks, or since a mark")
+            .withArgument(Args.REPORT_NAME)
+            .withArgument(Args.FROM)
+            .withArgument(Args.TO)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final String name = single(cmd, Args.REPORT_NAME, null);
+            if (name == null) {
+                throw new ParseException("You must name the report (--name)", 0);
+            }
+            final String from = single(cmd, Args.FROM, ScenarioContext.START_MARK);
+            final String to = single(cmd, Args.TO, null);
+            validator.requireMark(from);
+            if (to != null) {
+                validator.requireMark(to);
+            }
+            validator.report(name);
+
+            return step(action, context -> {
+                final long start = context.getMark(from);
+                final long end = to != null ? context.getMark(to) : context.now();
+                final RangeReport report = RangeReport.generate(name, start, end, context.getAllInstances(),
+                        context.getManager().getProcessMonitor().getCosts());
+                context.addReport(report);
+                logger.info("{}", report);
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    },
+
+    REPORT(ArgParser.forProgramNamed("report")
+            .withDescription("Write a report of everything the clients did and everything monitored, "
+                    + "including the snapshot reports made so far")
+            .withArgument(Args.REPORT_NAME)
+            .withArgument(Args.TITLE)
+            .withArgument(Args.FORMAT)
+            .withArgument(Args.INCLUDE)
+            .withArgument(Args.FROM)
+            .withArgument(Args.TO)
+            .withArgument(Args.REPORT_TARGETS)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final String name = single(cmd, Args.REPORT_NAME, null);
+            if (name == null) {
+                throw new ParseException("You must name the report (--name)", 0);
+            }
+            final String title = single(cmd, Args.TITLE, name);
+            final ReportFormat format = ReportFormat.of(single(cmd, Args.FORMAT, ReportFormat.HTML.getExtension()));
+            final Set<MonitorType> types = cmd.getValues(Args.INCLUDE).stream().map(MonitorType::of)
+                    .collect(Collectors.toCollection(() -> EnumSet.noneOf(MonitorType.class)));
+            final String from = single(cmd, Args.FROM, ScenarioContext.START_MARK);
+            final String to = single(cmd, Args.TO, null);
+            validator.requireMark(from);
+            if (to != null) {
+                validator.requireMark(to);
+            }
+            final Set<String> targets = new LinkedHashSet<>(cmd.getValues(Args.REPORT_TARGETS));
+            targets.forEach(validator::requireClient);
+            validator.report(name);
+
+            return step(action, context -> CompletableFuture.runAsync(() -> {
+                final ProcessMonitor monitor = context.getManager().getProcessMonitor();
+                final Map<String, SIPp> instances = new TreeMap<>(context.getAllInstances());
+                final List<MonitoredProcess> processes = monitor.getAll();
+                final List<CallCost> costs = monitor.getCosts();
+                if (!targets.isEmpty()) {
+                    instances.keySet().retainAll(targets);
+                    processes.removeIf(process -> !targets.contains(process.getName()));
+                    costs.removeIf(cost -> !targets.contains(cost.getName()));
+                }
+
+                final long start = context.getMark(from);
+                final long end = to != null ? context.getMark(to) : context.now();
+                final ReportGenerator.Builder builder = ReportGenerator.withTitle(title)
+                        .withRange(start, end)
+                        .withInstances(instances)
+                        .withProcesses(processes)
+                        .withCosts(costs)
+                        .withSnapshots(context.getReports().values());
+                if (!types.isEmpty()) {
+                    builder.withTypes(types);
+                }
+                final ReportGenerator generator = builder.build();
+
+                final Path file = context.getOutputFolder().toPath().resolve(name + "." + format.getExtension());
+                try {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                    generator.write(format, file);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException("Unable to write the report " + file, e);
+                }
+                logger.info("Wrote the report \"{}\" to {}", name, file);
+            }, context.getExecutorService()));
+        }
+    },
+
+    ZIP(ArgParser.forProgramNamed("zip")
+            .withDescription("Archive the stats of every client, everything monitored and the files in the "
+                    + "output folder, such as the reports. The type of archive is given by the name of the file, "
+                    + "e.g. run.tar.gz, run.tgz or run.zip")
+            .withArgument(Args.ARCHIVE)
+            .withArgument(Args.ARCHIVE_INCLUDE)
+            .build()) {
+        @Override
+        Step compile(final String action, final CommandLine cmd, final Validator validator) {
+            final List<String> archives = cmd.getValues(Args.ARCHIVE);
+            if (archives.size() != 1) {
+                throw new ParseException("Expected exactly one name of the archive but got " + archives, 0);
+            }
+
+            final String archive = archives.get(0);
+            final ArchiveFormat format = ArchiveFormat.of(archive);
+            final String fileName = Paths.get(archive).getFileName().toString();
+            final String name = format.getBaseName(fileName);
+            if (name.isEmpty() || name.equals(fileName)) {
+                throw new IllegalArgumentException("The archive must be named e.g. run" + format.getExtension());
+            }
+            final Set<ArchiveContent> contents = ArchiveContent.of(cmd.getValues(Args.ARCHIVE_INCLUDE));
+
+            return step(action, context -> CompletableFuture.runAsync(() -> {
+                final ProcessMonitor monitor = context.getManager().getProcessMonitor();
+                final Path folder = context.getOutputFolder().toPath();
+                final Path file = folder.resolve(archive);
+                final Archiver archiver = Archiver.withName(name)
+                        .withContents(contents)
+                        .withInstances(new TreeMap<>(context.getAllInstances()))
+                        .withProcesses(monitor.getAll())
+                        .withCosts(monitor.getCosts())
+                        .withFolder(folder)
+                        .withExecutor(context.getExecutorService(), Runtime.getRuntime().availableProcessors())
+                        .build();
+
+                try {
+                    Files.createDirectories(file.toAbsolutePath().getParent());
+                    archiver.write(format, file);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException("Unable to write the archive " + file, e);
+                }
+                logger.info("Wrote the archive {}", file);
+            }, context.getExecutorService()));
+        }
+    };
+
+    private static final Logger logger = LoggerFactory.getLogger(Action.class);
+
+    /**
+     * E.g. "500ms", "30s", "1m", "1min", "1h" or "1hr". A plain number is in seconds.
+     */
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(ms|s|sec|m|min|h|hr)?");
+
+    private final ArgParser parser;
+
+    Action(final ArgParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * The name of the action, i.e., the first word of it.
+     */
+    String getName() {
+        return name().toLowerCase();
+    }
+
+    CommandLine parse(final String action) throws ParseException {
+        return parser.parse(action);
+    }
+
+    /**
+     * Turn the parsed action into a step.
+     *
+     * @param action the action as written, for reporting purposes.
+     * @param cmd the parsed action.
+     * @param validator keeps track of the state of the scenario up until this action.
+     * @return
+     * @throws ParseException in case the action is malformed.
+     * @throws IllegalArgumentException in case the action doesn't make sense at this point of the scenario.
+     */
+    abstract Step compile(String action, CommandLine cmd, Validator validator)
+            throws ParseException, IllegalArgumentException;
+
+    /**
+     * @param name
+     * @return the action or null if there is no action by that name.
+     */
+    static Action find(final String name) {
+        for (final Action action : values()) {
+            if (action.getName().equals(name)) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param duration
+     * @return the duration in milliseconds.
+     * @throws ParseException in case the duration is malformed.
+     */
+    static long parseDuration(final String duration) throws ParseException {
+        final Matcher matcher = DURATION.matcher(duration.trim());
+        if (!matcher.matches()) {
+            throw new ParseException("Illegal duration \"" + duration + "\", expected e.g. 500ms, 30s, 1m or 1hr", 0);
+        }
+
+        final long value = Long.parseLong(matcher.group(1));
+        final String unit = matcher.group(2) == null ? "s" : matcher.group(2);
+        switch (unit) {
+            case "ms":
+                return value;
+            case "m":
+            case "min":
+                return TimeUnit.MINUTES.toMillis(value);
+            case "h":
+            case "hr":
+                return TimeUnit.HOURS.toMillis(value);
+            default:
+                return TimeUnit.SECONDS.toMillis(value);
+        }
+    }
+
+    /**
+     * @return the one and only value of the argument or the default value if it wasn't given.
+     */
+    private static String single(final CommandLine cmd, final Argument<String> argument, final String defaultValue) {
+        final List<String> values = cmd.getValues(argument);
+        if (values.size() > 1) {
+            throw new ParseException("Expected at most one value of " + argument.getLongName().orElse("")
+                    + " but got " + values, 0);
+        }
+        return values.isEmpty() ? defaultValue : values.get(0);
+    }
+
+    private static Step step(final String action, final Function<ScenarioContext, CompletableFuture<Void>> execute) {
+        return new Step() {
+            @Override
+            public String getAction() {
+                return action;
+            }
+
+            @Override
+            public CompletableFuture<Void> execute(final ScenarioContext context) {
+                return execute.apply(context);
+            }
+
+            @Override
+            public String toString() {
+                return action;
+            }
+        };
+    }
+
+    /**
+     * Apply the same operation to all the instances at the same time.
+     *
+     * @return a future that completes once the operation has completed on all of the instances, or
+     * completes exceptionally if it failed on any of them.
+     */
+    private static CompletableFuture<Void> allOf(final List<SIPp> instances,
+                                                 final Function<SIPp, CompletableFuture<SIPp>> operation) {
+        final CompletableFuture<?>[] futures = instances.stream().map(operation).toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * The arguments shared among the actions.
+     */
+    private static final class Args {
+
+        static final Argument<Boolean> FORCE = Argument.withShortName("-f")
+                .withLongName("--force")
+                .withDescription("Force the process to stop (will eventually kill it if it doesn't stop by itself)")
+                .withNoArguments()
+                .withValueWhenPresent(true)
+                .withValueWhenAbsent(false)
+                .build();
+
+        static final Argument<Integer> SET = Argument.withLongName("--set")
+                .withDescription("The rate, in calls per second")
+                .withSingleArgument()
+                .ofType(Integer.class)
+                .isRequired()
+                .build();
+
+        static final Argument<String> TARGETS = Argument.withLongName("target")
+                .withDescription("The name of the client(s)")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .isRequired()
+                .build();
+
+        static final Argument<String> TYPES = Argument.withLongName("--type")
+                .withDescription("What to monitor")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .withChoices("cpu", "iostat", "gc")
+                .withDefaultValue("cpu")
+                .build();
+
+        static final Argument<String> MONITOR_TARGETS = Argument.withLongName("--target")
+                .withDescription("The name of the client(s) to monitor")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<Integer> PIDS = Argument.withLongName("--pid")
+                .withDescription("The pid of any other process(es) to monitor, such as the system under test")
+                .withAtLeastOneArgument()
+                .ofType(Integer.class)
+                .build();
+
+        static final Argument<String> CALLS = Argument.withLongName("--calls")
+                .withDescription("The name of the client(s) making the calls, to track the CPU cost per call "
+                        + "of the monitored process(es)")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> REPORT_NAME = Argument.withLongName("--name")
+                .withDescription("The name of the report")
+                .withSingleArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> FROM = Argument.withLongName("--from")
+                .withDescription("The mark to report from, by default the start of the scenario")
+                .withSingleArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> TO = Argument.withLongName("--to")
+                .withDescription("The mark to report up until, by default the time the report is generated")
+                .withSingleArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> TITLE = Argument.withLongName("--title")
+                .withDescription("The title of the report, by default its name")
+                .withSingleArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> FORMAT = Argument.withLongName("--type")
+                .withDescription("The format of the report")
+                .withSingleArgument()
+                .ofType(String.class)
+                .withChoices("html", "csv", "json")
+                .withDefaultValue("html")
+                .build();
+
+        static final Argument<String> INCLUDE = Argument.withLongName("--include")
+                .withDescription("What to include of the monitored processes, "
+                        + "the stats of the clients are always included")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .withChoices("cpu", "iostat", "gc")
+                .build();
+
+        static final Argument<String> REPORT_TARGETS = Argument.withLongName("--target")
+                .withDescription("The name of the client(s) and monitored process(es) to report on, "
+                        + "by default all of them")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .build();
+
+        static final Argument<String> ARCHIVE = Argument.withLongName("archive")
+                .withDescription("The name of the archive, which is written to the output folder")
+                .withSingleArgument()
+                .ofType(String.class)
+                .isRequired()
+                .build();
+
+        static final Argument<String> ARCHIVE_INCLUDE = Argument.withLongName("--include")
+                .withDescription("What to archive, by default everything")
+                .withAtLeastOneArgument()
+                .ofType(String.class)
+                .withChoices("stats", "histograms", "monitor", "costs", "files", ArchiveContent.EVERYTHING)
+                .build();
+
+        static final Argument<String> DURATION = Argument.withLongName("duration")
+                .withDescription("For how long, e.g. 500ms, 30s, 1m or 1hr")
+                .withSingleArgument()
+                .ofType(String.class)
+                .isRequired()
+                .build();
+
+        static final Argument<String> NAME = Argument.withLongName("name")
+                .withDescription("The name of the mark")
+                .withSingleArgument()
+                .ofType(String.class)
+                .isRequired()
+                .build();
+    }
+}
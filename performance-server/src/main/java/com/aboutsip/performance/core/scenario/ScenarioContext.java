@@ -0,0 +1,198 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.aboutsip.performance.config.SIPpInstanceConfig;
+import com.aboutsip.performance.core.report.RangeReport;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.SIPpManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The state of a running {@link ScenarioPlan}, i.e., the SIPp instances it has started
+ * so far, by the name of their client, the marks it has made and the reports it has generated.
+ */
+public final class ScenarioContext {
+
+    /**
+     * Every run has an implicit mark at its very beginning and at its very end.
+     */
+    public static final String START_MARK = "start";
+    public static final String END_MARK = "end";
+
+    private final SIPpManager manager;
+    private final Map<String, SIPpInstanceConfig> clients;
+    private final Map<String, SIPp> instances = new ConcurrentHashMap<>();
+    private final File outputFolder;
+
+    /**
+     * The marks in the order they were made and the time, in nanoseconds since the epoch,
+     * at which they were made. Only ever modified by the step that is currently executing.
+     */
+    private final Map<String, Long> marks = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private final Map<String, RangeReport> reports = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * The wall clock only has millisecond precision so the marks are the wall clock time at which
+     * the context was created plus however much time {@link System#nanoTime()} says has passed
+     * since then. Not only does that give us nanoseconds, the marks can't go backwards either.
+     */
+    private final long originNanos = System.currentTimeMillis() * 1_000_000L;
+    private final long originTicks = System.nanoTime();
+
+    ScenarioContext(final SIPpManager manager, final Map<String, SIPpInstanceConfig> clients, final File outputFolder) {
+        this.manager = manager;
+        this.clients = clients;
+        this.outputFolder = outputFolder;
+    }
+
+    public SIPpManager getManager() {
+        return manager;
+    }
+
+    public ScheduledExecutorService getExecutorService() {
+        return manager.getExecutorService();
+    }
+
+    /**
+     * Where the reports, archives etc. of the run end up.
+     */
+    public File getOutputFolder() {
+        return outputFolder;
+    }
+
+    /**
+     * Create a new SIPp instance for the named client. Every time a client is started
+     * it gets a new instance since a stopped instance can't be started again.
+     *
+     * @param name the name of the client as configured in the scenario.
+     * @return
+     * @throws IllegalArgumentException in case there is no such client.
+     */
+    SIPp newInstance(final String name) throws IllegalArgumentException {
+        final SIPpInstanceConfig config = clients.get(name);
+        if (config == null) {
+            throw new IllegalArgumentException("There is no client named \"" + name + "\"");
+        }
+
+        final SIPp.Builder builder = manager.newInstance().withFriendlyName(name);
+        if (config.getScenario() != null) {
+            builder.withScenario(config.getScenarioFolder() != null
+                    ? new File(config.getScenarioFolder(), config.getScenario()).getPath()
+                    : config.getScenario());
+        }
+        if (config.getHost() != null) {
+            builder.withListenAddress(config.getHost());
+        }
+        if (config.getPort() > 0) {
+            builder.withListenPort(config.getPort());
+        }
+        builder.withRemoteHost(config.getRemoteHost());
+        if (config.getRemotePort() > 0) {
+            builder.withRemotePort(config.getRemotePort());
+        }
+
+        final SIPp sipp = builder.build();
+        instances.put(name, sipp);
+        return sipp;
+    }
+
+    /**
+     * Get the instance of the named client.
+     *
+     * @param name
+     * @return
+     * @throws IllegalStateException in case the client hasn't been started.
+     */
+    public SIPp getInstance(final String name) throws IllegalStateException {
+        final SIPp sipp = instances.get(name);
+        if (sipp == null) {
+            throw new IllegalStateException("The client \"" + name + "\" has not been started");
+        }
+        return sipp;
+    }
+
+    /**
+     * The pid of the current process of the named client, which changes every time the client
+     * is started (and restarted).
+     *
+     * @param name
+     * @return the pid or -1 if the client isn't running.
+     */
+    public int getPid(final String name) {
+        final SIPp sipp = instances.get(name);
+        return sipp != null ? sipp.getPid() : -1;
+    }
+
+    public List<SIPp> getInstances(final List<String> names) throws IllegalStateException {
+        final List<SIPp> list = new ArrayList<>(names.size());
+        names.forEach(name -> list.add(getInstance(name)));
+        return list;
+    }
+
+    /**
+     * All the instances this run has started, whether they are still running or not.
+     */
+    public Map<String, SIPp> getAllInstances() {
+        return Collections.unmodifiableMap(instances);
+    }
+
+    /**
+     * Mark the current point in time.
+     *
+     * @param name
+     * @return the time of the mark in nanoseconds since the epoch.
+     */
+    long mark(final String name) {
+        final long now = now();
+        marks.put(name, now);
+        return now;
+    }
+
+    /**
+     * @return the current time in nanoseconds since the epoch, on the same clock as the marks.
+     */
+    public long now() {
+        return originNanos + (System.nanoTime() - originTicks);
+    }
+
+    /**
+     * Get the time of the named mark.
+     *
+     * @param name
+     * @return the time in nanoseconds since the epoch or -1 if there is no such mark (yet).
+     */
+    public long getMark(final String name) {
+        final Long mark = marks.get(name);
+        return mark != null ? mark : -1;
+    }
+
+    /**
+     * @return the marks made so far, in the order they were made.
+     */
+    public Map<String, Long> getMarks() {
+        synchronized (marks) {
+            return new LinkedHashMap<>(marks);
+        }
+    }
+
+    void addReport(final RangeReport report) {
+        reports.put(report.getName(), report);
+    }
+
+    /**
+     * @return the reports generated so far, in the order they were generated.
+     */
+    public Map<String, RangeReport> getReports() {
+        synchronized (reports) {
+            return new LinkedHashMap<>(reports);
+        }
+    }
+}
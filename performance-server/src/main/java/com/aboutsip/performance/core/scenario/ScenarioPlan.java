@@ -0,0 +1,166 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.aboutsip.performance.config.SIPpInstanceConfig;
+import com.aboutsip.performance.config.ScenarioConfig;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.SIPpManager;
+import io.parsenip.ParseException;
+import io.parsenip.Tokenizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The actions of a {@link ScenarioConfig} compiled into steps that can be executed, over and
+ * over again if you like, without having to parse anything.
+ *
+ * All actions are parsed and validated when the plan is compiled so a typo in the last action
+ * of a scenario that runs for hours is caught before anything has been started. When the plan
+ * is run, the steps are executed one after another but a step with multiple targets (e.g.
+ * "start uac1 uac2") acts on all of them in parallel. If a step fails the rest of the plan is
+ * abandoned and every client the plan started is stopped, so that nothing is left generating
+ * traffic unattended.
+ */
+public final class ScenarioPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScenarioPlan.class);
+
+    private final String name;
+    private final Map<String, SIPpInstanceConfig> clients;
+    private final File outputFolder;
+    private final List<Step> steps;
+
+    private ScenarioPlan(final String name, final Map<String, SIPpInstanceConfig> clients, final File outputFolder,
+                         final List<Step> steps) {
+        this.name = name;
+        this.clients = clients;
+        this.outputFolder = outputFolder;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile the actions of the scenario.
+     *
+     * @param config
+     * @return
+     * @throws IllegalArgumentException in case any of the actions is malformed or doesn't make sense
+     * at that point of the scenario. The message says which action it is and what is wrong with it.
+     */
+    public static ScenarioPlan compile(final ScenarioConfig config) throws IllegalArgumentException {
+        final Map<String, SIPpInstanceConfig> clients = config.getClients() != null
+                ? config.getClients() : Collections.emptyMap();
+        final List<String> actions = config.getActions() != null ? config.getActions() : Collections.emptyList();
+
+        final Validator validator = new Validator(clients.keySet());
+        final List<Step> steps = new ArrayList<>(actions.size());
+        for (int i = 0; i < actions.size(); ++i) {
+            final String action = actions.get(i) != null ? actions.get(i).trim() : "";
+            try {
+                steps.add(compile(action, validator));
+            } catch (final ParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Action #" + (i + 1) + " \"" + action + "\" is invalid: "
+                        + e.getMessage(), e);
+            }
+        }
+
+        final File outputFolder = config.getOutputFolder() != null ? config.getOutputFolder() : new File(".");
+        return new ScenarioPlan(config.getName(), clients, outputFolder, Collections.unmodifiableList(steps));
+    }
+
+    private static Step compile(final String action, final Validator validator) {
+        final String name = Tokenizer.getNextToken(action).orElseThrow(() ->
+                new ParseException("The action is empty", 0));
+        final Action compiler = Action.find(name);
+        if (compiler == null) {
+            throw new ParseException("Unknown action \"" + name + "\"", 0);
+        }
+        return compiler.compile(action, compiler.parse(action), validator);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Run the plan on the executor of the manager.
+     *
+     * @param manager
+     * @return a future that completes with the result once the plan has run to completion or
+     * a step failed. The future itself never completes exceptionally, check
+     * {@link ScenarioResult#isSuccess()}.
+     */
+    public CompletableFuture<ScenarioResult> run(final SIPpManager manager) {
+        final ScenarioContext context = new ScenarioContext(manager, clients, outputFolder);
+        final List<StepResult> results = Collections.synchronizedList(new ArrayList<>(steps.size()));
+        final long start = System.nanoTime();
+        context.mark(ScenarioContext.START_MARK);
+        logger.info("Running scenario \"{}\" with {} steps", name, steps.size());
+
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < steps.size(); ++i) {
+            final int index = i;
+            chain = chain.thenCompose(v -> execute(index, steps.get(index), context, results));
+        }
+
+        return chain.handle((v, t) -> {
+            context.mark(ScenarioContext.END_MARK);
+            final ScenarioResult result = new ScenarioResult(name, new ArrayList<>(results), context.getMarks(),
+                    context.getReports(), System.nanoTime() - start);
+            if (result.isSuccess()) {
+                logger.info("Scenario \"{}\" completed in {} ms", name, String.format("%.1f", result.getDurationMillis()));
+            } else {
+                logger.warn("Scenario \"{}\" failed after {} ms, stopping all of its clients", name,
+                        String.format("%.1f", result.getDurationMillis()));
+                stopAll(context);
+            }
+            return result;
+        });
+    }
+
+    private static CompletableFuture<Void> execute(final int index, final Step step, final ScenarioContext context,
+                                                   final List<StepResult> results) {
+        final long startTime = System.currentTimeMillis();
+        final long start = System.nanoTime();
+
+        CompletableFuture<Void> future;
+        try {
+            future = step.execute(context);
+        } catch (final RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+
+        return future.whenComplete((v, t) -> {
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            final StepResult result = new StepResult(index, step.getAction(), startTime, System.nanoTime() - start,
+                    cause);
+            results.add(result);
+            if (cause == null) {
+                logger.info("{}", result);
+            } else {
+                logger.warn("{}", result, cause);
+            }
+        });
+    }
+
+    private static void stopAll(final ScenarioContext context) {
+        for (final SIPp sipp : context.getAllInstances().values()) {
+            try {
+                sipp.stop(true);
+            } catch (final IllegalStateException e) {
+                // never got started
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.aboutsip.performance.core.report.RangeReport;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of running a {@link ScenarioPlan}: how every step went and how long it took.
+ * If a step fails, the steps after it are never run and are not part of the result.
+ */
+public final class ScenarioResult {
+
+    private final String name;
+    private final List<StepResult> steps;
+    private final Map<String, Long> marks;
+    private final Map<String, RangeReport> reports;
+    private final long durationNanos;
+
+    ScenarioResult(final String name, final List<StepResult> steps, final Map<String, Long> marks,
+                   final Map<String, RangeReport> reports, final long durationNanos) {
+        this.name = name;
+        this.steps = Collections.unmodifiableList(steps);
+        this.marks = Collections.unmodifiableMap(marks);
+        this.reports = Collections.unmodifiableMap(reports);
+        this.durationNanos = durationNanos;
+    }
+
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty
+    public List<StepResult> getSteps() {
+        return steps;
+    }
+
+    /**
+     * The marks made during the run, in nanoseconds since the epoch, including the
+     * implicit {@link ScenarioContext#START_MARK} and {@link ScenarioContext#END_MARK}.
+     */
+    @JsonProperty
+    public Map<String, Long> getMarks() {
+        return marks;
+    }
+
+    /**
+     * The snapshot reports generated during the run, by their name.
+     */
+    @JsonProperty
+    public Map<String, RangeReport> getReports() {
+        return reports;
+    }
+
+    @JsonProperty
+    public double getDurationMillis() {
+        return durationNanos / 1e6;
+    }
+
+    /**
+     * @return true if every step of the plan was run and none of them failed.
+     */
+    @JsonProperty
+    public boolean isSuccess() {
+        return steps.stream().allMatch(StepResult::isSuccess);
+    }
+}
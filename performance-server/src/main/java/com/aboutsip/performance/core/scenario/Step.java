@@ -0,0 +1,25 @@
+package com.aboutsip.performance.core.scenario;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single, already parsed and validated, action of a {@link ScenarioPlan}.
+ */
+public interface Step {
+
+    /**
+     * The action as written in the scenario, e.g. "rate --set 10 theUacDude".
+     */
+    String getAction();
+
+    /**
+     * Execute this step. A step must not block the calling thread, anything that takes
+     * time (starting processes, sleeping etc) is done asynchronously and signalled through
+     * the returned future.
+     *
+     * @param context
+     * @return a future that completes once the step is done, or completes exceptionally
+     * if the step failed, in which case the rest of the plan is not executed.
+     */
+    CompletableFuture<Void> execute(ScenarioContext context);
+}
@@ -0,0 +1,77 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * How a single {@link Step} of a run went and how long it took.
+ */
+public final class StepResult {
+
+    private final int index;
+    private final String action;
+    private final long startTime;
+    private final long durationNanos;
+    private final Throwable error;
+
+    StepResult(final int index, final String action, final long startTime, final long durationNanos,
+               final Throwable error) {
+        this.index = index;
+        this.action = action;
+        this.startTime = startTime;
+        this.durationNanos = durationNanos;
+        this.error = error;
+    }
+
+    /**
+     * The index of the step in the plan, starting at zero.
+     */
+    @JsonProperty
+    public int getIndex() {
+        return index;
+    }
+
+    @JsonProperty
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * When the step was started, in milliseconds since the epoch.
+     */
+    @JsonProperty
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @JsonProperty
+    public double getDurationMillis() {
+        return durationNanos / 1e6;
+    }
+
+    @JsonProperty
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the reason the step failed or null if it didn't.
+     */
+    @JsonProperty
+    public String getError() {
+        return error != null ? String.valueOf(error.getMessage()) : null;
+    }
+
+    public Throwable getCause() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d \"%s\" %s in %.1f ms", index, action, isSuccess() ? "done" : "failed",
+                getDurationMillis());
+    }
+}
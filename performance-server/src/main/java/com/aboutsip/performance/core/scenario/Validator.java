@@ -0,0 +1,88 @@
+package com.aboutsip.performance.core.scenario;
+
+import io.parsenip.Argument;
+import io.parsenip.CommandLine;
+import io.parsenip.ParseException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of what the scenario has done up until the action being compiled, i.e., which
+ * clients are running and what marks have been made, so that we can tell whether the action
+ * makes sense at that point.
+ */
+final class Validator {
+
+    private final Set<String> clients;
+    private final Set<String> running = new HashSet<>();
+    private final Set<String> marks = new HashSet<>();
+    private final Set<String> reports = new HashSet<>();
+
+    Validator(final Set<String> clients) {
+        this.clients = clients;
+        marks.add(ScenarioContext.START_MARK);
+    }
+
+    /**
+     * Get the targets of the action, which must all be configured clients.
+     *
+     * @return the targets, without any duplicates.
+     */
+    List<String> targets(final CommandLine cmd, final Argument<String> argument)
+            throws ParseException, IllegalArgumentException {
+        final Set<String> targets = new LinkedHashSet<>(cmd.getValues(argument));
+        if (targets.isEmpty()) {
+            throw new ParseException("You must specify at least one target", 0);
+        }
+
+        targets.forEach(this::requireClient);
+        return new ArrayList<>(targets);
+    }
+
+    void requireClient(final String name) throws IllegalArgumentException {
+        if (!clients.contains(name)) {
+            throw new IllegalArgumentException("There is no client named \"" + name + "\"");
+        }
+    }
+
+    void requireRunning(final String name) throws IllegalArgumentException {
+        requireClient(name);
+        if (!running.contains(name)) {
+            throw new IllegalArgumentException("The client \"" + name + "\" has not been started at this point");
+        }
+    }
+
+    void start(final String name) throws IllegalArgumentException {
+        requireClient(name);
+        if (!running.add(name)) {
+            throw new IllegalArgumentException("The client \"" + name + "\" is already running at this point");
+        }
+    }
+
+    void stop(final String name) throws IllegalArgumentException {
+        requireRunning(name);
+        running.remove(name);
+    }
+
+    void mark(final String name) throws IllegalArgumentException {
+        if (ScenarioContext.END_MARK.equals(name) || !marks.add(name)) {
+            throw new IllegalArgumentException("There already is a mark named \"" + name + "\"");
+        }
+    }
+
+    void requireMark(final String name) throws IllegalArgumentException {
+        if (!marks.contains(name)) {
+            throw new IllegalArgumentException("There is no mark named \"" + name + "\" at this point");
+        }
+    }
+
+    void report(final String name) throws IllegalArgumentException {
+        if (!reports.add(name)) {
+            throw new IllegalArgumentException("There already is a report named \"" + name + "\"");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.aboutsip.performance.core.sipp;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The means by which we control a SIPp process, which is either by typing on its
+ * stdin, just as you would do in the terminal, or by sending datagrams to its
+ * UDP control port (the -cp option).
+ */
+public interface CommandChannel extends Closeable {
+
+    /**
+     * Send keystrokes, e.g. '*' to increase the rate by 10 or 'q' to quit, just as if
+     * they were typed in the SIPp console. The keys are processed in order.
+     *
+     * @param keys
+     * @return a future that completes once the keys have been handed over to SIPp.
+     */
+    CompletableFuture<Void> sendKeys(String keys);
+
+    /**
+     * Whether or not {@link #execute(String)} is supported by this channel.
+     */
+    boolean isCommandSupported();
+
+    /**
+     * Execute a SIPp command, such as "set rate 500", which unlike the keystrokes allow
+     * us to set absolute values.
+     *
+     * @param command
+     * @return a future that completes once the command has been handed over to SIPp.
+     * @throws UnsupportedOperationException in case this channel doesn't support commands.
+     */
+    CompletableFuture<Void> execute(String command) throws UnsupportedOperationException;
+
+    /**
+     * Close the channel. Note that this doesn't affect the SIPp process in any way.
+     */
+    @Override
+    void close();
+}
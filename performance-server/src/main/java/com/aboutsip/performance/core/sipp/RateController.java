@@ -0,0 +1,147 @@
+package com.aboutsip.performance.core.sipp;
+
+/**
+ * A PID controller that figures out what rate SIPp should be told to run at in order for
+ * the actual call rate to end up at the target.
+ *
+ * SIPp will not always manage to push the rate you ask for. E.g., if the SUT is pushing back
+ * (slow responses, retransmissions etc) the actual rate, as reported by {@link StatsObject#getCallRate()},
+ * may fall short of the target. The controller compares the actual rate with the target every
+ * time new stats come in and adjusts the rate SIPp is asked to run at accordingly.
+ *
+ * The controller itself is just the math and doesn't know anything about SIPp per se. See
+ * {@link SIPp#holdRate(int, Gains)}.
+ */
+public final class RateController {
+
+    private final int target;
+    private final Gains gains;
+
+    private double integral;
+    private double previousError;
+    private boolean first = true;
+
+    public RateController(final int target, final Gains gains) {
+        if (target < 0) {
+            throw new IllegalArgumentException("The target rate cannot be negative");
+        }
+        this.target = target;
+        this.gains = gains != null ? gains : Gains.DEFAULT;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public Gains getGains() {
+        return gains;
+    }
+
+    /**
+     * Calculate the next rate SIPp should be asked to run at.
+     *
+     * @param currentRate the rate SIPp currently is asked to run at (the TargetRate in the SIPp stats).
+     * @param actualRate the rate SIPp actually achieved over the last period.
+     * @return the rate SIPp should be asked to run at.
+     */
+    public int update(final int currentRate, final double actualRate) {
+        final double error = target - actualRate;
+
+        // anti-windup. Never let the integral part alone push us
+        // further than the target itself.
+        if (gains.ki > 0) {
+            final double limit = Math.max(1, target) / gains.ki;
+            integral = Math.max(-limit, Math.min(limit, integral + error));
+        }
+
+        final double derivative = first ? 0 : error - previousError;
+        previousError = error;
+        first = false;
+
+        final double output = target + gains.kp * error + gains.ki * integral + gains.kd * derivative;
+
+        // never ask for more than the overdrive allows and never move
+        // further than the max step in one go.
+        final double max = Math.max(target * gains.maxOverdrive, target);
+        final double bounded = Math.max(0, Math.min(max, output));
+        final double stepped = Math.max(currentRate - gains.maxStep, Math.min(currentRate + gains.maxStep, bounded));
+        return (int) Math.round(stepped);
+    }
+
+    /**
+     * The configuration of the controller.
+     */
+    public static final class Gains {
+
+        /**
+         * Fairly conservative gains that work well with SIPp reporting stats once a second.
+         */
+        public static final Gains DEFAULT = new Gains(0.5, 0.2, 0.0, 50, 1.5);
+
+        private final double kp;
+        private final double ki;
+        private final double kd;
+        private final int maxStep;
+        private final double maxOverdrive;
+
+        private Gains(final double kp, final double ki, final double kd, final int maxStep, final double maxOverdrive) {
+            this.kp = kp;
+            this.ki = ki;
+            this.kd = kd;
+            this.maxStep = maxStep;
+            this.maxOverdrive = maxOverdrive;
+        }
+
+        /**
+         * @param kp the proportional gain.
+         * @param ki the integral gain.
+         * @param kd the derivative gain.
+         * @param maxStep the max change in rate (in CPS) we will ask SIPp to do in one go.
+         * @param maxOverdrive how far above the target rate we are willing to push SIPp in
+         *                     order to reach the target, as a factor of the target rate.
+         *                     E.g. 1.5 means that we will never ask SIPp for more than
+         *                     150% of the target rate.
+         * @return
+         * @throws IllegalArgumentException in case any of the gains are negative, the max step
+         *                                  is less than one or the overdrive is less than 1.0.
+         */
+        public static Gains of(final double kp, final double ki, final double kd, final int maxStep,
+                               final double maxOverdrive) throws IllegalArgumentException {
+            if (kp < 0 || ki < 0 || kd < 0) {
+                throw new IllegalArgumentException("The gains cannot be negative");
+            }
+            if (maxStep < 1) {
+                throw new IllegalArgumentException("The max step must be at least one");
+            }
+            if (maxOverdrive < 1.0) {
+                throw new IllegalArgumentException("The overdrive cannot be less than 1.0");
+            }
+            return new Gains(kp, ki, kd, maxStep, maxOverdrive);
+        }
+
+        public double getKp() {
+            return kp;
+        }
+
+        public double getKi() {
+            return ki;
+        }
+
+        public double getKd() {
+            return kd;
+        }
+
+        public int getMaxStep() {
+            return maxStep;
+        }
+
+        public double getMaxOverdrive() {
+            return maxOverdrive;
+        }
+
+        @Override
+        public String toString() {
+            return "kp=" + kp + ", ki=" + ki + ", kd=" + kd + ", maxStep=" + maxStep + ", maxOverdrive=" + maxOverdrive;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.aboutsip.performance.core.sipp;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Records that the underlying SIPp process of a {@link SIPp} died on us and was restarted.
+ */
+public final class RestartEvent {
+
+    private final int generation;
+    private final long timestamp;
+    private final int exitCode;
+    private final long uptime;
+    private final int rate;
+
+    public RestartEvent(final int generation, final long timestamp, final int exitCode, final long uptime, final int rate) {
+        this.generation = generation;
+        this.timestamp = timestamp;
+        this.exitCode = exitCode;
+        this.uptime = uptime;
+        this.rate = rate;
+    }
+
+    /**
+     * The generation of the process that died, where the very first process is generation zero.
+     */
+    @JsonProperty
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * When we detected that the process had died, in milliseconds since the epoch.
+     */
+    @JsonProperty
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @JsonProperty
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * For how long the process was running, in milliseconds.
+     */
+    @JsonProperty
+    public long getUptime() {
+        return uptime;
+    }
+
+    /**
+     * The rate the new process is started at, which is the last rate of the one that died.
+     */
+    @JsonProperty
+    public int getRate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return "Restart of generation " + generation + " (exit code " + exitCode + ", uptime " + uptime
+                + " ms) at " + rate + " CPS";
+    }
+}
@@ -1,10 +1,18 @@
 package com.aboutsip.performance.core.sipp;
 
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.placement.CpuPlacement;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public interface SIPp {
 
@@ -14,6 +22,13 @@ public interface SIPp {
     @JsonProperty
     String getFriendlyName();
 
+    /**
+     * The tags of this instance, which allow you to look at the stats of a group of
+     * instances together, see {@link com.aboutsip.performance.core.fleet.FleetAggregator}.
+     */
+    @JsonProperty
+    Set<String> getTags();
+
     /**
      * Get the target rate.
      *
@@ -25,7 +40,8 @@ public interface SIPp {
 
     /**
      * Get the current rate, which may or may not be
-     * equal to that of the target rate.
+     * equal to that of the target rate. If you need the actual rate to
+     * match the rate you ask for, see {@link #holdRate(int)}.
      *
      * @return the current call rate or -1.0 if the underlying SIPp process
      * isn't running or that we haven't received any stats from it just yet.
@@ -41,9 +57,124 @@ public interface SIPp {
     @JsonProperty
     int getRetransmissions();
 
+    /**
+     * Get the latest stats reported by SIPp.
+     *
+     * The returned {@link StatsObject} is an immutable snapshot, so if you need several
+     * values that are consistent with each other, grab the snapshot once and read them
+     * all off of it. Reading the stats never blocks the processing of new stats.
+     *
+     * @return the latest stats or null if the instance hasn't been started.
+     */
     @JsonIgnore
     StatsObject getStats();
 
+    /**
+     * All the stats we have received so far (or at least as many as we can hold on to),
+     * across restarts of the underlying SIPp process.
+     *
+     * @return
+     */
+    @JsonIgnore
+    StatsHistory getHistory();
+
+    /**
+     * The response times of all the calls so far, across restarts of the underlying
+     * SIPp process.
+     *
+     * @return a copy of the histogram or null if we haven't received any stats yet.
+     */
+    @JsonIgnore
+    Histogram getResponseTimeHistogram();
+
+    /**
+     * The response times between every two stats rows, lined up with {@link #getHistory()},
+     * e.g. for getting the response times of a particular range of time.
+     *
+     * @return
+     */
+    @JsonIgnore
+    HistogramHistory getResponseTimeHistory();
+
+    /**
+     * The response time percentiles of all the calls so far, see {@link Histogram#getPercentiles()}.
+     *
+     * @return the percentiles, or an empty map if we haven't received any stats yet.
+     */
+    @JsonProperty
+    Map<String, Double> getResponseTimePercentiles();
+
+    /**
+     * The response time percentiles of every response time counter, i.e. of every rtd in the
+     * scenario, such as INVITE to 180 and INVITE to 200, of all the calls so far.
+     *
+     * @return the percentiles by the name of the counter, e.g. "1" for ResponseTime1, in the order
+     * SIPp reports them.
+     */
+    @JsonProperty
+    Map<String, Map<String, Double>> getResponseTimeCounterPercentiles();
+
+    /**
+     * The call lengths of all the calls so far, across restarts of the underlying SIPp process.
+     *
+     * @return a copy of the histogram or null if we haven't received any stats yet.
+     */
+    @JsonIgnore
+    Histogram getCallLengthHistogram();
+
+    /**
+     * The call lengths of the calls that ended between the two latest stats rows. Compare
+     * it to {@link #getCallLengthHistogram()} to see whether the calls are getting longer
+     * or shorter over the course of a long running test.
+     *
+     * @return a copy of the histogram or null if we haven't received any stats yet.
+     */
+    @JsonIgnore
+    Histogram getLatestCallLengths();
+
+    /**
+     * The call length percentiles of all the calls so far, see {@link Histogram#getPercentiles()}.
+     *
+     * @return the percentiles, or an empty map if we haven't received any stats yet.
+     */
+    @JsonProperty
+    Map<String, Double> getCallLengthPercentiles();
+
+    /**
+     * The pid of the underlying SIPp process, which changes every time the process is restarted.
+     *
+     * @return the pid or -1 if the process isn't running.
+     */
+    @JsonProperty
+    int getPid();
+
+    /**
+     * The CPU the underlying SIPp process is pinned to, see {@link CpuPlacement}.
+     *
+     * @return the assignment or null if the process isn't pinned to any CPU.
+     */
+    @JsonProperty
+    CpuPlacement.Assignment getPlacement();
+
+    /**
+     * The number of bytes SIPp has written to its stats files that we have yet
+     * to process. If this keeps growing we are not keeping up with SIPp.
+     *
+     * @return the backlog in bytes, or zero if the instance isn't running.
+     */
+    @JsonProperty
+    long getBacklog();
+
+    /**
+     * Register a listener that will be notified every time new stats are reported.
+     * The listener stays registered across restarts of the underlying SIPp process.
+     *
+     * @param listener
+     */
+    void addStatsListener(StatsListener listener);
+
+    void removeStatsListener(StatsListener listener);
+
     /**
      * Start this instance.
      *
@@ -65,6 +196,14 @@ public interface SIPp {
      */
     CompletableFuture<SIPp> stop(boolean force) throws IllegalStateException;
 
+    /**
+     * Completes once this instance is gone for good, which is when it has been stopped or
+     * when its process kept on dying and we gave up on restarting it.
+     *
+     * @return
+     */
+    CompletableFuture<SIPp> onTermination();
+
     /**
      * Delete any files that was created when running sipp
      * @return
@@ -95,11 +234,58 @@ public interface SIPp {
     /**
      * Set the rate to the specified value.
      *
+     * Note that this will turn off any ongoing {@link #holdRate(int)}.
+     *
      * @param rate
-     * @return
+     * @return a future that completes once SIPp reports the new target rate, or completes
+     * exceptionally with a {@link java.util.concurrent.TimeoutException} if it never does.
      */
     CompletableFuture<SIPp> setRate(int rate);
 
+    /**
+     * Same as {@link #holdRate(int, RateController.Gains)} but with the default gains.
+     */
+    CompletableFuture<SIPp> holdRate(int rate);
+
+    /**
+     * Set the rate and then keep on adjusting it so that the actual call rate, as
+     * reported by SIPp, is held at the requested rate. E.g., if the SUT is pushing back
+     * and SIPp only manages to push 90 CPS when asked for 100 we will ask SIPp
+     * for a little more until we actually get 100.
+     *
+     * The rate is held until you call {@link #setRate(int)}, {@link #increase10()},
+     * {@link #decrease10()} or ask to hold another rate.
+     *
+     * @param rate the rate to hold.
+     * @param gains the configuration of the {@link RateController}.
+     * @return
+     * @throws IllegalStateException in case this instance was never started.
+     */
+    CompletableFuture<SIPp> holdRate(int rate, RateController.Gains gains) throws IllegalStateException;
+
+    /**
+     * @return the rate we are currently holding or -1 if we are not holding any rate.
+     */
+    @JsonProperty
+    int getHeldRate();
+
+    /**
+     * Every time the underlying SIPp process has died and been restarted. When that happens
+     * the new process starts at the rate the old one was running at and the cumulative
+     * counters keep on counting from where the old process left off.
+     *
+     * @return
+     */
+    @JsonProperty
+    List<RestartEvent> getRestarts();
+
+    /**
+     * The generation of the underlying SIPp process, i.e., the number of times it has been
+     * restarted.
+     */
+    @JsonProperty
+    int getGeneration();
+
     enum Type {
         UAC, UAS;
     }
@@ -108,16 +294,82 @@ public interface SIPp {
      * The version of SIPp.
      */
     enum Version {
-        THREE_DOT_ZERO,
-        THREE_DOT_ONE,
-        THREE_DOT_TWO,
-        THREE_DOT_THREE,
-        THREE_DOT_FOUR;
+        THREE_DOT_ZERO(3, 0),
+        THREE_DOT_ONE(3, 1),
+        THREE_DOT_TWO(3, 2),
+        THREE_DOT_THREE(3, 3),
+        THREE_DOT_FOUR(3, 4),
+        THREE_DOT_FIVE(3, 5),
+        THREE_DOT_SIX(3, 6),
+        THREE_DOT_SEVEN(3, 7);
+
+        /**
+         * What we go with if we can't figure out what version we are running.
+         */
+        public static final Version DEFAULT = THREE_DOT_THREE;
+
+        /**
+         * What "sipp -v" prints, e.g. "SIPp v3.4.1-TLS-SCTP-PCAP-RTPSTREAM."
+         */
+        private static final Pattern VERSION = Pattern.compile("SIPp v(\\d+)\\.(\\d+)");
+
+        private final int major;
+        private final int minor;
+
+        Version(final int major, final int minor) {
+            this.major = major;
+            this.minor = minor;
+        }
+
+        public int getMajor() {
+            return major;
+        }
+
+        public int getMinor() {
+            return minor;
+        }
+
+        /**
+         * Find the version in the output of "sipp -v". A later minor version than the ones we
+         * know of is treated as the latest one we do know of within the same major version,
+         * since the stats format has been stable across minor versions so far.
+         *
+         * @param output
+         * @return the version or null if the output doesn't contain a version we can handle.
+         */
+        public static Version parse(final String output) {
+            if (output == null) {
+                return null;
+            }
+
+            final Matcher matcher = VERSION.matcher(output);
+            if (!matcher.find()) {
+                return null;
+            }
+
+            final int major = Integer.parseInt(matcher.group(1));
+            final int minor = Integer.parseInt(matcher.group(2));
+            Version found = null;
+            for (final Version version : values()) {
+                if (version.major == major && version.minor <= minor) {
+                    found = version;
+                }
+            }
+            return found;
+        }
     }
 
     interface Builder {
         Builder withFriendlyName(String name);
 
+        /**
+         * Tag the instance, e.g. "uac" or "rack-4". May be called several times.
+         *
+         * @param tag
+         * @return
+         */
+        Builder withTag(String tag);
+
         /**
          * Set the initial rate. I.e., the rate SIPp will start with.
          *
@@ -159,6 +411,16 @@ public interface SIPp {
 
         Builder withRemotePort(int port);
 
+        /**
+         * The local UDP port SIPp will listen to for commands (the -cp option). If not
+         * specified, any open port will be selected. Either way, if SIPp finds the port
+         * taken it is started again with another open port.
+         *
+         * @param port
+         * @return
+         */
+        Builder withControlPort(int port);
+
         SIPp build();
     }
 }
@@ -1,13 +1,24 @@
 package com.aboutsip.performance.core.sipp;
 
+import com.aboutsip.performance.core.fleet.FleetAggregator;
+import com.aboutsip.performance.core.monitor.ProcessMonitor;
+import com.aboutsip.performance.core.placement.CpuPlacement;
+import com.aboutsip.performance.core.sipp.impl.ControlSocket;
 import com.aboutsip.performance.core.sipp.impl.DefaultSIPp;
+import com.aboutsip.performance.core.sipp.impl.StdinCommandChannel;
+import com.aboutsip.performance.core.sipp.impl.TailingService;
+import com.aboutsip.performance.core.sipp.impl.VersionProbe;
 import com.google.common.base.Preconditions;
 
 import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -17,17 +28,113 @@ import java.util.stream.Collectors;
 public final class SIPpManager {
 
     private final Map<UUID, SIPp> instances;
+    private final Map<UUID, StatsBroadcaster> broadcasters = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps running totals of the stats across all instances.
+     */
+    private final FleetAggregator fleet = new FleetAggregator();
     private final ScheduledExecutorService executorService;
+    private final TailingService tailingService;
+
+    /**
+     * Shared across all SIPp instances and used for sending commands to their control ports.
+     */
+    private final ControlSocket controlSocket;
+
+    /**
+     * Shared across all SIPp instances so that every SIPp executable is only asked for its
+     * version once and every stats header is only compiled once.
+     */
+    private final VersionProbe versionProbe;
+    private final StatsLabelsRegistry statsLabels = new StatsLabelsRegistry();
+
+    /**
+     * Decides what CPU every SIPp process is pinned to.
+     */
+    private final CpuPlacement cpuPlacement;
+
+    /**
+     * Samples the CPU, IO and memory of the processes we are asked to keep an eye on.
+     */
+    private final ProcessMonitor processMonitor;
+
+    /**
+     * How many stats samples to keep per SIPp instance and whether
+     * to keep them off-heap.
+     */
+    private final int historyCapacity;
+    private final boolean offHeapHistory;
 
     public SIPpManager() {
         this(Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors() * 2));
     }
 
     public SIPpManager(final ScheduledExecutorService executorService) {
+        this(executorService, StatsHistory.DEFAULT_CAPACITY, false);
+    }
+
+    public SIPpManager(final ScheduledExecutorService executorService, final int historyCapacity, final boolean offHeapHistory) {
+        this(executorService, historyCapacity, offHeapHistory, true);
+    }
+
+    /**
+     * @param pinToCpu whether to pin every SIPp process to a CPU of its own (or at least the least
+     *                 loaded one), see {@link CpuPlacement}.
+     */
+    public SIPpManager(final ScheduledExecutorService executorService, final int historyCapacity,
+                       final boolean offHeapHistory, final boolean pinToCpu) {
+        Preconditions.checkArgument(historyCapacity > 0, "The history capacity must be at least one");
         this.executorService = executorService;
+        this.historyCapacity = historyCapacity;
+        this.offHeapHistory = offHeapHistory;
+        this.tailingService = new TailingService(executorService);
+        this.controlSocket = new ControlSocket(executorService);
+        this.versionProbe = new VersionProbe(executorService);
+        this.cpuPlacement = pinToCpu ? CpuPlacement.detect(executorService) : CpuPlacement.disabled();
+        this.processMonitor = new ProcessMonitor(historyCapacity, offHeapHistory);
         this.instances = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Release the threads and sockets shared by all the SIPp instances, which are also taken
+     * out of the totals of the fleet. The executor isn't ours so that is left alone.
+     */
+    public void shutdown() {
+        instances.values().forEach(fleet::unregister);
+        tailingService.close();
+        controlSocket.close();
+        processMonitor.shutdown();
+    }
+
+    /**
+     * The total number of bytes that all SIPp instances have written to their
+     * stats files but that we have yet to process.
+     *
+     * @return
+     */
+    public long getBacklog() {
+        return tailingService.getBacklog();
+    }
+
+    public FleetAggregator getFleet() {
+        return fleet;
+    }
+
+    public ProcessMonitor getProcessMonitor() {
+        return processMonitor;
+    }
+
+    /**
+     * The executor all the SIPp instances are running on, which is also what you
+     * should use for anything you do on top of them, such as running a scenario.
+     *
+     * @return
+     */
+    public ScheduledExecutorService getExecutorService() {
+        return executorService;
+    }
+
     public List<SIPp> getAllInstances() {
         return instances.values().stream().collect(Collectors.toList());
     }
@@ -36,6 +143,32 @@ public final class SIPpManager {
         return Optional.ofNullable(instances.get(uuid));
     }
 
+    /**
+     * Get the {@link StatsBroadcaster} of the given instance, which is only attached to
+     * the instance the first time someone asks for it.
+     *
+     * @param uuid
+     * @return
+     */
+    public Optional<StatsBroadcaster> getBroadcaster(final UUID uuid) {
+        return getInstance(uuid).map(sipp -> broadcasters.computeIfAbsent(uuid, id -> StatsBroadcaster.attach(sipp)));
+    }
+
+    /**
+     * Start all the given instances at the same time. Starting an instance doesn't tie up
+     * any thread while waiting for SIPp to get going so starting many is about as quick
+     * as starting one.
+     *
+     * @param instances
+     * @return a future that completes once all of the instances have started, or completes
+     * exceptionally if any of them failed to start.
+     */
+    public CompletableFuture<List<SIPp>> start(final Collection<SIPp> instances) {
+        final List<CompletableFuture<SIPp>> futures = instances.stream().map(SIPp::start).collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
     public SIPp.Builder newInstance() {
         final UUID uuid = UUID.randomUUID();
         return new SippBuilder(uuid);
@@ -45,6 +178,7 @@ public final class SIPpManager {
 
         private final UUID uuid;
         private String friendlyName;
+        private final Set<String> tags = new HashSet<>();
 
         private String scenario;
 
@@ -53,6 +187,8 @@ public final class SIPpManager {
 
         private int initialRate = 1;
 
+        private int controlPort = -1;
+
         public SippBuilder(final UUID uuid) {
             this.uuid = uuid;
         }
@@ -69,6 +205,13 @@ public final class SIPpManager {
             return this;
         }
 
+        @Override
+        public SIPp.Builder withTag(final String tag) {
+            Preconditions.checkArgument(tag != null && !tag.isEmpty(), "The tag cannot be empty");
+            tags.add(tag);
+            return this;
+        }
+
         @Override
         public SIPp.Builder withScenario(final String scenario) {
             this.scenario = scenario;
@@ -102,6 +245,13 @@ public final class SIPpManager {
             return this;
         }
 
+        @Override
+        public SIPp.Builder withControlPort(final int port) {
+            Preconditions.checkArgument(port > 0, "You must specify a valid port");
+            this.controlPort = port;
+            return this;
+        }
+
         @Override
         public SIPp build() {
             // final ProcessBuilder builder = new ProcessBuilder("sipp", "-sn");
@@ -112,19 +262,47 @@ public final class SIPpManager {
             configureStatsOptions(args);
             configureRemoteHostOptions(args);
             configureInitialRate(args);
+            final BiFunction<List<String>, Process, CommandChannel> commandChannelFactory = configureControlPort(args);
 
             final ProcessBuilder builder = new ProcessBuilder(args);
             // TODO: is not going to work for all operating systems.
             builder.redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")));
 
-            final SIPp sipp = new DefaultSIPp(executorService, builder, uuid, baseName, friendlyName);
+            final SIPp sipp = new DefaultSIPp(executorService, tailingService, versionProbe, statsLabels, cpuPlacement, builder,
+                    commandChannelFactory, uuid, baseName, friendlyName, tags,
+                    StatsHistory.create(historyCapacity, offHeapHistory));
             final SIPp current = instances.putIfAbsent(uuid, sipp);
             if (current != null) {
                 throw new IllegalStateException("There was already another SIPp instance with uuid " + uuid);
             }
+            fleet.register(sipp);
             return sipp;
         }
 
+        /**
+         * If we can, we control SIPp through its UDP control port, which allows us to set the
+         * rate etc with a single command. Otherwise we'll have to type on its stdin.
+         *
+         * The port we pick may be taken by someone else before SIPp gets to bind it, in which case
+         * the process is started again with another port (see {@link DefaultSIPp}) so the channel
+         * goes to whatever port the process was actually started with.
+         *
+         * @param args
+         * @return the factory for the {@link CommandChannel} of every process started.
+         */
+        private BiFunction<List<String>, Process, CommandChannel> configureControlPort(final List<String> args) {
+            if (!controlSocket.isAvailable()) {
+                return (command, process) -> new StdinCommandChannel(process.getOutputStream(), executorService);
+            }
+
+            final int port = controlPort != -1 ? controlPort : ControlSocket.findFreePort();
+            args.add("-cp");
+            args.add(Integer.toString(port));
+
+            return (command, process) -> controlSocket.channel(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), ControlSocket.getPort(command)));
+        }
+
         private void configureInitialRate(final List<String> args) {
             args.add("-r");
             args.add(Integer.toString(initialRate));
@@ -0,0 +1,273 @@
+package com.aboutsip.performance.core.sipp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the stats of a {@link SIPp} to any number of subscribers, e.g. dashboards connected
+ * over Server-Sent Events, as soon as they are read off of the stats file.
+ *
+ * Subscribers asking for the same fields and the same down-sampling share a {@link Selection}
+ * and every sample is serialized once per selection, no matter how many subscribers there are.
+ * Every subscriber has a bounded queue of serialized events and if it can't keep up the oldest
+ * events are dropped rather than holding up everyone else.
+ */
+public final class StatsBroadcaster implements StatsListener {
+
+    /**
+     * The max number of events queued up for a single subscriber.
+     */
+    private static final int MAX_QUEUED_EVENTS = 64;
+
+    private final SIPp sipp;
+
+    private final Map<Selection, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private StatsBroadcaster(final SIPp sipp) {
+        this.sipp = sipp;
+    }
+
+    /**
+     * Create a new broadcaster and register it with the {@link SIPp}.
+     *
+     * @param sipp
+     * @return
+     */
+    public static StatsBroadcaster attach(final SIPp sipp) {
+        final StatsBroadcaster broadcaster = new StatsBroadcaster(sipp);
+        sipp.addStatsListener(broadcaster);
+        return broadcaster;
+    }
+
+    public SIPp getSIPp() {
+        return sipp;
+    }
+
+    /**
+     * Subscribe to the stats.
+     *
+     * @param fields the fields to include, either by their label (e.g. "CallRate(P)") or by the
+     *               name of the {@link StatsMetric}. If empty, all fields are included.
+     * @param every only push every n:th sample. The periodic counters of the samples skipped are
+     *              added to the one pushed so nothing is lost, everything else is as of the
+     *              sample pushed.
+     * @return the subscription, which must be closed when you are done.
+     * @throws IllegalArgumentException in case any of the fields are unknown or every is less than one.
+     */
+    public Subscription subscribe(final List<String> fields, final int every) throws IllegalArgumentException {
+        final Selection selection = new Selection(toMetrics(fields), every);
+        final Subscription subscription = new Subscription(selection);
+        subscriptions.compute(selection, (s, subscribers) -> {
+            final Set<Subscription> set = subscribers != null ? subscribers : new CopyOnWriteArraySet<>();
+            set.add(subscription);
+            return set;
+        });
+        return subscription;
+    }
+
+    private static List<StatsMetric> toMetrics(final List<String> fields) {
+        final List<StatsMetric> metrics = new ArrayList<>();
+        if (fields == null || fields.isEmpty()) {
+            for (final StatsMetric metric : StatsMetric.values()) {
+                if (metric.getKind() != StatsMetric.Kind.TIMESTAMP) {
+                    metrics.add(metric);
+                }
+            }
+            return metrics;
+        }
+
+        for (final String field : fields) {
+            metrics.add(toMetric(field.trim()));
+        }
+        return metrics;
+    }
+
+    private static StatsMetric toMetric(final String field) {
+        final StatsMetric metric = StatsMetric.fromLabel(field);
+        if (metric != null) {
+            return metric;
+        }
+
+        try {
+            return StatsMetric.valueOf(field);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown field \"" + field + "\"");
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.values().stream().mapToInt(Set::size).sum();
+    }
+
+    @Override
+    public void onStats(final SIPp sipp, final StatsObject stats) {
+        for (final Map.Entry<Selection, Set<Subscription>> entry : subscriptions.entrySet()) {
+            final Set<Subscription> subscribers = entry.getValue();
+            if (subscribers.isEmpty()) {
+                continue;
+            }
+
+            final byte[] event = entry.getKey().process(sipp, stats);
+            if (event != null) {
+                for (final Subscription subscription : subscribers) {
+                    subscription.offer(event);
+                }
+            }
+        }
+    }
+
+    private void unsubscribe(final Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.selection, (selection, subscribers) -> {
+            subscribers.remove(subscription);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * The fields and the down-sampling asked for. Only ever processed by the thread
+     * processing the stats.
+     */
+    private static final class Selection {
+
+        private final List<StatsMetric> metrics;
+        private final int every;
+
+        /**
+         * The sum of the periodic counters of the samples skipped so far.
+         */
+        private final long[] sums;
+        private int skipped;
+
+        private Selection(final List<StatsMetric> metrics, final int every) {
+            if (every < 1) {
+                throw new IllegalArgumentException("Must push at least every sample");
+            }
+            this.metrics = Collections.unmodifiableList(metrics);
+            this.every = every;
+            this.sums = new long[metrics.size()];
+        }
+
+        private static boolean isPeriodicCounter(final StatsMetric metric) {
+            return metric.getKind() == StatsMetric.Kind.INTEGER && metric.getLabel().endsWith("(P)");
+        }
+
+        /**
+         * @return the serialized event or null if this sample is skipped.
+         */
+        private byte[] process(final SIPp sipp, final StatsObject stats) {
+            if (++skipped < every) {
+                for (int i = 0; i < sums.length; ++i) {
+                    if (isPeriodicCounter(metrics.get(i))) {
+                        sums[i] += Math.max(0, stats.getLong(metrics.get(i)));
+                    }
+                }
+                return null;
+            }
+
+            // the time of the sample rather than the time it is pushed, -1 if SIPp didn't tell us
+            final long time = stats.getTimeNanos();
+            final StringBuilder sb = new StringBuilder(32 + metrics.size() * 24);
+            sb.append("event: stats\ndata: {\"uuid\":\"").append(sipp.getUUID())
+                    .append("\",\"timestamp\":").append(time < 0 ? -1 : time / 1_000_000);
+            for (int i = 0; i < metrics.size(); ++i) {
+                final StatsMetric metric = metrics.get(i);
+                sb.append(",\"").append(metric.getLabel()).append("\":");
+                if (metric.getKind() == StatsMetric.Kind.DOUBLE) {
+                    sb.append(stats.getDouble(metric));
+                } else if (isPeriodicCounter(metric)) {
+                    sb.append(sums[i] + Math.max(0, stats.getLong(metric)));
+                } else if (metric.getKind() == StatsMetric.Kind.TIMESTAMP) {
+                    sb.append('"').append(toTimestamp(metric, stats)).append('"');
+                } else {
+                    sb.append(stats.getLong(metric));
+                }
+                sums[i] = 0;
+            }
+            sb.append("}\n\n");
+
+            skipped = 0;
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static Object toTimestamp(final StatsMetric metric, final StatsObject stats) {
+            switch (metric) {
+                case START_TIME:
+                    return stats.getStartTime();
+                case LAST_RESET_TIME:
+                    return stats.getLastResetTime();
+                default:
+                    return stats.getCurrentTime();
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Selection other = (Selection) o;
+            return every == other.every && metrics.equals(other.metrics);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * metrics.hashCode() + every;
+        }
+    }
+
+    /**
+     * A single subscriber of the stats.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private final Selection selection;
+        private final BlockingQueue<byte[]> events = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+        private volatile boolean closed;
+
+        private Subscription(final Selection selection) {
+            this.selection = selection;
+        }
+
+        private void offer(final byte[] event) {
+            // if the subscriber can't keep up, drop the oldest event
+            while (!events.offer(event)) {
+                events.poll();
+            }
+        }
+
+        /**
+         * Wait for the next event, which is already serialized as a Server-Sent Event.
+         *
+         * @param timeout
+         * @param unit
+         * @return the event or null if there was none within the given time or the
+         * subscription has been closed.
+         * @throws InterruptedException
+         */
+        public byte[] poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return closed ? null : events.poll(timeout, unit);
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            unsubscribe(this);
+        }
+    }
+}
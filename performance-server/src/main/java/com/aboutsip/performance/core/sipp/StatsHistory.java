@@ -0,0 +1,89 @@
+package com.aboutsip.performance.core.sipp;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The history of all the stats reported by a {@link SIPp}, with one column per
+ * {@link StatsMetric} (the timestamps excluded since every sample has a timestamp anyway).
+ *
+ * The history belongs to the {@link SIPp} and not to the underlying SIPp process, so if the
+ * process is restarted the history just keeps on going.
+ */
+public final class StatsHistory {
+
+    /**
+     * With SIPp reporting once a second, this is 4 hours worth of samples.
+     */
+    public static final int DEFAULT_CAPACITY = 4 * 60 * 60;
+
+    /**
+     * The metric stored in each column of the time series.
+     */
+    private static final StatsMetric[] METRICS = Arrays.stream(StatsMetric.values())
+            .filter(metric -> metric.getKind() != StatsMetric.Kind.TIMESTAMP)
+            .toArray(StatsMetric[]::new);
+
+    private final TimeSeries series;
+
+    /**
+     * For every {@link StatsMetric}, the column in the time series or -1.
+     */
+    private final int[] columns;
+
+    private StatsHistory(final TimeSeries series, final int[] columns) {
+        this.series = series;
+        this.columns = columns;
+    }
+
+    public static StatsHistory create(final int capacity, final boolean offHeap) {
+        final List<String> names = new ArrayList<>();
+        final int[] columns = new int[StatsMetric.values().length];
+        Arrays.fill(columns, -1);
+        for (final StatsMetric metric : StatsMetric.values()) {
+            if (metric.getKind() != StatsMetric.Kind.TIMESTAMP) {
+                columns[metric.ordinal()] = names.size();
+                names.add(metric.getLabel());
+            }
+        }
+
+        return new StatsHistory(TimeSeries.create(names, capacity, offHeap), columns);
+    }
+
+    /**
+     * Record a new sample. Only ever called by the thread processing the stats.
+     *
+     * The samples are kept in time order so if the clock has gone backwards, e.g. between two
+     * SIPp processes, the sample is recorded at the time of the previous one.
+     *
+     * @param timestamp the time of the sample
+     * @param stats
+     * @return the sequence number of the sample.
+     */
+    public long append(final long timestamp, final StatsObject stats) {
+        final long previous = series.isEmpty() ? Long.MIN_VALUE : series.getTimestamp(series.head() - 1);
+        return series.append(Math.max(timestamp, previous), column -> stats.getDouble(METRICS[column]));
+    }
+
+    /**
+     * Get the value of a metric for a given sample.
+     *
+     * @param sequence the sequence number of the sample.
+     * @param metric
+     * @return the value or -1 if the metric isn't stored (the timestamps).
+     */
+    public double getValue(final long sequence, final StatsMetric metric) {
+        final int column = columns[metric.ordinal()];
+        return column == -1 ? -1 : series.getValue(sequence, column);
+    }
+
+    /**
+     * The underlying time series, for range queries etc.
+     */
+    public TimeSeries getTimeSeries() {
+        return series;
+    }
+}
@@ -1,12 +1,21 @@
 package com.aboutsip.performance.core.sipp;
 
+import com.aboutsip.performance.core.histogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -132,9 +141,74 @@ public interface StatsLabels {
      */
     StatsObject createNewStats(String values) throws IllegalArgumentException;
 
+    /**
+     * Create a new {@link StatsObject} straight from a {@link StatsRow}, i.e., from the
+     * raw bytes as they were read from the stats file without first turning the entire
+     * line into a {@link String}.
+     *
+     * Note that the row will be re-used once this method returns so the returned
+     * {@link StatsObject} must not hold on to it.
+     *
+     * @param row
+     * @return
+     * @throws IllegalArgumentException
+     */
+    default StatsObject createNewStats(StatsRow row) throws IllegalArgumentException {
+        return createNewStats(row, StatsOffsets.NONE);
+    }
+
+    /**
+     * Same as {@link #createNewStats(StatsRow)} but the given offsets are added to the
+     * cumulative counters, which is how we keep on counting across restarts of SIPp.
+     *
+     * @param row
+     * @param offsets
+     * @return
+     * @throws IllegalArgumentException
+     */
+    StatsObject createNewStats(StatsRow row, StatsOffsets offsets) throws IllegalArgumentException;
+
+    /**
+     * Create a {@link StatsObject} for when SIPp has yet to write its first row, in which every
+     * counter is zero and there are no timestamps.
+     *
+     * @return
+     */
+    StatsObject createEmptyStats();
+
+    /**
+     * SIPp has one response time counter for every "rtd" in the scenario, and the counters are
+     * named after the rtd, e.g. ResponseTime1(P) or ResponseTimeinvite(P). The counters are
+     * discovered from the labels and given an index, in the order they appear, which is what
+     * you use to read them off of a {@link StatsObject}, e.g. {@link StatsObject#getResponseTimeMillis(int)}.
+     *
+     * @return the number of response time counters.
+     */
+    int getResponseTimeCounters();
+
+    /**
+     * @param counter the index of the counter.
+     * @return the name of the counter, e.g. "1" for ResponseTime1(P)
+     * @throws IllegalArgumentException in case there is no such counter.
+     */
+    String getResponseTimeName(int counter) throws IllegalArgumentException;
+
+    /**
+     * @param name the name of the counter, e.g. "1" for ResponseTime1(P)
+     * @return the index of the counter or -1 if there is no such counter.
+     */
+    int findResponseTimeCounter(String name);
+
+    /**
+     * The labels we do not know what to do with and that will be ignored. Newer versions of
+     * SIPp may add columns and if they show up here, that is where you want to start looking.
+     *
+     * @return the unknown labels in the order they appear, or an empty list.
+     */
+    List<String> getUnknownLabels();
+
     static StatsLabels create(final SIPp.Version version, final String labels) {
-        if (version.ordinal() >= SIPp.Version.THREE_DOT_ZERO.ordinal()
-                && version.ordinal() <= SIPp.Version.THREE_DOT_FOUR.ordinal()) {
+        if (version.getMajor() == 3) {
             final List<String> parts = Stream.of(labels.split(";")).map(String::trim).collect(Collectors.toList());
             return new SIPpVersion3StatsLabel(version, parts);
         }
@@ -145,21 +219,256 @@ public interface StatsLabels {
 
     /**
      * So far, the 3.x series of SIPp seems to have all the same stats labels...
+     *
+     * When created, the label of every column is resolved once and turned into a compiled
+     * schema. Every column is given a slot in one of the primitive arrays of the
+     * {@link SIPpVersion3StatsObject} and every {@link StatsMetric} knows which slot it lives in.
+     * Decoding a row is then just a matter of walking the columns and parsing the bytes
+     * straight into those slots and reading a value is a plain array access.
      */
     class SIPpVersion3StatsLabel implements StatsLabels {
 
+        /**
+         * How a column is decoded and where it is stored.
+         */
+        private static final byte IGNORE = 0;
+        private static final byte LONG = 1;
+        private static final byte DURATION = 2;
+        private static final byte DOUBLE = 3;
+        private static final byte TIMESTAMP = 4;
+
+        /**
+         * The labels of the response time counters, e.g. ResponseTime2(P) or ResponseTime2StDev(C).
+         */
+        private static final Pattern RESPONSE_TIME_COUNTER = Pattern.compile("ResponseTime(.+?)(StDev)?\\((P|C)\\)");
+
+        private static final String RESPONSE_TIME_REPARTITION = "ResponseTimeRepartition";
+
+        /**
+         * For every response time counter, the offset of the slot of each of its columns.
+         */
+        private static final int COUNTER_P = 0;
+        private static final int COUNTER_C = 1;
+        private static final int COUNTER_ST_DEV_P = 2;
+        private static final int COUNTER_ST_DEV_C = 3;
+        private static final int COUNTER_COLUMNS = 4;
+
+        /**
+         * Every timestamp is decoded into two longs, the time since epoch as reported by SIPp
+         * and the local date and time (see {@link StatsRow#getLocalTimeMillis(int)}).
+         */
+        private static final int TIMESTAMP_EPOCH_NANOS = 0;
+        private static final int TIMESTAMP_LOCAL_MILLIS = 1;
+        private static final int TIMESTAMP_COLUMNS = 2;
+
+        private static final StatsMetric[] STITCHED_METRICS = Arrays.stream(StatsMetric.values())
+                .filter(StatsOffsets::isStitched)
+                .toArray(StatsMetric[]::new);
+
         private final List<String> labels;
 
+        private final Map<String, Integer> indexes;
+
         private final SIPp.Version version;
 
         /**
-         * All SIPp version 3 clients are using this date format.
+         * For every column, how it should be decoded (see the constants above)
+         */
+        private final byte[] columnTypes;
+
+        /**
+         * For every column, the slot in the array (given by the type) it is stored in.
+         */
+        private final int[] columnSlots;
+
+        /**
+         * For every {@link StatsMetric}, the slot in the array (given by the kind of metric)
+         * it is stored in or -1 if SIPp didn't give us that metric.
+         */
+        private final int[] metricSlots;
+
+        private final int longSlots;
+        private final int doubleSlots;
+        private final int timestampSlots;
+
+        /**
+         * The response time and call length repartitions, which we parse out of the labels once.
+         */
+        private final Repartition responseTimes;
+        private final Repartition callLengths;
+
+        /**
+         * The names of the response time counters and, for every counter, the slots of its
+         * columns (or -1) followed by its repartition.
          */
-        private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss:SSS");
+        private final String[] responseTimeNames;
+        private final int[] responseTimeSlots;
+        private final Repartition[] responseTimeRepartitions;
 
         private SIPpVersion3StatsLabel(final SIPp.Version version, final List<String> labels) {
             this.version = version;
             this.labels = labels;
+
+            indexes = new HashMap<>();
+            for (int i = labels.size() - 1; i >= 0; --i) {
+                indexes.put(labels.get(i), i);
+            }
+
+            columnTypes = new byte[labels.size()];
+            columnSlots = new int[labels.size()];
+            metricSlots = new int[StatsMetric.values().length];
+            Arrays.fill(metricSlots, -1);
+
+            int longs = 0;
+            int doubles = 0;
+            int timestamps = 0;
+            for (int i = 0; i < labels.size(); ++i) {
+                final String label = labels.get(i);
+                final StatsMetric metric = StatsMetric.fromLabel(label);
+                final byte type;
+                if (metric != null) {
+                    type = toColumnType(metric.getKind());
+                } else if (isRepartitionBucket(label)) {
+                    type = LONG;
+                } else if (RESPONSE_TIME_COUNTER.matcher(label).matches()) {
+                    type = DURATION;
+                } else {
+                    type = IGNORE;
+                }
+
+                columnTypes[i] = type;
+                switch (type) {
+                    case LONG:
+                    case DURATION:
+                        columnSlots[i] = longs++;
+                        break;
+                    case DOUBLE:
+                        columnSlots[i] = doubles++;
+                        break;
+                    case TIMESTAMP:
+                        columnSlots[i] = timestamps++;
+                        break;
+                    default:
+                        columnSlots[i] = -1;
+                }
+
+                if (metric != null && metricSlots[metric.ordinal()] == -1) {
+                    metricSlots[metric.ordinal()] = columnSlots[i];
+                }
+            }
+
+            longSlots = longs;
+            doubleSlots = doubles;
+            timestampSlots = timestamps;
+
+            responseTimes = findRepartition(RESPONSE_TIME_REPARTITION_1);
+            callLengths = findRepartition(CALL_LENGTH_REPARTITION);
+
+            final List<String> names = findResponseTimeNames();
+            responseTimeNames = names.toArray(new String[names.size()]);
+            responseTimeSlots = new int[names.size() * COUNTER_COLUMNS];
+            Arrays.fill(responseTimeSlots, -1);
+            responseTimeRepartitions = new Repartition[names.size()];
+            for (int i = 0; i < labels.size(); ++i) {
+                final Matcher matcher = RESPONSE_TIME_COUNTER.matcher(labels.get(i));
+                if (matcher.matches()) {
+                    final int counter = names.indexOf(matcher.group(1));
+                    final int column = (matcher.group(2) != null ? COUNTER_ST_DEV_P : COUNTER_P)
+                            + ("C".equals(matcher.group(3)) ? 1 : 0);
+                    responseTimeSlots[counter * COUNTER_COLUMNS + column] = columnSlots[i];
+                }
+            }
+            for (int i = 0; i < responseTimeNames.length; ++i) {
+                responseTimeRepartitions[i] = findRepartition(RESPONSE_TIME_REPARTITION + responseTimeNames[i]);
+            }
+        }
+
+        /**
+         * @return the names of all the response time counters in the order they first appear.
+         */
+        private List<String> findResponseTimeNames() {
+            final List<String> names = new ArrayList<>();
+            for (final String label : labels) {
+                final Matcher matcher = RESPONSE_TIME_COUNTER.matcher(label);
+                final String name;
+                if (matcher.matches()) {
+                    name = matcher.group(1);
+                } else if (label.startsWith(RESPONSE_TIME_REPARTITION) && label.length() > RESPONSE_TIME_REPARTITION.length()) {
+                    name = label.substring(RESPONSE_TIME_REPARTITION.length());
+                } else {
+                    continue;
+                }
+
+                if (!names.contains(name)) {
+                    names.add(name);
+                }
+            }
+            return names;
+        }
+
+        private static byte toColumnType(final StatsMetric.Kind kind) {
+            switch (kind) {
+                case TIMESTAMP:
+                    return TIMESTAMP;
+                case DURATION:
+                    return DURATION;
+                case DOUBLE:
+                    return DOUBLE;
+                default:
+                    return LONG;
+            }
+        }
+
+        private static boolean isRepartitionBucket(final String label) {
+            return label.startsWith("<") || label.startsWith(">=");
+        }
+
+        /**
+         * The buckets of a repartition are all the columns following the repartition label
+         * itself, which are named e.g. "<10", "<20" and the last one ">=200".
+         *
+         * @return the column index of each bucket
+         */
+        private List<Integer> findRepartitionBuckets(final String repartition) {
+            final List<Integer> buckets = new ArrayList<>();
+            final int index = findIndex(repartition);
+            if (index == -1) {
+                return buckets;
+            }
+
+            for (int i = index + 1; i < labels.size() && isRepartitionBucket(labels.get(i)); ++i) {
+                buckets.add(i);
+            }
+            return buckets;
+        }
+
+        private Repartition findRepartition(final String repartition) {
+            final List<Integer> buckets = findRepartitionBuckets(repartition);
+            final int[] slots = new int[buckets.size()];
+            final int[] lower = new int[buckets.size()];
+            final int[] upper = new int[buckets.size()];
+            int lowerLimit = 0;
+            for (int i = 0; i < buckets.size(); ++i) {
+                final int column = buckets.get(i);
+                int upperLimit = parseLabel(labels.get(column));
+
+                // The SIPp special case where we have the last value
+                // and as such the upper limit is now infinity
+                if (upperLimit == lowerLimit) {
+                    upperLimit = -1;
+                }
+
+                slots[i] = columnSlots[column];
+                lower[i] = lowerLimit;
+                upper[i] = upperLimit;
+                lowerLimit = upperLimit;
+            }
+
+            return new Repartition(slots, lower, upper);
+        }
+
+        private static int parseLabel(final String label) {
+            return label.chars().map(c -> c - 48).filter(c -> c >= 0 && c < 10).reduce(0, (left, right) -> left * 10 + right);
         }
 
         /**
@@ -168,12 +477,8 @@ public interface StatsLabels {
          */
         @Override
         public int findIndex(final String label) {
-            for (int i = 0; i < labels.size(); ++i) {
-                if (label.equals(labels.get(i))) {
-                    return i;
-                }
-            }
-            return -1;
+            final Integer index = indexes.get(label);
+            return index != null ? index : -1;
         }
 
         @Override
@@ -184,6 +489,52 @@ public interface StatsLabels {
             return labels.get(index);
         }
 
+        @Override
+        public int getResponseTimeCounters() {
+            return responseTimeNames.length;
+        }
+
+        @Override
+        public String getResponseTimeName(final int counter) throws IllegalArgumentException {
+            checkResponseTimeCounter(counter);
+            return responseTimeNames[counter];
+        }
+
+        @Override
+        public int findResponseTimeCounter(final String name) {
+            for (int i = 0; i < responseTimeNames.length; ++i) {
+                if (responseTimeNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void checkResponseTimeCounter(final int counter) throws IllegalArgumentException {
+            if (counter < 0 || counter >= responseTimeNames.length) {
+                throw new IllegalArgumentException("There is no response time counter " + counter);
+            }
+        }
+
+        @Override
+        public List<String> getUnknownLabels() {
+            final List<String> unknown = new ArrayList<>();
+            for (int i = 0; i < labels.size(); ++i) {
+                final String label = labels.get(i);
+                if (columnTypes[i] == IGNORE && !label.isEmpty() && !isRepartition(label)) {
+                    unknown.add(label);
+                }
+            }
+            return unknown;
+        }
+
+        /**
+         * The label of a repartition has no value of its own, it just marks where its buckets start.
+         */
+        private static boolean isRepartition(final String label) {
+            return label.startsWith(RESPONSE_TIME_REPARTITION) || label.equals(CALL_LENGTH_REPARTITION);
+        }
+
         @Override
         public String toString() {
             return String.join(", ", labels);
@@ -195,446 +546,604 @@ public interface StatsLabels {
                 throw new IllegalArgumentException("The number of values does not match up to the number of labels");
             }
 
-            return new SIPpVersion3StatsObject(this, formatter, values);
+            return createNewStats(String.join(";", values));
+        }
+
+        @Override
+        public StatsObject createNewStats(final String values) throws IllegalArgumentException {
+            final byte[] bytes = values.getBytes(StandardCharsets.US_ASCII);
+            return createNewStats(new StatsRow().wrap(ByteBuffer.wrap(bytes), 0, bytes.length));
         }
 
         @Override
-        public StatsObject createNewStats(String values) throws IllegalArgumentException {
-            final List<String> parts = Stream.of(values.split(";")).map(String::trim).collect(Collectors.toList());
-            return new SIPpVersion3StatsObject(this, formatter, parts);
+        public StatsObject createNewStats(final StatsRow row, final StatsOffsets offsets) throws IllegalArgumentException {
+            final long[] longs = new long[longSlots];
+            final double[] doubles = new double[doubleSlots];
+            final long[] timestamps = new long[timestampSlots * TIMESTAMP_COLUMNS];
+
+            final int columns = Math.min(row.size(), columnTypes.length);
+            for (int i = 0; i < columns; ++i) {
+                switch (columnTypes[i]) {
+                    case LONG:
+                        longs[columnSlots[i]] = row.getLong(i);
+                        break;
+                    case DURATION:
+                        longs[columnSlots[i]] = row.getDurationMillis(i);
+                        break;
+                    case DOUBLE:
+                        doubles[columnSlots[i]] = row.getDouble(i);
+                        break;
+                    case TIMESTAMP:
+                        final int slot = columnSlots[i] * TIMESTAMP_COLUMNS;
+                        timestamps[slot + TIMESTAMP_EPOCH_NANOS] = row.getEpochNanos(i);
+                        timestamps[slot + TIMESTAMP_LOCAL_MILLIS] = row.getLocalTimeMillis(i);
+                        break;
+                    default:
+                        // ignore
+                }
+            }
+
+            if (offsets != StatsOffsets.NONE) {
+                for (final StatsMetric metric : STITCHED_METRICS) {
+                    final int slot = metricSlots[metric.ordinal()];
+                    if (slot != -1) {
+                        longs[slot] += offsets.get(metric);
+                    }
+                }
+            }
+
+            return new SIPpVersion3StatsObject(this, longs, doubles, timestamps);
+        }
+
+        @Override
+        public StatsObject createEmptyStats() {
+            final long[] timestamps = new long[timestampSlots * TIMESTAMP_COLUMNS];
+            Arrays.fill(timestamps, -1);
+            return new SIPpVersion3StatsObject(this, new long[longSlots], new double[doubleSlots], timestamps);
+        }
+
+        /**
+         * The slots of the buckets of a repartition and their bounds.
+         */
+        private static final class Repartition {
+
+            private final int[] slots;
+            private final int[] lower;
+            private final int[] upper;
+
+            /**
+             * An empty histogram with the buckets of the repartition, every new histogram is
+             * an empty copy of this one, which means they all share the same bucket limits.
+             */
+            private final Histogram template;
+
+            private Repartition(final int[] slots, final int[] lower, final int[] upper) {
+                this.slots = slots;
+                this.lower = lower;
+                this.upper = upper;
+
+                // without any buckets, everything goes into one big one
+                this.template = Histogram.create(slots.length == 0 ? new int[]{-1} : upper);
+            }
+
+            private Histogram toHistogram(final long[] longs) {
+                final Histogram histogram = template.emptyCopy();
+                for (int i = 0; i < slots.length; ++i) {
+                    histogram.add(i, Math.max(0, longs[slots[i]]));
+                }
+                return histogram;
+            }
         }
     }
 
+    /**
+     * All values have already been decoded into primitive slots (see {@link SIPpVersion3StatsLabel})
+     * so accessing a value is just an array lookup.
+     */
     class SIPpVersion3StatsObject implements StatsObject {
 
         private final SIPpVersion3StatsLabel labels;
-        private final List<String> values;
-        private final DateTimeFormatter formatter;
-
-        private SIPpVersion3StatsObject(final SIPpVersion3StatsLabel labels, final DateTimeFormatter formatter, final List<String> values) {
+        private final long[] longs;
+        private final double[] doubles;
+        private final long[] timestamps;
+
+        private SIPpVersion3StatsObject(final SIPpVersion3StatsLabel labels,
+                                        final long[] longs,
+                                        final double[] doubles,
+                                        final long[] timestamps) {
             this.labels = labels;
-            this.formatter = formatter;
-            this.values = values;
+            this.longs = longs;
+            this.doubles = doubles;
+            this.timestamps = timestamps;
+        }
+
+        @Override
+        public long getLong(final StatsMetric metric) {
+            final int slot = labels.metricSlots[metric.ordinal()];
+            if (slot == -1) {
+                return -1;
+            }
+
+            switch (metric.getKind()) {
+                case DOUBLE:
+                    return (long) doubles[slot];
+                case TIMESTAMP:
+                    // see getTimestampNanos
+                    return -1;
+                default:
+                    return longs[slot];
+            }
+        }
+
+        @Override
+        public double getDouble(final StatsMetric metric) {
+            final int slot = labels.metricSlots[metric.ordinal()];
+            if (slot == -1) {
+                return -1;
+            }
+
+            switch (metric.getKind()) {
+                case DOUBLE:
+                    return doubles[slot];
+                case TIMESTAMP:
+                    return -1;
+                default:
+                    return longs[slot];
+            }
         }
 
         @Override
         public LocalDateTime getTime() {
-            return getDate(StatsLabels.CURRENT_TIME);
+            return getDate(StatsMetric.CURRENT_TIME);
         }
 
         @Override
         public LocalDateTime getStartTime() {
-            return getDate(StatsLabels.START_TIME);
+            return getDate(StatsMetric.START_TIME);
         }
 
         @Override
         public LocalDateTime getLastResetTime() {
-            return getDate(StatsLabels.LAST_RESET_TIME);
+            return getDate(StatsMetric.LAST_RESET_TIME);
         }
 
         @Override
         public LocalDateTime getCurrentTime() {
-            return getDate(StatsLabels.CURRENT_TIME);
+            return getDate(StatsMetric.CURRENT_TIME);
         }
 
         @Override
         public Duration getElapsedTime() {
-            return getDuration(StatsLabels.ELAPSED_TIME_P);
+            return getDuration(StatsMetric.ELAPSED_TIME_P);
         }
 
         @Override
         public Duration getElapsedTimeCumulative() {
-            return getDuration(StatsLabels.ELAPSED_TIME_C);
+            return getDuration(StatsMetric.ELAPSED_TIME_C);
         }
 
         @Override
         public int getTargetRate() {
-            return getInteger(StatsLabels.TARGET_RATE);
+            return (int) getLong(StatsMetric.TARGET_RATE);
         }
 
         @Override
         public double getCallRate() {
-            return getDouble(StatsLabels.CALL_RATE_P);
+            return getDouble(StatsMetric.CALL_RATE_P);
         }
 
         @Override
         public double getCallRateCumulative() {
-            return getDouble(StatsLabels.CALL_RATE_C);
+            return getDouble(StatsMetric.CALL_RATE_C);
         }
 
         @Override
         public int getIncomingCall() {
-            return getInteger(StatsLabels.INCOMING_CALL_P);
+            return (int) getLong(StatsMetric.INCOMING_CALL_P);
         }
 
         @Override
         public int getIncomingCallCumulative() {
-            return getInteger(StatsLabels.INCOMING_CALL_C);
+            return (int) getLong(StatsMetric.INCOMING_CALL_C);
         }
 
         @Override
         public int getOutgoingCall() {
-            return getInteger(StatsLabels.OUTGOING_CALL_P);
+            return (int) getLong(StatsMetric.OUTGOING_CALL_P);
         }
 
         @Override
         public int getOutgoingCallCumulative() {
-            return getInteger(StatsLabels.OUTGOING_CALL_C);
+            return (int) getLong(StatsMetric.OUTGOING_CALL_C);
         }
 
         @Override
         public int getTotalCallCreated() {
-            return getInteger(StatsLabels.TOTAL_CALL_CREATED);
+            return (int) getLong(StatsMetric.TOTAL_CALL_CREATED);
         }
 
         @Override
         public int getCurrentCall() {
-            return getInteger(StatsLabels.CURRENT_CALL);
+            return (int) getLong(StatsMetric.CURRENT_CALL);
         }
 
         @Override
         public int getSuccessfulCall() {
-            return getInteger(StatsLabels.SUCCESSFUL_CALL_P);
+            return (int) getLong(StatsMetric.SUCCESSFUL_CALL_P);
         }
 
         @Override
         public int getSuccessfulCallCumulative() {
-            return getInteger(StatsLabels.SUCCESSFUL_CALL_C);
+            return (int) getLong(StatsMetric.SUCCESSFUL_CALL_C);
         }
 
         @Override
         public int getFailedCall() {
-            return getInteger(StatsLabels.FAILED_CALL_P);
+            return (int) getLong(StatsMetric.FAILED_CALL_P);
         }
 
         @Override
         public int getFailedCallCumulative() {
-            return getInteger(StatsLabels.FAILED_CALL_C);
+            return (int) getLong(StatsMetric.FAILED_CALL_C);
         }
 
         @Override
         public int getFailedCannotSendMessage() {
-            return getInteger(StatsLabels.FAILED_CANNOT_SEND_MESSAGE_P);
+            return (int) getLong(StatsMetric.FAILED_CANNOT_SEND_MESSAGE_P);
         }
 
         @Override
         public int getFailedCannotSendMessageCumulative() {
-            return getInteger(StatsLabels.FAILED_CANNOT_SEND_MESSAGE_C);
+            return (int) getLong(StatsMetric.FAILED_CANNOT_SEND_MESSAGE_C);
         }
 
         @Override
         public int getFailedMaxUDPRetrans() {
-            return getInteger(StatsLabels.FAILED_MAX_UDP_Retrans_P);
+            return (int) getLong(StatsMetric.FAILED_MAX_UDP_RETRANS_P);
         }
 
         @Override
         public int getFailedMaxUDPRetransCumulative() {
-            return getInteger(StatsLabels.FAILED_MAX_UDP_Retrans_C);
+            return (int) getLong(StatsMetric.FAILED_MAX_UDP_RETRANS_C);
         }
 
         @Override
         public int getFailedTcpConnect() {
-            return getInteger(StatsLabels.FAILED_TCP_CONNECT_P);
+            return (int) getLong(StatsMetric.FAILED_TCP_CONNECT_P);
         }
 
         @Override
         public int getFailedTcpConnectCumulative() {
-            return getInteger(StatsLabels.FAILED_TCP_CONNECT_C);
+            return (int) getLong(StatsMetric.FAILED_TCP_CONNECT_C);
         }
 
         @Override
         public int getFailedTcpClosed() {
-            return getInteger(StatsLabels.FAILED_TCP_CLOSED_P);
+            return (int) getLong(StatsMetric.FAILED_TCP_CLOSED_P);
         }
 
         @Override
         public int getFailedTcpClosedCumulative() {
-            return getInteger(StatsLabels.FAILED_TCP_CLOSED_C);
+            return (int) getLong(StatsMetric.FAILED_TCP_CLOSED_C);
         }
 
         @Override
         public int getFailedUnexpectedMessage() {
-            return getInteger(StatsLabels.FAILED_UNEXPECTED_MESSAGE_P);
+            return (int) getLong(StatsMetric.FAILED_UNEXPECTED_MESSAGE_P);
         }
 
         @Override
         public int getFailedUnexpectedMessageCumulative() {
-            return getInteger(StatsLabels.FAILED_UNEXPECTED_MESSAGE_C);
+            return (int) getLong(StatsMetric.FAILED_UNEXPECTED_MESSAGE_C);
         }
 
         @Override
         public int getFailedCallRejected() {
-            return getInteger(StatsLabels.FAILED_CALL_REJECTED_P);
+            return (int) getLong(StatsMetric.FAILED_CALL_REJECTED_P);
         }
 
         @Override
         public int getFailedCallRejectedCumulative() {
-            return getInteger(StatsLabels.FAILED_CALL_REJECTED_C);
+            return (int) getLong(StatsMetric.FAILED_CALL_REJECTED_C);
         }
 
         @Override
         public int getFailedCmdNotSent() {
-            return getInteger(StatsLabels.FAILED_CMD_NOT_SENT_P);
+            return (int) getLong(StatsMetric.FAILED_CMD_NOT_SENT_P);
         }
 
         @Override
         public int getFailedCmdNotSentCumulative() {
-            return getInteger(StatsLabels.FAILED_CMD_NOT_SENT_C);
+            return (int) getLong(StatsMetric.FAILED_CMD_NOT_SENT_C);
         }
 
         @Override
         public int getFailedRegexpDoesntMatch() {
-            return getInteger(StatsLabels.FAILED_REGEXP_DOESNT_MATCH_P);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_DOESNT_MATCH_P);
         }
 
         @Override
         public int getFailedRegexpDoesntMatchCumulative() {
-            return getInteger(StatsLabels.FAILED_REGEXP_DOESNT_MATCH_C);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_DOESNT_MATCH_C);
         }
 
         @Override
         public int getFailedRegexpShouldntMatch() {
-            return getInteger(StatsLabels.FAILED_REGEXP_SHOULDNT_MATCH_P);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_SHOULDNT_MATCH_P);
         }
 
         @Override
         public int getFailedRegexpShouldntMatchCumulative() {
-            return getInteger(StatsLabels.FAILED_REGEXP_SHOULDNT_MATCH_C);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_SHOULDNT_MATCH_C);
         }
 
         @Override
         public int getFailedRegexpHdrNotFound() {
-            return getInteger(StatsLabels.FAILED_REGEXP_HDR_NOT_FOUND_P);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_HDR_NOT_FOUND_P);
         }
 
         @Override
         public int getFailedRegexpHdrNotFoundCumulative() {
-            return getInteger(StatsLabels.FAILED_REGEXP_HDR_NOT_FOUND_C);
+            return (int) getLong(StatsMetric.FAILED_REGEXP_HDR_NOT_FOUND_C);
         }
 
         @Override
         public int getFailedOutboundCongestion() {
-            return getInteger(StatsLabels.FAILED_OUTBOUND_CONGESTION_P);
+            return (int) getLong(StatsMetric.FAILED_OUTBOUND_CONGESTION_P);
         }
 
         @Override
         public int getFailedOutboundCongestionCumulative() {
-            return getInteger(StatsLabels.FAILED_OUTBOUND_CONGESTION_C);
+            return (int) getLong(StatsMetric.FAILED_OUTBOUND_CONGESTION_C);
         }
 
         @Override
         public int getFailedTimeoutOnRecv() {
-            return getInteger(StatsLabels.FAILED_TIMEOUT_ON_RECV_P);
+            return (int) getLong(StatsMetric.FAILED_TIMEOUT_ON_RECV_P);
         }
 
         @Override
         public int getFailedTimeoutOnRecvCumulative() {
-            return getInteger(StatsLabels.FAILED_TIMEOUT_ON_RECV_C);
+            return (int) getLong(StatsMetric.FAILED_TIMEOUT_ON_RECV_C);
         }
 
         @Override
         public int getFailedTimeoutOnSend() {
-            return getInteger(StatsLabels.FAILED_TIMEOUT_ON_SEND_P);
+            return (int) getLong(StatsMetric.FAILED_TIMEOUT_ON_SEND_P);
         }
 
         @Override
         public int getFailedTimeoutOnSendCumulative() {
-            return getInteger(StatsLabels.FAILED_TIMEOUT_ON_SEND_C);
+            return (int) getLong(StatsMetric.FAILED_TIMEOUT_ON_SEND_C);
         }
 
         @Override
         public int getOutOfCallMsgs() {
-            return getInteger(StatsLabels.OUT_OF_CALL_MSGS_P);
+            return (int) getLong(StatsMetric.OUT_OF_CALL_MSGS_P);
         }
 
         @Override
         public int getOutOfCallMsgsCumulative() {
-            return getInteger(StatsLabels.OUT_OF_CALL_MSGS_C);
+            return (int) getLong(StatsMetric.OUT_OF_CALL_MSGS_C);
         }
 
         @Override
         public int getDeadCallMsgs() {
-            return getInteger(StatsLabels.DEAD_CALL_MSGS_P);
+            return (int) getLong(StatsMetric.DEAD_CALL_MSGS_P);
         }
 
         @Override
         public int getDeadCallMsgsCumulative() {
-            return getInteger(StatsLabels.DEAD_CALL_MSGS_C);
+            return (int) getLong(StatsMetric.DEAD_CALL_MSGS_C);
         }
 
         @Override
         public int getRetransmissions() {
-            return getInteger(StatsLabels.RETRANSMISSIONS_P);
+            return (int) getLong(StatsMetric.RETRANSMISSIONS_P);
         }
 
         @Override
         public int getRetransmissionsCumulative() {
-            return getInteger(StatsLabels.RETRANSMISSIONS_C);
+            return (int) getLong(StatsMetric.RETRANSMISSIONS_C);
         }
 
         @Override
         public int getAutoAnswered() {
-            return getInteger(StatsLabels.AUTO_ANSWERED_P);
+            return (int) getLong(StatsMetric.AUTO_ANSWERED_P);
         }
 
         @Override
         public int getAutoAnsweredCumulative() {
-            return getInteger(StatsLabels.AUTO_ANSWERED_C);
+            return (int) getLong(StatsMetric.AUTO_ANSWERED_C);
         }
 
         @Override
         public int getWarnings() {
-            return getInteger(StatsLabels.WARNINGS_P);
+            return (int) getLong(StatsMetric.WARNINGS_P);
         }
         @Override
         public int getWarningsCumulative() {
-            return getInteger(StatsLabels.WARNINGS_C);
+            return (int) getLong(StatsMetric.WARNINGS_C);
         }
 
         @Override
         public int getFatalErrors() {
-            return getInteger(StatsLabels.FATAL_ERRORS_P);
+            return (int) getLong(StatsMetric.FATAL_ERRORS_P);
         }
 
         @Override
         public int getFatalErrorsCumulative() {
-            return getInteger(StatsLabels.FATAL_ERRORS_C);
+            return (int) getLong(StatsMetric.FATAL_ERRORS_C);
         }
 
         @Override
         public int getWatchdogMajor() {
-            return getInteger(StatsLabels.WATCHDOG_MAJOR_P);
+            return (int) getLong(StatsMetric.WATCHDOG_MAJOR_P);
         }
 
         @Override
         public int getWatchdogMajorCumulative() {
-            return getInteger(StatsLabels.WATCHDOG_MAJOR_C);
+            return (int) getLong(StatsMetric.WATCHDOG_MAJOR_C);
         }
 
         @Override
         public int getWatchdogMinor() {
-            return getInteger(StatsLabels.WATCHDOG_MINOR_P);
+            return (int) getLong(StatsMetric.WATCHDOG_MINOR_P);
         }
 
         @Override
         public int getWatchdogMinorCumulative() {
-            return getInteger(StatsLabels.WATCHDOG_MINOR_C);
+            return (int) getLong(StatsMetric.WATCHDOG_MINOR_C);
         }
 
         @Override
         public Duration getResponseTime1() {
-            return getDuration(StatsLabels.RESPONSE_TIME1_P);
+            return getDuration(StatsMetric.RESPONSE_TIME1_P);
         }
 
         @Override
         public Duration getResponseTime1Cumulative() {
-            return getDuration(StatsLabels.RESPONSE_TIME1_C);
+            return getDuration(StatsMetric.RESPONSE_TIME1_C);
         }
 
         @Override
         public Duration getResponseTime1StDev() {
-            return getDuration(StatsLabels.RESPONSE_TIME1_ST_DEV_P);
+            return getDuration(StatsMetric.RESPONSE_TIME1_ST_DEV_P);
         }
 
         @Override
         public Duration getResponseTime1StDevCumulative() {
-            return getDuration(StatsLabels.RESPONSE_TIME1_ST_DEV_C);
+            return getDuration(StatsMetric.RESPONSE_TIME1_ST_DEV_C);
         }
 
         @Override
         public Duration getCallLength() {
-            return getDuration(StatsLabels.CALL_LENGTH_P);
+            return getDuration(StatsMetric.CALL_LENGTH_P);
         }
 
         @Override
         public Duration getCallLengthCumulative() {
-            return getDuration(StatsLabels.CALL_LENGTH_C);
+            return getDuration(StatsMetric.CALL_LENGTH_C);
         }
 
         @Override
         public String getCallLengthStDev() {
-            return getString(StatsLabels.CALL_LENGTH_ST_DEV_P);
+            return formatDuration(StatsMetric.CALL_LENGTH_ST_DEV_P);
         }
 
         @Override
         public String getCallLengthStDevCumulative() {
-            return getString(StatsLabels.CALL_LENGTH_ST_DEV_C);
+            return formatDuration(StatsMetric.CALL_LENGTH_ST_DEV_C);
         }
 
         @Override
         public ResponseTimeRepartition getResponseTimeRepartition1() {
-            final int index = labels.findIndex(StatsLabels.RESPONSE_TIME_REPARTITION_1);
-            boolean done = false;
-            int i = index;
+            final SIPpVersion3StatsLabel.Repartition repartition = labels.responseTimes;
+            final List<ResponseTime> responseTimes = new ArrayList<>(repartition.slots.length);
+            for (int i = 0; i < repartition.slots.length; ++i) {
+                final int count = (int) longs[repartition.slots[i]];
+                responseTimes.add(ResponseTime.create(repartition.lower[i], repartition.upper[i], count));
+            }
 
-            int lowerLimit = 0;
+            return ResponseTimeRepartition.create(responseTimes);
+        }
 
-            final List<ResponseTime> responseTimes = new ArrayList<>(9);
+        @Override
+        public Histogram getResponseTimeHistogram1() {
+            return labels.responseTimes.toHistogram(longs);
+        }
 
-            while (!done && ++i < values.size()) {
-                final String label = labels.getLabel(i);
-                if (label.startsWith("<") || (label.startsWith(">="))) {
-                    final int count = Integer.parseInt(values.get(i));
-                    int upperLimit = parseLabel(label);
+        @Override
+        public Histogram getCallLengthHistogram() {
+            return labels.callLengths.toHistogram(longs);
+        }
 
-                    // The SIPp special case where we have the last value
-                    // and as such the upper limit is now infinity
-                    if (upperLimit == lowerLimit) {
-                        upperLimit = -1;
-                    }
-                    responseTimes.add(ResponseTime.create(lowerLimit, upperLimit, count));
-                    lowerLimit = upperLimit;
-                } else {
-                    done = true;
-                }
-            }
+        @Override
+        public StatsLabels getLabels() {
+            return labels;
+        }
 
-            return ResponseTimeRepartition.create(responseTimes);
+        @Override
+        public long getResponseTimeMillis(final int counter) throws IllegalArgumentException {
+            return getResponseTimeColumn(counter, SIPpVersion3StatsLabel.COUNTER_P);
         }
 
-        private int parseLabel(final String label) {
-            return label.chars().map(c -> c - 48).filter(c -> c >= 0 && c < 10).reduce(0, (left, right) -> left * 10 + right);
+        @Override
+        public long getResponseTimeCumulativeMillis(final int counter) throws IllegalArgumentException {
+            return getResponseTimeColumn(counter, SIPpVersion3StatsLabel.COUNTER_C);
         }
 
+        @Override
+        public long getResponseTimeStDevMillis(final int counter) throws IllegalArgumentException {
+            return getResponseTimeColumn(counter, SIPpVersion3StatsLabel.COUNTER_ST_DEV_P);
+        }
 
         @Override
-        public String getCallLengthRepartition() {
-            return getString(StatsLabels.CALL_LENGTH_REPARTITION);
+        public long getResponseTimeStDevCumulativeMillis(final int counter) throws IllegalArgumentException {
+            return getResponseTimeColumn(counter, SIPpVersion3StatsLabel.COUNTER_ST_DEV_C);
         }
 
-        private Duration getDuration(final String label) {
-            final String value = values.get(labels.findIndex(label));
-            return StatsObject.toDuration(value);
+        private long getResponseTimeColumn(final int counter, final int column) throws IllegalArgumentException {
+            labels.checkResponseTimeCounter(counter);
+            final int slot = labels.responseTimeSlots[counter * SIPpVersion3StatsLabel.COUNTER_COLUMNS + column];
+            return slot == -1 ? -1 : longs[slot];
         }
 
-        private LocalDateTime getDate(final String label) {
-            final String[] parts = values.get(labels.findIndex(StatsLabels.CURRENT_TIME)).split("\t");
-            return LocalDateTime.parse(String.join(" ", parts[0], parts[1]), formatter);
+        @Override
+        public long getResponseTimeCount(final int counter, final int bucket) throws IllegalArgumentException {
+            labels.checkResponseTimeCounter(counter);
+            final SIPpVersion3StatsLabel.Repartition repartition = labels.responseTimeRepartitions[counter];
+            if (bucket < 0 || bucket >= repartition.slots.length) {
+                throw new IllegalArgumentException("There is no bucket " + bucket);
+            }
+            return Math.max(0, longs[repartition.slots[bucket]]);
         }
 
-        private String getString(final String label) {
-            return values.get(labels.findIndex(label));
+        @Override
+        public Histogram getResponseTimeHistogram(final int counter) throws IllegalArgumentException {
+            labels.checkResponseTimeCounter(counter);
+            return labels.responseTimeRepartitions[counter].toHistogram(longs);
         }
 
-        private int getInteger(final String label) {
-            final String value = values.get(labels.findIndex(label));
-            try {
-                return Integer.parseInt(value);
-            } catch (final NumberFormatException e) {
-                System.err.println(label + " " + value + " is NOT an integerk ");
-                return -1;
+        private Duration getDuration(final StatsMetric metric) {
+            final long millis = getLong(metric);
+            return millis == -1 ? null : Duration.ofMillis(millis);
+        }
+
+        /**
+         * Format a duration back into the SIPp format of HH:mm:ss:SSS
+         */
+        private String formatDuration(final StatsMetric metric) {
+            final long millis = getLong(metric);
+            if (millis == -1) {
+                return null;
             }
+
+            return String.format("%02d:%02d:%02d:%03d", millis / 3600000, (millis / 60000) % 60,
+                    (millis / 1000) % 60, millis % 1000);
         }
 
-        private double getDouble(final String label) {
-            final String value = values.get(labels.findIndex(label));
-            try {
-            return Double.parseDouble(value);
-            } catch (final NumberFormatException e) {
-                System.err.println(label + " " + value + " is NOT a double ");
+        @Override
+        public long getTimestampNanos(final StatsMetric metric) {
+            return getTimestamp(metric, SIPpVersion3StatsLabel.TIMESTAMP_EPOCH_NANOS);
+        }
+
+        private long getTimestamp(final StatsMetric metric, final int column) {
+            final int slot = labels.metricSlots[metric.ordinal()];
+            if (slot == -1 || metric.getKind() != StatsMetric.Kind.TIMESTAMP) {
                 return -1;
             }
+            return timestamps[slot * SIPpVersion3StatsLabel.TIMESTAMP_COLUMNS + column];
         }
 
+        private LocalDateTime getDate(final StatsMetric metric) {
+            final long millis = getTimestamp(metric, SIPpVersion3StatsLabel.TIMESTAMP_LOCAL_MILLIS);
+            if (millis == -1) {
+                return null;
+            }
+
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                    (int) Math.floorMod(millis, 1000) * 1000000, ZoneOffset.UTC);
+        }
     }
 }
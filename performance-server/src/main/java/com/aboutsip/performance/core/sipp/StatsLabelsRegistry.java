@@ -0,0 +1,80 @@
+package com.aboutsip.performance.core.sipp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiling the header of a stats file into a {@link StatsLabels} isn't free and every
+ * SIPp process running the same scenario with the same version of SIPp will have the exact
+ * same header. So, every header is only compiled once per version and then shared by all
+ * the processes (and restarts of those processes) that have it.
+ *
+ * A {@link StatsLabels} is immutable so sharing it across instances is safe.
+ */
+public final class StatsLabelsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsLabelsRegistry.class);
+
+    private final Map<Key, StatsLabels> labels = new ConcurrentHashMap<>();
+
+    /**
+     * Get the compiled {@link StatsLabels} for the given header, compiling it if this is the
+     * first time we see this header for this version.
+     *
+     * @param version
+     * @param header the first line of the stats file.
+     * @return
+     * @throws IllegalArgumentException in case we cannot process stats from the given version.
+     */
+    public StatsLabels get(final SIPp.Version version, final String header) throws IllegalArgumentException {
+        return labels.computeIfAbsent(new Key(version, header), key -> compile(key.version, key.header));
+    }
+
+    /**
+     * @return the number of distinct headers we have compiled so far.
+     */
+    public int size() {
+        return labels.size();
+    }
+
+    private static StatsLabels compile(final SIPp.Version version, final String header) {
+        final StatsLabels labels = StatsLabels.create(version, header);
+        final List<String> unknown = labels.getUnknownLabels();
+        if (!unknown.isEmpty()) {
+            logger.warn("The stats of SIPp {} contains columns we do not know about and that will be ignored: {}",
+                    version, unknown);
+        }
+        return labels;
+    }
+
+    private static final class Key {
+        private final SIPp.Version version;
+        private final String header;
+
+        private Key(final SIPp.Version version, final String header) {
+            this.version = version;
+            this.header = header;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return version == key.version && header.equals(key.header);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * version.hashCode() + header.hashCode();
+        }
+    }
+}
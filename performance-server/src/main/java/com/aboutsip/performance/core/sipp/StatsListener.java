@@ -0,0 +1,18 @@
+package com.aboutsip.performance.core.sipp;
+
+/**
+ * Gets notified every time a {@link SIPp} reports new stats.
+ *
+ * Note that the listener is called on the thread that processes the stats files so
+ * whatever you do in here must be quick. If you need to do any heavy lifting, hand it
+ * off to another thread.
+ */
+@FunctionalInterface
+public interface StatsListener {
+
+    /**
+     * @param sipp the {@link SIPp} that reported the stats.
+     * @param stats the new stats, which is an immutable snapshot that you are free to keep.
+     */
+    void onStats(SIPp sipp, StatsObject stats);
+}
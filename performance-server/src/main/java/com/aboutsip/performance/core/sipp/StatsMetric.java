@@ -0,0 +1,153 @@
+package com.aboutsip.performance.core.sipp;
+
+/**
+ * All the well-known metrics, i.e. columns, that SIPp writes to its stats file.
+ *
+ * The {@link StatsLabels} resolves the column of every metric once, when the header of
+ * the stats file is read, and from then on the value of a metric can be accessed through
+ * {@link StatsObject#getLong(StatsMetric)} and {@link StatsObject#getDouble(StatsMetric)}
+ * without any lookups or parsing.
+ *
+ * Note that the response time and call length repartitions are not metrics in this
+ * sense since they are made up of a dynamic number of columns.
+ */
+public enum StatsMetric {
+
+    START_TIME(StatsLabels.START_TIME, Kind.TIMESTAMP),
+    LAST_RESET_TIME(StatsLabels.LAST_RESET_TIME, Kind.TIMESTAMP),
+    CURRENT_TIME(StatsLabels.CURRENT_TIME, Kind.TIMESTAMP),
+    ELAPSED_TIME_P(StatsLabels.ELAPSED_TIME_P, Kind.DURATION),
+    ELAPSED_TIME_C(StatsLabels.ELAPSED_TIME_C, Kind.DURATION),
+    TARGET_RATE(StatsLabels.TARGET_RATE, Kind.INTEGER),
+    CALL_RATE_P(StatsLabels.CALL_RATE_P, Kind.DOUBLE),
+    CALL_RATE_C(StatsLabels.CALL_RATE_C, Kind.DOUBLE),
+    INCOMING_CALL_P(StatsLabels.INCOMING_CALL_P, Kind.INTEGER),
+    INCOMING_CALL_C(StatsLabels.INCOMING_CALL_C, Kind.INTEGER),
+    OUTGOING_CALL_P(StatsLabels.OUTGOING_CALL_P, Kind.INTEGER),
+    OUTGOING_CALL_C(StatsLabels.OUTGOING_CALL_C, Kind.INTEGER),
+    TOTAL_CALL_CREATED(StatsLabels.TOTAL_CALL_CREATED, Kind.INTEGER),
+    CURRENT_CALL(StatsLabels.CURRENT_CALL, Kind.INTEGER),
+    SUCCESSFUL_CALL_P(StatsLabels.SUCCESSFUL_CALL_P, Kind.INTEGER),
+    SUCCESSFUL_CALL_C(StatsLabels.SUCCESSFUL_CALL_C, Kind.INTEGER),
+    FAILED_CALL_P(StatsLabels.FAILED_CALL_P, Kind.INTEGER),
+    FAILED_CALL_C(StatsLabels.FAILED_CALL_C, Kind.INTEGER),
+    FAILED_CANNOT_SEND_MESSAGE_P(StatsLabels.FAILED_CANNOT_SEND_MESSAGE_P, Kind.INTEGER),
+    FAILED_CANNOT_SEND_MESSAGE_C(StatsLabels.FAILED_CANNOT_SEND_MESSAGE_C, Kind.INTEGER),
+    FAILED_MAX_UDP_RETRANS_P(StatsLabels.FAILED_MAX_UDP_Retrans_P, Kind.INTEGER),
+    FAILED_MAX_UDP_RETRANS_C(StatsLabels.FAILED_MAX_UDP_Retrans_C, Kind.INTEGER),
+    FAILED_TCP_CONNECT_P(StatsLabels.FAILED_TCP_CONNECT_P, Kind.INTEGER),
+    FAILED_TCP_CONNECT_C(StatsLabels.FAILED_TCP_CONNECT_C, Kind.INTEGER),
+    FAILED_TCP_CLOSED_P(StatsLabels.FAILED_TCP_CLOSED_P, Kind.INTEGER),
+    FAILED_TCP_CLOSED_C(StatsLabels.FAILED_TCP_CLOSED_C, Kind.INTEGER),
+    FAILED_UNEXPECTED_MESSAGE_P(StatsLabels.FAILED_UNEXPECTED_MESSAGE_P, Kind.INTEGER),
+    FAILED_UNEXPECTED_MESSAGE_C(StatsLabels.FAILED_UNEXPECTED_MESSAGE_C, Kind.INTEGER),
+    FAILED_CALL_REJECTED_P(StatsLabels.FAILED_CALL_REJECTED_P, Kind.INTEGER),
+    FAILED_CALL_REJECTED_C(StatsLabels.FAILED_CALL_REJECTED_C, Kind.INTEGER),
+    FAILED_CMD_NOT_SENT_P(StatsLabels.FAILED_CMD_NOT_SENT_P, Kind.INTEGER),
+    FAILED_CMD_NOT_SENT_C(StatsLabels.FAILED_CMD_NOT_SENT_C, Kind.INTEGER),
+    FAILED_REGEXP_DOESNT_MATCH_P(StatsLabels.FAILED_REGEXP_DOESNT_MATCH_P, Kind.INTEGER),
+    FAILED_REGEXP_DOESNT_MATCH_C(StatsLabels.FAILED_REGEXP_DOESNT_MATCH_C, Kind.INTEGER),
+    FAILED_REGEXP_SHOULDNT_MATCH_P(StatsLabels.FAILED_REGEXP_SHOULDNT_MATCH_P, Kind.INTEGER),
+    FAILED_REGEXP_SHOULDNT_MATCH_C(StatsLabels.FAILED_REGEXP_SHOULDNT_MATCH_C, Kind.INTEGER),
+    FAILED_REGEXP_HDR_NOT_FOUND_P(StatsLabels.FAILED_REGEXP_HDR_NOT_FOUND_P, Kind.INTEGER),
+    FAILED_REGEXP_HDR_NOT_FOUND_C(StatsLabels.FAILED_REGEXP_HDR_NOT_FOUND_C, Kind.INTEGER),
+    FAILED_OUTBOUND_CONGESTION_P(StatsLabels.FAILED_OUTBOUND_CONGESTION_P, Kind.INTEGER),
+    FAILED_OUTBOUND_CONGESTION_C(StatsLabels.FAILED_OUTBOUND_CONGESTION_C, Kind.INTEGER),
+    FAILED_TIMEOUT_ON_RECV_P(StatsLabels.FAILED_TIMEOUT_ON_RECV_P, Kind.INTEGER),
+    FAILED_TIMEOUT_ON_RECV_C(StatsLabels.FAILED_TIMEOUT_ON_RECV_C, Kind.INTEGER),
+    FAILED_TIMEOUT_ON_SEND_P(StatsLabels.FAILED_TIMEOUT_ON_SEND_P, Kind.INTEGER),
+    FAILED_TIMEOUT_ON_SEND_C(StatsLabels.FAILED_TIMEOUT_ON_SEND_C, Kind.INTEGER),
+    OUT_OF_CALL_MSGS_P(StatsLabels.OUT_OF_CALL_MSGS_P, Kind.INTEGER),
+    OUT_OF_CALL_MSGS_C(StatsLabels.OUT_OF_CALL_MSGS_C, Kind.INTEGER),
+    DEAD_CALL_MSGS_P(StatsLabels.DEAD_CALL_MSGS_P, Kind.INTEGER),
+    DEAD_CALL_MSGS_C(StatsLabels.DEAD_CALL_MSGS_C, Kind.INTEGER),
+    RETRANSMISSIONS_P(StatsLabels.RETRANSMISSIONS_P, Kind.INTEGER),
+    RETRANSMISSIONS_C(StatsLabels.RETRANSMISSIONS_C, Kind.INTEGER),
+    AUTO_ANSWERED_P(StatsLabels.AUTO_ANSWERED_P, Kind.INTEGER),
+    AUTO_ANSWERED_C(StatsLabels.AUTO_ANSWERED_C, Kind.INTEGER),
+    WARNINGS_P(StatsLabels.WARNINGS_P, Kind.INTEGER),
+    WARNINGS_C(StatsLabels.WARNINGS_C, Kind.INTEGER),
+    FATAL_ERRORS_P(StatsLabels.FATAL_ERRORS_P, Kind.INTEGER),
+    FATAL_ERRORS_C(StatsLabels.FATAL_ERRORS_C, Kind.INTEGER),
+    WATCHDOG_MAJOR_P(StatsLabels.WATCHDOG_MAJOR_P, Kind.INTEGER),
+    WATCHDOG_MAJOR_C(StatsLabels.WATCHDOG_MAJOR_C, Kind.INTEGER),
+    WATCHDOG_MINOR_P(StatsLabels.WATCHDOG_MINOR_P, Kind.INTEGER),
+    WATCHDOG_MINOR_C(StatsLabels.WATCHDOG_MINOR_C, Kind.INTEGER),
+    RESPONSE_TIME1_P(StatsLabels.RESPONSE_TIME1_P, Kind.DURATION),
+    RESPONSE_TIME1_C(StatsLabels.RESPONSE_TIME1_C, Kind.DURATION),
+    RESPONSE_TIME1_ST_DEV_P(StatsLabels.RESPONSE_TIME1_ST_DEV_P, Kind.DURATION),
+    RESPONSE_TIME1_ST_DEV_C(StatsLabels.RESPONSE_TIME1_ST_DEV_C, Kind.DURATION),
+    CALL_LENGTH_P(StatsLabels.CALL_LENGTH_P, Kind.DURATION),
+    CALL_LENGTH_C(StatsLabels.CALL_LENGTH_C, Kind.DURATION),
+    CALL_LENGTH_ST_DEV_P(StatsLabels.CALL_LENGTH_ST_DEV_P, Kind.DURATION),
+    CALL_LENGTH_ST_DEV_C(StatsLabels.CALL_LENGTH_ST_DEV_C, Kind.DURATION);
+
+    /**
+     * What kind of value a metric has, which also dictates how it is stored.
+     */
+    public enum Kind {
+        /**
+         * A point in time.
+         */
+        TIMESTAMP,
+
+        /**
+         * A duration, which is stored as milliseconds.
+         */
+        DURATION,
+
+        /**
+         * A floating point value, such as the call rate.
+         */
+        DOUBLE,
+
+        /**
+         * A plain counter or gauge.
+         */
+        INTEGER
+    }
+
+    private final String label;
+    private final Kind kind;
+
+    StatsMetric(final String label, final Kind kind) {
+        this.label = label;
+        this.kind = kind;
+    }
+
+    /**
+     * The label of the column in the SIPp stats file, such as {@link StatsLabels#TARGET_RATE}.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * SIPp reports most metrics both for the last period (P) and cumulative (C), i.e.
+     * since SIPp was started.
+     *
+     * @return true if this is a cumulative metric.
+     */
+    public boolean isCumulative() {
+        return label.endsWith("(C)");
+    }
+
+    /**
+     * Find the metric with the given label.
+     *
+     * @param label
+     * @return the metric or null if there is no such metric.
+     */
+    public static StatsMetric fromLabel(final String label) {
+        for (final StatsMetric metric : values()) {
+            if (metric.label.equals(label)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
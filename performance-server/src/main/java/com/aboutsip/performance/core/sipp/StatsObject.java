@@ -1,5 +1,7 @@
 package com.aboutsip.performance.core.sipp;
 
+import com.aboutsip.performance.core.histogram.Histogram;
+
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Date;
@@ -30,6 +32,46 @@ public interface StatsObject {
                 .plusMillis(millis);
     }
 
+    /**
+     * Get the value of any of the numeric metrics without any parsing or boxing going on,
+     * which is what you want when you are polling the stats a lot.
+     *
+     * Durations are returned in milliseconds and floating point values, such as the call rate,
+     * are truncated (use {@link #getDouble(StatsMetric)} for those).
+     *
+     * @param metric
+     * @return the value or -1 if the metric isn't available.
+     */
+    long getLong(StatsMetric metric);
+
+    /**
+     * Same as {@link #getLong(StatsMetric)} but as a double.
+     *
+     * @param metric
+     * @return the value or -1 if the metric isn't available.
+     */
+    double getDouble(StatsMetric metric);
+
+    /**
+     * Get one of the timestamps (see {@link StatsMetric.Kind#TIMESTAMP}) as the number of
+     * nanoseconds since epoch, as reported by SIPp. The timestamps are decoded when the stats
+     * are read so this is just an array lookup, which makes it the one to use for ordering
+     * and time ranges rather than e.g. {@link #getCurrentTime()}.
+     *
+     * @param metric
+     * @return the time in nanoseconds since epoch or -1 if the metric isn't an available timestamp.
+     */
+    long getTimestampNanos(StatsMetric metric);
+
+    /**
+     * The time at which these stats were recorded in nanoseconds since epoch.
+     *
+     * @return the time or -1 if SIPp didn't tell us.
+     */
+    default long getTimeNanos() {
+        return getTimestampNanos(StatsMetric.CURRENT_TIME);
+    }
+
     /**
      * The time at which these stats were recorded.
      *
@@ -132,7 +174,78 @@ public interface StatsObject {
     String getCallLengthStDev();
     String getCallLengthStDevCumulative();
     ResponseTimeRepartition getResponseTimeRepartition1();
-    String getCallLengthRepartition();
+
+    /**
+     * The same counts as {@link #getResponseTimeRepartition1()} but as a {@link Histogram},
+     * which can be merged with the histograms of other rows and other instances and which
+     * can answer percentile queries.
+     *
+     * @return a new histogram, which is yours to modify.
+     */
+    Histogram getResponseTimeHistogram1();
+
+    /**
+     * The call length repartition (CallLengthRepartition) as a {@link Histogram}, with the
+     * buckets in milliseconds as SIPp reports them. Just like the response time repartition
+     * these are the counts since SIPp started so use {@link Histogram#interval(Histogram, Histogram)}
+     * to get the calls that ended between two rows.
+     *
+     * @return a new histogram, which is yours to modify.
+     */
+    Histogram getCallLengthHistogram();
+
+    /**
+     * @return the labels these stats were created from, e.g. to find out which response time
+     * counters there are, see {@link StatsLabels#getResponseTimeCounters()}.
+     */
+    StatsLabels getLabels();
+
+    /**
+     * The periodic average of a response time counter, ResponseTimeN(P). Unlike the other
+     * response time getters this neither parses nor allocates anything so it is fine to
+     * call it for every counter on every row.
+     *
+     * @param counter the index of the counter, see {@link StatsLabels#findResponseTimeCounter(String)}.
+     * @return the response time in milliseconds or -1 if SIPp doesn't report it.
+     * @throws IllegalArgumentException in case there is no such counter.
+     */
+    long getResponseTimeMillis(int counter) throws IllegalArgumentException;
+
+    /**
+     * Same as {@link #getResponseTimeMillis(int)} but the cumulative average, ResponseTimeN(C).
+     */
+    long getResponseTimeCumulativeMillis(int counter) throws IllegalArgumentException;
+
+    /**
+     * Same as {@link #getResponseTimeMillis(int)} but the standard deviation, ResponseTimeNStDev(P).
+     */
+    long getResponseTimeStDevMillis(int counter) throws IllegalArgumentException;
+
+    /**
+     * Same as {@link #getResponseTimeMillis(int)} but the cumulative standard deviation,
+     * ResponseTimeNStDev(C).
+     */
+    long getResponseTimeStDevCumulativeMillis(int counter) throws IllegalArgumentException;
+
+    /**
+     * The count of a single bucket of the repartition of a response time counter,
+     * ResponseTimeRepartitionN, without allocating anything.
+     *
+     * @param counter the index of the counter.
+     * @param bucket the index of the bucket.
+     * @return the running total of the bucket.
+     * @throws IllegalArgumentException in case there is no such counter or bucket.
+     */
+    long getResponseTimeCount(int counter, int bucket) throws IllegalArgumentException;
+
+    /**
+     * The repartition of a response time counter, ResponseTimeRepartitionN, as a {@link Histogram}.
+     *
+     * @param counter the index of the counter.
+     * @return a new histogram, which is yours to modify.
+     * @throws IllegalArgumentException in case there is no such counter.
+     */
+    Histogram getResponseTimeHistogram(int counter) throws IllegalArgumentException;
 
 
 }
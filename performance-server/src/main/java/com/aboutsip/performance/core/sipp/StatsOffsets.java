@@ -0,0 +1,77 @@
+package com.aboutsip.performance.core.sipp;
+
+import java.util.Arrays;
+
+/**
+ * When a SIPp process is restarted all of its cumulative counters start over from zero. In order
+ * for the cumulative counters to keep on counting across restarts, every new process is given the
+ * last values of the previous one, which are added to every new row as it is decoded.
+ *
+ * Only the counters can be stitched together like this. The cumulative averages, such as
+ * {@link StatsMetric#CALL_RATE_C} and {@link StatsMetric#RESPONSE_TIME1_C}, just start over.
+ */
+public final class StatsOffsets {
+
+    public static final StatsOffsets NONE = new StatsOffsets(new long[StatsMetric.values().length]);
+
+    /**
+     * The offset of every {@link StatsMetric}, indexed by its ordinal.
+     */
+    private final long[] offsets;
+
+    private StatsOffsets(final long[] offsets) {
+        this.offsets = offsets;
+    }
+
+    /**
+     * Whether or not the given metric is stitched together across restarts.
+     */
+    public static boolean isStitched(final StatsMetric metric) {
+        return metric == StatsMetric.TOTAL_CALL_CREATED
+                || metric == StatsMetric.ELAPSED_TIME_C
+                || metric.isCumulative() && metric.getKind() == StatsMetric.Kind.INTEGER;
+    }
+
+    /**
+     * Create the offsets for the next process based on the last stats of the previous one,
+     * which already include the offsets of all the processes before that.
+     *
+     * @param last the last stats of the previous process or null if it never reported any.
+     * @return
+     */
+    public StatsOffsets stitch(final StatsObject last) {
+        if (last == null) {
+            return this;
+        }
+
+        final long[] next = offsets.clone();
+        for (final StatsMetric metric : StatsMetric.values()) {
+            final long value = last.getLong(metric);
+            if (isStitched(metric) && value > 0) {
+                next[metric.ordinal()] = value;
+            }
+        }
+        return new StatsOffsets(next);
+    }
+
+    /**
+     * @return the offset to add to the given metric.
+     */
+    public long get(final StatsMetric metric) {
+        return offsets[metric.ordinal()];
+    }
+
+    public boolean isEmpty() {
+        for (final long offset : offsets) {
+            if (offset != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "StatsOffsets " + Arrays.toString(offsets);
+    }
+}
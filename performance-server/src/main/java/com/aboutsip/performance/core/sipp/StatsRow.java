@@ -0,0 +1,412 @@
+package com.aboutsip.performance.core.sipp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A view of a single row in one of the SIPp stats files (the regular stats file or
+ * the counts file), straight on top of the bytes as they were read from file.
+ *
+ * The row is just a list of offsets into the underlying buffer, one pair for each
+ * field (the fields are separated by ';'), and it is meant to be re-used for every row
+ * that is read. Hence, you must NOT hang on to a {@link StatsRow} after you have been
+ * handed it since the next row will overwrite it. Grab the values you need and move on.
+ *
+ * Leading and trailing white space of each field has already been skipped, i.e., the
+ * offsets point to the trimmed value.
+ */
+public final class StatsRow {
+
+    public static final byte FIELD_SEPARATOR = ';';
+    public static final byte LINE_FEED = '\n';
+
+    private ByteBuffer buffer;
+
+    private int[] starts = new int[128];
+    private int[] ends = new int[128];
+    private int size;
+
+    /**
+     * Point this row to a new line in the buffer and find all the fields within it.
+     *
+     * @param buffer the buffer containing the line
+     * @param start the index of the first byte of the line
+     * @param end the index of the line feed (exclusive end of the line)
+     * @return this row
+     */
+    public StatsRow wrap(final ByteBuffer buffer, final int start, final int end) {
+        this.buffer = buffer;
+        this.size = 0;
+
+        int lineEnd = end;
+        if (lineEnd > start && buffer.get(lineEnd - 1) == '\r') {
+            --lineEnd;
+        }
+
+        int fieldStart = start;
+        for (int i = start; i < lineEnd; ++i) {
+            if (buffer.get(i) == FIELD_SEPARATOR) {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+
+        // SIPp ends every line with a ';' and just like String.split, we
+        // do not want to count the empty "field" after the last one.
+        if (fieldStart < lineEnd) {
+            addField(fieldStart, lineEnd);
+        }
+
+        return this;
+    }
+
+    private void addField(final int start, final int end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+
+        int s = start;
+        int e = end;
+        while (s < e && isWhiteSpace(buffer.get(s))) {
+            ++s;
+        }
+        while (e > s && isWhiteSpace(buffer.get(e - 1))) {
+            --e;
+        }
+
+        starts[size] = s;
+        ends[size] = e;
+        ++size;
+    }
+
+    private static boolean isWhiteSpace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * The number of fields in this row.
+     */
+    public int size() {
+        return size;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * The index into the {@link #buffer()} of the first byte of the given field.
+     */
+    public int start(final int field) {
+        checkField(field);
+        return starts[field];
+    }
+
+    /**
+     * The index into the {@link #buffer()} just past the last byte of the given field.
+     */
+    public int end(final int field) {
+        checkField(field);
+        return ends[field];
+    }
+
+    public int length(final int field) {
+        return end(field) - start(field);
+    }
+
+    /**
+     * Get the field as a {@link String}. Note that this will of course allocate a new
+     * string so it should be avoided on the hot path.
+     *
+     * @param field
+     * @return
+     */
+    public String getString(final int field) {
+        final int start = start(field);
+        final byte[] bytes = new byte[end(field) - start];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Parse the field as a long straight off of the bytes.
+     *
+     * @param field
+     * @return the value or -1 if the field isn't a valid integer (which includes it being empty)
+     */
+    public long getLong(final int field) {
+        final int start = start(field);
+        final int end = end(field);
+        if (start == end) {
+            return -1;
+        }
+
+        final boolean negative = buffer.get(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; ++i) {
+            final int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the field as a double straight off of the bytes. Only plain decimal
+     * notation is handled on the fast path (which is all SIPp ever writes), anything
+     * else falls back on {@link Double#parseDouble(String)}.
+     *
+     * @param field
+     * @return the value or -1 if the field isn't a valid double (which includes it being empty)
+     */
+    public double getDouble(final int field) {
+        final int start = start(field);
+        final int end = end(field);
+        if (start == end) {
+            return -1;
+        }
+
+        final boolean negative = buffer.get(start) == '-';
+        long mantissa = 0;
+        int decimals = 0;
+        boolean seenDot = false;
+        for (int i = negative ? start + 1 : start; i < end; ++i) {
+            final byte b = buffer.get(i);
+            if (b == '.' && !seenDot) {
+                seenDot = true;
+                continue;
+            }
+
+            final int digit = b - '0';
+            if (digit < 0 || digit > 9 || decimals >= POWERS_OF_TEN.length - 1 || mantissa > MAX_EXACT_MANTISSA) {
+                return parseDoubleSlow(field);
+            }
+
+            mantissa = mantissa * 10 + digit;
+            if (seenDot) {
+                ++decimals;
+            }
+        }
+
+        // both the mantissa and the power of ten are exact doubles so this
+        // division is correctly rounded, i.e. same result as Double.parseDouble
+        final double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow(final int field) {
+        try {
+            return Double.parseDouble(getString(field));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse a SIPp duration, which is on the format HH:mm:ss[:SSS], into milliseconds.
+     *
+     * @param field
+     * @return the duration in milliseconds or -1 if the field isn't a valid duration.
+     */
+    public long getDurationMillis(final int field) {
+        final int start = start(field);
+        final int end = end(field);
+        if (start == end) {
+            return -1;
+        }
+
+        // hours, minutes, seconds and (optionally) millis
+        long hours = 0;
+        long minutes = 0;
+        long seconds = 0;
+        long millis = 0;
+        long current = 0;
+        int part = 0;
+        for (int i = start; i <= end; ++i) {
+            final byte b = i == end ? (byte) ':' : buffer.get(i);
+            if (b == ':') {
+                switch (part++) {
+                    case 0: hours = current; break;
+                    case 1: minutes = current; break;
+                    case 2: seconds = current; break;
+                    case 3: millis = current; break;
+                    default: return -1;
+                }
+                current = 0;
+                continue;
+            }
+
+            final int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            current = current * 10 + digit;
+        }
+
+        if (part < 3) {
+            return -1;
+        }
+
+        return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+    }
+
+    /**
+     * SIPp writes its timestamps as the local date and time followed by the seconds since
+     * epoch, e.g. "2016-02-26\t15:13:39:882\t1456528419.882808". This parses the last part,
+     * which is the one you want for ordering and time ranges since it doesn't depend on
+     * the time zone of the machine SIPp is running on.
+     *
+     * @param field
+     * @return the time in nanoseconds since epoch or -1 if the field has no valid epoch part.
+     */
+    public long getEpochNanos(final int field) {
+        final int start = start(field);
+        final int end = end(field);
+
+        int i = end;
+        while (i > start && !isWhiteSpace(buffer.get(i - 1))) {
+            --i;
+        }
+        if (i == end || i == start) {
+            return -1;
+        }
+
+        long seconds = 0;
+        long fraction = 0;
+        int decimals = -1;
+        for (; i < end; ++i) {
+            final byte b = buffer.get(i);
+            if (b == '.' && decimals == -1) {
+                decimals = 0;
+                continue;
+            }
+
+            final int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+
+            if (decimals == -1) {
+                seconds = seconds * 10 + digit;
+            } else if (decimals < 9) {
+                fraction = fraction * 10 + digit;
+                ++decimals;
+            }
+        }
+
+        for (int d = Math.max(0, decimals); d < 9; ++d) {
+            fraction *= 10;
+        }
+        return seconds * 1000000000L + fraction;
+    }
+
+    /**
+     * Parse the local date and time of a SIPp timestamp, i.e. the "2016-02-26\t15:13:39:882"
+     * part of "2016-02-26\t15:13:39:882\t1456528419.882808", without going through a
+     * {@link java.time.format.DateTimeFormatter}.
+     *
+     * @param field
+     * @return the local date and time as milliseconds since 1970-01-01T00:00 (i.e., as if the
+     * local time was UTC) or -1 if the field isn't a valid timestamp.
+     */
+    public long getLocalTimeMillis(final int field) {
+        final int start = start(field);
+        final int end = end(field);
+
+        // year, month, day, hour, minute, second and millis
+        long year = 0;
+        long month = 0;
+        long day = 0;
+        long hour = 0;
+        long minute = 0;
+        long second = 0;
+        long millis = 0;
+        long current = 0;
+        int part = 0;
+        boolean inNumber = false;
+        for (int i = start; i <= end && part < 7; ++i) {
+            final int digit = i == end ? -1 : buffer.get(i) - '0';
+            if (digit >= 0 && digit <= 9) {
+                current = current * 10 + digit;
+                inNumber = true;
+            } else if (inNumber) {
+                switch (part++) {
+                    case 0: year = current; break;
+                    case 1: month = current; break;
+                    case 2: day = current; break;
+                    case 3: hour = current; break;
+                    case 4: minute = current; break;
+                    case 5: second = current; break;
+                    default: millis = current; break;
+                }
+                current = 0;
+                inNumber = false;
+            }
+        }
+
+        if (part < 6 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return -1;
+        }
+
+        final long days = daysFromCivil(year, (int) month, (int) day);
+        return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * The number of days since 1970-01-01 of the given date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final long year, final int month, final int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = Math.floorDiv(y, 400);
+        final long yearOfEra = y - era * 400;
+        final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Check whether the field starts with the given ASCII prefix.
+     */
+    public boolean startsWith(final int field, final String prefix) {
+        final int start = start(field);
+        if (end(field) - start < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (buffer.get(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final long MAX_EXACT_MANTISSA = (1L << 53) / 10;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private void checkField(final int field) {
+        if (field < 0 || field >= size) {
+            throw new IllegalArgumentException("Field " + field + " is outside of the row, which has "
+                    + size + " fields");
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; ++i) {
+            sb.append(getString(i)).append(';');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A single, non-blocking, UDP socket shared across all SIPp instances and used for sending
+ * commands to their control ports (the -cp option of SIPp).
+ *
+ * Every datagram is sent straight away on the calling thread, which is just a copy into the
+ * socket buffer, so even fanning out a rate change to hundreds of instances is a matter of
+ * milliseconds. Only if the socket buffer happens to be full do we back off and retry on the
+ * executor, in which case every datagram to the same SIPp process after it waits its turn.
+ *
+ * Since all SIPp needs is the datagram ending up on its control port, this can also be used
+ * to control SIPp processes that we didn't spawn ourselves, see {@link #channel(InetSocketAddress)}.
+ */
+public final class ControlSocket {
+
+    private static final Logger logger = LoggerFactory.getLogger(ControlSocket.class);
+
+    private static final int MAX_SEND_ATTEMPTS = 10;
+    private static final long SEND_RETRY_INTERVAL_MS = 1;
+
+    /**
+     * What SIPp prints if it can't bind its control port, e.g.
+     * "Unable to bind specified UDP control socket (port 8888)".
+     */
+    private static final Pattern BIND_FAILURE = Pattern.compile("(?i)unable to bind .*control socket");
+
+    private final ScheduledExecutorService executorService;
+
+    /**
+     * Will be null if we couldn't open the socket, in which case we'll have to
+     * stick with stdin.
+     */
+    private final DatagramChannel channel;
+
+    public ControlSocket(final ScheduledExecutorService executorService) {
+        this.executorService = executorService;
+        this.channel = openChannel();
+    }
+
+    private static DatagramChannel openChannel() {
+        try {
+            final DatagramChannel channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(null);
+            return channel;
+        } catch (final IOException e) {
+            logger.warn("Unable to open the UDP socket for controlling SIPp, will fall back on stdin", e);
+            return null;
+        }
+    }
+
+    public boolean isAvailable() {
+        return channel != null;
+    }
+
+    /**
+     * Find a UDP port on the local machine that isn't in use (at least not right now).
+     *
+     * @return
+     * @throws UncheckedIOException in case we are unable to find one.
+     */
+    public static int findFreePort() throws UncheckedIOException {
+        try (final DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to find a free UDP port", e);
+        }
+    }
+
+    /**
+     * @param command the command SIPp is started with.
+     * @return the control port given to SIPp (the -cp option) or -1 if it wasn't given one.
+     */
+    public static int getPort(final List<String> command) {
+        final int index = command.indexOf("-cp");
+        if (index == -1 || index + 1 >= command.size()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(command.get(index + 1));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A port that was free when we looked may have been taken by the time SIPp gets to bind it,
+     * in which case SIPp says so and dies before it gets going.
+     *
+     * @param t why SIPp didn't get going.
+     * @return true if it is because SIPp was unable to bind its control port.
+     */
+    public static boolean isPortTaken(final Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && BIND_FAILURE.matcher(cause.getMessage()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get a {@link CommandChannel} to the SIPp process listening on the given control port.
+     *
+     * @param address the address of the control port.
+     * @return
+     * @throws IllegalStateException in case the socket isn't available.
+     */
+    public CommandChannel channel(final InetSocketAddress address) throws IllegalStateException {
+        if (channel == null) {
+            throw new IllegalStateException("The control socket isn't available");
+        }
+        return new UdpCommandChannel(address);
+    }
+
+    private CompletableFuture<Void> send(final InetSocketAddress address, final String datagram) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        send(address, ByteBuffer.wrap(datagram.getBytes(StandardCharsets.US_ASCII)), future, 1);
+        return future;
+    }
+
+    private void send(final InetSocketAddress address, final ByteBuffer datagram,
+                      final CompletableFuture<Void> future, final int attempt) {
+        try {
+            if (channel.send(datagram, address) > 0) {
+                future.complete(null);
+            } else if (attempt < MAX_SEND_ATTEMPTS) {
+                executorService.schedule(() -> send(address, datagram, future, attempt + 1),
+                        SEND_RETRY_INTERVAL_MS * attempt, TimeUnit.MILLISECONDS);
+            } else {
+                future.completeExceptionally(new IOException("Unable to send to the SIPp control port "
+                        + address + ", the socket buffer is full"));
+            }
+        } catch (final IOException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                logger.debug("Unable to close the control socket", e);
+            }
+        }
+    }
+
+    /**
+     * SIPp only looks at the first byte of every datagram on its control port. If it is
+     * a 'c' the rest of the datagram is a command, otherwise it is a keystroke.
+     */
+    private final class UdpCommandChannel implements CommandChannel {
+
+        private final InetSocketAddress address;
+
+        /**
+         * The last datagram handed over, or still being retried. Every datagram is sent once the one
+         * before it has been, otherwise a key that has to be retried would be overtaken by the keys after it.
+         */
+        private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+        private UdpCommandChannel(final InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Send the datagrams in order, after everything sent before them. If one of them can't be sent,
+         * neither are the rest of them, but whatever is sent after that goes ahead as usual.
+         */
+        private synchronized CompletableFuture<Void> enqueue(final String... datagrams) {
+            CompletableFuture<Void> future = last.handle((v, t) -> null);
+            for (final String datagram : datagrams) {
+                future = future.thenCompose(v -> send(address, datagram));
+            }
+            last = future;
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<Void> sendKeys(final String keys) {
+            final String[] datagrams = new String[keys.length()];
+            for (int i = 0; i < keys.length(); ++i) {
+                datagrams[i] = keys.substring(i, i + 1);
+            }
+            return enqueue(datagrams);
+        }
+
+        @Override
+        public boolean isCommandSupported() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Void> execute(final String command) {
+            return enqueue("c" + command);
+        }
+
+        @Override
+        public void close() {
+            // the socket is shared, nothing to close
+        }
+
+        @Override
+        public String toString() {
+            return "UDP control port " + address;
+        }
+    }
+}
@@ -1,13 +1,37 @@
 package com.aboutsip.performance.core.sipp.impl;
 
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.histogram.HistogramRecorder;
+import com.aboutsip.performance.core.placement.CpuPlacement;
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import com.aboutsip.performance.core.sipp.RateController;
+import com.aboutsip.performance.core.sipp.RestartEvent;
 import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsLabels;
+import com.aboutsip.performance.core.sipp.StatsLabelsRegistry;
+import com.aboutsip.performance.core.sipp.StatsListener;
 import com.aboutsip.performance.core.sipp.StatsObject;
+import com.aboutsip.performance.core.sipp.StatsOffsets;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 /**
@@ -26,17 +50,47 @@ public final class DefaultSIPp implements SIPp {
 
     private final UUID uuid;
     private final String friendlyName;
+    private final Set<String> tags;
 
     /**
      * Whenever we need to start a new sipp instance, perhaps because the
      * previous one crashed, we will just use this process builder that
      * will kick off an identical process to the previous one (or the very
-     * first one of course)
+     * first one of course). The only thing that may change is the control
+     * port, if the one it had was taken.
      */
-    private final ProcessBuilder processBuilder;
+    private ProcessBuilder processBuilder;
+
+    /**
+     * Creates the {@link CommandChannel} used for controlling every new SIPp process, given
+     * the command the process was started with.
+     */
+    private final BiFunction<List<String>, Process, CommandChannel> commandChannelFactory;
 
     private final ScheduledExecutorService executorService;
 
+    /**
+     * Shared across all SIPp instances and is responsible for tailing the stats files.
+     */
+    private final TailingService tailingService;
+
+    /**
+     * Shared across all SIPp instances so that we only ever figure out the version of
+     * SIPp, and compile the header of its stats file, once.
+     */
+    private final VersionProbe versionProbe;
+    private final StatsLabelsRegistry registry;
+
+    /**
+     * Decides what CPU every new SIPp process is pinned to, if any.
+     */
+    private final CpuPlacement cpuPlacement;
+
+    /**
+     * The CPU the current SIPp process is pinned to, or null if it isn't pinned.
+     */
+    private volatile CpuPlacement.Assignment assignment;
+
     /**
      * The name is very important because we are reading stats from files and those
      * files are based on the scenario name and pid. Would be nice if one could have
@@ -44,8 +98,84 @@ public final class DefaultSIPp implements SIPp {
      */
     private final String name;
 
+    /**
+     * All the stats we have received so far. Outlives any {@link SIPpInstance}
+     * so if we have to restart SIPp the history just keeps on going.
+     */
+    private final StatsHistory history;
+
+    private final List<StatsListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The response times and call lengths of all calls so far, across restarts.
+     */
+    private final HistogramRecorder responseTimes = new HistogramRecorder();
+    private final HistogramRecorder callLengths = new HistogramRecorder();
+
+    /**
+     * The response times of the calls between every two stats rows, lined up with the
+     * {@link #history}, so that we can tell the response times of any range of time.
+     */
+    private final HistogramHistory responseTimeHistory;
+
+    /**
+     * The response times of every response time counter (every rtd of the scenario) by
+     * the index of the counter. Replaced if a restarted SIPp process reports other counters.
+     */
+    private volatile String[] counterNames = new String[0];
+    private volatile HistogramRecorder[] counterResponseTimes = new HistogramRecorder[0];
+
+    /**
+     * If we are asked to hold a particular rate, this is the controller
+     * doing so. Only ever touched by the thread processing the stats,
+     * except for when it is replaced.
+     */
+    private volatile RateController rateController;
+
+    /**
+     * The last adjustment of the rate issued by the {@link #rateController}. We will
+     * not issue a new one until the previous one has been carried out.
+     */
+    private CompletableFuture<SIPpInstance> rateAdjustment = CompletableFuture.completedFuture(null);
+
     private final Object lock = new Object();
-    private SIPpInstance sippInstance;
+
+    /**
+     * If a process has been running for at least this long it wasn't a crash loop.
+     */
+    private static final long STABLE_UPTIME_MS = 60000;
+    private static final long MIN_RESTART_DELAY_MS = 1000;
+    private static final long MAX_RESTART_DELAY_MS = 60000;
+    private static final int MAX_CONSECUTIVE_FAILURES = 20;
+
+    /**
+     * How many control ports we go through in a row before giving up on starting a process.
+     */
+    private static final int MAX_CONTROL_PORT_ATTEMPTS = 5;
+
+    /**
+     * Every time the SIPp process has died on us and been restarted.
+     */
+    private final List<RestartEvent> restarts = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of times in a row a process has died shortly after being started,
+     * or failed to start at all.
+     */
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * Set when we are asked to stop, at which point the process dying is expected.
+     */
+    private volatile boolean stopped;
+
+    private final CompletableFuture<SIPp> termination = new CompletableFuture<>();
+
+    /**
+     * Only ever changed while holding the lock but read without it so that
+     * querying for stats never blocks.
+     */
+    private volatile SIPpInstance sippInstance;
 
     /**
      * Need to remember this future if several threads are calling start at the same
@@ -55,15 +185,31 @@ public final class DefaultSIPp implements SIPp {
 
 
     public DefaultSIPp(final ScheduledExecutorService executorService,
+                       final TailingService tailingService,
+                       final VersionProbe versionProbe,
+                       final StatsLabelsRegistry registry,
+                       final CpuPlacement cpuPlacement,
                        final ProcessBuilder processBuilder,
+                       final BiFunction<List<String>, Process, CommandChannel> commandChannelFactory,
                        final UUID uuid,
                        final String name,
-                       final String friendlyName) {
+                       final String friendlyName,
+                       final Set<String> tags,
+                       final StatsHistory history) {
         this.executorService = executorService;
+        this.tailingService = tailingService;
+        this.versionProbe = versionProbe;
+        this.registry = registry;
+        this.cpuPlacement = cpuPlacement;
         this.processBuilder = processBuilder;
+        this.commandChannelFactory = commandChannelFactory;
         this.uuid = uuid;
         this.name = name;
         this.friendlyName = friendlyName;
+        this.tags = Collections.unmodifiableSet(new TreeSet<>(tags));
+        this.history = history;
+        this.responseTimeHistory = new HistogramHistory(history.getTimeSeries().capacity(),
+                history.getTimeSeries().isOffHeap());
     }
 
     @Override
@@ -76,35 +222,173 @@ public final class DefaultSIPp implements SIPp {
         return this.friendlyName;
     }
 
+    @Override
+    public Set<String> getTags() {
+        return tags;
+    }
+
     @Override
     public int getTargetRate() {
-        return getObject(instance -> instance.getTargetRate());
+        return getObject(instance -> instance.getTargetRate(), -1);
     }
 
     @Override
     public int getRetransmissions() {
-        return getObject(instance -> instance.getRetransmissions());
+        return getObject(instance -> instance.getRetransmissions(), -1);
     }
 
     @Override
     public StatsObject getStats() {
-        return getObject(instance -> instance.getStats());
+        return getObject(instance -> instance.getStats(), null);
     }
 
     @Override
     public double getCurrentRate() {
-        return getObject(instance -> instance.getCurrentRate());
+        return getObject(instance -> instance.getCurrentRate(), -1.0);
     }
 
-    private <T> T getObject(Function<SIPpInstance, T> f) {
-        synchronized (sippInstance) {
-            if (sippInstance != null) {
-                return f.apply(sippInstance);
+    @Override
+    public StatsHistory getHistory() {
+        return history;
+    }
+
+    @Override
+    public Histogram getResponseTimeHistogram() {
+        return responseTimes.getTotal();
+    }
+
+    @Override
+    public HistogramHistory getResponseTimeHistory() {
+        return responseTimeHistory;
+    }
+
+    @Override
+    public Map<String, Double> getResponseTimePercentiles() {
+        return responseTimes.getPercentiles();
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> getResponseTimeCounterPercentiles() {
+        final String[] names = counterNames;
+        final HistogramRecorder[] recorders = counterResponseTimes;
+        final Map<String, Map<String, Double>> percentiles = new LinkedHashMap<>();
+        for (int i = 0; i < names.length && i < recorders.length; ++i) {
+            percentiles.put(names[i], recorders[i].getPercentiles());
+        }
+        return percentiles;
+    }
+
+    @Override
+    public Histogram getCallLengthHistogram() {
+        return callLengths.getTotal();
+    }
+
+    @Override
+    public Histogram getLatestCallLengths() {
+        return callLengths.getLatest();
+    }
+
+    @Override
+    public Map<String, Double> getCallLengthPercentiles() {
+        return callLengths.getPercentiles();
+    }
+
+    @Override
+    public int getPid() {
+        return getObject(instance -> instance.isAlive() ? instance.getPid() : -1, -1);
+    }
+
+    @Override
+    public CpuPlacement.Assignment getPlacement() {
+        return assignment;
+    }
+
+    @Override
+    public long getBacklog() {
+        return getObject(instance -> instance.getBacklog(), 0L);
+    }
+
+    @Override
+    public int getHeldRate() {
+        final RateController controller = rateController;
+        return controller != null ? controller.getTarget() : -1;
+    }
+
+    @Override
+    public void addStatsListener(final StatsListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeStatsListener(final StatsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called by the {@link SIPpInstance} every time it has read new stats.
+     */
+    private void processStats(final StatsObject stats) {
+        adjustRate(stats);
+        recordHistograms(stats);
+
+        for (final StatsListener listener : listeners) {
+            try {
+                listener.onStats(this, stats);
+            } catch (final Throwable t) {
+                logger.warn("Stats listener threw an exception, ignoring", t);
             }
-            return null;
         }
     }
 
+    private void recordHistograms(final StatsObject stats) {
+        responseTimes.record(stats.getResponseTimeHistogram1());
+        callLengths.record(stats.getCallLengthHistogram());
+
+        // the row has already been appended to the history so use the very same timestamp
+        final TimeSeries series = history.getTimeSeries();
+        if (!series.isEmpty()) {
+            responseTimeHistory.append(series.getTimestamp(series.head() - 1), responseTimes.getLatest());
+        }
+
+        final StatsLabels labels = stats.getLabels();
+        HistogramRecorder[] recorders = counterResponseTimes;
+        if (recorders.length != labels.getResponseTimeCounters()) {
+            final String[] names = new String[labels.getResponseTimeCounters()];
+            recorders = new HistogramRecorder[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                names[i] = labels.getResponseTimeName(i);
+                recorders[i] = new HistogramRecorder();
+            }
+            counterNames = names;
+            counterResponseTimes = recorders;
+        }
+
+        for (int i = 0; i < recorders.length; ++i) {
+            recorders[i].record(stats.getResponseTimeHistogram(i));
+        }
+    }
+
+    private void adjustRate(final StatsObject stats) {
+        final RateController controller = rateController;
+        final SIPpInstance instance = sippInstance;
+        if (controller == null || instance == null || !rateAdjustment.isDone()) {
+            return;
+        }
+
+        final int current = stats.getTargetRate();
+        final int next = controller.update(current, stats.getCallRate());
+        if (next != current) {
+            rateAdjustment = instance.setRate(next);
+        }
+    }
+
+    private <T> T getObject(final Function<SIPpInstance, T> f, final T defaultValue) {
+        final SIPpInstance instance = sippInstance;
+        return instance != null ? f.apply(instance) : defaultValue;
+    }
+
     @Override
     public CompletableFuture<SIPp> start() throws IllegalStateException {
         synchronized (lock) {
@@ -112,29 +396,220 @@ public final class DefaultSIPp implements SIPp {
                 return currentStartFuture;
             }
 
-            final CompletableFuture<SIPpInstance> future = SIPpInstance.create(executorService, processBuilder, name);
-            currentStartFuture = future.thenApply(instance -> {
-                synchronized (lock) {
-                    sippInstance = instance;
+            stopped = false;
+            currentStartFuture = launch(processBuilder, StatsOffsets.NONE).thenApply(instance -> DefaultSIPp.this);
+            return currentStartFuture;
+        }
+    }
+
+    /**
+     * Start a new SIPp process and keep an eye on it so that we can replace it if it dies.
+     *
+     * Every new process is placed on whatever CPU is the least loaded at the time, so a
+     * restarted process may very well end up on another CPU than the one it replaces.
+     */
+    private CompletableFuture<SIPpInstance> launch(final ProcessBuilder builder, final StatsOffsets offsets) {
+        return launch(builder, offsets, 1);
+    }
+
+    /**
+     * The control port was free when it was picked but someone else may have taken it by the
+     * time SIPp gets to bind it, in which case SIPp dies right away. If so, we go again with
+     * another port, which is then also the one used by every process after it.
+     */
+    private CompletableFuture<SIPpInstance> launch(final ProcessBuilder builder, final StatsOffsets offsets,
+                                                   final int attempt) {
+        return spawn(builder, offsets).handle((instance, t) -> {
+            if (t == null) {
+                return CompletableFuture.completedFuture(instance);
+            }
+
+            final int port = ControlSocket.getPort(builder.command());
+            if (port == -1 || stopped || !ControlSocket.isPortTaken(t)) {
+                return DefaultSIPp.<SIPpInstance>failed(t);
+            }
+            if (attempt >= MAX_CONTROL_PORT_ATTEMPTS) {
+                logger.error("SIPp process of {} was unable to bind a control port, giving up after {} ports, "
+                        + "the last one being {}", friendlyName, attempt, port);
+                return DefaultSIPp.<SIPpInstance>failed(t);
+            }
+
+            final int next = ControlSocket.findFreePort();
+            logger.warn("The control port {} of {} was taken, starting SIPp again with control port {}",
+                    port, friendlyName, next);
+            synchronized (lock) {
+                processBuilder = withControlPort(processBuilder, next);
+            }
+            return launch(withControlPort(builder, next), offsets, attempt + 1);
+        }).thenCompose(Function.identity());
+    }
+
+    private static <T> CompletableFuture<T> failed(final Throwable t) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * A single attempt at starting a new process, see {@link #launch(ProcessBuilder, StatsOffsets)}.
+     */
+    private CompletableFuture<SIPpInstance> spawn(final ProcessBuilder builder, final StatsOffsets offsets) {
+        final CpuPlacement.Assignment placement = cpuPlacement.assign();
+        final ProcessBuilder placed = placement != null
+                ? withCommand(builder, cpuPlacement.wrap(placement, builder.command())) : builder;
+
+        return SIPpInstance.create(executorService, tailingService, versionProbe.getVersion(builder.command().get(0)),
+                registry, placed, commandChannelFactory, name, history, offsets, this::processStats).whenComplete((instance, t) -> {
+            if (t != null) {
+                cpuPlacement.release(placement);
+            }
+        }).thenApply(instance -> {
+            synchronized (lock) {
+                // we were asked to stop while this process, which replaces one that died,
+                // was starting up, so it is a goner before it even got going.
+                if (stopped) {
+                    instance.stop().whenComplete((i, t) -> cpuPlacement.release(placement));
+                    return instance;
                 }
-                return DefaultSIPp.this;
+                sippInstance = instance;
+                assignment = placement;
+            }
+            if (placement != null) {
+                placement.attach(instance.getPid());
+            }
+            instance.onExit().thenAccept(exitCode -> {
+                cpuPlacement.release(placement);
+                processExit(instance, exitCode);
             });
+            return instance;
+        });
+    }
 
-            return currentStartFuture;
+    /**
+     * The process died on us. Unless we were asked to stop it, start a new one at the rate
+     * the old one was running at and with its cumulative counters carried over.
+     */
+    private void processExit(final SIPpInstance instance, final int exitCode) {
+        final int generation;
+        final ProcessBuilder builder;
+        synchronized (lock) {
+            if (stopped || sippInstance != instance) {
+                return;
+            }
+            generation = restarts.size();
+            builder = processBuilder;
+        }
+
+        final long uptime = instance.getUptime();
+        if (uptime >= STABLE_UPTIME_MS) {
+            consecutiveFailures.set(0);
+        } else {
+            consecutiveFailures.incrementAndGet();
         }
+
+        final int rate = instance.getRequestedRate();
+        final RestartEvent event = new RestartEvent(generation, System.currentTimeMillis(), exitCode, uptime, rate);
+        restarts.add(event);
+        logger.warn("SIPp process of {} died with exit code {} after {} ms, restarting it at {} CPS",
+                friendlyName, exitCode, uptime, rate);
+
+        restart(rate > 0 ? withRate(builder, rate) : builder, instance.getNextOffsets());
+    }
+
+    private void restart(final ProcessBuilder builder, final StatsOffsets offsets) {
+        final int failures = consecutiveFailures.get();
+        if (failures > MAX_CONSECUTIVE_FAILURES) {
+            logger.error("SIPp process of {} keeps on dying, giving up after {} attempts", friendlyName, failures);
+            termination.complete(this);
+            return;
+        }
+
+        // back off if it keeps on dying right away
+        final long delay = failures == 0 ? 0
+                : Math.min(MAX_RESTART_DELAY_MS, MIN_RESTART_DELAY_MS << Math.min(failures - 1, 16));
+
+        executorService.schedule(() -> {
+            if (stopped) {
+                return;
+            }
+
+            launch(builder, offsets).whenComplete((instance, t) -> {
+                if (t != null) {
+                    logger.warn("Unable to restart the SIPp process of {}", friendlyName, t);
+                    consecutiveFailures.incrementAndGet();
+                    restart(builder, offsets);
+                }
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a copy of the process builder but with the given initial rate.
+     */
+    static ProcessBuilder withRate(final ProcessBuilder builder, final int rate) {
+        final List<String> command = new ArrayList<>(builder.command());
+        final int index = command.indexOf("-r");
+        if (index != -1 && index + 1 < command.size()) {
+            command.set(index + 1, Integer.toString(rate));
+        } else {
+            command.add("-r");
+            command.add(Integer.toString(rate));
+        }
+        return withCommand(builder, command);
+    }
+
+    /**
+     * Create a copy of the process builder but with the given control port.
+     */
+    static ProcessBuilder withControlPort(final ProcessBuilder builder, final int port) {
+        final List<String> command = new ArrayList<>(builder.command());
+        command.set(command.indexOf("-cp") + 1, Integer.toString(port));
+        return withCommand(builder, command);
+    }
+
+    /**
+     * Create a copy of the process builder but with the given command.
+     */
+    static ProcessBuilder withCommand(final ProcessBuilder builder, final List<String> command) {
+        final ProcessBuilder copy = new ProcessBuilder(command)
+                .directory(builder.directory())
+                .redirectInput(builder.redirectInput())
+                .redirectOutput(builder.redirectOutput())
+                .redirectError(builder.redirectError())
+                .redirectErrorStream(builder.redirectErrorStream());
+        copy.environment().clear();
+        copy.environment().putAll(builder.environment());
+        return copy;
+    }
+
+    @Override
+    public List<RestartEvent> getRestarts() {
+        return Collections.unmodifiableList(restarts);
+    }
+
+    @Override
+    public int getGeneration() {
+        return restarts.size();
     }
 
     @Override
     public CompletableFuture<SIPp> stop(boolean force) throws IllegalStateException {
         synchronized (lock) {
             if (sippInstance != null) {
-                return sippInstance.stop().thenApply(instance -> DefaultSIPp.this);
+                stopped = true;
+                return sippInstance.stop().<SIPp>thenApply(instance -> DefaultSIPp.this)
+                        .whenComplete((sipp, t) -> termination.complete(this));
             } else {
                 throw new IllegalStateException("This instance was never started");
             }
         }
     }
 
+    @Override
+    public CompletableFuture<SIPp> onTermination() {
+        return termination;
+    }
+
     @Override
     public boolean cleanUp() throws IllegalStateException {
         synchronized (lock) {
@@ -160,6 +635,7 @@ public final class DefaultSIPp implements SIPp {
 
     @Override
     public CompletableFuture<SIPp> increase10() {
+        rateController = null;
         synchronized (lock) {
             if (sippInstance != null) {
                 return sippInstance.increaseRateBy10().thenApply(instance -> DefaultSIPp.this);
@@ -171,6 +647,7 @@ public final class DefaultSIPp implements SIPp {
 
     @Override
     public CompletableFuture<SIPp> decrease10() {
+        rateController = null;
         synchronized (lock) {
             if (sippInstance != null) {
                 return sippInstance.decreaseRateBy10().thenApply(instance -> DefaultSIPp.this);
@@ -182,8 +659,26 @@ public final class DefaultSIPp implements SIPp {
 
     @Override
     public CompletableFuture<SIPp> setRate(int rate) {
+        rateController = null;
+        synchronized (lock) {
+            if (sippInstance != null) {
+                return sippInstance.setRate(rate).thenApply(instance -> DefaultSIPp.this);
+            } else {
+                throw new IllegalStateException("This instance was never started");
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<SIPp> holdRate(final int rate) {
+        return holdRate(rate, RateController.Gains.DEFAULT);
+    }
+
+    @Override
+    public CompletableFuture<SIPp> holdRate(final int rate, final RateController.Gains gains) throws IllegalStateException {
         synchronized (lock) {
             if (sippInstance != null) {
+                rateController = new RateController(rate, gains);
                 return sippInstance.setRate(rate).thenApply(instance -> DefaultSIPp.this);
             } else {
                 throw new IllegalStateException("This instance was never started");
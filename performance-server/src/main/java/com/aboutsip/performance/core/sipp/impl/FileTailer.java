@@ -0,0 +1,278 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.StatsRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Tails a file that is continuously being appended to, such as the stats and counts
+ * files that SIPp writes to.
+ *
+ * Every time {@link #drain()} is called, everything that has been written since the last
+ * call is consumed in one go and every complete line is handed over to the consumer. A
+ * partially written line (SIPp may be in the middle of writing it) is left as is and will
+ * be picked up on the next drain.
+ *
+ * There are two ways of reading the file. Either line by line, where every line is decoded
+ * into a {@link String}, or by handing over a {@link StatsRow}, which is just the offsets of
+ * every field straight on top of the bytes read (or, if there are a lot of them, mapped). The
+ * latter is what you want for the stats files since a row then doesn't cost any intermediate
+ * strings.
+ *
+ * The {@link FileTailer} itself doesn't decide when to drain, that is up to the
+ * {@link TailingService}, which will do so as soon as the file is modified.
+ */
+public final class FileTailer implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Reader reader;
+
+    /**
+     * Where in the file we are. Everything before this position has been
+     * handed over to the consumer.
+     */
+    private volatile long position;
+
+    private volatile boolean closed;
+
+    private FileTailer(final Path path, final FileChannel channel, final long position, final Reader reader) {
+        this.path = path;
+        this.channel = channel;
+        this.position = position;
+        this.reader = reader;
+    }
+
+    /**
+     * Open the file and start tailing it from the given position, handing over every
+     * line as a {@link String}.
+     *
+     * @param path the file to tail.
+     * @param position the byte offset from where to start. E.g., if you already have
+     *                 consumed the header of the file you may want to skip past it.
+     * @param consumer the consumer that will be given every complete line.
+     * @return
+     * @throws IOException in case the file cannot be opened.
+     */
+    public static FileTailer open(final Path path, final long position, final Consumer<String> consumer) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new FileTailer(path.toAbsolutePath(), channel, position, new LineReader(consumer));
+    }
+
+    /**
+     * Open the file and start tailing it from the given position without decoding it.
+     * Every line is handed over as a {@link StatsRow}, which is re-used between lines.
+     *
+     * @param path the file to tail.
+     * @param position the byte offset from where to start.
+     * @param consumer the consumer that will be given every complete line.
+     * @return
+     * @throws IOException in case the file cannot be opened.
+     */
+    public static FileTailer openMapped(final Path path, final long position, final Consumer<StatsRow> consumer) throws IOException {
+        return openMapped(path, position, consumer, MappedRowReader.DEFAULT_BUFFER_SIZE,
+                MappedRowReader.MAX_MAPPED_REGION);
+    }
+
+    /**
+     * As {@link #openMapped(Path, long, Consumer)} but with a buffer for reading small increments
+     * of the file, and a limit on how much of it to map at once, of your own choosing.
+     */
+    static FileTailer openMapped(final Path path, final long position, final Consumer<StatsRow> consumer,
+                                 final int bufferSize, final long maxMappedRegion) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new FileTailer(path.toAbsolutePath(), channel, position,
+                new MappedRowReader(consumer, bufferSize, maxMappedRegion));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The number of bytes that have been written to the file but that we have yet
+     * to consume. If this number keeps growing we are not keeping up with SIPp.
+     *
+     * @return the backlog in bytes or zero if the tailer has been closed.
+     */
+    public long getBacklog() {
+        if (closed) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, channel.size() - position);
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Consume everything that is available in the file right now.
+     *
+     * @return the number of bytes consumed, which is zero if there were no new complete lines.
+     * @throws IOException
+     */
+    public synchronized long drain() throws IOException {
+        if (closed) {
+            return 0;
+        }
+
+        final long start = position;
+        long available = channel.size() - position;
+        while (available > 0) {
+            final long consumed = reader.read(channel, position, available);
+            if (consumed == 0) {
+                break;
+            }
+
+            position += consumed;
+            available = channel.size() - position;
+        }
+
+        return position - start;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path + " @ " + position;
+    }
+
+    /**
+     * Strategy for how to consume the new part of the file.
+     */
+    private interface Reader {
+
+        /**
+         * Read and process all complete lines starting at the given position.
+         *
+         * @param channel the file
+         * @param position where to start reading
+         * @param available how many bytes are available in the file from the position
+         * @return the number of bytes that make up the processed lines, including the line feeds.
+         *         Zero if there wasn't a single complete line.
+         */
+        long read(FileChannel channel, long position, long available) throws IOException;
+    }
+
+    private static final class LineReader implements Reader {
+
+        private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+        private final Consumer<String> consumer;
+        private ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+
+        private LineReader(final Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public long read(final FileChannel channel, final long position, final long available) throws IOException {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return 0;
+            }
+
+            final byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; ++i) {
+                if (bytes[i] == StatsRow.LINE_FEED) {
+                    final int end = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                    consumer.accept(new String(bytes, lineStart, end - lineStart, StandardCharsets.US_ASCII));
+                    lineStart = i + 1;
+                }
+            }
+
+            // no complete line in the entire buffer. Make room for a longer line
+            // and let the next round try again.
+            if (lineStart == 0 && read == buffer.capacity()) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                return read(channel, position, available);
+            }
+
+            return lineStart;
+        }
+    }
+
+    /**
+     * Reads the new part of the file into a buffer that is re-used between reads, which is
+     * all it takes to keep up with SIPp writing a row every now and then. Only if we have
+     * fallen behind, or a line doesn't fit in the buffer, is the backlog mapped instead, at
+     * most {@link #MAX_MAPPED_REGION} at a time. Mapping is cheap compared to copying a large
+     * backlog but not compared to copying a few rows, since every mapping is a couple of system
+     * calls and hangs on to its part of the address space until it is garbage collected.
+     */
+    private static final class MappedRowReader implements Reader {
+
+        private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+        /**
+         * Never map more than this in one go. It is plenty, even if we have fallen behind.
+         */
+        private static final long MAX_MAPPED_REGION = 64 * 1024 * 1024;
+
+        private final Consumer<StatsRow> consumer;
+        private final StatsRow row = new StatsRow();
+        private final ByteBuffer buffer;
+        private final long maxMappedRegion;
+
+        private MappedRowReader(final Consumer<StatsRow> consumer, final int bufferSize, final long maxMappedRegion) {
+            this.consumer = consumer;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            this.maxMappedRegion = maxMappedRegion;
+        }
+
+        @Override
+        public long read(final FileChannel channel, final long position, final long available) throws IOException {
+            if (available <= buffer.capacity()) {
+                buffer.clear();
+                final int read = channel.read(buffer, position);
+                final long consumed = read > 0 ? consume(buffer, read) : 0;
+                // a line that doesn't fit in the buffer, or at least not until the next drain
+                if (consumed > 0 || read < buffer.capacity()) {
+                    return consumed;
+                }
+            }
+
+            final int length = (int) Math.min(available, maxMappedRegion);
+            return consume(channel.map(FileChannel.MapMode.READ_ONLY, position, length), length);
+        }
+
+        private long consume(final ByteBuffer bytes, final int length) {
+            int lineStart = 0;
+            for (int i = 0; i < length; ++i) {
+                if (bytes.get(i) == StatsRow.LINE_FEED) {
+                    consumer.accept(row.wrap(bytes, lineStart, i));
+                    lineStart = i + 1;
+                }
+            }
+
+            return lineStart;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.aboutsip.performance.core.sipp.impl;
 
+import com.aboutsip.performance.core.sipp.CommandChannel;
 import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
 import com.aboutsip.performance.core.sipp.StatsLabels;
+import com.aboutsip.performance.core.sipp.StatsLabelsRegistry;
 import com.aboutsip.performance.core.sipp.StatsObject;
+import com.aboutsip.performance.core.sipp.StatsOffsets;
+import com.aboutsip.performance.core.sipp.StatsRow;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.slf4j.Logger;
@@ -10,12 +15,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
 
 /**
  * Represents a running SIPp instance.
@@ -37,14 +56,17 @@ public class SIPpInstance {
     private final int pid;
     private final Process process;
 
-    // The re-directed stdout/in/error
-    private final BufferedWriter output;
+    // The re-directed stderr
     private final BufferedReader error;
 
-    // Pointers to the various files that sipp opens.
+    // How we control the process, either through stdin or the UDP control port
+    private final CommandChannel commands;
+
+    // Tails the various files that sipp opens.
     // We need these to pull stats out of.
-    private final BufferedReader countsFileReader;
-    private final BufferedReader statsFileReader;
+    private final TailingService tailingService;
+    private volatile FileTailer countsFileTailer;
+    private volatile FileTailer statsFileTailer;
 
     // Really only need to keep track of the files if
     // the user asks us to delete them at the end of
@@ -61,122 +83,220 @@ public class SIPpInstance {
      */
     private final StatsObject emptyStats;
 
-    private int statsIndex = 0;
-    private final Map<Integer, StatsObject> stats;
+    /**
+     * The latest stats we have received from SIPp, or null if none so far.
+     *
+     * There is only ever one thread writing to this (the one processing the stats file)
+     * and since a {@link StatsObject} is immutable, readers will always see a consistent
+     * snapshot of all the values without ever having to block the ingestion of new stats.
+     */
+    private volatile StatsObject latestStats;
+
+    /**
+     * Every stats row we receive is also recorded here. Note that the history
+     * belongs to the {@link SIPp} and outlives this instance.
+     */
+    private final StatsHistory history;
+
+    /**
+     * How long to wait for SIPp to report a new target rate. SIPp reports once a second
+     * so if we haven't seen it after a few seconds it isn't going to happen.
+     */
+    private static final long RATE_CONFIRMATION_TIMEOUT_MS = 5000;
+
+    /**
+     * The last rate we asked SIPp for, or -1 if we haven't asked for anything or we
+     * no longer know (in which case we go with what SIPp last reported).
+     */
+    private volatile int requestedRate = -1;
+
+    /**
+     * Rate changes that SIPp has yet to confirm in its stats file.
+     */
+    private final Queue<PendingRate> pendingRates = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Added to the cumulative counters of every row, see {@link StatsOffsets}.
+     */
+    private final StatsOffsets offsets;
 
     /**
-     * Used as a lock. Nothing fancy needed...
+     * Completes with the exit code once the process has died, for whatever reason.
      */
-    private final Object lock = new Object();
+    private final CompletableFuture<Integer> exitFuture = new CompletableFuture<>();
+
+    /**
+     * How often we check whether the process is still alive.
+     */
+    private static final long EXIT_PROBE_INTERVAL_MS = 250;
+
+    /**
+     * How long we are willing to wait for a new process to start writing its stats files.
+     */
+    private static final long STARTUP_TIMEOUT_MS = 5000;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Gets every new stats object we read.
+     */
+    private final Consumer<StatsObject> statsListener;
 
     private SIPpInstance(final ScheduledExecutorService executorService,
+                         final TailingService tailingService,
                          final int pid,
                          final Process process,
-                         final BufferedWriter output,
+                         final CommandChannel commands,
                          final BufferedReader error,
-                         final BufferedReader countsFileReader,
-                         final BufferedReader statsFileReader,
                          final File countsFile,
                          final File statsFile,
-                         final StatsLabels statsLabels) {
+                         final StatsLabels statsLabels,
+                         final StatsHistory history,
+                         final StatsOffsets offsets,
+                         final Consumer<StatsObject> statsListener) {
         this.executorService = executorService;
+        this.tailingService = tailingService;
         this.pid = pid;
         this.process = process;
-        this.output = output;
+        this.commands = commands;
         this.error = error;
-        this.countsFileReader = countsFileReader;
-        this.statsFileReader = statsFileReader;
         this.countsFile = countsFile;
         this.statsFile = statsFile;
         this.statsLabels = statsLabels;
+        this.history = history;
+        this.offsets = offsets;
+        this.statsListener = statsListener;
 
-        final String emptyStat = "2016-02-26      15:13:39:882    1456528419.882808;2016-02-26    15:13:39:882    1456528419.882808;2016-02-26    15:13:39:886    1456528419.886260;00:00:00;00:00:00;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;0;00:00:00:000;00:00:00:000;00:00:00:000;00:00:00:000;00:00:00:000;00:00:00:000;00:00:00:000;00:00:00:000;;0;0;0;0;0;0;0;0;0;;0;0;0;0;0;0;0;0;";
-        this.emptyStats = statsLabels.createNewStats(emptyStat);
-
-        // really just keep track of a few. If someone is asking for more
-        // then lets go and fetch that entry off of file again...
-         stats = new LinkedHashMap<Integer, StatsObject>() {
-            @Override
-            protected boolean removeEldestEntry(final Map.Entry<Integer, StatsObject> eldest) {
-                return this.size() > 10;
-            }
-        };
+        this.emptyStats = statsLabels.createEmptyStats();
     }
 
+    /**
+     * Start a new SIPp process and wait for it to start reporting stats, without blocking
+     * any thread while doing so. The process is started on the executor, after which we are
+     * notified when its stats files show up (see {@link TailingService#awaitFile(Path, Function, long)})
+     * so starting a lot of processes at the same time takes about as long as starting one.
+     *
+     * @return a future that completes once the process is up and running or completes
+     * exceptionally if the process never got that far, in which case it has been killed.
+     */
     public static CompletableFuture<SIPpInstance> create(final ScheduledExecutorService executorService,
+                                                         final TailingService tailingService,
+                                                         final CompletableFuture<SIPp.Version> version,
+                                                         final StatsLabelsRegistry registry,
                                                          final ProcessBuilder processBuilder,
-                                                         final String name) {
-        final CompletableFuture<SIPpInstance> future = new CompletableFuture<>();
+                                                         final BiFunction<List<String>, Process, CommandChannel> commandChannelFactory,
+                                                         final String name,
+                                                         final StatsHistory history,
+                                                         final StatsOffsets offsets,
+                                                         final Consumer<StatsObject> statsListener) {
+        return CompletableFuture.supplyAsync(() -> startProcess(processBuilder), executorService).thenCompose(process -> {
+            final int pid;
+            try {
+                pid = getPid(process);
+            } catch (final IllegalArgumentException e) {
+                process.destroyForcibly();
+                throw e;
+            }
 
-        final Runnable init = new Runnable() {
-            @Override
-            public void run() {
+            final BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+            final File countsFile = new File(String.format("%s_%d_counts.csv", name, pid));
+            final File statsFile = new File(String.format("%s_%d_.csv", name, pid));
+
+            // one file at a time since only one of the probes can have whatever the
+            // process printed on stderr if it dies. SIPp opens both files right away anyway.
+            final CompletableFuture<String> header = tailingService.awaitFile(statsFile.toPath(),
+                    path -> readHeader(path, process, error), STARTUP_TIMEOUT_MS)
+                    .thenCompose(line -> tailingService.awaitFile(countsFile.toPath(),
+                            path -> Files.exists(path) ? line : checkAlive(process, error), STARTUP_TIMEOUT_MS));
+
+            // the header is the same for every process running the same scenario
+            // on the same SIPp so it is only ever compiled once.
+            return header.thenCombine(version, (line, v) -> {
+                final StatsLabels labels = registry.get(v, line);
+                final CommandChannel commands = commandChannelFactory.apply(processBuilder.command(), process);
+                final SIPpInstance instance = new SIPpInstance(executorService, tailingService, pid, process,
+                        commands, error, countsFile, statsFile, labels, history, offsets, statsListener);
+
+                // kick off the tailing of the two stats files. The header of the stats file
+                // has already been consumed so skip past it.
+                final long headerLength = line.getBytes(StandardCharsets.US_ASCII).length + 1;
                 try {
-                    final Process process = processBuilder.start();
-                    final int pid = getPid(process);
-
-                    final BufferedWriter output = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
-                    final BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-
-                    Thread.sleep(10);
-                    if (!process.isAlive()) {
-                        error.lines().forEach(l -> System.err.println(l));
-                    }
-
-                    final String countsFileName = String.format("%s_%d_counts.csv", name, pid);
-                    final String statsFileName = String.format("%s_%d_.csv", name, pid);
-
-                    // Guess I should schedule a task instead of waiting but easy
-                    // and is enough for now...
-                    final File countsFile = new File(countsFileName);
-                    final File statsFile = new File(statsFileName);
-                    final BufferedReader countsFileReader = openStatsFile(countsFile);
-                    final BufferedReader statsFilereader = openStatsFile(statsFile);
-
-                    // TODO: get this somehow
-                    final SIPp.Version version = SIPp.Version.THREE_DOT_THREE;
-                    final StatsLabels labels = StatsLabels.create(version, readLine(statsFilereader));
-
-                    final SIPpInstance instance = new SIPpInstance(executorService, pid, process,
-                            output, error, countsFileReader, statsFilereader, countsFile, statsFile, labels);
+                    instance.statsFileTailer = tailingService.tailRows(statsFile.toPath(), headerLength, instance::processStatsRow);
+                    instance.countsFileTailer = tailingService.tailRows(countsFile.toPath(), 0, instance::processCountsRow);
+                } catch (final IOException e) {
+                    instance.cleanUp();
+                    throw new UncheckedIOException(e);
+                }
 
-                    future.complete(instance);
+                instance.probeForExit();
+                return instance;
+            }).whenComplete((instance, t) -> {
+                if (t != null) {
+                    process.destroyForcibly();
+                }
+            });
+        });
+    }
 
-                    // kick off the two tasks to continuously read and process the
-                    // data from the various stats files.
-                    CompletableFuture.supplyAsync(() -> instance.processOutputFromSIPp(statsFilereader, instance::processStatsLine), executorService);
-                    CompletableFuture.supplyAsync(() -> instance.processOutputFromSIPp(countsFileReader, instance::processCountsLine), executorService);
+    private static Process startProcess(final ProcessBuilder processBuilder) {
+        try {
+            return processBuilder.start();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                } catch (final IOException | IllegalAccessException e) {
-                    e.printStackTrace();
-                    future.completeExceptionally(e);
-                } catch (final Exception e) {
-                    e.printStackTrace();
-                    future.completeExceptionally(e);
+    /**
+     * Read the first line of the stats file, which contains all the labels.
+     *
+     * @return the header or null if it hasn't been written just yet.
+     */
+    private static String readHeader(final Path file, final Process process, final BufferedReader error) {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            final ByteBuffer buffer = ByteBuffer.allocate(4096);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    final byte b = buffer.get();
+                    if (b == StatsRow.LINE_FEED) {
+                        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+                    }
+                    line.write(b);
                 }
+                buffer.clear();
             }
-        };
+        } catch (final NoSuchFileException e) {
+            // not there yet
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
-        executorService.submit(init);
-        return future;
+        return checkAlive(process, error);
     }
 
-    private static String readLine(final BufferedReader reader) throws IOException {
-        String line = null;
-        int count = 0;
-        while (count++ < 10 && null == (line = reader.readLine())) {
-            try {
-                Thread.sleep(10);
-            } catch (final Throwable t) {
-                // ignore;
-            }
+    /**
+     * If the process dies before it gets going, there is no point waiting for its
+     * stats files and whatever it printed on stderr is most likely why it died.
+     *
+     * @return null if the process is still alive.
+     * @throws IllegalStateException if the process is dead.
+     */
+    private static <T> T checkAlive(final Process process, final BufferedReader error) throws IllegalStateException {
+        if (process.isAlive()) {
+            return null;
         }
 
-        if (count == 10) {
-            throw new IOException("No data in file");
-        }
+        throw new IllegalStateException("SIPp died with exit code " + process.exitValue() + " before it got going: "
+                + error.lines().collect(Collectors.joining("\n")));
+    }
 
-        return line;
+    public int getPid() {
+        return pid;
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
     }
 
     /**
@@ -185,7 +305,7 @@ public class SIPpInstance {
      * @return the target rate
      */
     public int getTargetRate() {
-        return getLatestStats().orElse(emptyStats).getTargetRate();
+        return getStats().getTargetRate();
     }
 
     /**
@@ -194,145 +314,222 @@ public class SIPpInstance {
      * @return the current rate
      */
     public double getCurrentRate() {
-        return getLatestStats().orElse(emptyStats).getCallRate();
+        return getStats().getCallRate();
     }
 
     public int getRetransmissions() {
-        return getLatestStats().orElse(emptyStats).getRetransmissions();
+        return getStats().getRetransmissions();
     }
 
     public int getRetransmissionsCumulative() {
-        return getLatestStats().orElse(emptyStats).getRetransmissionsCumulative();
+        return getStats().getRetransmissionsCumulative();
     }
 
+    /**
+     * Get the latest stats, which is an immutable snapshot so all values are guaranteed
+     * to be from the same row of the stats file.
+     *
+     * @return
+     */
     public StatsObject getStats() {
-        return getLatestStats().orElse(emptyStats);
+        final StatsObject stats = latestStats;
+        return stats != null ? stats : emptyStats;
     }
 
-    private Optional<StatsObject> getLatestStats() {
-        synchronized (lock) {
-            if (stats.isEmpty()) {
-                return Optional.empty();
-            }
-            return Optional.of(stats.get(statsIndex - 1));
-        }
-
+    /**
+     * The number of bytes SIPp has written to its stats files that we have yet to process.
+     *
+     * @return
+     */
+    public long getBacklog() {
+        final FileTailer stats = statsFileTailer;
+        final FileTailer counts = countsFileTailer;
+        return (stats != null ? stats.getBacklog() : 0) + (counts != null ? counts.getBacklog() : 0);
     }
 
-    private SIPpInstance processStatsLine(final String raw) {
-        if (raw == null || raw.isEmpty()) {
-            return this;
+    private void processStatsRow(final StatsRow row) {
+        if (row.size() == 0) {
+            return;
         }
 
-        final StatsObject stats = statsLabels.createNewStats(raw);
-        synchronized (lock) {
-            this.stats.put(statsIndex++, stats);
-        }
-
-        return this;
+        final StatsObject stats = statsLabels.createNewStats(row, offsets);
+        final long time = stats.getTimeNanos();
+        history.append(time != -1 ? time : TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()), stats);
+        latestStats = stats;
+        confirmRates(stats);
+        statsListener.accept(stats);
     }
 
-    private SIPpInstance processCountsLine(final String raw) {
-        // System.err.println(raw);
-        return this;
+    /**
+     * There is no Process.onExit() in Java 8 so we'll have to check every now and then
+     * whether the process is still alive. It's cheap and doesn't tie up a thread per process.
+     */
+    private void probeForExit() {
+        final ScheduledFuture<?> probe = executorService.scheduleWithFixedDelay(() -> {
+            if (!process.isAlive()) {
+                exitFuture.complete(process.exitValue());
+            }
+        }, EXIT_PROBE_INTERVAL_MS, EXIT_PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        exitFuture.whenComplete((code, t) -> probe.cancel(false));
     }
 
     /**
-     * SIPp will dump various types of stats to files.
-     * @return
+     * @return a future that completes with the exit code once the process has died.
      */
-    private SIPpInstance processOutputFromSIPp(final BufferedReader reader, final Consumer<String> function) {
+    public CompletableFuture<Integer> onExit() {
+        return exitFuture;
+    }
 
-        final List<String> lines = readLines(reader);
-        lines.forEach(function);
+    /**
+     * @return for how long the process has been running, in milliseconds.
+     */
+    public long getUptime() {
+        return System.currentTimeMillis() - startedAt;
+    }
 
-        if (process.isAlive()) {
-            executorService.schedule(new Runnable() {
-                @Override
-                public void run() {
-                    processOutputFromSIPp(reader, function);
-                }
-            }, 500, TimeUnit.MILLISECONDS);
-        }
+    /**
+     * @return the last rate we asked for or, if we haven't asked for anything, the
+     * last rate SIPp reported.
+     */
+    public int getRequestedRate() {
+        final int rate = requestedRate;
+        return rate != -1 ? rate : getTargetRate();
+    }
 
-        return this;
+    /**
+     * The offsets to use for the process replacing this one, see {@link StatsOffsets}.
+     */
+    public StatsOffsets getNextOffsets() {
+        return offsets.stitch(latestStats);
     }
 
-    private List<String> readLines(final BufferedReader reader) {
-        final int max = 10;
-        final List<String> lines = new ArrayList<>(max);
-        try {
-            String line = null;
-            int linesRead = 0;
-            while (linesRead++ < max && null != (line = reader.readLine())) {
-                lines.add(line);
-            }
-        } catch (final IOException e) {
-            // ignore
-        }
-        return lines;
+    private void processCountsRow(final StatsRow row) {
+        // System.err.println(raw);
     }
 
     /**
      * Set the rate to X. This could mean an increase, decrease or if we already are at the
      * desired rate then this would a no-op.
      *
+     * The new rate is sent as a single command if the {@link CommandChannel} supports it,
+     * otherwise the keystrokes needed to get there are all sent in one go. Either way, the returned
+     * future doesn't complete until SIPp reports the new target rate in its stats file (or
+     * completes exceptionally with a {@link TimeoutException} if it never does).
+     *
      * @param rate
      * @return
      */
     public CompletableFuture<SIPpInstance> setRate(final int rate) {
-        final int diff = rate - getTargetRate();
-        if (diff > 0) {
-            return CompletableFuture.supplyAsync(() -> increase(diff), executorService);
-        } else if (diff < 0) {
-            return CompletableFuture.supplyAsync(() -> decrease(diff), executorService);
-        }
-
-        return CompletableFuture.completedFuture(this);
+        return changeRate(current -> rate);
     }
 
     public CompletableFuture<SIPpInstance> pause() {
-        return CompletableFuture.supplyAsync(() -> sendCommand("p"), executorService);
+        return commands.sendKeys("p").thenApply(v -> this);
     }
 
     public CompletableFuture<SIPpInstance> increaseRateBy10() {
-        return CompletableFuture.supplyAsync(this::increase10, executorService);
+        return changeRate(current -> current + 10);
     }
 
     public CompletableFuture<SIPpInstance> decreaseRateBy10() {
-        return CompletableFuture.supplyAsync(this::decrease10, executorService);
+        return changeRate(current -> current - 10);
     }
 
-    private SIPpInstance increase10() {
-        return increase(10);
+    /**
+     * Change the rate relative to the last rate we asked for, which may not have shown up in
+     * the stats just yet, so that several changes in a row add up as expected.
+     *
+     * If the {@link CommandChannel} supports it we simply tell SIPp what the rate should be,
+     * otherwise we have to type our way there.
+     */
+    private CompletableFuture<SIPpInstance> changeRate(final IntUnaryOperator f) {
+        final int rate;
+        final CompletableFuture<Void> sent;
+        synchronized (pendingRates) {
+            final int current = requestedRate != -1 ? requestedRate : getTargetRate();
+            rate = Math.max(0, f.applyAsInt(current));
+            if (commands.isCommandSupported()) {
+                sent = commands.execute("set rate " + rate);
+            } else {
+                final String keys = rateCommand(rate - current);
+                sent = keys.isEmpty() ? CompletableFuture.completedFuture(null) : commands.sendKeys(keys);
+            }
+            requestedRate = rate;
+        }
+
+        return sent.thenCompose(v -> confirmRate(rate));
     }
 
-    private SIPpInstance decrease10() {
-        return decrease(10);
+    /**
+     * The keystrokes that will change the rate by the given amount, i.e., '*' and '/'
+     * for +/- 10 and '+' and '-' for +/- 1.
+     */
+    static String rateCommand(final int diff) {
+        final int amount = Math.abs(diff);
+        final StringBuilder sb = new StringBuilder(amount / 10 + amount % 10);
+        for (int i = 0; i < amount / 10; ++i) {
+            sb.append(diff > 0 ? '*' : '/');
+        }
+        for (int i = 0; i < amount % 10; ++i) {
+            sb.append(diff > 0 ? '+' : '-');
+        }
+        return sb.toString();
     }
 
-    private SIPpInstance increase(final int amount) {
-        if (amount >= 10) {
-            sendCommand("*");
-            increase(amount - 10);
-        } else if (amount > 0) {
-            sendCommand("+");
-            increase(amount - 1);
+    private CompletableFuture<SIPpInstance> confirmRate(final int rate) {
+        final PendingRate pending = new PendingRate(rate);
+        pendingRates.add(pending);
+
+        // we may already be there, or SIPp may have reported the new
+        // rate before we got a chance to register the pending rate.
+        final StatsObject stats = latestStats;
+        if (stats != null && stats.getTargetRate() == rate && pendingRates.remove(pending)) {
+            pending.future.complete(this);
         }
 
-        return this;
+        executorService.schedule(() -> {
+            synchronized (pendingRates) {
+                if (!pendingRates.remove(pending)) {
+                    return;
+                }
+
+                // don't trust what we think the rate is anymore, go with what SIPp says. Unless
+                // we have asked for another rate since, in which case that one is still pending.
+                if (requestedRate == rate) {
+                    requestedRate = -1;
+                }
+            }
+            pending.future.completeExceptionally(new TimeoutException("SIPp never confirmed the new rate of "
+                    + rate + " CPS, it is still at " + getTargetRate() + " CPS"));
+        }, RATE_CONFIRMATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        return pending.future;
     }
 
-    private SIPpInstance decrease(final int amount) {
-        if (amount >= 10) {
-            sendCommand("/");
-            decrease(amount - 10);
-        } else if (amount > 0) {
-            sendCommand("-");
-            decrease(amount - 1);
+    /**
+     * Complete every pending rate change that SIPp has now confirmed, or that has been
+     * superseded by a later change (there is nothing to wait for then).
+     */
+    private void confirmRates(final StatsObject stats) {
+        if (pendingRates.isEmpty()) {
+            return;
         }
 
-        return this;
+        final int requested = requestedRate;
+        for (final PendingRate pending : pendingRates) {
+            if ((pending.rate == stats.getTargetRate() || pending.rate != requested) && pendingRates.remove(pending)) {
+                pending.future.complete(this);
+            }
+        }
+    }
+
+    private final class PendingRate {
+        private final int rate;
+        private final CompletableFuture<SIPpInstance> future = new CompletableFuture<>();
+
+        private PendingRate(final int rate) {
+            this.rate = rate;
+        }
     }
 
     public boolean deleteFiles() throws IllegalStateException{
@@ -351,21 +548,10 @@ public class SIPpInstance {
 
     private SIPpInstance initiateStop() {
         System.err.println("Trying to gracefully stop");
-        sendCommand("q");
-        return this;
-    }
-
-    /**
-     * Send a commmand to the underlying SIPp process
-     * @param command
-     */
-    private SIPpInstance sendCommand(final String command) {
-        try {
-            output.write(command);
-            output.flush();
-        } catch (final IOException e) {
-            e.printStackTrace();
-        }
+        commands.sendKeys("q").exceptionally(t -> {
+            logger.warn("Unable to ask SIPp to quit, will have to kill it", t);
+            return null;
+        });
         return this;
     }
 
@@ -405,45 +591,25 @@ public class SIPpInstance {
     }
 
     private SIPpInstance cleanUp() {
-        close(countsFileReader);
-        close(statsFileReader);
+        commands.close();
+        stopTailing(countsFileTailer);
+        stopTailing(statsFileTailer);
         return this;
     }
 
-    private void close(final Closeable closeable) {
-        try {
-            closeable.close();
-        } catch (final IOException e) {
-            // ignore
-        }
-    }
-
-    private static BufferedReader openStatsFile(final File file) throws FileNotFoundException {
-        final long MAX_WAIT = 1000;
-
-        final long ts = System.currentTimeMillis();
-        while (!file.exists() && System.currentTimeMillis() - ts < MAX_WAIT) {
-            try {
-                // use the executor service instead...
-                Thread.sleep(20);
-            } catch (final Throwable t) {
-                // ignore
-            }
-        }
-
-        try {
-            return new BufferedReader(new FileReader(file));
-        } catch (final FileNotFoundException e) {
-            throw new FileNotFoundException("Unable to open one of the statistics files, needed to keep track of the "
-                    + "statistics. The expected file is \"" + file + "\"");
+    private void stopTailing(final FileTailer tailer) {
+        if (tailer != null) {
+            tailingService.stop(tailer);
         }
     }
 
-    public static int getPid(final Process process) throws IllegalArgumentException, IllegalAccessException {
+    public static int getPid(final Process process) throws IllegalArgumentException {
         try {
             final Field f = process.getClass().getDeclaredField("pid");
             f.setAccessible(true);
             return (Integer) f.get(process);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to get the pid of the SIPp process", e);
         } catch (final NoSuchFieldException e) {
             throw new IllegalArgumentException("Strange. Seems like you are on a unix based system, yet "
                     + "there is no private field named 'pid'. This should work on Java 8. You may need to "
@@ -0,0 +1,74 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Controls a SIPp process by writing to its stdin, which of course only works for
+ * processes we have spawned ourselves.
+ *
+ * The writes are carried out on the executor but always in the order they were
+ * issued.
+ */
+public final class StdinCommandChannel implements CommandChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(StdinCommandChannel.class);
+
+    private final BufferedWriter output;
+    private final Executor executor;
+
+    /**
+     * The last write issued, every new write is chained onto it.
+     */
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+    public StdinCommandChannel(final OutputStream stdin, final Executor executor) {
+        this.output = new BufferedWriter(new OutputStreamWriter(stdin, StandardCharsets.US_ASCII));
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> sendKeys(final String keys) {
+        // don't let a failed write prevent later ones
+        last = last.handle((v, t) -> null).thenRunAsync(() -> write(keys), executor);
+        return last;
+    }
+
+    private void write(final String keys) {
+        try {
+            output.write(keys);
+            output.flush();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isCommandSupported() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(final String command) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("SIPp doesn't accept commands on stdin, use the UDP control port");
+    }
+
+    @Override
+    public void close() {
+        try {
+            output.close();
+        } catch (final IOException e) {
+            logger.debug("Unable to close stdin of the SIPp process", e);
+        }
+    }
+}
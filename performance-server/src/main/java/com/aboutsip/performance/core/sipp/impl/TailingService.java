@@ -0,0 +1,314 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.StatsRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Keeps track of all the files we are tailing and drains them as soon as they grow.
+ *
+ * There is one {@link TailingService} shared across all SIPp instances. It will register
+ * the directories of the tailed files with a {@link WatchService} (which on Linux is backed
+ * by inotify) and whenever a file is modified, the corresponding {@link FileTailer} is
+ * drained on the executor.
+ *
+ * Since the {@link WatchService} isn't available everywhere (and on some platforms is
+ * just polling under the hood anyway) every tailer also has an adaptive poll as a fallback.
+ * The poll interval is halved every time the poll finds new data and doubled when it
+ * doesn't. If the file is being watched, the poll will quickly back off to
+ * {@link #MAX_POLL_INTERVAL_MS} and is really just a safety net.
+ */
+public final class TailingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TailingService.class);
+
+    private static final long MIN_POLL_INTERVAL_MS = 10;
+    private static final long MAX_POLL_INTERVAL_MS = 1000;
+
+    /**
+     * If we do not have a {@link WatchService} we will never back off further than this.
+     */
+    private static final long MAX_UNWATCHED_POLL_INTERVAL_MS = 250;
+
+    private final ScheduledExecutorService executorService;
+
+    /**
+     * Will be null if the platform doesn't support watching the file system.
+     */
+    private final WatchService watchService;
+
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+
+    private final Map<Path, List<FileTailer>> tailers = new ConcurrentHashMap<>();
+
+    /**
+     * Those waiting for a file to show up (or for something to be written to it), see
+     * {@link #awaitFile(Path, Function, long)}.
+     */
+    private final Map<Path, List<Runnable>> waiters = new ConcurrentHashMap<>();
+
+    public TailingService(final ScheduledExecutorService executorService) {
+        this.executorService = executorService;
+        this.watchService = createWatchService();
+
+        if (watchService != null) {
+            final Thread thread = new Thread(this::watch, "sipp-stats-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static WatchService createWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (final IOException | UnsupportedOperationException e) {
+            logger.warn("Unable to create a WatchService, will fall back to polling the stats files", e);
+            return null;
+        }
+    }
+
+    /**
+     * Start tailing the given file.
+     *
+     * @param file the file to tail.
+     * @param position the position in the file from where to start tailing.
+     * @param consumer the consumer that will be handed every line.
+     * @return the {@link FileTailer}. Close it when you are done.
+     * @throws IOException in case the file cannot be opened.
+     */
+    public FileTailer tail(final Path file, final long position, final Consumer<String> consumer) throws IOException {
+        return register(FileTailer.open(file, position, consumer));
+    }
+
+    /**
+     * Start tailing the given file without decoding it. Every line is handed over as a
+     * {@link StatsRow}, which is re-used between lines so grab what you need from it and
+     * do not hang on to it.
+     *
+     * @param file the file to tail.
+     * @param position the position in the file from where to start tailing.
+     * @param consumer the consumer that will be handed every row.
+     * @return the {@link FileTailer}. Close it when you are done.
+     * @throws IOException in case the file cannot be opened.
+     */
+    public FileTailer tailRows(final Path file, final long position, final Consumer<StatsRow> consumer) throws IOException {
+        return register(FileTailer.openMapped(file, position, consumer));
+    }
+
+    private FileTailer register(final FileTailer tailer) {
+        final boolean watched = watch(tailer.getPath().getParent());
+        tailers.compute(tailer.getPath(), (p, list) -> {
+            final List<FileTailer> registered = list != null ? list : new CopyOnWriteArrayList<>();
+            registered.add(tailer);
+            return registered;
+        });
+
+        // whatever may already be in the file won't generate a new event
+        // so kick off the first drain right away.
+        schedulePoll(tailer, watched, 0, MIN_POLL_INTERVAL_MS);
+        return tailer;
+    }
+
+    /**
+     * Wait for a file to show up, and for whatever you need to be written to it, without
+     * blocking any thread while doing so. Every time the file is created or modified (or,
+     * as a fallback, every now and then) the probe is asked whether the file is ready, and
+     * the first non-null value it returns completes the future.
+     *
+     * If the probe throws an exception, the future completes exceptionally with it, which
+     * is how you give up early, e.g. if the process that was supposed to write the file died.
+     *
+     * @param file the file to wait for.
+     * @param probe returns null if the file isn't ready yet.
+     * @param timeoutMs for how long to wait before giving up.
+     * @return a future that completes with the value of the probe or exceptionally with a
+     * {@link FileNotFoundException} if the file never became ready.
+     */
+    public <T> CompletableFuture<T> awaitFile(final Path file, final Function<Path, T> probe, final long timeoutMs) {
+        final Path path = file.toAbsolutePath();
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Runnable check = () -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                final T value = probe.apply(path);
+                if (value != null) {
+                    future.complete(value);
+                }
+            } catch (final Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+
+        final boolean watched = watch(path.getParent());
+        waiters.compute(path, (p, list) -> {
+            final List<Runnable> checks = list != null ? list : new CopyOnWriteArrayList<>();
+            checks.add(check);
+            return checks;
+        });
+        future.whenComplete((value, t) -> waiters.computeIfPresent(path, (p, list) -> {
+            list.remove(check);
+            return list.isEmpty() ? null : list;
+        }));
+
+        executorService.schedule(() -> future.completeExceptionally(new FileNotFoundException("Gave up waiting for \""
+                + path + "\" after " + timeoutMs + " ms")), timeoutMs, TimeUnit.MILLISECONDS);
+
+        // it may already be there and otherwise, the poll is the
+        // safety net in case we miss (or don't get) the event.
+        schedulePoll(future, check, watched, 0, MIN_POLL_INTERVAL_MS);
+        return future;
+    }
+
+    private void schedulePoll(final CompletableFuture<?> future, final Runnable check, final boolean watched,
+                              final long delay, final long interval) {
+        if (future.isDone()) {
+            return;
+        }
+
+        executorService.schedule(() -> {
+            check.run();
+            final long next = Math.min(watched ? MAX_POLL_INTERVAL_MS : MAX_UNWATCHED_POLL_INTERVAL_MS, interval * 2);
+            schedulePoll(future, check, watched, next, next);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop tailing the file, which will drain whatever is left in it and then close the tailer.
+     *
+     * @param tailer
+     */
+    public void stop(final FileTailer tailer) {
+        tailers.computeIfPresent(tailer.getPath(), (p, list) -> {
+            list.remove(tailer);
+            return list.isEmpty() ? null : list;
+        });
+        drain(tailer);
+        tailer.close();
+    }
+
+    /**
+     * The total number of bytes written by all the SIPp instances that we have yet to consume.
+     *
+     * @return
+     */
+    public long getBacklog() {
+        return tailers.values().stream().flatMap(List::stream).mapToLong(FileTailer::getBacklog).sum();
+    }
+
+    /**
+     * Stop watching the file system, which also ends the watcher thread. The tailers and
+     * waiters left are still polled, until they are closed or give up.
+     */
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                logger.debug("Unable to close the WatchService", e);
+            }
+        }
+        watchedDirectories.clear();
+    }
+
+    private boolean watch(final Path directory) {
+        if (watchService == null || directory == null) {
+            return false;
+        }
+
+        try {
+            watchedDirectories.computeIfAbsent(directory, dir -> {
+                try {
+                    return dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_CREATE);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            return true;
+        } catch (final IllegalStateException e) {
+            logger.warn("Unable to watch directory {}, will fall back to polling", directory, e.getCause());
+            return false;
+        }
+    }
+
+    private void schedulePoll(final FileTailer tailer, final boolean watched, final long delay, final long interval) {
+        if (tailer.isClosed()) {
+            return;
+        }
+
+        executorService.schedule(() -> {
+            final long consumed = drain(tailer);
+            final long max = watched ? MAX_POLL_INTERVAL_MS : MAX_UNWATCHED_POLL_INTERVAL_MS;
+            final long next = consumed > 0 ? Math.max(MIN_POLL_INTERVAL_MS, interval / 2) : Math.min(max, interval * 2);
+            schedulePoll(tailer, watched, next, next);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private long drain(final FileTailer tailer) {
+        try {
+            return tailer.drain();
+        } catch (final IOException e) {
+            if (!tailer.isClosed()) {
+                logger.warn("Unable to read from {}", tailer.getPath(), e);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * The loop of the watcher thread. Will only dispatch the drain to the executor
+     * so that this thread can go back to waiting for the next event right away.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                final Path directory = (Path) key.watchable();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        tailers.values().stream().flatMap(List::stream)
+                                .forEach(tailer -> executorService.execute(() -> drain(tailer)));
+                        waiters.values().stream().flatMap(List::stream).forEach(executorService::execute);
+                        continue;
+                    }
+
+                    final Path file = directory.resolve((Path) event.context());
+                    final List<FileTailer> list = tailers.get(file);
+                    if (list != null) {
+                        list.forEach(tailer -> executorService.execute(() -> drain(tailer)));
+                    }
+
+                    final List<Runnable> checks = waiters.get(file);
+                    if (checks != null) {
+                        checks.forEach(executorService::execute);
+                    }
+                }
+                key.reset();
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // we are shutting down
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.SIPp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Figures out what version of SIPp a given executable is by asking it ("sipp -v").
+ *
+ * The executable doesn't change underneath us (or at least we're not going to care if it does)
+ * so every executable is only ever asked once, no matter how many instances are started
+ * off of it or how many times they are restarted. Asking is done on the executor so that
+ * starting a lot of instances at the same time doesn't have them all waiting on the answer.
+ */
+public final class VersionProbe {
+
+    private static final Logger logger = LoggerFactory.getLogger(VersionProbe.class);
+
+    private static final long PROBE_TIMEOUT_MS = 5000;
+
+    private final Executor executor;
+    private final long timeoutMs;
+
+    private final Map<String, CompletableFuture<SIPp.Version>> versions = new ConcurrentHashMap<>();
+
+    public VersionProbe(final Executor executor) {
+        this(executor, PROBE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs how long to give the executable to answer before we kill it.
+     */
+    VersionProbe(final Executor executor, final long timeoutMs) {
+        this.executor = executor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Get the version of the given executable. If we can't figure it out, we'll log it and go
+     * with {@link SIPp.Version#DEFAULT} but will then try again the next time around.
+     *
+     * @param executable the path to, or just the name of, the SIPp executable.
+     * @return a future that completes with the version, it never completes exceptionally.
+     */
+    public CompletableFuture<SIPp.Version> getVersion(final String executable) {
+        return versions.computeIfAbsent(executable, e -> CompletableFuture.supplyAsync(() -> {
+            final SIPp.Version version = probe(executable);
+            if (version == null) {
+                logger.warn("Unable to figure out the version of SIPp of \"{}\", assuming {}", executable,
+                        SIPp.Version.DEFAULT);
+                versions.remove(executable);
+                return SIPp.Version.DEFAULT;
+            }
+
+            logger.info("\"{}\" is SIPp {}", executable, version);
+            return version;
+        }, executor));
+    }
+
+    private SIPp.Version probe(final String executable) {
+        Path output = null;
+        Process process = null;
+        try {
+            // the output goes to a file rather than a pipe so that an executable that never
+            // closes its end of the pipe can't have us waiting on it past the timeout
+            output = Files.createTempFile("sipp", ".version");
+            process = new ProcessBuilder(executable, "-v").redirectErrorStream(true)
+                    .redirectOutput(output.toFile()).start();
+            process.getOutputStream().close();
+
+            if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("\"{} -v\" didn't answer within {} ms", executable, timeoutMs);
+                return null;
+            }
+
+            // SIPp exits with a non-zero exit code after printing the version
+            // so don't bother looking at it.
+            return SIPp.Version.parse(new String(Files.readAllBytes(output), StandardCharsets.US_ASCII));
+        } catch (final IOException e) {
+            logger.warn("Unable to run \"{} -v\"", executable, e);
+            return null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            if (output != null) {
+                try {
+                    Files.deleteIfExists(output);
+                } catch (final IOException e) {
+                    logger.debug("Unable to delete {}", output, e);
+                }
+            }
+        }
+    }
+}
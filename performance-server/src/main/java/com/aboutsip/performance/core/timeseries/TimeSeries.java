@@ -0,0 +1,225 @@
+package com.aboutsip.performance.core.timeseries;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A bounded, column oriented, time series. Every sample consists of a timestamp and one
+ * value per column and once the series is full the oldest sample is overwritten. Hence,
+ * the memory used is constant no matter how long we run.
+ *
+ * Every column is a primitive array of doubles (which can represent every counter SIPp
+ * will ever report exactly) and the series can be allocated off-heap, which is nice when
+ * you are keeping hours of samples for dozens of SIPp instances.
+ *
+ * Every sample is identified by its sequence number, which is just an ever increasing
+ * number, starting at zero. Only the samples between {@link #tail()} (inclusive) and
+ * {@link #head()} (exclusive) are available. The timestamps are expected to be appended in
+ * order, which allows us to binary search for a particular point in time.
+ *
+ * The series is meant to have a single writer and many readers. A sample is published when
+ * {@link #head()} moves past it, but note that a reader working on the oldest samples may
+ * have them overwritten under its feet. If that matters, check {@link #isAvailable(long)}
+ * after you have read the values.
+ */
+public final class TimeSeries {
+
+    private final List<String> columns;
+    private final Map<String, Integer> columnIndexes;
+    private final int capacity;
+    private final boolean offHeap;
+
+    private final LongBuffer timestamps;
+    private final DoubleBuffer[] values;
+
+    /**
+     * The sequence number of the next sample to be written.
+     */
+    private volatile long head;
+
+    private TimeSeries(final List<String> columns, final int capacity, final boolean offHeap) {
+        this.columns = columns;
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+
+        columnIndexes = new HashMap<>();
+        for (int i = 0; i < columns.size(); ++i) {
+            columnIndexes.put(columns.get(i), i);
+        }
+
+        timestamps = allocate(capacity, offHeap).asLongBuffer();
+        values = new DoubleBuffer[columns.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = allocate(capacity, offHeap).asDoubleBuffer();
+        }
+    }
+
+    private static ByteBuffer allocate(final int capacity, final boolean offHeap) {
+        final int bytes = capacity * 8;
+        return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * Create a new time series.
+     *
+     * @param columns the name of every column.
+     * @param capacity the max number of samples to keep. E.g., with one sample per second,
+     *                 3600 will keep one hour worth of samples.
+     * @param offHeap whether or not to store the samples outside of the java heap.
+     * @return
+     * @throws IllegalArgumentException in case there are no columns or the capacity is less than one.
+     */
+    public static TimeSeries create(final List<String> columns, final int capacity, final boolean offHeap)
+            throws IllegalArgumentException {
+        if (columns == null || columns.isEmpty()) {
+            throw new IllegalArgumentException("You must specify at least one column");
+        }
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least one");
+        }
+
+        return new TimeSeries(Collections.unmodifiableList(new ArrayList<>(columns)), capacity, offHeap);
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param column the name of the column.
+     * @return the index of the column or -1 if there is no such column.
+     */
+    public int columnIndex(final String column) {
+        final Integer index = columnIndexes.get(column);
+        return index != null ? index : -1;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * The sequence number of the next sample to be appended.
+     */
+    public long head() {
+        return head;
+    }
+
+    /**
+     * The sequence number of the oldest sample still available.
+     */
+    public long tail() {
+        return Math.max(0, head - capacity);
+    }
+
+    /**
+     * The number of samples currently available.
+     */
+    public int size() {
+        return (int) (head - tail());
+    }
+
+    public boolean isEmpty() {
+        return head == 0;
+    }
+
+    /**
+     * Check whether the sample with the given sequence number is (still) available.
+     */
+    public boolean isAvailable(final long sequence) {
+        final long head = this.head;
+        return sequence < head && sequence >= head - capacity && sequence >= 0;
+    }
+
+    /**
+     * Append a new sample. There must only ever be one thread appending samples.
+     *
+     * @param timestamp the time of the sample. Must be equal to or later than the previous one.
+     * @param values will be asked for the value of every column (by the index of the column).
+     * @return the sequence number of the new sample.
+     */
+    public long append(final long timestamp, final IntToDoubleFunction values) {
+        final long sequence = head;
+        final int index = index(sequence);
+        timestamps.put(index, timestamp);
+        for (int i = 0; i < this.values.length; ++i) {
+            this.values[i].put(index, values.applyAsDouble(i));
+        }
+
+        // publish it
+        head = sequence + 1;
+        return sequence;
+    }
+
+    public long getTimestamp(final long sequence) {
+        return timestamps.get(index(sequence));
+    }
+
+    public double getValue(final long sequence, final int column) {
+        return values[column].get(index(sequence));
+    }
+
+    /**
+     * Find the first sample at, or after, the given point in time.
+     *
+     * @param timestamp
+     * @return the sequence number of the sample, which will be {@link #head()} if all
+     * samples are older than the given timestamp.
+     */
+    public long ceiling(final long timestamp) {
+        long low = tail();
+        long high = head;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Visit every sample within the given time range.
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param visitor
+     * @return the number of samples visited.
+     */
+    public int forEach(final long from, final long to, final SampleVisitor visitor) {
+        int count = 0;
+        for (long sequence = ceiling(from); sequence < head && getTimestamp(sequence) < to; ++sequence) {
+            visitor.visit(this, sequence);
+            ++count;
+        }
+        return count;
+    }
+
+    private int index(final long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    @FunctionalInterface
+    public interface SampleVisitor {
+        void visit(TimeSeries series, long sequence);
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeries " + columns.size() + " columns, " + size() + "/" + capacity + " samples";
+    }
+}
@@ -0,0 +1,147 @@
+package com.aboutsip.performance;
+
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.SIPpManager;
+import com.aboutsip.performance.core.sipp.StatsBroadcaster;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.StatsObject;
+import com.aboutsip.performance.core.sipp.TestStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * The instance is never started, the stats are fed to its broadcaster by the test and the
+ * stream is written to a client that can hang up.
+ */
+public class SIPpResourceTest {
+
+    private ScheduledExecutorService executor;
+    private SIPpManager manager;
+    private SIPpResource resource;
+    private SIPp sipp;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(2);
+        manager = new SIPpManager(executor, 100, false);
+        resource = new SIPpResource(manager);
+        sipp = manager.newInstance().withFriendlyName("uac").build();
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+        executor.shutdownNow();
+    }
+
+    /**
+     * The subscription is closed once the client has gone away, which we find out about the
+     * next time there is something to write.
+     */
+    @Test(timeout = 10000)
+    public void testStreamStats() throws Exception {
+        final StreamingOutput output = resource.streamStats(sipp.getUUID(), "TargetRate,CallRate(P)", 1);
+        final StatsBroadcaster broadcaster = manager.getBroadcaster(sipp.getUUID()).get();
+        assertThat(broadcaster.getSubscriberCount(), is(1));
+
+        final Client client = new Client();
+        final CompletableFuture<Void> stream = CompletableFuture.runAsync(() -> {
+            try {
+                output.write(client);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+
+        broadcaster.onStats(sipp, stats(10));
+        final String event = client.events.poll(5, TimeUnit.SECONDS);
+        assertThat(event.startsWith("event: stats\ndata: {\"uuid\":\"" + sipp.getUUID() + "\""), is(true));
+        assertThat(event.endsWith(",\"TargetRate\":10,\"CallRate(P)\":10.0}\n\n"), is(true));
+
+        client.hungUp = true;
+        broadcaster.onStats(sipp, stats(20));
+        try {
+            stream.get(5, TimeUnit.SECONDS);
+            fail("The client hung up");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof UncheckedIOException, is(true));
+        }
+        assertThat(broadcaster.getSubscriberCount(), is(0));
+    }
+
+    @Test
+    public void testStreamUnknownField() {
+        try {
+            resource.streamStats(sipp.getUUID(), "TargetRate,CallRate", 1);
+            fail("There is no such field");
+        } catch (final BadRequestException e) {
+            assertThat(e.getMessage(), is("Unknown field \"CallRate\""));
+        }
+        assertThat(manager.getBroadcaster(sipp.getUUID()).get().getSubscriberCount(), is(0));
+    }
+
+    @Test(expected = NotFoundException.class)
+    public void testStreamUnknownInstance() {
+        resource.streamStats(UUID.randomUUID(), null, 1);
+    }
+
+    private static StatsObject stats(final int rate) {
+        final Map<StatsMetric, Double> values = new EnumMap<>(StatsMetric.class);
+        values.put(StatsMetric.TARGET_RATE, (double) rate);
+        values.put(StatsMetric.CALL_RATE_P, (double) rate);
+        return TestStats.of(values);
+    }
+
+    /**
+     * Every flush is an event, or a keep-alive, received by the client.
+     */
+    private static final class Client extends OutputStream {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private volatile boolean hungUp;
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (hungUp) {
+                throw new IOException("Broken pipe");
+            }
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            events.add(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+            buffer.reset();
+        }
+    }
+}
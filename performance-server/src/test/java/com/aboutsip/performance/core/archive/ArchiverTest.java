@@ -0,0 +1,180 @@
+package com.aboutsip.performance.core.archive;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestStats;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class ArchiverTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private ExecutorService executor;
+    private Path folder;
+    private StatsHistory history;
+    private HistogramHistory responseTimes;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        folder = Files.createTempDirectory("archive");
+        Files.createDirectories(folder.resolve("reports"));
+        Files.write(folder.resolve("reports").resolve("final.csv"), "# final\n".getBytes(StandardCharsets.UTF_8));
+
+        history = StatsHistory.create(1000, false);
+        responseTimes = new HistogramHistory(1000, false);
+        final Histogram interval = Histogram.create(10, 20, -1);
+        interval.add(1, 3);
+        for (int i = 0; i < 1000; ++i) {
+            history.append(i * SECOND, TestStats.of(StatsMetric.CALL_RATE_P, i));
+            responseTimes.append(i * SECOND, interval);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        Files.walk(folder).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    @Test(timeout = 10000)
+    public void testTarGz() throws Exception {
+        final Path file = folder.resolve("run.tar.gz");
+        archiver(EnumSet.allOf(ArchiveContent.class)).write(ArchiveFormat.TAR_GZ, file);
+
+        final Map<String, byte[]> entries = untar(Files.readAllBytes(file));
+        // the archive itself is left out
+        assertThat(entries.keySet(), is(set("run/stats/uac_1.spts", "run/histograms/uac_1.spts",
+                "run/files/reports/final.csv")));
+        assertThat(new String(entries.get("run/files/reports/final.csv"), StandardCharsets.UTF_8), is("# final\n"));
+        assertStats(entries.get("run/stats/uac_1.spts"));
+
+        final TimeSeries histograms = ColumnarFormat.read(new ByteArrayInputStream(
+                entries.get("run/histograms/uac_1.spts")));
+        assertThat(histograms.getValue(999, histograms.columnIndex("10-20")), is(3d));
+    }
+
+    @Test(timeout = 10000)
+    public void testZip() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archiver(EnumSet.of(ArchiveContent.STATS)).write(ArchiveFormat.ZIP, out);
+
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), readAll(zip));
+            }
+        }
+        assertThat(entries.keySet(), is(set("run/stats/uac_1.spts")));
+        assertStats(entries.get("run/stats/uac_1.spts"));
+    }
+
+    @Test
+    public void testFormat() {
+        assertThat(ArchiveFormat.of("run.tar.gz"), is(ArchiveFormat.TAR_GZ));
+        assertThat(ArchiveFormat.of("RUN.TGZ"), is(ArchiveFormat.TAR_GZ));
+        assertThat(ArchiveFormat.of("zip"), is(ArchiveFormat.ZIP));
+        assertThat(ArchiveFormat.TAR_GZ.getBaseName("run.tgz"), is("run"));
+        assertThat(ArchiveContent.of(Arrays.asList("stats", "everything")), is(EnumSet.allOf(ArchiveContent.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() {
+        ArchiveFormat.of("run.rar");
+    }
+
+    private Archiver archiver(final EnumSet<ArchiveContent> contents) {
+        return Archiver.withName("run")
+                .withContents(contents)
+                .withInstance("uac 1", history, responseTimes)
+                .withFolder(folder)
+                .withExecutor(executor, 2)
+                .build();
+    }
+
+    private static void assertStats(final byte[] entry) throws IOException {
+        final TimeSeries stats = ColumnarFormat.read(new ByteArrayInputStream(entry));
+        assertThat(stats.size(), is(1000));
+        assertThat(stats.getTimestamp(999), is(999 * SECOND));
+        assertThat(stats.getValue(999, stats.columnIndex(StatsMetric.CALL_RATE_P.getLabel())), is(999d));
+    }
+
+    /**
+     * Just enough of a tar reader for what we write.
+     */
+    private static Map<String, byte[]> untar(final byte[] tarGz) throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(tarGz)))) {
+            final byte[] header = new byte[512];
+            while (true) {
+                in.readFully(header);
+                if (header[0] == 0) {
+                    return entries;
+                }
+                String name = field(header, 0, 100);
+                final String prefix = field(header, 345, 155);
+                if (!prefix.isEmpty()) {
+                    name = prefix + "/" + name;
+                }
+                final int size = Integer.parseInt(field(header, 124, 12), 8);
+                final byte[] content = new byte[size];
+                in.readFully(content);
+                in.readFully(new byte[(512 - size % 512) % 512]);
+                entries.put(name, content);
+            }
+        }
+    }
+
+    private static String field(final byte[] header, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            ++end;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static Set<String> set(final String... values) {
+        return new LinkedHashSet<>(Arrays.asList(values));
+    }
+}
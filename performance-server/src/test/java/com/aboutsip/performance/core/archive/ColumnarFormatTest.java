@@ -0,0 +1,105 @@
+package com.aboutsip.performance.core.archive;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class ColumnarFormatTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Every value comes back exactly as it was, NaN and negative zero included, across several blocks.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final int samples = ColumnarFormat.BLOCK_SIZE * 2 + 17;
+        final TimeSeries series = series(samples);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(ColumnarFormat.write(series, out), is((long) samples));
+        final TimeSeries copy = ColumnarFormat.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(copy.getColumns(), is(series.getColumns()));
+        assertThat(copy.size(), is(samples));
+        for (int i = 0; i < samples; ++i) {
+            assertThat(copy.getTimestamp(i), is(series.getTimestamp(i)));
+            for (int column = 0; column < series.getColumns().size(); ++column) {
+                assertThat(Double.doubleToRawLongBits(copy.getValue(i, column)),
+                        is(Double.doubleToRawLongBits(series.getValue(i, column))));
+            }
+        }
+    }
+
+    /**
+     * Counters that barely move take up a fraction of the eight bytes per value they take in memory.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        final int samples = 10000;
+        final TimeSeries series = TimeSeries.create(Arrays.asList("total", "rate", "idle"), samples, false);
+        for (int i = 0; i < samples; ++i) {
+            final int second = i;
+            series.append(1_500_000_000L * SECOND + i * SECOND,
+                    column -> column == 0 ? second * 10 : column == 1 ? 10 : 0);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarFormat.write(series, out);
+        assertThat(out.size() < samples * 8, is(true));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        final TimeSeries series = series(100);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(ColumnarFormat.write(series, 10 * SECOND, 20 * SECOND, out), is(10L));
+
+        final TimeSeries copy = ColumnarFormat.read(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(copy.size(), is(10));
+        assertThat(copy.getTimestamp(0), is(10 * SECOND));
+        assertThat(copy.getValue(9, 0), is(19d));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        final TimeSeries series = series(0);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(ColumnarFormat.write(series, out), is(0L));
+        assertThat(ColumnarFormat.read(new ByteArrayInputStream(out.toByteArray())).isEmpty(), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotSamples() throws Exception {
+        ColumnarFormat.read(new ByteArrayInputStream("time,value\n".getBytes("UTF-8")));
+    }
+
+    private static TimeSeries series(final int samples) {
+        final TimeSeries series = TimeSeries.create(Arrays.asList("counter", "noise", "gaps"), Math.max(1, samples),
+                false);
+        for (int i = 0; i < samples; ++i) {
+            final int sample = i;
+            series.append(i * SECOND + (i % 7 == 0 ? 1234 : 0), column -> {
+                switch (column) {
+                    case 0:
+                        return sample;
+                    case 1:
+                        return Math.sin(sample) * 1e6;
+                    default:
+                        return sample % 3 == 0 ? Double.NaN : sample % 3 == 1 ? -0d : -sample;
+                }
+            });
+        }
+        return series;
+    }
+}
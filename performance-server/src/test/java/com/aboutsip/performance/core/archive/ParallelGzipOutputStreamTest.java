@@ -0,0 +1,114 @@
+package com.aboutsip.performance.core.archive;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Many small blocks, written in chunks that never line up with the blocks, make for one ordinary gzip stream.
+     */
+    @Test(timeout = 10000)
+    public void testRoundTrip() throws Exception {
+        final byte[] data = data(1_000_000);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, executor, 4, 10_000,
+                Deflater.DEFAULT_COMPRESSION)) {
+            int offset = 0;
+            for (int chunk = 1; offset < data.length; chunk = chunk * 3 % 30_011) {
+                final int length = Math.min(chunk, data.length - offset);
+                gzip.write(data, offset, length);
+                offset += length;
+            }
+            gzip.write('!');
+        }
+
+        final byte[] expected = new byte[data.length + 1];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        expected[data.length] = '!';
+        assertThat(gunzip(out.toByteArray()), is(expected));
+        assertThat(out.size() < data.length / 2, is(true));
+    }
+
+    /**
+     * If the executor never gets around to it, the writer compresses the blocks itself.
+     */
+    @Test(timeout = 10000)
+    public void testBusyExecutor() throws Exception {
+        final byte[] data = data(100_000);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, command -> { }, 2, 4096,
+                Deflater.BEST_SPEED)) {
+            gzip.write(data);
+        }
+        assertThat(gunzip(out.toByteArray()), is(data));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(out, executor, 2).close();
+        assertThat(gunzip(out.toByteArray()).length, is(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterFinish() throws Exception {
+        final ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(new ByteArrayOutputStream(), executor, 2);
+        gzip.finish();
+        gzip.write(1);
+    }
+
+    /**
+     * Something that looks a bit like a CSV file of SIPp stats.
+     */
+    private static byte[] data(final int size) {
+        final Random random = new Random(4711);
+        final StringBuilder sb = new StringBuilder(size + 100);
+        while (sb.length() < size) {
+            sb.append(random.nextInt(1000)).append(';').append(random.nextInt(10)).append(";0;0;")
+                    .append(random.nextGaussian()).append('\n');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gunzip(final byte[] gzip) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            final byte[] buffer = new byte[8192];
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                out.write(buffer, 0, count);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,270 @@
+package com.aboutsip.performance.core.capacity;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestSIPp;
+import com.aboutsip.performance.core.sipp.TestStats;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * The search is driven by a pretend SIPp, feeding it one sample at a time, against a SUT that
+ * starts failing calls (and slows down) above a certain rate.
+ */
+public class CapacitySearchTest {
+
+    @Test
+    public void testBinarySearch() throws Exception {
+        final FakeSIPp sipp = new FakeSIPp(57);
+        final CapacitySearch search = CapacitySearch.withBinarySearch(10, 100, 5).build();
+        final CapacitySearch.Result result = sipp.run(search);
+
+        assertThat(result.getMode(), is(CapacitySearch.Mode.BINARY));
+        // the knee is somewhere within 55 to 60, which is close enough
+        assertThat(result.getMaxSustainableRate(), is(55));
+        assertThat(result.getFirstFailedRate(), is(60));
+        // the high rate is tried right after the low one
+        assertThat(rates(result), is(Arrays.asList(10, 100, 55, 77, 66, 60)));
+        assertThat(sipp.rates, is(rates(result)));
+        assertThat(sipp.instance.getListeners().isEmpty(), is(true));
+
+        final CapacitySearch.Step passed = result.getSteps().get(0);
+        assertThat(passed.isPassed(), is(true));
+        assertThat(passed.getViolations(), is(Collections.<String>emptyList()));
+        assertThat(passed.getSamples(), is(10));
+        assertThat(passed.getCallRate(), is(10d));
+        assertThat(passed.getResponseTimes().getTotalCount(), is(10L));
+
+        // no failed calls and the average response time are both violated by the default SLOs
+        final CapacitySearch.Step failed = result.getSteps().get(1);
+        assertThat(failed.isPassed(), is(false));
+        assertThat(failed.getViolations(), is(Arrays.asList(search.getSlos().get(0).toString(),
+                search.getSlos().get(2).toString())));
+        assertThat(failed.getFailedCalls(), is(10d));
+        assertThat(failed.getResponseTime(), is(500d));
+    }
+
+    /**
+     * If the high rate makes it there is nothing in between to search.
+     */
+    @Test
+    public void testBinarySearchHigh() throws Exception {
+        final CapacitySearch.Result result = new FakeSIPp(1000).run(CapacitySearch.withBinarySearch(10, 100, 5).build());
+        assertThat(result.getMaxSustainableRate(), is(100));
+        assertThat(result.getFirstFailedRate(), is(-1));
+        assertThat(rates(result), is(Arrays.asList(10, 100)));
+    }
+
+    @Test
+    public void testBinarySearchLow() throws Exception {
+        final CapacitySearch.Result result = new FakeSIPp(5).run(CapacitySearch.withBinarySearch(10, 100, 5).build());
+        assertThat(result.getMaxSustainableRate(), is(-1));
+        assertThat(result.getFirstFailedRate(), is(10));
+        assertThat(rates(result), is(Collections.singletonList(10)));
+    }
+
+    @Test
+    public void testSteps() throws Exception {
+        final CapacitySearch.Result result = new FakeSIPp(35).run(CapacitySearch.withSteps(10, 10, 50)
+                .withSlo(Slo.atMost(StatsMetric.FAILED_CALL_P, 0))
+                .build());
+        assertThat(result.getMode(), is(CapacitySearch.Mode.STEP));
+        assertThat(result.getMaxSustainableRate(), is(30));
+        assertThat(result.getFirstFailedRate(), is(40));
+        assertThat(rates(result), is(Arrays.asList(10, 20, 30, 40)));
+    }
+
+    /**
+     * Everything up to and including the high rate makes it, which is where we stop.
+     */
+    @Test
+    public void testStepsHigh() throws Exception {
+        final CapacitySearch.Result result = new FakeSIPp(1000).run(CapacitySearch.withSteps(10, 10, 50).build());
+        assertThat(result.getMaxSustainableRate(), is(50));
+        assertThat(result.getFirstFailedRate(), is(-1));
+        assertThat(rates(result), is(Arrays.asList(10, 20, 30, 40, 50)));
+    }
+
+    /**
+     * The call rate takes a few samples to catch up with a new rate. Those samples aren't
+     * counted towards settling, and only the samples after settling are measured.
+     */
+    @Test
+    public void testSettle() throws Exception {
+        final FakeSIPp sipp = new FakeSIPp(1000);
+        sipp.lag = 4;
+        final CapacitySearch.Result result = sipp.run(CapacitySearch.withSteps(10, 10, 20)
+                .withSettleSamples(2)
+                .withMeasureSamples(3)
+                .build());
+
+        assertThat(rates(result), is(Arrays.asList(10, 20)));
+        assertThat(sipp.samples, is(Arrays.asList(9, 9)));
+        assertThat(result.getSteps().get(1).getSamples(), is(3));
+        assertThat(result.getSteps().get(1).getCallRate(), is(20d));
+    }
+
+    /**
+     * If the call rate doesn't catch up we only wait for so long before we let the SLOs have
+     * their say about it.
+     */
+    @Test
+    public void testNeverSettles() throws Exception {
+        final FakeSIPp sipp = new FakeSIPp(1000);
+        sipp.lag = 10;
+        final CapacitySearch.Result result = sipp.run(CapacitySearch.withSteps(10, 10, 20)
+                .withSettleSamples(2)
+                .withMeasureSamples(3)
+                .build());
+
+        // the 7th sample is the first one counted and only the last of the three measured caught up
+        assertThat(sipp.samples, is(Collections.singletonList(11)));
+        assertThat(result.getSteps().get(0).getCallRate(), is(20 / 3d));
+        assertThat(result.getSteps().get(0).isPassed(), is(false));
+        assertThat(result.getMaxSustainableRate(), is(-1));
+    }
+
+    @Test
+    public void testNeverPickedUp() throws Exception {
+        final FakeSIPp sipp = new FakeSIPp(1000);
+        sipp.follow = false;
+        try {
+            sipp.run(CapacitySearch.withSteps(10, 10, 20).withSettleSamples(2).withMeasureSamples(3).build());
+            fail("SIPp never picked up the rate");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+            assertThat(e.getCause().getMessage(), is("SIPp never picked up the rate 10, it is still at 0"));
+        }
+        assertThat(sipp.samples, is(Collections.singletonList(11)));
+        assertThat(sipp.instance.getListeners().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testSetRateFailed() throws Exception {
+        final FakeSIPp sipp = new FakeSIPp(1000);
+        sipp.failure = new IllegalStateException("SIPp is not running");
+        try {
+            sipp.run(CapacitySearch.withSteps(10, 10, 20).build());
+            fail("SIPp is not running");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() == sipp.failure, is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoLowRate() {
+        CapacitySearch.withSteps(0, 10, 20).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHighBelowLow() {
+        CapacitySearch.withBinarySearch(20, 10, 5).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoResolution() {
+        CapacitySearch.withBinarySearch(10, 20, 0).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoMeasureSamples() {
+        CapacitySearch.withSteps(10, 10, 20).withMeasureSamples(0).build();
+    }
+
+    private static List<Integer> rates(final CapacitySearch.Result result) {
+        return result.getSteps().stream().map(CapacitySearch.Step::getRate).collect(Collectors.toList());
+    }
+
+    /**
+     * Plays SIPp running against a SUT that fails every call, and takes 500 ms to respond to
+     * them, above the given rate.
+     */
+    private static final class FakeSIPp {
+
+        private final int knee;
+        private final TestSIPp instance = new TestSIPp("uac");
+
+        /**
+         * The number of samples it takes for the call rate to catch up with a new rate.
+         */
+        private int lag;
+
+        /**
+         * Whether SIPp picks up the rate it is asked for at all.
+         */
+        private boolean follow = true;
+
+        private RuntimeException failure;
+
+        private int targetRate;
+        private final Histogram responseTimes = Histogram.create(10, 100, 1000, -1);
+
+        /**
+         * Every rate asked for and the number of samples fed to the search at that rate.
+         */
+        private final List<Integer> rates = new ArrayList<>();
+        private final List<Integer> samples = new ArrayList<>();
+
+        private FakeSIPp(final int knee) {
+            this.knee = knee;
+            instance.withRate(this::setRate);
+        }
+
+        private CompletableFuture<SIPp> setRate(final int rate) {
+            if (failure != null) {
+                final CompletableFuture<SIPp> future = new CompletableFuture<>();
+                future.completeExceptionally(failure);
+                return future;
+            }
+
+            rates.add(rate);
+            samples.add(0);
+            if (follow) {
+                targetRate = rate;
+            }
+            return CompletableFuture.completedFuture(instance.getSIPp());
+        }
+
+        /**
+         * Feed the search one sample at a time until it is done.
+         */
+        private CapacitySearch.Result run(final CapacitySearch search) throws Exception {
+            final CompletableFuture<CapacitySearch.Result> future = search.run(instance.getSIPp());
+            for (int i = 0; i < 10000 && !future.isDone(); ++i) {
+                sample();
+            }
+            assertThat(future.isDone(), is(true));
+            return future.get();
+        }
+
+        private void sample() {
+            final int sample = samples.get(samples.size() - 1) + 1;
+            samples.set(samples.size() - 1, sample);
+
+            final boolean overloaded = targetRate > knee;
+            final Map<StatsMetric, Double> values = new EnumMap<>(StatsMetric.class);
+            values.put(StatsMetric.TARGET_RATE, (double) targetRate);
+            values.put(StatsMetric.CALL_RATE_P, sample <= lag ? targetRate / 2d : targetRate);
+            values.put(StatsMetric.OUTGOING_CALL_P, (double) targetRate);
+            values.put(StatsMetric.FAILED_CALL_P, overloaded ? 1d : 0d);
+            values.put(StatsMetric.RESPONSE_TIME1_P, overloaded ? 500d : 5d);
+            responseTimes.record(overloaded ? 500 : 5);
+
+            instance.sample(TestStats.of(values, responseTimes.copy()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.aboutsip.performance.core.capacity;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class SloTest {
+
+    @Test
+    public void testAtMost() {
+        final Window window = new Window(100, 3).sum(StatsMetric.FAILED_CALL_P, 3);
+        assertThat(Slo.atMost(StatsMetric.FAILED_CALL_P, 1).isMet(window), is(true));
+        assertThat(Slo.atMost(StatsMetric.FAILED_CALL_P, 0.5).isMet(window), is(false));
+        assertThat(Slo.atMost(StatsMetric.RESPONSE_TIME1_P, 0).isMet(window), is(true));
+        assertThat(Slo.atMost(StatsMetric.FAILED_CALL_P, 0).toString(),
+                is(StatsMetric.FAILED_CALL_P.getLabel() + " <= 0.0"));
+    }
+
+    @Test
+    public void testRatioAtMost() {
+        final Window window = new Window(100, 3)
+                .sum(StatsMetric.RETRANSMISSIONS_P, 1)
+                .sum(StatsMetric.OUTGOING_CALL_P, 100);
+        assertThat(Slo.ratioAtMost(StatsMetric.RETRANSMISSIONS_P, StatsMetric.OUTGOING_CALL_P, 0.01).isMet(window),
+                is(true));
+        assertThat(Slo.ratioAtMost(StatsMetric.RETRANSMISSIONS_P, StatsMetric.OUTGOING_CALL_P, 0.005).isMet(window),
+                is(false));
+    }
+
+    /**
+     * Nothing over nothing is fine, but something over nothing is not.
+     */
+    @Test
+    public void testRatioOfNothing() {
+        final Slo slo = Slo.ratioAtMost(StatsMetric.RETRANSMISSIONS_P, StatsMetric.OUTGOING_CALL_P, 0.01);
+        assertThat(slo.isMet(new Window(100, 3)), is(true));
+        assertThat(slo.isMet(new Window(100, 3).sum(StatsMetric.RETRANSMISSIONS_P, 1)), is(false));
+    }
+
+    @Test
+    public void testPercentileAtMost() {
+        final Window window = new Window(100, 3);
+        window.responseTimes.add(0, 90);
+        window.responseTimes.add(1, 10);
+        // p99 is 9/10 into the bucket of 10 to 100 ms
+        assertThat(Slo.percentileAtMost(99, 91).isMet(window), is(true));
+        assertThat(Slo.percentileAtMost(99, 90).isMet(window), is(false));
+        assertThat(Slo.percentileAtMost(90, 10).isMet(window), is(true));
+    }
+
+    @Test
+    public void testRateAchieved() {
+        final Window window = new Window(100, 3).sum(StatsMetric.CALL_RATE_P, 285);
+        assertThat(Slo.rateAchieved(0.95).isMet(window), is(true));
+        assertThat(Slo.rateAchieved(0.96).isMet(window), is(false));
+    }
+
+    private static final class Window implements Slo.Window {
+
+        private final int rate;
+        private final int samples;
+        private final Map<StatsMetric, Double> sums = new EnumMap<>(StatsMetric.class);
+        private final Histogram responseTimes = Histogram.create(10, 100, -1);
+
+        private Window(final int rate, final int samples) {
+            this.rate = rate;
+            this.samples = samples;
+        }
+
+        private Window sum(final StatsMetric metric, final double sum) {
+            sums.put(metric, sum);
+            return this;
+        }
+
+        @Override
+        public int getRate() {
+            return rate;
+        }
+
+        @Override
+        public int getSamples() {
+            return samples;
+        }
+
+        @Override
+        public double sum(final StatsMetric metric) {
+            return sums.getOrDefault(metric, 0d);
+        }
+
+        @Override
+        public double average(final StatsMetric metric) {
+            return sum(metric) / samples;
+        }
+
+        @Override
+        public double max(final StatsMetric metric) {
+            return sum(metric);
+        }
+
+        @Override
+        public Histogram getResponseTimes() {
+            return responseTimes;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.aboutsip.performance.core.fleet;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.sipp.StatsListener;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestSIPp;
+import com.aboutsip.performance.core.sipp.TestStats;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The instances are stand-ins that only have a name and tags, their stats are fed to the
+ * aggregator one row at a time by the test.
+ */
+public class FleetAggregatorTest {
+
+    private final FleetAggregator fleet = new FleetAggregator();
+
+    @Test
+    public void testRegister() {
+        assertThat(fleet.getGroups(), is(Collections.singleton(FleetAggregator.ALL)));
+        assertThat(fleet.getStats(FleetAggregator.ALL).get().getInstances(), is(0));
+        assertThat(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeHistogram() == null, is(true));
+
+        final TestSIPp a = new TestSIPp("uac", "load", "east");
+        final TestSIPp b = new TestSIPp("uac", "load");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+        // already registered
+        fleet.register(a.getSIPp());
+
+        assertThat(fleet.getGroups(), is((Set<String>) new TreeSet<>(Arrays.asList(FleetAggregator.ALL,
+                "name:uac", "tag:east", "tag:load"))));
+        assertThat(instances(FleetAggregator.ALL), is(2));
+        assertThat(instances(FleetAggregator.nameGroup("uac")), is(2));
+        assertThat(instances(FleetAggregator.tagGroup("load")), is(2));
+        assertThat(instances(FleetAggregator.tagGroup("east")), is(1));
+        assertThat(fleet.getStats(FleetAggregator.tagGroup("west")).isPresent(), is(false));
+        assertThat(a.getListeners(), is(Collections.<StatsListener>singleton(fleet)));
+    }
+
+    /**
+     * The latest row of an instance replaces its previous one in the totals of every group it
+     * belongs to.
+     */
+    @Test
+    public void testRows() {
+        final TestSIPp a = new TestSIPp("uac", "east");
+        final TestSIPp b = new TestSIPp("uas");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+
+        row(a, StatsMetric.CALL_RATE_P, 10, StatsMetric.FAILED_CALL_C, 5);
+        row(b, StatsMetric.CALL_RATE_P, 20, StatsMetric.FAILED_CALL_C, 1);
+        assertThat(total(FleetAggregator.ALL, StatsMetric.CALL_RATE_P), is(30d));
+        assertThat(total(FleetAggregator.ALL, StatsMetric.FAILED_CALL_C), is(6d));
+
+        row(a, StatsMetric.CALL_RATE_P, 12, StatsMetric.FAILED_CALL_C, 7);
+        assertThat(total(FleetAggregator.ALL, StatsMetric.CALL_RATE_P), is(32d));
+        assertThat(total(FleetAggregator.ALL, StatsMetric.FAILED_CALL_C), is(8d));
+        assertThat(total(FleetAggregator.tagGroup("east"), StatsMetric.CALL_RATE_P), is(12d));
+        assertThat(total(FleetAggregator.nameGroup("uac"), StatsMetric.FAILED_CALL_C), is(7d));
+        assertThat(total(FleetAggregator.nameGroup("uas"), StatsMetric.CALL_RATE_P), is(20d));
+
+        // timestamps and the like can't be added up
+        assertThat(total(FleetAggregator.ALL, StatsMetric.START_TIME), is(-1d));
+    }
+
+    /**
+     * The response times are averaged by the number of successful calls.
+     */
+    @Test
+    public void testWeightedAverage() {
+        final TestSIPp a = new TestSIPp("uac");
+        final TestSIPp b = new TestSIPp("uac");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+
+        row(a, StatsMetric.RESPONSE_TIME1_P, 10, StatsMetric.SUCCESSFUL_CALL_P, 30);
+        row(b, StatsMetric.RESPONSE_TIME1_P, 50, StatsMetric.SUCCESSFUL_CALL_P, 10);
+        assertThat(total(FleetAggregator.ALL, StatsMetric.RESPONSE_TIME1_P), is(20d));
+
+        // no successful calls, no say in the average
+        row(b, StatsMetric.RESPONSE_TIME1_P, 1000, StatsMetric.SUCCESSFUL_CALL_P, 0);
+        assertThat(total(FleetAggregator.ALL, StatsMetric.RESPONSE_TIME1_P), is(10d));
+
+        row(a, StatsMetric.RESPONSE_TIME1_P, 10, StatsMetric.SUCCESSFUL_CALL_P, 0);
+        assertThat(total(FleetAggregator.ALL, StatsMetric.RESPONSE_TIME1_P), is(0d));
+    }
+
+    /**
+     * The running totals of the histograms are merged, and a restarted instance that starts
+     * counting from scratch doesn't take anything away from the group.
+     */
+    @Test
+    public void testHistograms() {
+        final TestSIPp a = new TestSIPp("uac");
+        final TestSIPp b = new TestSIPp("uac");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+
+        row(a, histogram(3, 0, 1));
+        row(b, histogram(0, 2, 0));
+        row(a, histogram(5, 1, 1));
+        assertThat(counts(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeHistogram()), is(new long[]{5, 3, 1}));
+        assertThat(counts(fleet.getStats(FleetAggregator.ALL).get().getCallLengthHistogram()), is(new long[]{5, 3, 1}));
+
+        // restarted
+        row(a, histogram(1, 0, 0));
+        assertThat(counts(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeHistogram()), is(new long[]{6, 3, 1}));
+        assertThat(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeRepartition().size(), is(3));
+    }
+
+    /**
+     * Everything an instance contributed goes away with it, including what it counted before
+     * it was restarted.
+     */
+    @Test
+    public void testUnregister() {
+        final TestSIPp a = new TestSIPp("uac", "east");
+        final TestSIPp b = new TestSIPp("uac");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+
+        row(a, histogram(3, 0, 1), StatsMetric.CALL_RATE_P, 10, StatsMetric.RESPONSE_TIME1_P, 100,
+                StatsMetric.SUCCESSFUL_CALL_P, 10);
+        row(a, histogram(1, 0, 0), StatsMetric.CALL_RATE_P, 10, StatsMetric.RESPONSE_TIME1_P, 100,
+                StatsMetric.SUCCESSFUL_CALL_P, 10);
+        row(b, histogram(0, 2, 0), StatsMetric.CALL_RATE_P, 20, StatsMetric.RESPONSE_TIME1_P, 10,
+                StatsMetric.SUCCESSFUL_CALL_P, 10);
+
+        fleet.unregister(a.getSIPp());
+        assertThat(instances(FleetAggregator.ALL), is(1));
+        assertThat(instances(FleetAggregator.tagGroup("east")), is(0));
+        assertThat(total(FleetAggregator.ALL, StatsMetric.CALL_RATE_P), is(20d));
+        assertThat(total(FleetAggregator.ALL, StatsMetric.RESPONSE_TIME1_P), is(10d));
+        assertThat(total(FleetAggregator.tagGroup("east"), StatsMetric.CALL_RATE_P), is(0d));
+        assertThat(counts(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeHistogram()), is(new long[]{0, 2, 0}));
+        assertThat(a.getListeners().isEmpty(), is(true));
+
+        // anything still on its way is ignored, and it can't be removed twice
+        fleet.onStats(a.getSIPp(), TestStats.of(StatsMetric.CALL_RATE_P, 10));
+        fleet.unregister(a.getSIPp());
+        assertThat(total(FleetAggregator.ALL, StatsMetric.CALL_RATE_P), is(20d));
+        assertThat(instances(FleetAggregator.ALL), is(1));
+
+        // an instance that never reported anything has nothing to take away
+        final TestSIPp c = new TestSIPp("uac");
+        fleet.register(c.getSIPp());
+        fleet.unregister(c.getSIPp());
+        assertThat(instances(FleetAggregator.ALL), is(1));
+        assertThat(counts(fleet.getStats(FleetAggregator.ALL).get().getResponseTimeHistogram()), is(new long[]{0, 2, 0}));
+    }
+
+    /**
+     * An instance that is gone for good is unregistered without anyone having to ask for it.
+     */
+    @Test
+    public void testTermination() {
+        final TestSIPp a = new TestSIPp("uac");
+        final TestSIPp b = new TestSIPp("uac");
+        fleet.register(a.getSIPp());
+        fleet.register(b.getSIPp());
+        row(a, StatsMetric.CALL_RATE_P, 10);
+        row(b, StatsMetric.CALL_RATE_P, 20);
+
+        a.terminate();
+        assertThat(instances(FleetAggregator.ALL), is(1));
+        assertThat(total(FleetAggregator.ALL, StatsMetric.CALL_RATE_P), is(20d));
+        assertThat(a.getListeners().isEmpty(), is(true));
+    }
+
+    private int instances(final String group) {
+        return fleet.getStats(group).get().getInstances();
+    }
+
+    private double total(final String group, final StatsMetric metric) {
+        return fleet.getStats(group).get().get(metric);
+    }
+
+    /**
+     * Report a row of stats, through the listener the instance was given, with the given
+     * metric and value pairs and both the response times and call lengths as the given histogram.
+     */
+    private void row(final TestSIPp sipp, final Histogram histogram, final Object... metrics) {
+        final Map<StatsMetric, Double> values = new EnumMap<>(StatsMetric.class);
+        for (int i = 0; i < metrics.length; i += 2) {
+            values.put((StatsMetric) metrics[i], ((Number) metrics[i + 1]).doubleValue());
+        }
+        sipp.sample(TestStats.of(values, histogram, histogram));
+    }
+
+    private void row(final TestSIPp sipp, final Object... metrics) {
+        row(sipp, histogram(0, 0, 0), metrics);
+    }
+
+    private static Histogram histogram(final long... counts) {
+        final Histogram histogram = Histogram.create(10, 100, -1);
+        for (int i = 0; i < counts.length; ++i) {
+            histogram.add(i, counts[i]);
+        }
+        return histogram;
+    }
+
+    private static long[] counts(final Histogram histogram) {
+        final long[] counts = new long[histogram.getBuckets()];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = histogram.getCount(i);
+        }
+        return counts;
+    }
+}
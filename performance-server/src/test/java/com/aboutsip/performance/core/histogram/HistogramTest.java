@@ -0,0 +1,119 @@
+package com.aboutsip.performance.core.histogram;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class HistogramTest {
+
+    /**
+     * Same buckets as the default response time repartition of SIPp.
+     */
+    private Histogram createHistogram() {
+        return Histogram.create(10, 20, 30, 40, 50, 100, 150, 200, -1);
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final Histogram histogram = createHistogram();
+        assertThat(histogram.getValueAtPercentile(50), is(-1d));
+
+        // 100 values, evenly spread out over 0 - 10 ms and 10 - 20 ms
+        histogram.add(0, 50);
+        histogram.add(1, 50);
+        assertThat(histogram.getTotalCount(), is(100L));
+        assertThat(histogram.getValueAtPercentile(50), is(10d));
+        assertThat(histogram.getValueAtPercentile(25), is(5d));
+        assertThat(histogram.getValueAtPercentile(90), is(18d));
+        assertThat(histogram.getValueAtPercentile(100), is(20d));
+
+        // the unbounded bucket can't be interpolated
+        histogram.add(8, 100);
+        assertThat(histogram.getValueAtPercentile(99.9), is(200d));
+        assertThat(histogram.getValueAtPercentile(50), is(20d));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        final Histogram one = createHistogram();
+        one.add(2, 10);
+        final Histogram two = one.emptyCopy();
+        two.add(2, 5);
+        two.add(5, 1);
+
+        one.add(two);
+        assertThat(one.getCount(2), is(15L));
+        assertThat(one.getCount(5), is(1L));
+        assertThat(one.getTotalCount(), is(16L));
+
+        // with different buckets every bucket goes into the one containing its lower limit
+        final Histogram coarse = Histogram.create(50, -1);
+        coarse.add(one);
+        assertThat(coarse.getCount(0), is(15L));
+        assertThat(coarse.getCount(1), is(1L));
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        final Histogram previous = createHistogram();
+        previous.add(0, 10);
+        final Histogram current = previous.copy();
+        current.add(0, 5);
+        current.add(3, 2);
+
+        final Histogram interval = Histogram.interval(previous, current);
+        assertThat(interval.getCount(0), is(5L));
+        assertThat(interval.getCount(3), is(2L));
+        assertThat(interval.getTotalCount(), is(7L));
+
+        // the counters went down so they must have been reset
+        final Histogram reset = createHistogram();
+        reset.add(1, 3);
+        assertThat(Histogram.interval(current, reset).getTotalCount(), is(3L));
+        assertThat(Histogram.interval(null, reset).getCount(1), is(3L));
+    }
+
+    /**
+     * The histogram of a range is the sum of the intervals within it.
+     */
+    @Test
+    public void testHistory() throws Exception {
+        final HistogramHistory history = new HistogramHistory(10, false);
+        assertThat(history.getRange(0, Long.MAX_VALUE) == null, is(true));
+
+        for (int i = 0; i < 5; ++i) {
+            final Histogram interval = createHistogram();
+            interval.add(i, i + 1);
+            history.append(100 + i, interval);
+        }
+
+        final Histogram range = history.getRange(101, 104);
+        assertThat(range.getCount(0), is(0L));
+        assertThat(range.getCount(1), is(2L));
+        assertThat(range.getCount(3), is(4L));
+        assertThat(range.getCount(4), is(0L));
+        assertThat(range.getTotalCount(), is(9L));
+        assertThat(history.getRange(0, Long.MAX_VALUE).getTotalCount(), is(15L));
+        assertThat(history.getRange(200, 300).isEmpty(), is(true));
+
+        // other buckets are mapped onto the ones we started out with
+        final Histogram coarse = Histogram.create(100, -1);
+        coarse.add(1, 7);
+        history.append(105, coarse);
+        assertThat(history.getRange(105, 106).getCount(6), is(7L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitsMustIncrease() throws Exception {
+        Histogram.create(10, 10, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyLastBucketUnbounded() throws Exception {
+        Histogram.create(10, -1, 20);
+    }
+}
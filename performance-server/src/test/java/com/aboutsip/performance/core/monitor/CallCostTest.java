@@ -0,0 +1,147 @@
+package com.aboutsip.performance.core.monitor;
+
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestStats;
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class CallCostTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private MonitoredProcess process;
+    private TimeSeries cpu;
+
+    @Before
+    public void setUp() {
+        process = new MonitoredProcess("sut", () -> -1, 10, false);
+        process.add(Collections.singleton(MonitorType.CPU));
+        cpu = process.getTimeSeries(MonitorType.CPU);
+    }
+
+    /**
+     * The calls are interpolated between the stats samples, which are not lined
+     * up with the CPU samples.
+     */
+    @Test
+    public void testInterpolate() throws Exception {
+        final StatsHistory history = history(10, 100 * SECOND, 0, 101 * SECOND, 100, 102 * SECOND, 300);
+
+        assertThat(CallCost.cumulativeAt(history, 100 * SECOND), is(0d));
+        assertThat(CallCost.cumulativeAt(history, 100 * SECOND + SECOND / 2), is(50d));
+        assertThat(CallCost.cumulativeAt(history, 101 * SECOND + SECOND / 4), is(150d));
+        assertThat(CallCost.cumulativeAt(history, 102 * SECOND), is(300d));
+        assertThat(CallCost.cumulativeAt(history, 200 * SECOND), is(300d));
+        assertThat(CallCost.cumulativeAt(history, 50 * SECOND), is(0d));
+    }
+
+    /**
+     * Once the oldest samples are gone, we no longer know how many calls there were back then.
+     */
+    @Test
+    public void testWrapped() throws Exception {
+        final StatsHistory history = history(2, 100 * SECOND, 0, 101 * SECOND, 100, 102 * SECOND, 300);
+        assertThat(Double.isNaN(CallCost.cumulativeAt(history, 100 * SECOND)), is(true));
+        assertThat(CallCost.cumulativeAt(history, 101 * SECOND), is(100d));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        final StatsHistory uac1 = history(10, 100 * SECOND, 0, 101 * SECOND, 100, 102 * SECOND, 300, 103 * SECOND, 500);
+        final StatsHistory uac2 = history(10, 100 * SECOND, 0, 101 * SECOND, 100, 102 * SECOND, 100, 103 * SECOND, 300);
+        final CallCost cost = new CallCost("sut", process, () -> Arrays.asList(uac1, uac2), 10, false);
+
+        appendCpu(100 * SECOND, 1_000_000);
+        appendCpu(101 * SECOND, 1_100_000);
+        appendCpu(102 * SECOND, 1_300_000);
+        appendCpu(103 * SECOND, 1_300_000);
+
+        // the stats may not have caught up with the latest CPU samples
+        cost.update(103 * SECOND);
+        assertThat(cost.getTimeSeries().size(), is(1));
+
+        cost.update(105 * SECOND);
+        final TimeSeries series = cost.getTimeSeries();
+        assertThat(series.size(), is(3));
+        assertThat(series.getTimestamp(series.tail()), is(101 * SECOND));
+        assertThat(series.getValue(series.tail(), series.columnIndex("calls")), is(200d));
+        assertThat(series.getValue(series.tail(), series.columnIndex("cpu.us")), is(100_000d));
+        assertThat(series.getValue(series.tail(), series.columnIndex("cpu.us.per.call")), is(500d));
+        assertThat(series.getValue(series.tail(), series.columnIndex("calls.per.core")), is(2000d));
+
+        // no CPU at all for the last 400 calls
+        assertThat(Double.isNaN(series.getValue(series.tail() + 2, series.columnIndex("calls.per.core"))), is(true));
+
+        final CallCost.Summary total = cost.getTotal();
+        assertThat(total.getSamples(), is(3));
+        assertThat(total.getCalls(), is(800d));
+        assertThat(total.getCpuMicros(), is(300_000d));
+        assertThat(total.getCpuMicrosPerCall(), is(375d));
+
+        final CallCost.Summary range = cost.summarize(102 * SECOND, 103 * SECOND);
+        assertThat(range.getSamples(), is(1));
+        assertThat(range.getCpuMicrosPerCall(), is(1000d));
+        assertThat(range.getFrom(), is(102 * SECOND));
+
+        assertThat(cost.getLatest().getCalls(), is(400d));
+
+        // every sample is only costed once
+        cost.update(110 * SECOND);
+        assertThat(series.size(), is(3));
+    }
+
+    /**
+     * If the process is replaced, the CPU time starts over and the interval
+     * in between is not costed.
+     */
+    @Test
+    public void testRestarted() throws Exception {
+        final StatsHistory uac = history(10, 100 * SECOND, 0, 101 * SECOND, 100, 102 * SECOND, 200);
+        final CallCost cost = new CallCost("sut", process, () -> Collections.singletonList(uac), 10, false);
+
+        appendCpu(100 * SECOND, 5_000_000);
+        appendCpu(101 * SECOND, 100_000);
+        appendCpu(102 * SECOND, 200_000);
+        cost.update(110 * SECOND);
+
+        assertThat(cost.getTimeSeries().size(), is(1));
+        assertThat(cost.getTotal().getCpuMicrosPerCall(), is(1000d));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        final CallCost cost = new CallCost("sut", process, Collections::emptyList, 10, false);
+        cost.update(110 * SECOND);
+        assertThat(cost.getLatest() == null, is(true));
+        assertThat(cost.getTotal().getSamples(), is(0));
+        assertThat(Double.isNaN(cost.getTotal().getCpuMicrosPerCall()), is(true));
+    }
+
+    private void appendCpu(final long timestamp, final double cpuMicros) {
+        cpu.append(timestamp, column -> column == 0 ? cpuMicros : Double.NaN);
+    }
+
+    /**
+     * @param timestampsAndCalls the timestamp of every sample followed by the cumulative
+     *                           number of successful calls at that time.
+     */
+    private static StatsHistory history(final int capacity, final long... timestampsAndCalls) {
+        final StatsHistory history = StatsHistory.create(capacity, false);
+        for (int i = 0; i < timestampsAndCalls.length; i += 2) {
+            history.append(timestampsAndCalls[i],
+                    TestStats.of(StatsMetric.SUCCESSFUL_CALL_C, timestampsAndCalls[i + 1]));
+        }
+        return history;
+    }
+}
@@ -0,0 +1,108 @@
+package com.aboutsip.performance.core.monitor;
+
+import com.aboutsip.performance.core.timeseries.TimeSeries;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ *
+ */
+public class ProcessMonitorTest {
+
+    /**
+     * The name of the command may contain both spaces and parentheses.
+     */
+    @Test
+    public void testStatFields() throws Exception {
+        final ProcFile stat = write("4711 (my (weird) sipp) S 1 4711 4711 0 -1 4194560 1190 0 0 0 "
+                + "250 37 0 0 20 0 3 0 27369 21233664 1337 18446744073709551615\n");
+        assertThat(stat.read(), is(true));
+        assertThat(stat.getField(3), is(-1L)); // the state isn't numeric
+        assertThat(stat.getField(4), is(1L));
+        assertThat(stat.getField(ProcFile.STAT_UTIME), is(250L));
+        assertThat(stat.getField(ProcFile.STAT_STIME), is(37L));
+        assertThat(stat.getCpuTicks(), is(287L));
+        assertThat(stat.getField(ProcFile.STAT_NUM_THREADS), is(3L));
+        assertThat(stat.getField(99), is(-1L));
+    }
+
+    @Test
+    public void testKeyValues() throws Exception {
+        final ProcFile status = write("Name:\tsipp\nVmRSS:\t    5348 kB\nThreads:\t1\n"
+                + "voluntary_ctxt_switches:\t120\nnonvoluntary_ctxt_switches:\t7\n");
+        assertThat(status.read(), is(true));
+        assertThat(status.getValue("VmRSS"), is(5348L));
+        assertThat(status.getValue("voluntary_ctxt_switches"), is(120L));
+        assertThat(status.getValue("nonvoluntary_ctxt_switches"), is(7L));
+        assertThat(status.getValue("Name"), is(-1L));
+        assertThat(status.getValue("VmSwap"), is(-1L));
+    }
+
+    /**
+     * A file larger than the initial buffer must still be read in full.
+     */
+    @Test
+    public void testLargeFile() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            sb.append("key").append(i).append(": ").append(i).append('\n');
+        }
+        final ProcFile file = write(sb.toString());
+        assertThat(file.read(), is(true));
+        assertThat(file.getValue("key499"), is(499L));
+    }
+
+    @Test
+    public void testGone() throws Exception {
+        final ProcFile file = ProcFile.of(Paths.get("/no/such/proc/file"));
+        assertThat(file.read(), is(false));
+    }
+
+    /**
+     * Monitor ourselves, which of course only works on Linux.
+     */
+    @Test
+    public void testSampleSelf() throws Exception {
+        final Path self = Paths.get("/proc/self");
+        assumeTrue(Files.exists(self.resolve("stat")));
+        final int pid = Integer.parseInt(Files.readSymbolicLink(self).toString());
+
+        final ProcessMonitor monitor = new ProcessMonitor(10, false, 60000);
+        try {
+            final MonitoredProcess process = monitor.monitor("me", () -> pid,
+                    Arrays.asList(MonitorType.CPU, MonitorType.GC));
+            monitor.sample();
+            Thread.sleep(20);
+            monitor.sample();
+
+            final TimeSeries cpu = process.getTimeSeries(MonitorType.CPU);
+            assertThat(cpu.size() >= 2, is(true));
+            final long last = cpu.head() - 1;
+            assertThat(cpu.getValue(last, cpu.columnIndex("cpu.time.us")) > 0, is(true));
+            assertThat(cpu.getValue(last, cpu.columnIndex("cpu.usage")) >= 0, is(true));
+            assertThat(cpu.getValue(last, cpu.columnIndex("threads")) >= 1, is(true));
+
+            final TimeSeries gc = process.getTimeSeries(MonitorType.GC);
+            assertThat(gc.getValue(gc.head() - 1, gc.columnIndex("mem.rss.bytes")) > 0, is(true));
+            assertThat(process.getTimeSeries(MonitorType.IOSTAT) == null, is(true));
+        } finally {
+            monitor.shutdown();
+        }
+    }
+
+    private static ProcFile write(final String content) throws Exception {
+        final Path file = Files.createTempFile("proc", "stat");
+        file.toFile().deleteOnExit();
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return ProcFile.of(file);
+    }
+}
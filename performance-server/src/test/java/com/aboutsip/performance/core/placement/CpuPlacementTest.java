@@ -0,0 +1,65 @@
+package com.aboutsip.performance.core.placement;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class CpuPlacementTest {
+
+    @Test
+    public void testParseCpuList() throws Exception {
+        assertThat(CpuPlacement.parseCpuList("0-3,8,10-11\n"), is(new int[]{0, 1, 2, 3, 8, 10, 11}));
+        assertThat(CpuPlacement.parseCpuList("5"), is(new int[]{5}));
+        assertThat(CpuPlacement.parseCpuList(""), is(new int[0]));
+    }
+
+    /**
+     * Every new process goes to the least loaded CPU and a CPU is freed up again
+     * once its process is gone.
+     */
+    @Test
+    public void testAssign() throws Exception {
+        final CpuPlacement placement = new CpuPlacement(CpuPlacement.Tool.TASKSET, new int[]{2, 3, 6}, new int[]{0, 0, 1});
+        final CpuPlacement.Assignment first = placement.assign();
+        final CpuPlacement.Assignment second = placement.assign();
+        final CpuPlacement.Assignment third = placement.assign();
+        assertThat(first.getCpu(), is(2));
+        assertThat(second.getCpu(), is(3));
+        assertThat(third.getCpu(), is(6));
+        assertThat(third.getNode(), is(1));
+        assertThat(third.getCpuUsage(), is(-1d));
+
+        placement.release(second);
+        assertThat(placement.assign().getCpu(), is(3));
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        final CpuPlacement taskset = new CpuPlacement(CpuPlacement.Tool.TASKSET, new int[]{0, 1}, new int[]{-1, -1});
+        assertThat(taskset.wrap(taskset.assign(), Arrays.asList("sipp", "-sn", "uac")),
+                is(Arrays.asList("taskset", "-c", "0", "sipp", "-sn", "uac")));
+
+        final CpuPlacement numactl = new CpuPlacement(CpuPlacement.Tool.NUMACTL, new int[]{0, 1}, new int[]{0, 1});
+        numactl.assign();
+        assertThat(numactl.wrap(numactl.assign(), Arrays.asList("sipp", "-sn", "uac")),
+                is(Arrays.asList("numactl", "--physcpubind=1", "--membind=1", "sipp", "-sn", "uac")));
+    }
+
+    /**
+     * With only one CPU to choose from there is no point in pinning anything.
+     */
+    @Test
+    public void testSingleCpu() throws Exception {
+        final CpuPlacement placement = new CpuPlacement(CpuPlacement.Tool.TASKSET, new int[]{0}, new int[]{-1});
+        assertThat(placement.isEnabled(), is(false));
+        assertThat(placement.assign(), nullValue());
+        assertThat(placement.wrap(null, Arrays.asList("sipp")), is(Arrays.asList("sipp")));
+    }
+}
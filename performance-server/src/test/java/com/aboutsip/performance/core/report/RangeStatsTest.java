@@ -0,0 +1,87 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestStats;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class RangeStatsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private StatsHistory history;
+    private HistogramHistory responseTimes;
+
+    /**
+     * Ten seconds worth of stats, ramping up 10 cps every second, with a failed call and two
+     * retransmissions every other second and all the response times in the 10 - 20 ms bucket.
+     */
+    @Before
+    public void setUp() {
+        history = StatsHistory.create(100, false);
+        responseTimes = new HistogramHistory(100, false);
+        for (int i = 0; i < 10; ++i) {
+            final Map<StatsMetric, Double> values = new EnumMap<>(StatsMetric.class);
+            values.put(StatsMetric.CALL_RATE_P, 10d * (i + 1));
+            values.put(StatsMetric.OUTGOING_CALL_P, 10d * (i + 1));
+            values.put(StatsMetric.SUCCESSFUL_CALL_P, 10d * (i + 1) - (i % 2));
+            values.put(StatsMetric.FAILED_CALL_P, (double) (i % 2));
+            values.put(StatsMetric.RETRANSMISSIONS_P, 2d * (i % 2));
+            history.append(i * SECOND, TestStats.of(values));
+
+            final Histogram interval = Histogram.create(10, 20, -1);
+            interval.add(1, 10 * (i + 1));
+            responseTimes.append(i * SECOND, interval);
+        }
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        final RangeStats stats = RangeStats.of("uac", history, responseTimes, 2 * SECOND, 6 * SECOND);
+        assertThat(stats.getSamples(), is(4));
+        assertThat(stats.getMeanCallRate(), is(45d));
+        assertThat(stats.getMaxCallRate(), is(60d));
+        assertThat(stats.getCreatedCalls(), is(180L));
+        assertThat(stats.getFailedCalls(), is(2L));
+        assertThat(stats.getSuccessfulCalls(), is(178L));
+        assertThat(stats.getRetransmissions(), is(4L));
+        assertThat(stats.getRetransmissionRate(), is(4d / 180));
+        assertThat(stats.getResponseTimeHistogram().getTotalCount(), is(180L));
+        assertThat(stats.getResponseTimePercentiles().get("p50"), is(15d));
+    }
+
+    @Test
+    public void testEmptyRange() throws Exception {
+        final RangeStats stats = RangeStats.of("uac", history, responseTimes, 20 * SECOND, 30 * SECOND);
+        assertThat(stats.getSamples(), is(0));
+        assertThat(stats.getMeanCallRate(), is(0d));
+        assertThat(stats.getRetransmissionRate(), is(0d));
+        assertThat(stats.getResponseTimeHistogram().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        final RangeStats one = RangeStats.of("one", history, responseTimes, 0, 2 * SECOND);
+        final RangeStats two = RangeStats.of("two", history, null, 8 * SECOND, 10 * SECOND);
+        final RangeStats merged = RangeStats.merge(RangeReport.TOTALS, 0, 10 * SECOND, Arrays.asList(one, two));
+
+        assertThat(merged.getSamples(), is(4));
+        assertThat(merged.getMeanCallRate(), is(15d + 95d));
+        assertThat(merged.getMaxCallRate(), is(20d + 100d));
+        assertThat(merged.getFailedCalls(), is(2L));
+        assertThat(merged.getResponseTimeHistogram().getTotalCount(), is(30L));
+    }
+}
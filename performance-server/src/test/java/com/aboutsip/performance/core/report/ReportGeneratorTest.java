@@ -0,0 +1,115 @@
+package com.aboutsip.performance.core.report;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+import com.aboutsip.performance.core.histogram.HistogramHistory;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import com.aboutsip.performance.core.sipp.TestStats;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class ReportGeneratorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private StatsHistory history;
+    private HistogramHistory responseTimes;
+
+    /**
+     * A day worth of stats, one row a second, with a call rate equal to the hour of the day.
+     */
+    @Before
+    public void setUp() {
+        final int samples = 24 * 3600;
+        history = StatsHistory.create(samples, false);
+        responseTimes = new HistogramHistory(samples, false);
+        final Histogram interval = Histogram.create(10, 20, -1);
+        interval.add(0, 1);
+        for (int i = 0; i < samples; ++i) {
+            history.append(i * SECOND, TestStats.of(StatsMetric.CALL_RATE_P, i / 3600));
+            responseTimes.append(i * SECOND, interval);
+        }
+    }
+
+    /**
+     * Every series is down-sampled to the max number of points, no matter how many samples there are.
+     */
+    @Test
+    public void testCsv() throws Exception {
+        final List<String> lines = Arrays.asList(write(ReportFormat.CSV, 0, 24 * 3600 * SECOND, 24).split("\n"));
+        assertThat(lines.get(0), is("# day"));
+        assertThat(lines.contains("# Summary"), is(true));
+
+        final int series = lines.indexOf("# Stats of uac");
+        assertThat(lines.get(series + 1), is("time,TargetRate,CallRate(P),CurrentCall,SuccessfulCall(P),"
+                + "FailedCall(P),Retransmissions(P),ResponseTime1(P)"));
+        final List<String> points = lines.subList(series + 2, lines.size());
+        assertThat(points.size(), is(24));
+
+        // every point is the mean of (just about) an hour, stamped with the last sample within it
+        assertThat(points.get(0), is("1970-01-01T00:59:59Z,0,0,0,0,0,0,0"));
+        assertThat(points.get(23), is("1970-01-01T23:59:59Z,0,23,0,0,0,0,0"));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        final String csv = write(ReportFormat.CSV, 10 * 3600 * SECOND, 12 * 3600 * SECOND, 2);
+        final List<String> lines = Arrays.asList(csv.split("\n"));
+        // narrowed down to the samples within the range
+        assertThat(lines.get(1), is("# 1970-01-01T10:00:00Z - 1970-01-01T11:59:59Z"));
+
+        final List<String> summary = lines.stream().filter(line -> line.startsWith("uac,"))
+                .collect(Collectors.toList());
+        assertThat(summary.get(0), is("uac,7200,10.500,11,0,0,0,5,9,9.900,9.990"));
+
+        final int series = lines.indexOf("# Stats of uac");
+        assertThat(lines.subList(series + 2, lines.size()).size(), is(2));
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        final String json = write(ReportFormat.JSON, 0, Long.MAX_VALUE, 10);
+        assertThat(json.startsWith("{\"title\":\"day\",\"from\":0,\"to\":86399000,\"sections\":[{\"type\":\"table\""),
+                is(true));
+        assertThat(json.endsWith("]}]}\n"), is(true));
+        assertThat(json.contains("\"points\":[[8639000,0,"), is(true));
+    }
+
+    @Test
+    public void testHtml() throws Exception {
+        final String html = write(ReportFormat.HTML, 0, Long.MAX_VALUE, 10);
+        assertThat(html.startsWith("<!DOCTYPE html>"), is(true));
+        assertThat(html.contains("<h2>Stats of uac</h2>"), is(true));
+        assertThat(html.contains("CallRate(P): min "), is(true));
+        assertThat(html.contains("<svg width=\"800\" height=\"140\"><polyline points=\"0.0,"), is(true));
+        assertThat(html.trim().endsWith("</html>"), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRange() throws Exception {
+        ReportGenerator.withTitle("day").withRange(10, 10).build();
+    }
+
+    private String write(final ReportFormat format, final long from, final long to, final int maxPoints)
+            throws Exception {
+        final StringWriter out = new StringWriter();
+        ReportGenerator.withTitle("day")
+                .withRange(from, to)
+                .withMaxPoints(maxPoints)
+                .withInstance("uac", history, responseTimes)
+                .build()
+                .write(format, out);
+        return out.toString();
+    }
+}
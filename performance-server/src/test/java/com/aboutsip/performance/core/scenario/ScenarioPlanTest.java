@@ -0,0 +1,204 @@
+package com.aboutsip.performance.core.scenario;
+
+import com.aboutsip.performance.config.SIPpInstanceConfig;
+import com.aboutsip.performance.config.ScenarioConfig;
+import com.aboutsip.performance.core.report.RangeReport;
+import com.aboutsip.performance.core.sipp.SIPpManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class ScenarioPlanTest {
+
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        final ScenarioPlan plan = ScenarioPlan.compile(scenario(
+                "start myUAS",
+                "start theUacDude anotherUacDude",
+                "monitor --type cpu iostat gc --target theUacDude myUAS --pid 4711",
+                "monitor --pid 4712 --calls theUacDude anotherUacDude",
+                "rate --set 10 theUacDude",
+                "sleep 1m",
+                "mark start_20_cps",
+                "snapshot --name report_20_cps --from start_20_cps",
+                "pause theUacDude",
+                "stop --force theUacDude myUAS",
+                "start myUAS",
+                "report --name final --title Final --type csv --include cpu gc --from start_20_cps",
+                "zip --include everything somename.tar.gz"));
+
+        assertThat(plan.getSteps().size(), is(13));
+        assertThat(plan.getSteps().get(4).getAction(), is("rate --set 10 theUacDude"));
+    }
+
+    /**
+     * Anything that would make the scenario fail half way through should be caught
+     * before anything is run.
+     */
+    @Test
+    public void testInvalidActions() throws Exception {
+        assertInvalid("Unknown action \"dance\"", "dance myUAS");
+        assertInvalid("There is no client named \"sut\"", "start sut");
+        assertInvalid("There is no client named \"theUAcDude\"", "start theUacDude", "stop theUAcDude");
+        assertInvalid("\"theUacDude\" has not been started", "start myUAS", "rate --set 10 theUacDude");
+        assertInvalid("\"myUAS\" is already running", "start myUAS", "start myUAS");
+        assertInvalid("\"myUAS\" has not been started", "start myUAS", "stop myUAS", "pause myUAS");
+        assertInvalid("at least one target", "start");
+        assertInvalid("Illegal duration", "sleep forever");
+        assertInvalid("already is a mark named \"a\"", "mark a", "mark a");
+        assertInvalid("already is a mark named \"start\"", "mark start");
+        assertInvalid("--forse", "start myUAS", "stop --forse myUAS");
+        assertInvalid("\"myUAS\" has not been started", "monitor --type cpu --target myUAS");
+        assertInvalid("at least one --target or --pid", "monitor --type cpu");
+        assertInvalid("\"theUacDude\" has not been started", "start myUAS", "monitor --pid 4711 --calls theUacDude");
+        assertInvalid("You must name the report", "snapshot --from start");
+        assertInvalid("no mark named \"later\"", "snapshot --name a --from later", "mark later");
+        assertInvalid("already is a report named \"a\"", "snapshot --name a", "snapshot --name a");
+        assertInvalid("pdf", "report --name final --type pdf");
+        assertInvalid("run.rar", "zip run.rar");
+        assertInvalid("must be named", "zip .tgz");
+        assertInvalid("already is a report named \"a\"", "snapshot --name a", "report --name a");
+        assertInvalid("There is no client named \"sut\"", "report --name final --target sut");
+        assertInvalid("disk", "start myUAS", "monitor --type disk --target myUAS");
+    }
+
+    @Test
+    public void testParseDuration() throws Exception {
+        assertThat(Action.parseDuration("500ms"), is(500L));
+        assertThat(Action.parseDuration("30s"), is(30000L));
+        assertThat(Action.parseDuration("30"), is(30000L));
+        assertThat(Action.parseDuration("1m"), is(60000L));
+        assertThat(Action.parseDuration("2min"), is(120000L));
+        assertThat(Action.parseDuration("1hr"), is(3600000L));
+        assertThat(Action.parseDuration("1h"), is(3600000L));
+    }
+
+    @Test(timeout = 5000)
+    public void testRun() throws Exception {
+        final SIPpManager manager = new SIPpManager(executor, 10, false, false);
+        final ScenarioPlan plan = ScenarioPlan.compile(scenario("sleep 50ms", "mark middle", "sleep 50ms",
+                "snapshot --name second_half --from middle"));
+
+        final ScenarioResult result = plan.run(manager).get(4, TimeUnit.SECONDS);
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getSteps().size(), is(4));
+        assertThat(result.getSteps().get(0).getDurationMillis() >= 50, is(true));
+        assertThat(result.getSteps().get(1).getAction(), is("mark middle"));
+        assertThat(new ArrayList<>(result.getMarks().keySet()), is(Arrays.asList("start", "middle", "end")));
+        assertThat(result.getMarks().get("middle") - result.getMarks().get("start") >= 50_000_000L, is(true));
+
+        final RangeReport report = result.getReports().get("second_half");
+        assertThat(report.getFrom(), is(result.getMarks().get("middle")));
+        assertThat(report.getTo() - report.getFrom() >= 50_000_000L, is(true));
+        assertThat(report.getInstances().isEmpty(), is(true));
+    }
+
+    @Test(timeout = 5000)
+    public void testReport() throws Exception {
+        final Path folder = Files.createTempDirectory("reports");
+        final ScenarioConfig config = scenario("sleep 20ms", "snapshot --name warmup",
+                "report --name final --type json", "zip run.tgz");
+        config.setOutputFolder(folder.resolve("run").toFile());
+
+        final ScenarioResult result = ScenarioPlan.compile(config).run(new SIPpManager(executor, 10, false, false))
+                .get(4, TimeUnit.SECONDS);
+        assertThat(result.isSuccess(), is(true));
+
+        final Path report = folder.resolve("run").resolve("final.json");
+        final String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertThat(json.startsWith("{\"title\":\"final\""), is(true));
+        assertThat(json.contains("\"title\":\"Snapshot warmup"), is(true));
+
+        // the report made it into the archive
+        final Path archive = folder.resolve("run").resolve("run.tgz");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(archive))) {
+            final byte[] header = new byte[512];
+            assertThat(in.read(header), is(512));
+            assertThat(new String(header, 0, 20, StandardCharsets.UTF_8), is("run/files/final.json"));
+        }
+
+        Files.delete(archive);
+        Files.delete(report);
+        Files.delete(report.getParent());
+        Files.delete(folder);
+    }
+
+    /**
+     * Everything monitored is in the report unless told otherwise.
+     */
+    @Test(timeout = 5000)
+    public void testReportInclude() throws Exception {
+        final Path folder = Files.createTempDirectory("reports");
+        final ScenarioConfig config = scenario("monitor --type cpu iostat --pid 1",
+                "report --name all --type json", "report --name cpu --type json --include cpu");
+        config.setOutputFolder(folder.toFile());
+
+        final ScenarioResult result = ScenarioPlan.compile(config).run(new SIPpManager(executor, 10, false, false))
+                .get(4, TimeUnit.SECONDS);
+        assertThat(result.isSuccess(), is(true));
+
+        final String all = new String(Files.readAllBytes(folder.resolve("all.json")), StandardCharsets.UTF_8);
+        assertThat(all.contains("\"cpu of pid-1\""), is(true));
+        assertThat(all.contains("\"iostat of pid-1\""), is(true));
+
+        final String cpu = new String(Files.readAllBytes(folder.resolve("cpu.json")), StandardCharsets.UTF_8);
+        assertThat(cpu.contains("\"cpu of pid-1\""), is(true));
+        assertThat(cpu.contains("\"iostat of pid-1\""), is(false));
+
+        Files.delete(folder.resolve("all.json"));
+        Files.delete(folder.resolve("cpu.json"));
+        Files.delete(folder);
+    }
+
+    private static void assertInvalid(final String expected, final String... actions) {
+        try {
+            ScenarioPlan.compile(scenario(actions));
+            fail("Expected the actions " + Arrays.toString(actions) + " to be rejected");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage(), e.getMessage().contains(expected), is(true));
+        }
+    }
+
+    private static ScenarioConfig scenario(final String... actions) {
+        final Map<String, SIPpInstanceConfig> clients = new HashMap<>();
+        Arrays.asList("myUAS", "theUacDude", "anotherUacDude").forEach(name -> clients.put(name, new SIPpInstanceConfig()));
+
+        final ScenarioConfig config = new ScenarioConfig();
+        config.setClients(clients);
+        config.setActions(Arrays.stream(actions).collect(Collectors.toList()));
+        return config;
+    }
+}
@@ -0,0 +1,108 @@
+package com.aboutsip.performance.core.sipp;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The controller is driven by a pretend SIPp that achieves some fraction of the rate it is asked
+ * to run at, which is what it looks like when the SUT is pushing back.
+ */
+public class RateControllerTest {
+
+    /**
+     * SIPp only ever manages 80% of what it is asked for, so it has to be asked for 125 CPS.
+     */
+    @Test
+    public void testConvergence() {
+        final RateController controller = new RateController(100, RateController.Gains.DEFAULT);
+        int rate = 100;
+        for (int i = 0; i < 40; ++i) {
+            rate = controller.update(rate, rate * 0.8);
+        }
+        assertThat(rate, is(125));
+    }
+
+    /**
+     * Already there, so nothing to do.
+     */
+    @Test
+    public void testOnTarget() {
+        final RateController controller = new RateController(100, RateController.Gains.DEFAULT);
+        for (int i = 0; i < 10; ++i) {
+            assertThat(controller.update(100, 100), is(100));
+        }
+    }
+
+    @Test
+    public void testMaxStep() {
+        final RateController controller = new RateController(1000, RateController.Gains.DEFAULT);
+        assertThat(controller.update(100, 100), is(150));
+        assertThat(controller.update(150, 150), is(200));
+
+        final RateController down = new RateController(10, RateController.Gains.DEFAULT);
+        assertThat(down.update(500, 500), is(450));
+    }
+
+    @Test
+    public void testOverdrive() {
+        final RateController controller = new RateController(100, RateController.Gains.of(0.5, 0.2, 0, 1000, 1.2));
+        assertThat(controller.update(100, 0), is(120));
+
+        // and never below zero
+        final RateController down = new RateController(0, RateController.Gains.of(0.5, 0.2, 0, 1000, 1.2));
+        assertThat(down.update(100, 100), is(0));
+    }
+
+    /**
+     * The SUT can't do more than 60 CPS for quite some time, and then it suddenly can. The integral
+     * doesn't pile up while the output is stuck at the overdrive, so the controller gets back to the
+     * target shortly after, rather than overshooting for as long as it was stuck.
+     */
+    @Test
+    public void testAntiWindup() {
+        final RateController controller = new RateController(100, RateController.Gains.DEFAULT);
+        int rate = 100;
+        for (int i = 0; i < 100; ++i) {
+            rate = controller.update(rate, Math.min(rate, 60));
+            assertThat(rate <= 150, is(true));
+        }
+        assertThat(rate, is(150));
+
+        for (int i = 0; i < 20; ++i) {
+            rate = controller.update(rate, rate);
+        }
+        assertThat(rate >= 100 && rate <= 105, is(true));
+    }
+
+    @Test
+    public void testGains() {
+        final RateController.Gains gains = RateController.Gains.of(1, 0.5, 0.1, 10, 2);
+        assertThat(gains.getKp(), is(1d));
+        assertThat(gains.getKi(), is(0.5d));
+        assertThat(gains.getKd(), is(0.1d));
+        assertThat(gains.getMaxStep(), is(10));
+        assertThat(gains.getMaxOverdrive(), is(2d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeGain() {
+        RateController.Gains.of(0.5, -0.1, 0, 50, 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoStep() {
+        RateController.Gains.of(0.5, 0.2, 0, 0, 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnderdrive() {
+        RateController.Gains.of(0.5, 0.2, 0, 50, 0.9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTarget() {
+        new RateController(-1, RateController.Gains.DEFAULT);
+    }
+}
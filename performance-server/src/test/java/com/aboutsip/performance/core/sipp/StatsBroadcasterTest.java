@@ -0,0 +1,158 @@
+package com.aboutsip.performance.core.sipp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The stats are fed to the broadcaster by the test, as if the instance reported them.
+ */
+public class StatsBroadcasterTest {
+
+    private static final List<String> FIELDS = Arrays.asList("TargetRate", "CALL_RATE_P");
+
+    private final TestSIPp sipp = new TestSIPp("uac");
+    private StatsBroadcaster broadcaster;
+
+    @Before
+    public void setUp() {
+        broadcaster = StatsBroadcaster.attach(sipp.getSIPp());
+    }
+
+    /**
+     * Subscribers asking for the same thing get the very same event.
+     */
+    @Test
+    public void testSubscribe() throws Exception {
+        assertThat(sipp.getListeners(), is(Collections.<StatsListener>singleton(broadcaster)));
+        assertThat(broadcaster.getSIPp() == sipp.getSIPp(), is(true));
+
+        final StatsBroadcaster.Subscription first = broadcaster.subscribe(FIELDS, 1);
+        final StatsBroadcaster.Subscription second = broadcaster.subscribe(Arrays.asList(" TargetRate", "CallRate(P)"), 1);
+        assertThat(broadcaster.getSubscriberCount(), is(2));
+
+        sample(10, 9.5, 0);
+        final byte[] event = first.poll(1, TimeUnit.SECONDS);
+        final String text = new String(event, StandardCharsets.UTF_8);
+        // the time SIPp took the sample, in milliseconds
+        assertThat(text.startsWith("event: stats\ndata: {\"uuid\":\"" + sipp.getUUID()
+                + "\",\"timestamp\":1500000010000,"), is(true));
+        assertThat(text.endsWith(",\"TargetRate\":10,\"CallRate(P)\":9.5}\n\n"), is(true));
+        assertThat(second.poll(1, TimeUnit.SECONDS) == event, is(true));
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+        final StatsBroadcaster.Subscription first = broadcaster.subscribe(FIELDS, 1);
+        final StatsBroadcaster.Subscription second = broadcaster.subscribe(FIELDS, 1);
+
+        sample(10, 10, 0);
+        first.close();
+        assertThat(first.isClosed(), is(true));
+        assertThat(broadcaster.getSubscriberCount(), is(1));
+        // whatever was queued up is gone with it
+        assertThat(first.poll(0, TimeUnit.SECONDS) == null, is(true));
+
+        sample(20, 20, 0);
+        assertThat(rate(second.poll(1, TimeUnit.SECONDS)), is(10));
+        assertThat(rate(second.poll(1, TimeUnit.SECONDS)), is(20));
+
+        second.close();
+        // closing twice is fine
+        second.close();
+        assertThat(broadcaster.getSubscriberCount(), is(0));
+        sample(30, 30, 0);
+    }
+
+    /**
+     * A subscriber that doesn't keep up loses the oldest events, and doesn't hold up anyone else.
+     */
+    @Test
+    public void testSlowConsumer() throws Exception {
+        final StatsBroadcaster.Subscription slow = broadcaster.subscribe(FIELDS, 1);
+        final StatsBroadcaster.Subscription fast = broadcaster.subscribe(Collections.singletonList("TargetRate"), 1);
+
+        for (int rate = 1; rate <= 100; ++rate) {
+            sample(rate, rate, 0);
+            assertThat(rate(fast.poll(1, TimeUnit.SECONDS)), is(rate));
+        }
+
+        for (int rate = 37; rate <= 100; ++rate) {
+            assertThat(rate(slow.poll(1, TimeUnit.SECONDS)), is(rate));
+        }
+        assertThat(slow.poll(0, TimeUnit.SECONDS) == null, is(true));
+    }
+
+    /**
+     * The periodic counters of the samples skipped are added to the one pushed.
+     */
+    @Test
+    public void testEvery() throws Exception {
+        final StatsBroadcaster.Subscription subscription = broadcaster.subscribe(
+                Arrays.asList("TargetRate", "OutgoingCall(P)"), 3);
+
+        sample(10, 10, 1);
+        sample(20, 20, 2);
+        assertThat(subscription.poll(0, TimeUnit.SECONDS) == null, is(true));
+        sample(30, 30, 3);
+        assertThat(new String(subscription.poll(1, TimeUnit.SECONDS), StandardCharsets.UTF_8)
+                .endsWith(",\"TargetRate\":30,\"OutgoingCall(P)\":6}\n\n"), is(true));
+
+        sample(40, 40, 4);
+        sample(50, 50, 5);
+        sample(60, 60, 6);
+        assertThat(new String(subscription.poll(1, TimeUnit.SECONDS), StandardCharsets.UTF_8)
+                .endsWith(",\"TargetRate\":60,\"OutgoingCall(P)\":15}\n\n"), is(true));
+    }
+
+    @Test
+    public void testNoTime() throws Exception {
+        final StatsBroadcaster.Subscription subscription = broadcaster.subscribe(FIELDS, 1);
+        sipp.sample(TestStats.of(StatsMetric.TARGET_RATE, 10));
+        assertThat(new String(subscription.poll(1, TimeUnit.SECONDS), StandardCharsets.UTF_8)
+                .contains(",\"timestamp\":-1,"), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() {
+        broadcaster.subscribe(Collections.singletonList("CallRate"), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEveryZero() {
+        broadcaster.subscribe(FIELDS, 0);
+    }
+
+    private void sample(final int targetRate, final double callRate, final long outgoingCalls) {
+        final Map<StatsMetric, Double> values = new EnumMap<>(StatsMetric.class);
+        values.put(StatsMetric.TARGET_RATE, (double) targetRate);
+        values.put(StatsMetric.CALL_RATE_P, callRate);
+        values.put(StatsMetric.OUTGOING_CALL_P, (double) outgoingCalls);
+        // a second per target rate into the run
+        values.put(StatsMetric.CURRENT_TIME, 1_500_000_000_000_000_000d + targetRate * 1_000_000_000d);
+        sipp.sample(TestStats.of(values));
+    }
+
+    /**
+     * @return the target rate of the event.
+     */
+    private static int rate(final byte[] event) {
+        final String text = new String(event, StandardCharsets.UTF_8);
+        final int start = text.indexOf("\"TargetRate\":") + "\"TargetRate\":".length();
+        int end = start;
+        while (Character.isDigit(text.charAt(end))) {
+            ++end;
+        }
+        return Integer.parseInt(text.substring(start, end));
+    }
+}
@@ -1,5 +1,6 @@
 package com.aboutsip.performance.core.sipp;
 
+import com.aboutsip.performance.core.histogram.Histogram;
 import org.hamcrest.CoreMatchers;
 import org.joda.time.DateTime;
 import org.junit.Assert;
@@ -8,6 +9,8 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.text.DateFormat;
 import java.time.*;
@@ -65,6 +68,227 @@ public class StatsLabelsTest extends SIPpTestBase{
         assertThat(stats1.getTime().toString(), is("2016-02-26T15:13:45.896"));
     }
 
+    /**
+     * The header of a SIPp 3.3 stats file.
+     */
+    private static final String HEADER = "StartTime;LastResetTime;CurrentTime;ElapsedTime(P);ElapsedTime(C);TargetRate;"
+            + "CallRate(P);CallRate(C);IncomingCall(P);IncomingCall(C);OutgoingCall(P);OutgoingCall(C);TotalCallCreated;"
+            + "CurrentCall;SuccessfulCall(P);SuccessfulCall(C);FailedCall(P);FailedCall(C);FailedCannotSendMessage(P);"
+            + "FailedCannotSendMessage(C);FailedMaxUDPRetrans(P);FailedMaxUDPRetrans(C);FailedTcpConnect(P);"
+            + "FailedTcpConnect(C);FailedTcpClosed(P);FailedTcpClosed(C);FailedUnexpectedMessage(P);"
+            + "FailedUnexpectedMessage(C);FailedCallRejected(P);FailedCallRejected(C);FailedCmdNotSent(P);"
+            + "FailedCmdNotSent(C);FailedRegexpDoesntMatch(P);FailedRegexpDoesntMatch(C);FailedRegexpShouldntMatch(P);"
+            + "FailedRegexpShouldntMatch(C);FailedRegexpHdrNotFound(P);FailedRegexpHdrNotFound(C);"
+            + "FailedOutboundCongestion(P);FailedOutboundCongestion(C);FailedTimeoutOnRecv(P);FailedTimeoutOnRecv(C);"
+            + "FailedTimeoutOnSend(P);FailedTimeoutOnSend(C);OutOfCallMsgs(P);OutOfCallMsgs(C);DeadCallMsgs(P);"
+            + "DeadCallMsgs(C);Retransmissions(P);Retransmissions(C);AutoAnswered(P);AutoAnswered(C);Warnings(P);"
+            + "Warnings(C);FatalErrors(P);FatalErrors(C);WatchdogMajor(P);WatchdogMajor(C);WatchdogMinor(P);"
+            + "WatchdogMinor(C);ResponseTime1(P);ResponseTime1(C);ResponseTime1StDev(P);ResponseTime1StDev(C);"
+            + "CallLength(P);CallLength(C);CallLengthStDev(P);CallLengthStDev(C);ResponseTimeRepartition1;<10;<20;"
+            + "<30;<40;<50;<100;<150;<200;>=200;CallLengthRepartition;<10;<50;<100;<500;<1000;<5000;<10000;>=10000;";
+
+    /**
+     * A row matching the {@link #HEADER} where every counter is set to its
+     * column index so it is easy to verify that we read the correct column.
+     */
+    private static String createRow() {
+        final StringBuilder sb = new StringBuilder();
+        final String time = "2016-02-26\t15:13:45:896\t1456528425.896123";
+        sb.append(time).append(';').append(time).append(';').append(time).append(';');
+        sb.append("00:00:01:004;00:00:07:012;");
+        sb.append("2;1.998;1.99568;");
+        for (int i = 8; i < 60; ++i) {
+            sb.append(i).append(';');
+        }
+        sb.append("00:00:00:012;00:00:00:011;00:00:00:002;00:00:00:003;");
+        sb.append("00:00:00:100;00:00:00:101;00:00:00:001;00:00:00:002;");
+        sb.append(";5;4;3;2;1;0;0;0;1;");
+        sb.append(";0;0;0;12;0;0;0;0;");
+        return sb.toString();
+    }
+
+    @Test
+    public void testCompiledStats() throws Exception {
+        final StatsLabels labels = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, HEADER);
+        final StatsObject stats = labels.createNewStats(createRow());
+
+        assertThat(stats.getTargetRate(), is(2));
+        assertThat(stats.getCallRate(), is(1.998d));
+        assertThat(stats.getCallRateCumulative(), is(1.99568d));
+        assertThat(stats.getIncomingCall(), is(8));
+        assertThat(stats.getRetransmissions(), is(48));
+        assertThat(stats.getWatchdogMinorCumulative(), is(59));
+        assertThat(stats.getElapsedTime(), is(Duration.ofMillis(1004)));
+        assertThat(stats.getResponseTime1(), is(Duration.ofMillis(12)));
+        assertThat(stats.getCallLengthStDevCumulative(), is("00:00:00:002"));
+
+        assertThat(stats.getLong(StatsMetric.FAILED_CALL_P), is(16L));
+        assertThat(stats.getLong(StatsMetric.ELAPSED_TIME_C), is(7012L));
+        assertThat(stats.getDouble(StatsMetric.CALL_RATE_P), is(1.998d));
+
+        final ResponseTimeRepartition repartition = stats.getResponseTimeRepartition1();
+        assertThat(repartition.getResponseTimes().size(), is(9));
+        assertThat(repartition.getResponseTimes().get(0).lower(), is(0));
+        assertThat(repartition.getResponseTimes().get(0).upper(), is(10));
+        assertThat(repartition.getResponseTimes().get(0).count(), is(5));
+        assertThat(repartition.getResponseTimes().get(8).lower(), is(200));
+        assertThat(repartition.getResponseTimes().get(8).upper(), is(-1));
+        assertThat(repartition.getResponseTimes().get(8).count(), is(1));
+
+        final Histogram callLengths = stats.getCallLengthHistogram();
+        assertThat(callLengths.getBuckets(), is(8));
+        assertThat(callLengths.getLowerLimit(3), is(100));
+        assertThat(callLengths.getUpperLimit(3), is(500));
+        assertThat(callLengths.getCount(3), is(12L));
+        assertThat(callLengths.getUpperLimit(7), is(-1));
+        assertThat(callLengths.getTotalCount(), is(12L));
+    }
+
+    /**
+     * The response time counters are named after the rtd's of the scenario and there can
+     * be any number of them.
+     */
+    @Test
+    public void testResponseTimeCounters() throws Exception {
+        final String header = "CurrentTime;ResponseTime1(P);ResponseTime1(C);ResponseTime1StDev(P);"
+                + "ResponseTime1StDev(C);ResponseTimeinvite(P);ResponseTimeinvite(C);"
+                + "ResponseTimeRepartition1;<10;<20;>=20;ResponseTimeRepartitioninvite;<100;>=100;";
+        final String row = "2016-02-26\t15:13:45:896\t1456528425.896123;00:00:00:012;00:00:00:011;"
+                + "00:00:00:002;00:00:00:003;00:00:00:150;00:00:00:140;;1;2;3;;4;5;";
+        final StatsLabels labels = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, header);
+        assertThat(labels.getResponseTimeCounters(), is(2));
+        assertThat(labels.getResponseTimeName(0), is("1"));
+        assertThat(labels.findResponseTimeCounter("invite"), is(1));
+        assertThat(labels.findResponseTimeCounter("2"), is(-1));
+
+        final StatsObject stats = labels.createNewStats(row);
+        assertThat(stats.getResponseTimeMillis(0), is(12L));
+        assertThat(stats.getResponseTimeStDevCumulativeMillis(0), is(3L));
+        assertThat(stats.getResponseTimeMillis(1), is(150L));
+        assertThat(stats.getResponseTimeCumulativeMillis(1), is(140L));
+        assertThat(stats.getResponseTimeStDevMillis(1), is(-1L));
+        assertThat(stats.getResponseTimeCount(0, 2), is(3L));
+        assertThat(stats.getResponseTimeCount(1, 1), is(5L));
+
+        final Histogram invite = stats.getResponseTimeHistogram(1);
+        assertThat(invite.getBuckets(), is(2));
+        assertThat(invite.getUpperLimit(0), is(100));
+        assertThat(invite.getTotalCount(), is(9L));
+    }
+
+    /**
+     * The timestamps are decoded once, when the row is read, and every timestamp
+     * is read from its own column.
+     */
+    @Test
+    public void testTimestamps() throws Exception {
+        final String header = "StartTime;LastResetTime;CurrentTime;TargetRate;";
+        final String row = "2016-02-26\t15:13:39:882\t1456528419.882808;"
+                + "2016-02-26      15:13:40:001    1456528420.001;"
+                + "2016-02-26\t15:13:45:896\t1456528425.896123;2;";
+        final StatsObject stats = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, header).createNewStats(row);
+
+        assertThat(stats.getTimestampNanos(StatsMetric.START_TIME), is(1456528419882808000L));
+        assertThat(stats.getTimestampNanos(StatsMetric.LAST_RESET_TIME), is(1456528420001000000L));
+        assertThat(stats.getTimeNanos(), is(1456528425896123000L));
+        assertThat(stats.getTimestampNanos(StatsMetric.TARGET_RATE), is(-1L));
+
+        assertThat(stats.getStartTime().toString(), is("2016-02-26T15:13:39.882"));
+        assertThat(stats.getLastResetTime().toString(), is("2016-02-26T15:13:40.001"));
+        assertThat(stats.getCurrentTime().toString(), is("2016-02-26T15:13:45.896"));
+    }
+
+    /**
+     * Before SIPp has written its first row, there is nothing but zeros and no time.
+     */
+    @Test
+    public void testEmptyStats() throws Exception {
+        final StatsObject stats = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, HEADER).createEmptyStats();
+        assertThat(stats.getTargetRate(), is(0));
+        assertThat(stats.getCallRate(), is(0d));
+        assertThat(stats.getElapsedTime(), is(Duration.ZERO));
+        assertThat(stats.getTimeNanos(), is(-1L));
+        assertThat(stats.getCurrentTime(), CoreMatchers.nullValue());
+        assertThat(stats.getResponseTimeRepartition1().getResponseTimes().size(), is(9));
+        assertThat(stats.getCallLengthHistogram().getTotalCount(), is(0L));
+    }
+
+    @Test
+    public void testParseVersion() throws Exception {
+        assertThat(SIPp.Version.parse("SIPp v3.3-TLS-PCAP-RTPSTREAM, version unknown."), is(SIPp.Version.THREE_DOT_THREE));
+        assertThat(SIPp.Version.parse(" SIPp v3.4.1-TLS-SCTP-PCAP-RTPSTREAM.\n"), is(SIPp.Version.THREE_DOT_FOUR));
+        assertThat(SIPp.Version.parse("SIPp v3.9.0"), is(SIPp.Version.THREE_DOT_SEVEN));
+        assertThat(SIPp.Version.parse("SIPp v2.0"), CoreMatchers.nullValue());
+        assertThat(SIPp.Version.parse("sipp: command not found"), CoreMatchers.nullValue());
+    }
+
+    /**
+     * Every header is only compiled once per version and columns we don't know
+     * about are reported rather than silently dropped.
+     */
+    @Test
+    public void testRegistry() throws Exception {
+        final StatsLabelsRegistry registry = new StatsLabelsRegistry();
+        final StatsLabels labels = registry.get(SIPp.Version.THREE_DOT_FOUR, HEADER);
+        assertThat(registry.get(SIPp.Version.THREE_DOT_FOUR, HEADER) == labels, is(true));
+        assertThat(registry.get(SIPp.Version.THREE_DOT_THREE, HEADER) == labels, is(false));
+        assertThat(registry.size(), is(2));
+        assertThat(labels.getUnknownLabels().isEmpty(), is(true));
+
+        final StatsLabels newer = registry.get(SIPp.Version.THREE_DOT_SEVEN, HEADER + "FailedSomethingNew(P);");
+        assertThat(newer.getUnknownLabels().size(), is(1));
+        assertThat(newer.getUnknownLabels().get(0), is("FailedSomethingNew(P)"));
+        assertThat(newer.createNewStats(createRow() + "7;").getTargetRate(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownResponseTimeCounter() throws Exception {
+        final StatsLabels labels = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, HEADER);
+        labels.createNewStats(createRow()).getResponseTimeMillis(1);
+    }
+
+    /**
+     * Decoding straight from the bytes of a {@link StatsRow} must yield the same
+     * result as going through the string.
+     */
+    @Test
+    public void testCompiledStatsFromRow() throws Exception {
+        final StatsLabels labels = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, HEADER);
+        final byte[] bytes = ("garbage\n" + createRow() + "\n").getBytes(StandardCharsets.US_ASCII);
+        final StatsRow row = new StatsRow().wrap(ByteBuffer.wrap(bytes), 8, bytes.length - 1);
+        final StatsObject stats = labels.createNewStats(row);
+
+        for (final StatsMetric metric : StatsMetric.values()) {
+            assertThat(metric.toString(), stats.getDouble(metric), is(labels.createNewStats(createRow()).getDouble(metric)));
+        }
+        assertThat(stats.getSuccessfulCallCumulative(), is(15));
+    }
+
+    /**
+     * The cumulative counters of a restarted process should pick up where the previous
+     * process left off, whereas the periodic values and the averages should not.
+     */
+    @Test
+    public void testStitchedStats() throws Exception {
+        final StatsLabels labels = StatsLabels.create(SIPp.Version.THREE_DOT_THREE, HEADER);
+        final StatsObject first = labels.createNewStats(createRow());
+        final StatsOffsets offsets = StatsOffsets.NONE.stitch(first);
+
+        final byte[] bytes = createRow().getBytes(StandardCharsets.US_ASCII);
+        final StatsObject second = labels.createNewStats(new StatsRow().wrap(ByteBuffer.wrap(bytes), 0, bytes.length), offsets);
+
+        assertThat(second.getSuccessfulCallCumulative(), is(2 * first.getSuccessfulCallCumulative()));
+        assertThat(second.getTotalCallCreated(), is(2 * first.getTotalCallCreated()));
+        assertThat(second.getSuccessfulCall(), is(first.getSuccessfulCall()));
+        assertThat(second.getCallRateCumulative(), is(first.getCallRateCumulative()));
+        assertThat(second.getResponseTime1Cumulative(), is(first.getResponseTime1Cumulative()));
+
+        // and it keeps on adding up
+        final StatsObject third = labels.createNewStats(new StatsRow().wrap(ByteBuffer.wrap(bytes), 0, bytes.length),
+                offsets.stitch(second));
+        assertThat(third.getSuccessfulCallCumulative(), is(3 * first.getSuccessfulCallCumulative()));
+    }
+
     @Test
     public void testShit() {
         final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss:SSS");
@@ -170,7 +394,7 @@ public class StatsLabelsTest extends SIPpTestBase{
         stats1.getCallLengthStDev();
         stats1.getCallLengthStDevCumulative();
         stats1.getResponseTimeRepartition1();
-        stats1.getCallLengthRepartition();
+        stats1.getCallLengthHistogram();
     }
 
     /**
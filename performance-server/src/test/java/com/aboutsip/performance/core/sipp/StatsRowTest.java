@@ -0,0 +1,45 @@
+package com.aboutsip.performance.core.sipp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class StatsRowTest {
+
+    @Test
+    public void testLocalTimeMillis() {
+        final StatsRow row = row("2016-02-26\t15:13:39:882\t1456528419.882808;2016-02-29 00:00:00;"
+                + "2016-02-26\t15:13;2016-13-01\t00:00:00:000;2016-02-26;;");
+        assertThat(row.getLocalTimeMillis(0), is(millis(LocalDateTime.of(2016, 2, 26, 15, 13, 39, 882_000_000))));
+        // the millis are optional
+        assertThat(row.getLocalTimeMillis(1), is(millis(LocalDateTime.of(2016, 2, 29, 0, 0))));
+        assertThat(row.getLocalTimeMillis(2), is(-1L));
+        assertThat(row.getLocalTimeMillis(3), is(-1L));
+        assertThat(row.getLocalTimeMillis(4), is(-1L));
+    }
+
+    @Test
+    public void testEpochNanos() {
+        final StatsRow row = row("2016-02-26\t15:13:39:882\t1456528419.882808;00:00:01;");
+        assertThat(row.getEpochNanos(0), is(1456528419_882808000L));
+        assertThat(row.getDurationMillis(1), is(1000L));
+    }
+
+    private static long millis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static StatsRow row(final String line) {
+        final byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return new StatsRow().wrap(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
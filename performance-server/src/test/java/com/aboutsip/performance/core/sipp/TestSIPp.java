@@ -0,0 +1,105 @@
+package com.aboutsip.performance.core.sipp;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.IntFunction;
+
+/**
+ * A stand-in for the tests of everything that only listens to the stats of a {@link SIPp}, or
+ * asks it to change its rate, without having to run one. The test feeds it the stats with
+ * {@link #sample(StatsObject)}. Only the identity of the instance, its stats listeners,
+ * {@link SIPp#setRate(int)} and {@link SIPp#onTermination()} are supported.
+ */
+public final class TestSIPp {
+
+    private final UUID uuid = UUID.randomUUID();
+    private final String friendlyName;
+    private final Set<String> tags;
+    private final Set<StatsListener> listeners = new CopyOnWriteArraySet<>();
+    private final CompletableFuture<SIPp> termination = new CompletableFuture<>();
+    private final SIPp sipp;
+
+    private IntFunction<CompletableFuture<SIPp>> rate;
+
+    public TestSIPp(final String friendlyName, final String... tags) {
+        this.friendlyName = friendlyName;
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(tags)));
+        sipp = (SIPp) Proxy.newProxyInstance(SIPp.class.getClassLoader(), new Class<?>[]{SIPp.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUUID":
+                            return uuid;
+                        case "getFriendlyName":
+                        case "toString":
+                            return friendlyName;
+                        case "getTags":
+                            return this.tags;
+                        case "addStatsListener":
+                            listeners.add((StatsListener) args[0]);
+                            return null;
+                        case "removeStatsListener":
+                            listeners.remove(args[0]);
+                            return null;
+                        case "setRate":
+                            if (rate != null) {
+                                return rate.apply((Integer) args[0]);
+                            }
+                            break;
+                        case "onTermination":
+                            return termination;
+                        case "hashCode":
+                            return uuid.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            break;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    public SIPp getSIPp() {
+        return sipp;
+    }
+
+    public UUID getUUID() {
+        return uuid;
+    }
+
+    /**
+     * @return the listeners currently registered with the instance.
+     */
+    public Set<StatsListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * @param rate what to do when asked to change the rate, which isn't supported otherwise.
+     */
+    public TestSIPp withRate(final IntFunction<CompletableFuture<SIPp>> rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Report the given stats to every listener, as if the instance just reported them.
+     */
+    public void sample(final StatsObject stats) {
+        for (final StatsListener listener : listeners) {
+            listener.onStats(sipp, stats);
+        }
+    }
+
+    /**
+     * Have the instance go away for good.
+     */
+    public void terminate() {
+        termination.complete(sipp);
+    }
+}
@@ -0,0 +1,72 @@
+package com.aboutsip.performance.core.sipp;
+
+import com.aboutsip.performance.core.histogram.Histogram;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Stats for the tests of everything that only reads the values of a {@link StatsObject}, e.g. a
+ * {@link StatsHistory}, without having to produce a row of SIPp stats. Only
+ * {@link StatsObject#getDouble(StatsMetric)}, {@link StatsObject#getLong(StatsMetric)} and
+ * {@link StatsObject#getTargetRate()} are supported, plus {@link StatsObject#getResponseTimeHistogram1()}
+ * and {@link StatsObject#getCallLengthHistogram()} if given, and any metric not given is zero.
+ * {@link StatsObject#getTimeNanos()} is the value of {@link StatsMetric#CURRENT_TIME}, in nanoseconds,
+ * or -1 if not given.
+ */
+public final class TestStats {
+
+    private TestStats() {
+        // static methods only
+    }
+
+    public static StatsObject of(final Map<StatsMetric, Double> values) {
+        return of(values, null);
+    }
+
+    public static StatsObject of(final Map<StatsMetric, Double> values, final Histogram responseTimes) {
+        return of(values, responseTimes, null);
+    }
+
+    /**
+     * @param responseTimes the running totals of the response times, as SIPp reports them.
+     * @param callLengths the running totals of the call lengths.
+     */
+    public static StatsObject of(final Map<StatsMetric, Double> values, final Histogram responseTimes,
+                                 final Histogram callLengths) {
+        final Map<StatsMetric, Double> copy = values.isEmpty()
+                ? Collections.emptyMap() : new EnumMap<>(values);
+        return (StatsObject) Proxy.newProxyInstance(StatsObject.class.getClassLoader(),
+                new Class<?>[]{StatsObject.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getDouble":
+                            return copy.getOrDefault(args[0], 0d);
+                        case "getLong":
+                            return copy.getOrDefault(args[0], 0d).longValue();
+                        case "getTargetRate":
+                            return copy.getOrDefault(StatsMetric.TARGET_RATE, 0d).intValue();
+                        case "getTimeNanos":
+                            return copy.getOrDefault(StatsMetric.CURRENT_TIME, -1d).longValue();
+                        case "getResponseTimeHistogram1":
+                            if (responseTimes != null) {
+                                return responseTimes;
+                            }
+                            break;
+                        case "getCallLengthHistogram":
+                            if (callLengths != null) {
+                                return callLengths;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    public static StatsObject of(final StatsMetric metric, final double value) {
+        return of(Collections.singletonMap(metric, value));
+    }
+}
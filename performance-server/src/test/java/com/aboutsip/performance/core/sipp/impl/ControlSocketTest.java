@@ -0,0 +1,116 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Plays the part of SIPp, listening on a control port of our own on the loopback interface.
+ */
+public class ControlSocketTest {
+
+    private ScheduledExecutorService executor;
+    private ControlSocket socket;
+    private DatagramChannel sipp;
+    private CommandChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        socket = new ControlSocket(executor);
+        sipp = DatagramChannel.open();
+        sipp.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        sipp.socket().setSoTimeout(2000);
+        channel = socket.channel((InetSocketAddress) sipp.getLocalAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        sipp.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * SIPp only looks at the first byte of a datagram so every key is a datagram of its own.
+     */
+    @Test(timeout = 5000)
+    public void testKeys() throws Exception {
+        channel.sendKeys("**/").get(2, TimeUnit.SECONDS);
+        assertThat(receive(3), is(Arrays.asList("*", "*", "/")));
+    }
+
+    @Test(timeout = 5000)
+    public void testCommand() throws Exception {
+        assertThat(channel.isCommandSupported(), is(true));
+        channel.execute("set rate 500").get(2, TimeUnit.SECONDS);
+        assertThat(receive(1), is(Arrays.asList("cset rate 500")));
+    }
+
+    /**
+     * Keys and commands arrive in the order they were sent, even when sent from several threads
+     * without waiting for the previous ones to be handed over.
+     */
+    @Test(timeout = 5000)
+    public void testOrder() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            futures.add(channel.sendKeys("+-"));
+            futures.add(channel.execute("set rate " + i));
+            expected.addAll(Arrays.asList("+", "-", "cset rate " + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.SECONDS);
+        assertThat(receive(expected.size()), is(expected));
+    }
+
+    @Test
+    public void testPort() {
+        assertThat(ControlSocket.getPort(Arrays.asList("sipp", "-sn", "uac", "-cp", "8889", "-r", "10")), is(8889));
+        assertThat(ControlSocket.getPort(Arrays.asList("sipp", "-sn", "uac")), is(-1));
+        assertThat(ControlSocket.getPort(Arrays.asList("sipp", "-cp")), is(-1));
+    }
+
+    @Test
+    public void testPortTaken() {
+        assertThat(ControlSocket.isPortTaken(new CompletionException(new IllegalStateException(
+                "SIPp died with exit code 255 before it got going: "
+                        + "Unable to bind specified UDP control socket (port 8889)"))), is(true));
+        assertThat(ControlSocket.isPortTaken(new IllegalStateException("SIPp died with exit code 255 "
+                + "before it got going: Unable to bind main UDP socket")), is(false));
+    }
+
+    private List<String> receive(final int count) throws Exception {
+        final List<String> datagrams = new ArrayList<>();
+        final byte[] buffer = new byte[256];
+        for (int i = 0; i < count; ++i) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                sipp.socket().receive(packet);
+            } catch (final SocketTimeoutException e) {
+                break;
+            }
+            datagrams.add(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.US_ASCII));
+        }
+        return datagrams;
+    }
+}
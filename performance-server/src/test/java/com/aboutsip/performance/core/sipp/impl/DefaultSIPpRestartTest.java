@@ -0,0 +1,186 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.fleet.FleetAggregator;
+import com.aboutsip.performance.core.placement.CpuPlacement;
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsLabelsRegistry;
+import com.aboutsip.performance.core.sipp.StatsMetric;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.aboutsip.performance.core.sipp.impl.TailingServiceTest.await;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The process is a shell script playing SIPp. The first one dies right after it got going, or
+ * before it got going at all, and the one replacing it takes its time getting going, unless it
+ * is the one that keeps on running.
+ */
+public class DefaultSIPpRestartTest {
+
+    private static final String SCRIPT = "if [ -e \"$0.first\" ]; then touch \"$0.second\"; sleep 1; "
+            + "else touch \"$0.first\"; fi; "
+            + "printf 'StartTime;TargetRate;CallRate(P);\\n' > \"$0_$$_.csv\"; : > \"$0_$$_counts.csv\"; "
+            + "if [ -e \"$0.second\" ]; then exec sleep 30; else sleep 0.5; exit 1; fi";
+
+    /**
+     * The first one finds its control port taken, as SIPp would tell us.
+     */
+    private static final String PORT_SCRIPT = "if [ ! -e \"$0.first\" ]; then touch \"$0.first\"; "
+            + "echo \"Unable to bind specified UDP control socket (port $2)\" >&2; exit 255; fi; "
+            + "echo $2 > \"$0.port\"; printf 'StartTime;TargetRate;CallRate(P);\\n' > \"$0_$$_.csv\"; "
+            + ": > \"$0_$$_counts.csv\"; exec sleep 30";
+
+    private static final String STABLE_SCRIPT = "printf 'StartTime;TargetRate;CallRate(P);\\n' > \"$0_$$_.csv\"; "
+            + ": > \"$0_$$_counts.csv\"; exec sleep 30";
+
+    private ScheduledExecutorService executor;
+    private TailingService tailingService;
+    private Path folder;
+
+    /**
+     * The keys sent to every process, in the order they were started.
+     */
+    private final List<List<String>> keys = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(4);
+        tailingService = new TailingService(executor);
+        folder = Files.createTempDirectory("sipp");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tailingService.close();
+        executor.shutdownNow();
+        Files.walk(folder).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Stopping while the process replacing the one that died is starting up stops that one too,
+     * rather than leaving it running.
+     */
+    @Test(timeout = 20000)
+    public void testStopDuringRestart() throws Exception {
+        final String name = folder.resolve("uac").toString();
+        final SIPp sipp = new DefaultSIPp(executor, tailingService, new VersionProbe(executor),
+                new StatsLabelsRegistry(), CpuPlacement.disabled(), new ProcessBuilder("sh", "-c", SCRIPT, name),
+                (command, process) -> new RecordingChannel(), UUID.randomUUID(), name, "uac", Collections.emptySet(),
+                StatsHistory.create(100, false));
+
+        sipp.start().get(5, TimeUnit.SECONDS);
+
+        await(() -> Files.exists(folder.resolve("uac.second")));
+        assertThat(sipp.getRestarts().size(), is(1));
+        sipp.stop(false).get(5, TimeUnit.SECONDS);
+
+        await(() -> keys.size() == 2 && keys.get(1).contains("q"));
+        assertThat(keys.size(), is(2));
+        assertThat(keys.get(1), is(Collections.singletonList("q")));
+        // the process that died is still the current one
+        assertThat(sipp.getPid(), is(-1));
+        assertThat(sipp.getRestarts().size(), is(1));
+    }
+
+    /**
+     * Someone else took the control port before SIPp got to it, so it gets another one.
+     */
+    @Test(timeout = 20000)
+    public void testControlPortTaken() throws Exception {
+        final String name = folder.resolve("uac").toString();
+        final List<Integer> ports = new CopyOnWriteArrayList<>();
+        final SIPp sipp = new DefaultSIPp(executor, tailingService, new VersionProbe(executor),
+                new StatsLabelsRegistry(), CpuPlacement.disabled(),
+                new ProcessBuilder("sh", "-c", PORT_SCRIPT, name, "-cp", "1"),
+                (command, process) -> {
+                    ports.add(ControlSocket.getPort(command));
+                    return new RecordingChannel();
+                }, UUID.randomUUID(), name, "uac", Collections.emptySet(), StatsHistory.create(100, false));
+
+        sipp.start().get(5, TimeUnit.SECONDS);
+        assertThat(ports.size(), is(1));
+        assertThat(ports.get(0) > 1, is(true));
+        assertThat(new String(Files.readAllBytes(folder.resolve("uac.port")), StandardCharsets.US_ASCII).trim(),
+                is(Integer.toString(ports.get(0))));
+        assertThat(sipp.getRestarts().isEmpty(), is(true));
+        sipp.stop(false).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Once stopped the instance no longer counts towards the totals of the fleet.
+     */
+    @Test(timeout = 20000)
+    public void testStopLeavesFleet() throws Exception {
+        final String name = folder.resolve("uac").toString();
+        final SIPp sipp = new DefaultSIPp(executor, tailingService, new VersionProbe(executor),
+                new StatsLabelsRegistry(), CpuPlacement.disabled(), new ProcessBuilder("sh", "-c", STABLE_SCRIPT, name),
+                (command, process) -> new RecordingChannel(), UUID.randomUUID(), name, "uac", Collections.emptySet(),
+                StatsHistory.create(100, false));
+        final FleetAggregator fleet = new FleetAggregator();
+        fleet.register(sipp);
+
+        sipp.start().get(5, TimeUnit.SECONDS);
+        final Path stats = folder.resolve("uac_" + sipp.getPid() + "_.csv");
+        await(() -> Files.exists(stats));
+        TailingServiceTest.append(stats, ";10;9.5;\n");
+        await(() -> total(fleet) == 9.5);
+        assertThat(fleet.getStats(FleetAggregator.ALL).get().getInstances(), is(1));
+
+        sipp.stop(false).get(5, TimeUnit.SECONDS);
+        assertThat(fleet.getStats(FleetAggregator.ALL).get().getInstances(), is(0));
+        assertThat(total(fleet), is(0d));
+    }
+
+    private static double total(final FleetAggregator fleet) {
+        return fleet.getStats(FleetAggregator.ALL).get().get(StatsMetric.CALL_RATE_P);
+    }
+
+    /**
+     * Remembers the keys sent to its process.
+     */
+    private final class RecordingChannel implements CommandChannel {
+
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+
+        private RecordingChannel() {
+            keys.add(sent);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendKeys(final String keys) {
+            sent.add(keys);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isCommandSupported() {
+            return false;
+        }
+
+        @Override
+        public CompletableFuture<Void> execute(final String command) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.aboutsip.performance.core.sipp.impl.TailingServiceTest.append;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class FileTailerTest {
+
+    private Path file;
+    private final List<String> lines = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("tail", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        try (FileTailer tailer = FileTailer.open(file, 0, lines::add)) {
+            assertSplitLines(tailer, "one", "two");
+        }
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        try (FileTailer tailer = FileTailer.openMapped(file, 0, row -> lines.add(row.toString()))) {
+            assertSplitLines(tailer, "one;", "two;");
+        }
+    }
+
+    /**
+     * A line split across two writes is handed over once it is complete, carriage return and all,
+     * and whatever is left of a last line that is still being written is left for the next drain.
+     */
+    private void assertSplitLines(final FileTailer tailer, final String first, final String second) throws Exception {
+        append(file, "one\ntw");
+        assertThat(tailer.drain(), is(4L));
+        assertThat(lines, is(Arrays.asList(first)));
+
+        append(file, "o\r\nthr");
+        assertThat(tailer.drain(), is(5L));
+        assertThat(lines, is(Arrays.asList(first, second)));
+        assertThat(tailer.getBacklog(), is(3L));
+
+        assertThat(tailer.drain(), is(0L));
+        assertThat(lines.size(), is(2));
+    }
+
+    /**
+     * When we have fallen behind, the backlog is mapped a window at a time and the lines
+     * straddling the end of a window are picked up by the next one.
+     */
+    @Test
+    public void testWindows() throws Exception {
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder written = new StringBuilder();
+        for (int i = 0; i < 20; ++i) {
+            written.append("row;").append(i).append(";\r\n");
+            expected.append("row;").append(i).append(";|");
+        }
+        append(file, written.toString());
+
+        try (FileTailer tailer = FileTailer.openMapped(file, 0, row -> lines.add(row.toString()), 16, 32)) {
+            assertThat(tailer.drain(), is((long) written.length()));
+            assertThat(String.join("|", lines) + "|", is(expected.toString()));
+            assertThat(tailer.getBacklog(), is(0L));
+        }
+    }
+
+    /**
+     * A line that doesn't fit in the buffer is mapped instead.
+     */
+    @Test
+    public void testLongLine() throws Exception {
+        try (FileTailer tailer = FileTailer.openMapped(file, 0, row -> lines.add(row.toString()), 16, 64)) {
+            append(file, "a_very_lo");
+            assertThat(tailer.drain(), is(0L));
+
+            append(file, "ng_field;x;\nrow;");
+            assertThat(tailer.drain(), is(21L));
+            assertThat(lines, is(Arrays.asList("a_very_long_field;x;")));
+
+            append(file, "1;\n");
+            assertThat(tailer.drain(), is(7L));
+            assertThat(lines, is(Arrays.asList("a_very_long_field;x;", "row;1;")));
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        final FileTailer tailer = FileTailer.open(file, 0, lines::add);
+        tailer.close();
+        append(file, "one\n");
+        assertThat(tailer.drain(), is(0L));
+        assertThat(tailer.getBacklog(), is(0L));
+        assertThat(lines.isEmpty(), is(true));
+    }
+}
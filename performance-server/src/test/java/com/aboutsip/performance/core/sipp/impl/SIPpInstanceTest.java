@@ -0,0 +1,229 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.CommandChannel;
+import com.aboutsip.performance.core.sipp.SIPp;
+import com.aboutsip.performance.core.sipp.StatsHistory;
+import com.aboutsip.performance.core.sipp.StatsLabelsRegistry;
+import com.aboutsip.performance.core.sipp.StatsObject;
+import com.aboutsip.performance.core.sipp.StatsOffsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.aboutsip.performance.core.sipp.impl.TailingServiceTest.append;
+import static com.aboutsip.performance.core.sipp.impl.TailingServiceTest.await;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Rather than SIPp, the process is a shell script that writes the stats files SIPp would, the
+ * header of the stats file a little late, and then leaves it to the test to write the rows.
+ */
+public class SIPpInstanceTest {
+
+    private static final String HEADER = "StartTime;TargetRate;CallRate(P);";
+
+    private ScheduledExecutorService executor;
+    private TailingService tailingService;
+    private Path folder;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<StatsObject> received = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        tailingService = new TailingService(executor);
+        folder = Files.createTempDirectory("sipp");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tailingService.close();
+        executor.shutdownNow();
+        Files.walk(folder).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    @Test(timeout = 10000)
+    public void testCreate() throws Exception {
+        final SIPpInstance instance = create();
+        try {
+            assertThat(instance.getStats().getTargetRate(), is(0));
+            assertThat(instance.getStats().getTimeNanos(), is(-1L));
+
+            row(instance, 10);
+            assertThat(instance.getStats().getTargetRate(), is(10));
+            assertThat(instance.getRequestedRate(), is(10));
+        } finally {
+            instance.stop().get(5, TimeUnit.SECONDS);
+        }
+        assertThat(sent, is(Collections.singletonList("q")));
+    }
+
+    @Test
+    public void testRateCommand() {
+        assertThat(SIPpInstance.rateCommand(23), is("**+++"));
+        assertThat(SIPpInstance.rateCommand(-12), is("/--"));
+        assertThat(SIPpInstance.rateCommand(10), is("*"));
+        assertThat(SIPpInstance.rateCommand(0), is(""));
+    }
+
+    /**
+     * A new rate isn't confirmed until SIPp reports it as its target rate.
+     */
+    @Test(timeout = 10000)
+    public void testConfirmRate() throws Exception {
+        final SIPpInstance instance = create();
+        try {
+            final CompletableFuture<SIPpInstance> rate = instance.setRate(20);
+            assertThat(sent, is(Collections.singletonList("cset rate 20")));
+
+            row(instance, 10);
+            assertThat(rate.isDone(), is(false));
+            assertThat(instance.getRequestedRate(), is(20));
+
+            row(instance, 20);
+            assertThat(rate.get(2, TimeUnit.SECONDS), is(instance));
+        } finally {
+            instance.stop().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A change that has been superseded by a later one has nothing left to wait for, and the
+     * later one is relative to the earlier one even though SIPp has yet to report either.
+     */
+    @Test(timeout = 10000)
+    public void testSupersededRate() throws Exception {
+        final SIPpInstance instance = create();
+        try {
+            final CompletableFuture<SIPpInstance> first = instance.setRate(20);
+            final CompletableFuture<SIPpInstance> second = instance.increaseRateBy10();
+            assertThat(sent, is(Arrays.asList("cset rate 20", "cset rate 30")));
+
+            row(instance, 10);
+            assertThat(first.get(2, TimeUnit.SECONDS), is(instance));
+            assertThat(second.isDone(), is(false));
+
+            row(instance, 30);
+            assertThat(second.get(2, TimeUnit.SECONDS), is(instance));
+        } finally {
+            instance.stop().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * When a change times out we go with whatever SIPp reports, but not if we have asked for
+     * another rate since, which has yet to time out.
+     */
+    @Test(timeout = 20000)
+    public void testRateTimeout() throws Exception {
+        final SIPpInstance instance = create();
+        try {
+            final CompletableFuture<SIPpInstance> first = instance.setRate(20);
+            Thread.sleep(3000);
+            final CompletableFuture<SIPpInstance> second = instance.setRate(30);
+            try {
+                first.get(5, TimeUnit.SECONDS);
+                fail("SIPp never reported the rate");
+            } catch (final ExecutionException e) {
+                assertThat(e.getCause() instanceof TimeoutException, is(true));
+            }
+            assertThat(instance.getRequestedRate(), is(30));
+
+            try {
+                second.get(5, TimeUnit.SECONDS);
+                fail("SIPp never reported the rate");
+            } catch (final ExecutionException e) {
+                assertThat(e.getCause() instanceof TimeoutException, is(true));
+            }
+            assertThat(instance.getRequestedRate(), is(0));
+        } finally {
+            instance.stop().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * If SIPp dies before writing its stats files we give up right away, with whatever it
+     * had to say about it.
+     */
+    @Test(timeout = 10000)
+    public void testCreateDied() throws Exception {
+        try {
+            create(new ProcessBuilder("sh", "-c", "echo 'Unable to load the scenario' >&2; exit 3")).get(5,
+                    TimeUnit.SECONDS);
+            fail("SIPp died");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+            assertThat(e.getCause().getMessage(), is("SIPp died with exit code 3 before it got going: "
+                    + "Unable to load the scenario"));
+        }
+    }
+
+    /**
+     * Write a row of stats, as SIPp would, and wait for the instance to pick it up.
+     */
+    private void row(final SIPpInstance instance, final int targetRate) throws Exception {
+        final int rows = received.size();
+        append(folder.resolve("uac_" + instance.getPid() + "_.csv"), ";" + targetRate + ";" + targetRate + ";\n");
+        await(() -> received.size() > rows);
+        assertThat(received.size(), is(rows + 1));
+    }
+
+    /**
+     * Start a fake SIPp and wait for it to get going.
+     */
+    private SIPpInstance create() throws Exception {
+        final String name = folder.resolve("uac").toString();
+        // $0 is the name and $$ the pid, just like SIPp names its files
+        final String script = "sleep 0.2; printf '" + HEADER + "\\n' > \"$0_$$_.csv\"; "
+                + ": > \"$0_$$_counts.csv\"; exec sleep 30";
+        return create(new ProcessBuilder("sh", "-c", script, name)).get(5, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<SIPpInstance> create(final ProcessBuilder processBuilder) {
+        return SIPpInstance.create(executor, tailingService, CompletableFuture.completedFuture(SIPp.Version.DEFAULT),
+                new StatsLabelsRegistry(), processBuilder, (command, process) -> new RecordingChannel(),
+                folder.resolve("uac").toString(), StatsHistory.create(100, false), StatsOffsets.NONE, received::add);
+    }
+
+    /**
+     * Remembers every key and command instead of sending them anywhere.
+     */
+    private final class RecordingChannel implements CommandChannel {
+
+        @Override
+        public CompletableFuture<Void> sendKeys(final String keys) {
+            sent.add(keys);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isCommandSupported() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<Void> execute(final String command) {
+            sent.add("c" + command);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
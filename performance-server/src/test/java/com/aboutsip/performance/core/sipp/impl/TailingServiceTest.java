@@ -0,0 +1,183 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class TailingServiceTest {
+
+    private ScheduledExecutorService executor;
+    private Path folder;
+    private Set<Thread> threads;
+    private TailingService service;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        folder = Files.createTempDirectory("tailing");
+        threads = new HashSet<>(Thread.getAllStackTraces().keySet());
+        service = new TailingService(executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.close();
+        executor.shutdownNow();
+        Files.walk(folder).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * A line written in several goes is only handed over once it is complete.
+     */
+    @Test(timeout = 5000)
+    public void testTail() throws Exception {
+        final Path file = folder.resolve("uac_messages.log");
+        append(file, "skip me\n");
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        final FileTailer tailer = service.tail(file, "skip me\n".length(), lines::add);
+
+        append(file, "one\ntw");
+        await(() -> lines.size() == 1);
+        append(file, "o\n");
+        await(() -> lines.size() == 2);
+        assertThat(lines, is(Arrays.asList("one", "two")));
+
+        append(file, "three");
+        service.stop(tailer);
+        assertThat(tailer.isClosed(), is(true));
+        assertThat(lines, is(Arrays.asList("one", "two")));
+    }
+
+    /**
+     * Closing the service ends the watcher thread but whatever is still being tailed is polled.
+     */
+    @Test(timeout = 5000)
+    public void testClose() throws Exception {
+        final Set<Thread> started = new HashSet<>(Thread.getAllStackTraces().keySet());
+        started.removeAll(threads);
+        started.removeIf(thread -> !"sipp-stats-watcher".equals(thread.getName()));
+        assertThat(started.size(), is(1));
+
+        final Path file = folder.resolve("uac_messages.log");
+        append(file, "");
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        service.tail(file, 0, lines::add);
+
+        service.close();
+        for (final Thread thread : started) {
+            thread.join(2000);
+            assertThat(thread.isAlive(), is(false));
+        }
+
+        append(file, "one\n");
+        await(() -> lines.size() == 1);
+        assertThat(lines, is(Collections.singletonList("one")));
+    }
+
+    /**
+     * The file shows up, but without the header, which is written a little later.
+     */
+    @Test(timeout = 5000)
+    public void testAwaitFile() throws Exception {
+        final Path file = folder.resolve("uac_4711_.csv");
+        final CompletableFuture<String> header = service.awaitFile(file, TailingServiceTest::readLine, 3000);
+
+        Thread.sleep(50);
+        append(file, "StartTime;Last");
+        Thread.sleep(50);
+        assertThat(header.isDone(), is(false));
+
+        append(file, "ResetTime;\n");
+        assertThat(header.get(2, TimeUnit.SECONDS), is("StartTime;LastResetTime;"));
+    }
+
+    @Test(timeout = 5000)
+    public void testAwaitFileTimeout() throws Exception {
+        final CompletableFuture<String> header = service.awaitFile(folder.resolve("uac_4711_.csv"),
+                TailingServiceTest::readLine, 100);
+        try {
+            header.get(2, TimeUnit.SECONDS);
+            fail("The file never showed up");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause() instanceof FileNotFoundException, is(true));
+        }
+    }
+
+    /**
+     * A probe throwing, e.g. since the process that was supposed to write the file died, is
+     * how we give up without waiting for the timeout.
+     */
+    @Test(timeout = 5000)
+    public void testAwaitFileProbeThrows() throws Exception {
+        final AtomicBoolean alive = new AtomicBoolean(true);
+        final CompletableFuture<String> header = service.awaitFile(folder.resolve("uac_4711_.csv"), path -> {
+            if (!alive.get()) {
+                throw new IllegalStateException("SIPp died");
+            }
+            return null;
+        }, 3000);
+
+        Thread.sleep(50);
+        assertThat(header.isDone(), is(false));
+        alive.set(false);
+        try {
+            header.get(2, TimeUnit.SECONDS);
+            fail("The probe gave up");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("SIPp died"));
+        }
+    }
+
+    private static String readLine(final Path file) {
+        try {
+            final String content = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+            final int end = content.indexOf('\n');
+            return end != -1 ? content.substring(0, end) : null;
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void append(final Path file, final String text) throws Exception {
+        Files.write(file, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 3000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.aboutsip.performance.core.sipp.impl;
+
+import com.aboutsip.performance.core.sipp.SIPp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.aboutsip.performance.core.sipp.impl.TailingServiceTest.await;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The executable is a shell script playing "sipp -v".
+ */
+public class VersionProbeTest {
+
+    private ScheduledExecutorService executor;
+    private Path folder;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newScheduledThreadPool(2);
+        folder = Files.createTempDirectory("sipp");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        Files.walk(folder).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    @Test(timeout = 5000)
+    public void testVersion() throws Exception {
+        final String sipp = script("echo 'SIPp v3.6.1-TLS-SCTP-PCAP-RTPSTREAM.'; exit 99");
+        final VersionProbe probe = new VersionProbe(executor);
+        assertThat(probe.getVersion(sipp).get(2, TimeUnit.SECONDS), is(SIPp.Version.THREE_DOT_SIX));
+    }
+
+    /**
+     * An executable that hangs is killed once it has had its chance to answer.
+     */
+    @Test(timeout = 5000)
+    public void testTimeout() throws Exception {
+        final Path pid = folder.resolve("pid");
+        final String sipp = script("echo $$ > " + pid + "; exec sleep 30");
+        final VersionProbe probe = new VersionProbe(executor, 200);
+        assertThat(probe.getVersion(sipp).get(2, TimeUnit.SECONDS), is(SIPp.Version.DEFAULT));
+
+        final Path proc = Paths.get("/proc",
+                new String(Files.readAllBytes(pid), StandardCharsets.US_ASCII).trim());
+        await(() -> !Files.exists(proc));
+    }
+
+    private String script(final String body) throws Exception {
+        final Path script = folder.resolve("sipp");
+        Files.write(script, ("#!/bin/sh\n" + body + "\n").getBytes(StandardCharsets.US_ASCII));
+        script.toFile().setExecutable(true);
+        return script.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.aboutsip.performance.core.timeseries;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ */
+public class TimeSeriesTest {
+
+    private TimeSeries createSeries(final int capacity, final boolean offHeap) {
+        return TimeSeries.create(Arrays.asList("one", "two"), capacity, offHeap);
+    }
+
+    private void appendSamples(final TimeSeries series, final int from, final int to) {
+        for (int i = from; i < to; ++i) {
+            final int ts = i;
+            series.append(ts * 1000, column -> column == 0 ? ts : ts * 10.5);
+        }
+    }
+
+    @Test
+    public void testAppendAndRead() throws Exception {
+        final TimeSeries series = createSeries(10, false);
+        assertThat(series.isEmpty(), is(true));
+
+        appendSamples(series, 0, 5);
+        assertThat(series.size(), is(5));
+        assertThat(series.tail(), is(0L));
+        assertThat(series.head(), is(5L));
+        assertThat(series.getTimestamp(3), is(3000L));
+        assertThat(series.getValue(3, 0), is(3d));
+        assertThat(series.getValue(3, series.columnIndex("two")), is(31.5d));
+        assertThat(series.columnIndex("three"), is(-1));
+    }
+
+    /**
+     * Once the series is full the oldest samples are overwritten.
+     */
+    @Test
+    public void testWrapAround() throws Exception {
+        final TimeSeries series = createSeries(10, true);
+        appendSamples(series, 0, 25);
+
+        assertThat(series.size(), is(10));
+        assertThat(series.tail(), is(15L));
+        assertThat(series.head(), is(25L));
+        assertThat(series.isAvailable(14), is(false));
+        assertThat(series.isAvailable(15), is(true));
+        assertThat(series.getTimestamp(15), is(15000L));
+        assertThat(series.getValue(24, 0), is(24d));
+    }
+
+    @Test
+    public void testRangeQuery() throws Exception {
+        final TimeSeries series = createSeries(10, false);
+        appendSamples(series, 0, 25);
+
+        // everything before the tail is gone so we should
+        // end up on the tail
+        assertThat(series.ceiling(0), is(15L));
+        assertThat(series.ceiling(17000), is(17L));
+        assertThat(series.ceiling(17001), is(18L));
+        assertThat(series.ceiling(100000), is(25L));
+
+        final double[] sum = new double[1];
+        final int count = series.forEach(17000, 20000, (s, sequence) -> sum[0] += s.getValue(sequence, 0));
+        assertThat(count, is(3));
+        assertThat(sum[0], is(17d + 18d + 19d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoColumns() throws Exception {
+        TimeSeries.create(Collections.<String>emptyList(), 10, false);
+    }
+}